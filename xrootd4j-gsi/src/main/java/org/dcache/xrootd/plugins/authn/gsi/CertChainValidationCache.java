@@ -0,0 +1,172 @@
+/**
+ * Copyright (C) 2011-2026 dCache.org <support@dcache.org>
+ *
+ * This file is part of xrootd4j.
+ *
+ * xrootd4j is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * xrootd4j is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with xrootd4j.  If
+ * not, see http://www.gnu.org/licenses/.
+ */
+package org.dcache.xrootd.plugins.authn.gsi;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Ticker;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import eu.emi.security.authn.x509.ValidationResult;
+import eu.emi.security.authn.x509.X509CertChainValidator;
+import java.security.cert.CertificateEncodingException;
+import java.security.cert.X509Certificate;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ *  Bounded cache of successful certificate chain validations, keyed by
+ *  the SHA-256 fingerprint of the encoded chain.
+ *
+ *  An entry expires at the earliest of the <code>notAfter</code> of any
+ *  certificate in the chain, the next refresh of trust anchors and CRLs,
+ *  and the configured lifetime.  Failed validations are never cached,
+ *  and all entries are discarded whenever the validator reloads trust
+ *  anchors or CRLs.
+ */
+public class CertChainValidationCache {
+
+    private static final Logger LOGGER
+          = LoggerFactory.getLogger(CertChainValidationCache.class);
+
+    private static class Entry {
+
+        private final ValidationResult result;
+        private final long expiresAt;
+
+        private Entry(ValidationResult result, long expiresAt) {
+            this.result = result;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    private final X509CertChainValidator validator;
+    private final Cache<HashCode, Entry> cache;
+    private final long lifetime;
+    private final LongSupplier nextRefresh;
+    private final LongSupplier clock;
+
+    /**
+     * @param validator performing the actual validation
+     * @param maxSize maximum number of chains held by the cache
+     * @param lifetime maximum lifetime of an entry
+     * @param unit of the lifetime
+     * @param nextRefresh supplies the time in milliseconds at which trust
+     *                    anchors and CRLs are next reloaded
+     */
+    public CertChainValidationCache(X509CertChainValidator validator,
+          long maxSize,
+          long lifetime,
+          TimeUnit unit,
+          LongSupplier nextRefresh) {
+        this(validator, maxSize, lifetime, unit, nextRefresh,
+              System::currentTimeMillis);
+    }
+
+    /**
+     * @param clock current time in milliseconds since the epoch
+     */
+    @VisibleForTesting
+    CertChainValidationCache(X509CertChainValidator validator,
+          long maxSize,
+          long lifetime,
+          TimeUnit unit,
+          LongSupplier nextRefresh,
+          LongSupplier clock) {
+        this.validator = validator;
+        this.lifetime = unit.toMillis(lifetime);
+        this.nextRefresh = nextRefresh;
+        this.clock = clock;
+        cache = CacheBuilder.newBuilder()
+              .maximumSize(maxSize)
+              .expireAfterWrite(lifetime, unit)
+              .ticker(new Ticker() {
+                  @Override
+                  public long read() {
+                      return TimeUnit.MILLISECONDS.toNanos(clock.getAsLong());
+                  }
+              })
+              .build();
+
+        /*
+         *  Trust anchors or CRLs have been (re)loaded.
+         */
+        validator.addUpdateListener((location, type, level, cause) -> flush());
+    }
+
+    public ValidationResult validate(X509Certificate[] chain) {
+        HashCode fingerprint = fingerprint(chain);
+        long now = clock.getAsLong();
+
+        if (fingerprint != null) {
+            Entry entry = cache.getIfPresent(fingerprint);
+            if (entry != null) {
+                if (entry.expiresAt > now) {
+                    LOGGER.debug("Using cached validation of chain {}.", fingerprint);
+                    return entry.result;
+                }
+                cache.invalidate(fingerprint);
+            }
+        }
+
+        ValidationResult result = validator.validate(chain);
+
+        if (fingerprint != null && result.isValid()) {
+            long expiresAt = Math.min(now + lifetime, nextRefresh.getAsLong());
+            for (X509Certificate certificate : chain) {
+                expiresAt = Math.min(expiresAt, certificate.getNotAfter().getTime());
+            }
+            if (expiresAt > now) {
+                cache.put(fingerprint, new Entry(result, expiresAt));
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Discards all cached validations, e.g., when trust anchors or CRLs
+     * have been reloaded.
+     */
+    public void flush() {
+        cache.invalidateAll();
+    }
+
+    public long size() {
+        return cache.size();
+    }
+
+    /**
+     * @return the fingerprint, or null if the chain cannot be encoded.
+     */
+    private static HashCode fingerprint(X509Certificate[] chain) {
+        Hasher hasher = Hashing.sha256().newHasher();
+        try {
+            for (X509Certificate certificate : chain) {
+                byte[] encoded = certificate.getEncoded();
+                hasher.putInt(encoded.length).putBytes(encoded);
+            }
+        } catch (CertificateEncodingException e) {
+            return null;
+        }
+        return hasher.hash();
+    }
+}
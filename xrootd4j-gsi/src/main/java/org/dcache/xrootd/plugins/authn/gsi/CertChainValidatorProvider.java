@@ -41,6 +41,8 @@ public class CertChainValidatorProvider {
     private final String caCertificatePath;
     private final X509CertChainValidator certChainValidator;
     private final long trustAnchorRefreshInterval;
+    private final long created = System.currentTimeMillis();
+    private final CertChainValidationCache validationCache;
 
     public CertChainValidatorProvider(Properties properties)
           throws FileNotFoundException {
@@ -64,11 +66,45 @@ public class CertChainValidatorProvider {
         ValidatorParams validatorParams = new ValidatorParams(
               new RevocationParameters(crlCheckingMode, new OCSPParametes(ocspCheckingMode)),
               ProxySupport.ALLOW);
-        certChainValidator = new OpensslCertChainValidator(caCertificatePath, false, namespaceMode,
-              trustAnchorRefreshInterval, validatorParams, false);
+        OpensslCertChainValidator validator = new OpensslCertChainValidator(caCertificatePath,
+              false, namespaceMode, trustAnchorRefreshInterval, validatorParams, false);
+        certChainValidator = validator;
+
+        long cacheSize = Long.parseLong(
+              properties.getProperty("xrootd.gsi.ca.validation-cache.size", "1024"));
+        long cacheLifetime =
+              TimeUnit.valueOf(properties.getProperty("xrootd.gsi.ca.validation-cache.lifetime.unit",
+                          "SECONDS"))
+                    .toMillis(Long.parseLong(
+                          properties.getProperty("xrootd.gsi.ca.validation-cache.lifetime",
+                                "600")));
+        if (cacheSize > 0 && cacheLifetime > 0) {
+            validationCache = new CertChainValidationCache(certChainValidator,
+                  cacheSize, cacheLifetime, TimeUnit.MILLISECONDS,
+                  this::getNextRefresh);
+        } else {
+            validationCache = null;
+        }
     }
 
     public X509CertChainValidator getCertChainValidator() {
         return certChainValidator;
     }
+
+    /**
+     * @return the cache of successful validations by the validator of this
+     *         provider, or null if caching is disabled.
+     */
+    public CertChainValidationCache getValidationCache() {
+        return validationCache;
+    }
+
+    private long getNextRefresh() {
+        if (trustAnchorRefreshInterval <= 0) {
+            return Long.MAX_VALUE;
+        }
+        long now = System.currentTimeMillis();
+        long elapsed = now - created;
+        return now + trustAnchorRefreshInterval - elapsed % trustAnchorRefreshInterval;
+    }
 }
@@ -16,7 +16,9 @@
  */
 package org.dcache.xrootd.plugins.authn.gsi;
 
+import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Strings;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import eu.emi.security.authn.x509.X509CertChainValidator;
 import eu.emi.security.authn.x509.X509Credential;
 import eu.emi.security.authn.x509.impl.PEMCredential;
@@ -30,7 +32,10 @@ import java.security.NoSuchAlgorithmException;
 import java.security.SignatureException;
 import java.security.cert.CertificateException;
 import java.util.Properties;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -59,12 +64,16 @@ public class CredentialLoader {
     private final boolean delegationOnly;
     private final String proxyPath;
 
-    private long hostCertRefreshTimestamp = 0;
-    private long proxyRefreshTimestamp = 0;
+    /*
+     *  Current credentials; replaced as a whole by the refresh tasks, so
+     *  that readers never block.
+     */
+    private final AtomicReference<PEMCredential> hostCredential = new AtomicReference<>();
+    private final AtomicReference<X509Credential> proxy = new AtomicReference<>();
 
-    private PEMCredential hostCredential;
-    private PEMCredential clientCredential;
-    private X509Credential proxy;
+    private ScheduledExecutorService refresher;
+    private boolean serverRefreshScheduled;
+    private boolean clientRefreshScheduled;
 
     public CredentialLoader(Properties properties,
           X509CertChainValidator certChainValidator) {
@@ -98,14 +107,96 @@ public class CredentialLoader {
               properties.getProperty("xrootd.gsi.tpc.delegation-only"));
     }
 
+    /**
+     * The credential is loaded on first use, and then refreshed in
+     * the background.  With a refresh interval of zero, it is
+     * reloaded on every call instead.
+     */
     public PEMCredential getHostCredential() {
-        loadServerCredentials();
-        return hostCredential;
+        if (hostCertRefreshInterval <= 0) {
+            synchronized (this) {
+                loadServerCredentials();
+            }
+            return hostCredential.get();
+        }
+        PEMCredential credential = hostCredential.get();
+        if (credential == null) {
+            initializeServerCredentials();
+            credential = hostCredential.get();
+        }
+        return credential;
     }
 
+    /**
+     * The credential is loaded on first use, and then refreshed in
+     * the background.  With a refresh interval of zero, it is
+     * reloaded on every call instead.
+     */
     public X509Credential getProxy() {
-        loadClientCredentials();
-        return proxy;
+        if (proxyRefreshInterval <= 0) {
+            synchronized (this) {
+                loadClientCredentials();
+            }
+            return proxy.get();
+        }
+        X509Credential credential = proxy.get();
+        if (credential == null) {
+            initializeClientCredentials();
+            credential = proxy.get();
+        }
+        return credential;
+    }
+
+    /**
+     * Stops the background refresh of the credentials.
+     */
+    public synchronized void shutdown() {
+        if (refresher != null) {
+            refresher.shutdownNow();
+            refresher = null;
+        }
+    }
+
+    private synchronized void initializeServerCredentials() {
+        if (hostCredential.get() == null) {
+            loadServerCredentials();
+        }
+        if (!serverRefreshScheduled) {
+            schedule(this::loadServerCredentials, hostCertRefreshInterval);
+            serverRefreshScheduled = true;
+        }
+    }
+
+    private synchronized void initializeClientCredentials() {
+        if (proxy.get() == null) {
+            loadClientCredentials();
+        }
+        if (!clientRefreshScheduled) {
+            schedule(this::loadClientCredentials, proxyRefreshInterval);
+            clientRefreshScheduled = true;
+        }
+    }
+
+    private void schedule(Runnable refresh, long interval) {
+        if (refresher == null) {
+            refresher = Executors.newSingleThreadScheduledExecutor(
+                  new ThreadFactoryBuilder()
+                        .setNameFormat("gsi-credential-refresh-%d")
+                        .setDaemon(true)
+                        .build());
+        }
+        refresher.scheduleWithFixedDelay(() -> {
+                  /*
+                   *  An exception would cancel all further refreshes.
+                   */
+                  try {
+                      refresh.run();
+                  } catch (RuntimeException e) {
+                      LOGGER.error("Bug: credential refresh failed; {}: {}.",
+                            getCredentialValues(), e.toString());
+                  }
+              }, interval, interval,
+              TimeUnit.MILLISECONDS);
     }
 
     public boolean isDelegationOnly() {
@@ -114,48 +205,14 @@ public class CredentialLoader {
 
     /**
      * Client-side, will attempt to read in a prefetched proxy from a given
-     * path, or to construct one from the local cert and key, if refresh
-     * has expired.
+     * path, or to construct one from the local cert and key.  On failure,
+     * the previous credential remains in use.
      */
-    private synchronized void loadClientCredentials() {
+    private void loadClientCredentials() {
         try {
-            if (shouldRefreshClientProxyCredential()) {
-                LOGGER.info("Refreshing proxy credential. Current refresh interval: {} ms",
-                      proxyRefreshInterval);
-
-                if (!Strings.isNullOrEmpty(proxyPath)) {
-                    clientCredential = new PEMCredential(proxyPath, (char[]) null);
-                    proxy = clientCredential;
-                } else {
-                    clientCredential = new PEMCredential(clientKeyPath,
-                          clientCertificatePath,
-                          null);
-                    if (verifyClientCertificate) {
-                        LOGGER.info("Verifying client certificate");
-                        certChainValidator.validate(clientCredential.getCertificateChain());
-                    }
-
-                    /*
-                     *  SLAC server requires an actual proxy, that is,
-                     *  cert chain length > 1.
-                     */
-                    try {
-                        ProxyCertificateOptions options
-                              = new ProxyCertificateOptions(
-                              clientCredential.getCertificateChain());
-                        ProxyCertificate proxyCert = ProxyGenerator.generate(
-                              options,
-                              clientCredential.getKey());
-                        proxy = proxyCert.getCredential();
-                    } catch (InvalidKeyException | SignatureException | NoSuchAlgorithmException e) {
-                        throw new CertificateException(
-                              "could not generate host proxy credential.",
-                              e);
-                    }
-                }
-
-                proxyRefreshTimestamp = System.currentTimeMillis();
-            }
+            LOGGER.info("Refreshing proxy credential. Current refresh interval: {} ms",
+                  proxyRefreshInterval);
+            proxy.set(readProxy());
         } catch (GeneralSecurityException gssex) {
             LOGGER.error("Could not load client certificates/key due to security error; {}: {}.",
                   getCredentialValues(), gssex.toString());
@@ -166,26 +223,49 @@ public class CredentialLoader {
         }
     }
 
+    @VisibleForTesting
+    X509Credential readProxy() throws IOException, GeneralSecurityException {
+        if (!Strings.isNullOrEmpty(proxyPath)) {
+            return new PEMCredential(proxyPath, (char[]) null);
+        }
+
+        PEMCredential clientCredential = new PEMCredential(clientKeyPath,
+              clientCertificatePath,
+              null);
+        if (verifyClientCertificate) {
+            LOGGER.info("Verifying client certificate");
+            certChainValidator.validate(clientCredential.getCertificateChain());
+        }
+
+        /*
+         *  SLAC server requires an actual proxy, that is,
+         *  cert chain length > 1.
+         */
+        try {
+            ProxyCertificateOptions options
+                  = new ProxyCertificateOptions(
+                  clientCredential.getCertificateChain());
+            ProxyCertificate proxyCert = ProxyGenerator.generate(
+                  options,
+                  clientCredential.getKey());
+            return proxyCert.getCredential();
+        } catch (InvalidKeyException | SignatureException | NoSuchAlgorithmException e) {
+            throw new CertificateException(
+                  "could not generate host proxy credential.",
+                  e);
+        }
+    }
+
     /**
      * Server-side, will attempt to generate host credential from
-     * local cert and key, if refresh has expired.
+     * local cert and key.  On failure, the previous credential remains
+     * in use.
      */
-    private synchronized void loadServerCredentials() {
+    private void loadServerCredentials() {
         try {
-            if (shouldReloadServerCredentials()) {
-                LOGGER.info("Loading server certificates. Current refresh interval: {} ms",
-                      hostCertRefreshInterval);
-                PEMCredential credential = new PEMCredential(hostKeyPath,
-                      hostCertificatePath,
-                      null);
-                if (verifyHostCertificate) {
-                    LOGGER.info("Verifying host certificate");
-                    certChainValidator.validate(
-                          credential.getCertificateChain());
-                }
-                hostCredential = credential;
-                hostCertRefreshTimestamp = System.currentTimeMillis();
-            }
+            LOGGER.info("Loading server certificates. Current refresh interval: {} ms",
+                  hostCertRefreshInterval);
+            hostCredential.set(readHostCredential());
         } catch (GeneralSecurityException gssex) {
             LOGGER.error("Could not load server certificates/key due to security error; {}: {}.",
                   getCredentialValues(), gssex.toString());
@@ -196,21 +276,22 @@ public class CredentialLoader {
         }
     }
 
+    @VisibleForTesting
+    PEMCredential readHostCredential() throws IOException, GeneralSecurityException {
+        PEMCredential credential = new PEMCredential(hostKeyPath,
+              hostCertificatePath,
+              null);
+        if (verifyHostCertificate) {
+            LOGGER.info("Verifying host certificate");
+            certChainValidator.validate(
+                  credential.getCertificateChain());
+        }
+        return credential;
+    }
+
     private String getCredentialValues() {
         return "client cert path: " + clientCertificatePath
               + ", client key path: " + clientKeyPath
               + ", proxy path: " + proxyPath;
     }
-
-    private boolean shouldReloadServerCredentials() {
-        long timeSinceLastServerRefresh = (System.currentTimeMillis() - hostCertRefreshTimestamp);
-        LOGGER.info("Time since last server cert refresh {}", timeSinceLastServerRefresh);
-        return hostCredential == null || timeSinceLastServerRefresh >= hostCertRefreshInterval;
-    }
-
-    private boolean shouldRefreshClientProxyCredential() {
-        long timeSinceLastClientRefresh = (System.currentTimeMillis() - proxyRefreshTimestamp);
-        LOGGER.info("Time since last client cert refresh {}", timeSinceLastClientRefresh);
-        return proxy == null || timeSinceLastClientRefresh >= proxyRefreshInterval;
-    }
 }
@@ -0,0 +1,157 @@
+/**
+ * Copyright (C) 2011-2026 dCache.org <support@dcache.org>
+ *
+ * This file is part of xrootd4j.
+ *
+ * xrootd4j is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * xrootd4j is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with xrootd4j.  If
+ * not, see http://www.gnu.org/licenses/.
+ */
+package org.dcache.xrootd.plugins.authn.gsi;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import java.security.GeneralSecurityException;
+import java.security.InvalidAlgorithmParameterException;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.NoSuchAlgorithmException;
+import java.security.NoSuchProviderException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import javax.crypto.spec.DHParameterSpec;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ *  Holds Diffie-Hellman key pairs for the fixed server parameters
+ *  ({@link DHSession#DH_PARAMETERS}), generated ahead of time by
+ *  background threads.  Key pair generation is the most expensive step
+ *  of the server side of the GSI handshake; taking a ready pair moves it
+ *  off the login path.
+ *
+ *  Each key pair is handed out only once.  When the pool is empty, a pair
+ *  is generated by the caller.  A failed generation is logged and retried
+ *  after a delay.  The refill threads run until {@link #shutdown()}.
+ */
+public class DHKeyPairPool {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(DHKeyPairPool.class);
+
+    private static final long RETRY_DELAY = TimeUnit.SECONDS.toMillis(10);
+
+    @FunctionalInterface
+    interface KeyPairSource {
+
+        KeyPair generate() throws GeneralSecurityException;
+    }
+
+    static KeyPair generateKeyPair(DHParameterSpec spec)
+          throws InvalidAlgorithmParameterException, NoSuchAlgorithmException,
+          NoSuchProviderException {
+        KeyPairGenerator kpairGen =
+              KeyPairGenerator.getInstance(DHSession.DH_ALGORITHM_NAME, "BC");
+        kpairGen.initialize(spec);
+        return kpairGen.generateKeyPair();
+    }
+
+    private final BlockingQueue<KeyPair> pairs;
+    private final ExecutorService refillers;
+    private final KeyPairSource source;
+    private final long retryDelay;
+
+    /**
+     * @param depth number of key pairs held ready
+     * @param threads number of threads refilling the pool
+     */
+    public DHKeyPairPool(int depth, int threads) {
+        this(depth, threads, () -> generateKeyPair(DHSession.DH_PARAMETERS),
+              RETRY_DELAY);
+    }
+
+    /**
+     * @param source generates the key pairs
+     * @param retryDelay milliseconds to wait after a failed generation
+     */
+    @VisibleForTesting
+    DHKeyPairPool(int depth, int threads, KeyPairSource source, long retryDelay) {
+        this.pairs = new ArrayBlockingQueue<>(depth);
+        this.source = source;
+        this.retryDelay = retryDelay;
+        refillers = Executors.newFixedThreadPool(threads, new ThreadFactoryBuilder()
+              .setNameFormat("gsi-dh-keygen-%d")
+              .setDaemon(true)
+              .build());
+        for (int i = 0; i < threads; i++) {
+            refillers.execute(this::refill);
+        }
+    }
+
+    /**
+     * @return a key pair for the server parameters which has not been
+     *         handed out before.
+     */
+    public KeyPair take()
+          throws InvalidAlgorithmParameterException, NoSuchAlgorithmException,
+          NoSuchProviderException {
+        KeyPair pair = pairs.poll();
+        if (pair == null) {
+            LOGGER.debug("DH key pair pool is empty, generating key pair.");
+            pair = generateKeyPair(DHSession.DH_PARAMETERS);
+        }
+        return pair;
+    }
+
+    /**
+     * @return the number of key pairs ready to be taken.
+     */
+    public int available() {
+        return pairs.size();
+    }
+
+    /**
+     * Stops the refill threads, interrupting those which are waiting
+     * for room in the pool or generating a key pair.  Pairs already
+     * generated can still be taken.
+     */
+    public void shutdown() {
+        refillers.shutdownNow();
+    }
+
+    /**
+     * @return true if all refill threads stopped within the timeout.
+     */
+    public boolean awaitTermination(long timeout, TimeUnit unit)
+          throws InterruptedException {
+        return refillers.awaitTermination(timeout, unit);
+    }
+
+    private void refill() {
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                KeyPair pair;
+                try {
+                    pair = source.generate();
+                } catch (GeneralSecurityException | RuntimeException e) {
+                    LOGGER.error("Unable to pre-generate DH key pair, retrying in {} ms: {}.",
+                          retryDelay, e.toString());
+                    Thread.sleep(retryDelay);
+                    continue;
+                }
+                pairs.put(pair);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -60,7 +60,7 @@ public class DHSession {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(DHSession.class);
 
-    private static final String DH_ALGORITHM_NAME = "DH";
+    static final String DH_ALGORITHM_NAME = "DH";
     private static final String DH_HEADER = "-----BEGIN DH PARAMETERS-----";
     private static final String DH_FOOTER = "-----END DH PARAMETERS-----";
     private static final String DH_PUBKEY_HEADER = "---BPUB---";
@@ -98,9 +98,28 @@ public class DHSession {
     public DHSession(boolean isServer, int sessionIVLen)
           throws InvalidAlgorithmParameterException, NoSuchAlgorithmException,
           InvalidKeyException, NoSuchProviderException {
+        this(isServer, sessionIVLen, null);
+    }
+
+    /**
+     * Construct new Diffie-Hellman key exchange session
+     * @param keyPairPool from which the server takes its key pair; if null,
+     *                    the key pair is generated.
+     * @throws InvalidAlgorithmParameterException Invalid DH parameters (primes)
+     * @throws NoSuchAlgorithmException DH algorithm not available in VM
+     * @throws InvalidKeyException Private key generated by DH generator invalid
+     * @throws NoSuchProviderException Bouncy castle provider does not exist
+     */
+    public DHSession(boolean isServer, int sessionIVLen, DHKeyPairPool keyPairPool)
+          throws InvalidAlgorithmParameterException, NoSuchAlgorithmException,
+          InvalidKeyException, NoSuchProviderException {
         if (isServer) {
             _dhParameterSpec = DH_PARAMETERS;
-            initialize();
+            if (keyPairPool == null) {
+                initialize();
+            } else {
+                initialize(keyPairPool.take());
+            }
         }
 
         _sessionIVLen = sessionIVLen;
@@ -118,7 +137,13 @@ public class DHSession {
         KeyPairGenerator kpairGen =
               KeyPairGenerator.getInstance(DH_ALGORITHM_NAME, "BC");
         kpairGen.initialize(_dhParameterSpec);
-        _localDHKeyPair = kpairGen.generateKeyPair();
+        initialize(kpairGen.generateKeyPair());
+    }
+
+    private void initialize(KeyPair keyPair)
+          throws NoSuchAlgorithmException, InvalidKeyException,
+          NoSuchProviderException {
+        _localDHKeyPair = keyPair;
         _keyAgreement = KeyAgreement.getInstance(DH_ALGORITHM_NAME, "BC");
         _keyAgreement.init(_localDHKeyPair.getPrivate());
     }
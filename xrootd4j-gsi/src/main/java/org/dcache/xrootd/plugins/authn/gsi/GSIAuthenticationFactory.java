@@ -30,6 +30,7 @@ public class GSIAuthenticationFactory implements AuthenticationFactory {
     private final Properties properties;
     private final CertChainValidatorProvider validatorProvider;
     private final CredentialLoader credentialLoader;
+    private final DHKeyPairPool dhKeyPairPool;
 
     public GSIAuthenticationFactory(Properties properties)
           throws FileNotFoundException {
@@ -37,6 +38,13 @@ public class GSIAuthenticationFactory implements AuthenticationFactory {
         validatorProvider = new CertChainValidatorProvider(properties);
         credentialLoader = new CredentialLoader(properties,
               validatorProvider.getCertChainValidator());
+
+        int poolSize = Integer.parseInt(
+              properties.getProperty("xrootd.gsi.dh.pool.size", "64"));
+        int poolThreads = Integer.parseInt(
+              properties.getProperty("xrootd.gsi.dh.pool.threads", "1"));
+        dhKeyPairPool = poolSize > 0 && poolThreads > 0
+              ? new DHKeyPairPool(poolSize, poolThreads) : null;
     }
 
     @Override
@@ -46,6 +54,16 @@ public class GSIAuthenticationFactory implements AuthenticationFactory {
               credentialLoader,
               validatorProvider.getCertChainValidator());
         credentialManager.setProxyDelegationClient(proxyDelegationClient);
+        credentialManager.setDHKeyPairPool(dhKeyPairPool);
+        credentialManager.setValidationCache(validatorProvider.getValidationCache());
         return new GSIAuthenticationHandler(credentialManager);
     }
+
+    @Override
+    public void shutdown() {
+        credentialLoader.shutdown();
+        if (dhKeyPairPool != null) {
+            dhKeyPairPool.shutdown();
+        }
+    }
 }
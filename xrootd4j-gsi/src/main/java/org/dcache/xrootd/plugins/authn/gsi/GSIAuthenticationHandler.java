@@ -175,6 +175,15 @@ public class GSIAuthenticationHandler implements AuthenticationHandler {
         return finished;
     }
 
+    /**
+     * The handshake state is confined to this handler and the certificate
+     * chain validation and signing are CPU bound.
+     */
+    @Override
+    public boolean isOffloadable() {
+        return true;
+    }
+
     private GSIServerRequestHandler createRequestHandler(Integer clientVersion)
           throws XrootdException {
         if (clientVersion == null) {
@@ -32,6 +32,7 @@ import static org.dcache.xrootd.security.XrootdSecurityProtocol.kXGS_pxyreq;
 
 import io.netty.buffer.ByteBuf;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.EnumMap;
 import java.util.List;
@@ -296,6 +297,10 @@ public class GSIBucketUtils {
         return buckets;
     }
 
+    /**
+     * The buckets are views of the credential buffer of the request and
+     * must not be used once the request has been released.
+     */
     public static BucketData deserializeData(AuthenticationRequest request) {
         BucketData data = new BucketData();
         ByteBuf buffer = request.getCredentialBuffer();
@@ -310,8 +315,6 @@ public class GSIBucketUtils {
                   ioex);
         }
 
-        request.releaseBuffer();
-
         UnsignedIntBucket versionBucket
               = (UnsignedIntBucket) data.bucketMap.get(kXRS_version);
 
@@ -332,6 +335,10 @@ public class GSIBucketUtils {
         return data;
     }
 
+    /**
+     * The buckets are views of the data buffer of the response; the
+     * caller releases the buffer once it is done with them.
+     */
     public static BucketData deserializeData(InboundAuthenticationResponse response)
           throws XrootdException {
         BucketData data = new BucketData();
@@ -347,7 +354,7 @@ public class GSIBucketUtils {
              */
             if (data.step != kXGS_pxyreq) {
                 RawBucket mainBucket = (RawBucket) data.bucketMap.remove(kXRS_main);
-                ByteBuf mainBuffer = wrappedBuffer(mainBucket.getContent());
+                ByteBuf mainBuffer = mainBucket.getContentBuffer();
                 /*
                  *   protocol and server step are repeated inside this bucket;
                  *   skip.
@@ -359,8 +366,6 @@ public class GSIBucketUtils {
             throw new XrootdException(kXR_IOError, e.toString());
         }
 
-        response.releaseBuffer();
-
         if (LOGGER.isTraceEnabled()) {
             LOGGER.trace(describe("//           Inbound Authentication Response",
                   b -> dumpBuckets(b,
@@ -483,9 +488,40 @@ public class GSIBucketUtils {
         return 12 + container.getSize();
     }
 
+    /**
+     * @return the length of protocol, step, the buckets and the
+     *         terminal marker when serialized.
+     */
+    public static int getSerializedLength(Collection<GSIBucket> buckets) {
+        int length = 12;
+        for (GSIBucket bucket : buckets) {
+            length += bucket.getSize();
+        }
+        return length;
+    }
+
+    /**
+     * Serializes protocol, step and the buckets into an array of exactly
+     * the required length, without intermediate buffers.
+     *
+     * @param buckets null buckets are skipped
+     */
+    public static byte[] serialize(String protocol, int step, GSIBucket... buckets) {
+        List<GSIBucket> list = new ArrayList<>(buckets.length);
+        for (GSIBucket bucket : buckets) {
+            if (bucket != null) {
+                list.add(bucket);
+            }
+        }
+        byte[] bytes = new byte[getSerializedLength(list)];
+        writeBytes(wrappedBuffer(bytes).writerIndex(0), protocol, step, list);
+        return bytes;
+    }
+
     private static void writeBytes(ByteBuf buffer, String protocol,
           int step,
           List<GSIBucket> buckets) {
+        buffer.ensureWritable(getSerializedLength(buckets));
         writeZeroPad(protocol, buffer, 4);
         buffer.writeInt(step);
         for (GSIBucket bucket : buckets) {
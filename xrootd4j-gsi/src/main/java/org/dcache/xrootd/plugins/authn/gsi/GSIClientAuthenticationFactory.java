@@ -48,6 +48,11 @@ public class GSIClientAuthenticationFactory implements ChannelHandlerFactory {
         return new GSIClientAuthenticationHandler(credentialManager);
     }
 
+    @Override
+    public void shutdown() {
+        credentialLoader.shutdown();
+    }
+
     @Override
     public String getDescription() {
         return "GSI authentication client plugin for third-party transfers";
@@ -150,49 +150,59 @@ public class GSIClientAuthenticationHandler extends AbstractClientAuthnHandler {
         OutboundAuthenticationRequest request;
         InboundAuthenticationResponse response = client.getAuthResponse();
 
-        if (response != null) {
-            BucketData data = deserializeData(response);
-            serverStep = data.getStep();
-            if (!data.getProtocol().equals(PROTOCOL)) {
-                throw new XrootdException(kGSErrBadProtocol, "server replied "
-                      + "with incorrect protocol: " +
-                      data.getProtocol());
+        /*
+         *  The deserialized buckets are views of the response buffer,
+         *  which is released only once the request has been written.
+         */
+        try {
+            if (response != null) {
+                BucketData data = deserializeData(response);
+                serverStep = data.getStep();
+                if (!data.getProtocol().equals(PROTOCOL)) {
+                    throw new XrootdException(kGSErrBadProtocol, "server replied "
+                          + "with incorrect protocol: " +
+                          data.getProtocol());
+                }
+
+                switch (serverStep) {
+                    case kXGS_cert:
+                        request = requestHandler.handleCertStep(response, data, ctx);
+                        LOGGER.debug("sendAuthenticationRequest to {}, channel {}, "
+                                    + "stream {}, step: cert.",
+                              tpcInfo.getSrc(), id, streamId);
+                        break;
+                    case kXGS_pxyreq:
+                        /*
+                         *  This is a TPC client only.  It tells the server
+                         *  it does not sign proxy requests.  If this
+                         *  step is received here, we should reject it.
+                         *  Fall through to exception.
+                         */
+                    default:
+                        throw new XrootdException(kGSErrBadOpt,
+                              "client does not handle requested " +
+                                    "authentication step "
+                                    + getServerStep(serverStep)
+                                    + ".");
+                }
+            } else {
+                request = requestHandler.handleCertReqStep();
+                LOGGER.debug("sendAuthenticationRequest to {}, channel {}, "
+                            + "stream {}, step: cert request.",
+                      tpcInfo.getSrc(), id, streamId);
             }
 
-            switch (serverStep) {
-                case kXGS_cert:
-                    request = requestHandler.handleCertStep(response, data, ctx);
-                    LOGGER.debug("sendAuthenticationRequest to {}, channel {}, "
-                                + "stream {}, step: cert.",
-                          tpcInfo.getSrc(), id, streamId);
-                    break;
-                case kXGS_pxyreq:
-                    /*
-                     *  This is a TPC client only.  It tells the server
-                     *  it does not sign proxy requests.  If this
-                     *  step is received here, we should reject it.
-                     *  Fall through to exception.
-                     */
-                default:
-                    throw new XrootdException(kGSErrBadOpt,
-                          "client does not handle requested " +
-                                "authentication step "
-                                + getServerStep(serverStep)
-                                + ".");
+            requestHandler.updateLastRequest();
+            client.setExpectedResponse(kXR_auth);
+            client.setAuthResponse(null);
+            ctx.writeAndFlush(request, ctx.newPromise())
+                  .addListener(FIRE_EXCEPTION_ON_FAILURE);
+            client.startTimer(ctx);
+        } finally {
+            if (response != null) {
+                response.releaseBuffer();
             }
-        } else {
-            request = requestHandler.handleCertReqStep();
-            LOGGER.debug("sendAuthenticationRequest to {}, channel {}, "
-                        + "stream {}, step: cert request.",
-                  tpcInfo.getSrc(), id, streamId);
         }
-
-        requestHandler.updateLastRequest();
-        client.setExpectedResponse(kXR_auth);
-        client.setAuthResponse(null);
-        ctx.writeAndFlush(request, ctx.newPromise())
-              .addListener(FIRE_EXCEPTION_ON_FAILURE);
-        client.startTimer(ctx);
     }
 
     private GSIClientRequestHandler createRequestHandler()
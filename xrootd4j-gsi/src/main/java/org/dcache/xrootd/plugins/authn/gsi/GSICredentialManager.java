@@ -19,6 +19,7 @@ package org.dcache.xrootd.plugins.authn.gsi;
 import static org.dcache.xrootd.security.XrootdSecurityProtocol.kGSErrError;
 
 import com.google.common.base.Joiner;
+import eu.emi.security.authn.x509.ValidationResult;
 import eu.emi.security.authn.x509.X509CertChainValidator;
 import eu.emi.security.authn.x509.X509Credential;
 import eu.emi.security.authn.x509.helpers.ssl.HostnameToCertificateChecker;
@@ -122,6 +123,13 @@ public class GSICredentialManager {
 
     private String issuerHashes;
 
+    /*
+     *  Server side DH key pairs, shared by all handlers of the factory
+     */
+    private DHKeyPairPool dhKeyPairPool;
+
+    private CertChainValidationCache validationCache;
+
     /*
      *  For delegated proxy request
      */
@@ -296,6 +304,29 @@ public class GSICredentialManager {
         this.proxyDelegationClient = (X509ProxyDelegationClient) proxyDelegationClient;
     }
 
+    /**
+     * Validates the chain, reusing a previous successful validation of
+     * the same chain if possible.
+     */
+    public ValidationResult validateCertChain(X509Certificate[] chain) {
+        if (validationCache != null) {
+            return validationCache.validate(chain);
+        }
+        return certChainValidator.validate(chain);
+    }
+
+    public void setValidationCache(CertChainValidationCache validationCache) {
+        this.validationCache = validationCache;
+    }
+
+    public DHKeyPairPool getDHKeyPairPool() {
+        return dhKeyPairPool;
+    }
+
+    public void setDHKeyPairPool(DHKeyPairPool dhKeyPairPool) {
+        this.dhKeyPairPool = dhKeyPairPool;
+    }
+
     public void setIssuerHashesFromCredential(X509Credential credential) {
         issuerHashes = generateIssuerHashes(credential);
     }
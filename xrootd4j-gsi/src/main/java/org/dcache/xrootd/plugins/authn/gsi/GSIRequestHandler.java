@@ -39,8 +39,7 @@ import static org.dcache.xrootd.security.XrootdSecurityProtocol.kXGS_pxyreq;
 
 import eu.emi.security.authn.x509.impl.CertificateUtils;
 import io.netty.buffer.ByteBuf;
-import io.netty.buffer.PooledByteBufAllocator;
-import java.io.ByteArrayInputStream;
+import io.netty.buffer.ByteBufInputStream;
 import java.io.IOException;
 import java.security.GeneralSecurityException;
 import java.security.InvalidAlgorithmParameterException;
@@ -265,10 +264,8 @@ public abstract class GSIRequestHandler {
             throw new XrootdException(kGSErrDecodeBuffer, "No kXRS_x509 bucket.");
         }
 
-        String clientX509 = ((StringBucket) clientX509Bucket).getContent();
-
-        ByteArrayInputStream stream
-              = new ByteArrayInputStream(clientX509.getBytes(US_ASCII));
+        ByteBufInputStream stream = new ByteBufInputStream(
+              ((StringBucket) clientX509Bucket).getContentBuffer());
         X509Certificate[] proxyCertChain =
               CertificateUtils.loadCertificateChain(stream, PEM);
         if (proxyCertChain.length == 0) {
@@ -423,7 +420,7 @@ public abstract class GSIRequestHandler {
                     + "previous key to match? {}.",
               toMatch.isPresent());
         X509Certificate[] proxyCertChain = extractChain(nestedBuckets);
-        credentialManager.getCertChainValidator().validate(proxyCertChain);
+        credentialManager.validateCertChain(proxyCertChain);
         X509Certificate certificate = proxyCertChain[0];
         if (toMatch.isPresent() &&
               !toMatch.get().equals(certificate.getPublicKey())) {
@@ -557,21 +554,7 @@ public abstract class GSIRequestHandler {
          *  Construct the main bucket with the 8 byte protocol-step header,
          *  but without bucket type header.
          */
-        ByteBuf buffer = PooledByteBufAllocator.DEFAULT.buffer();
-
-        byte[] bytes = PROTOCOL.getBytes(US_ASCII);
-        buffer.writeBytes(bytes);
-        buffer.writeZero(4 - bytes.length);
-        buffer.writeInt(step);
-        for (GSIBucket bucket : buckets) {
-            if (bucket != null) {
-                bucket.serialize(buffer);
-            }
-        }
-        buffer.writeInt(BucketType.kXRS_none.getCode());
-        byte[] raw = new byte[buffer.readableBytes()];
-        buffer.getBytes(0, raw);
-        buffer.release();
+        byte[] raw = GSIBucketUtils.serialize(PROTOCOL, step, buckets);
         byte[] encrypted = dhSession.encrypt(SYNC_CIPHER_MODE_PADDED,
               SYNC_CIPHER_NAME,
               SYNC_CIPHER_BLOCKSIZE,
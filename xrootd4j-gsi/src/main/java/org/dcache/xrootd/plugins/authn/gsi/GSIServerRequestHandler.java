@@ -102,7 +102,8 @@ public abstract class GSIServerRequestHandler extends GSIRequestHandler {
               : SESSION_IV_LEN;
 
         try {
-            dhSession = new DHSession(true, sessionIVLen);
+            dhSession = new DHSession(true, sessionIVLen,
+                  credentialManager.getDHKeyPairPool());
         } catch (GeneralSecurityException gssex) {
             LOGGER.error("Error setting up cryptographic classes: {}",
                   gssex.getMessage());
@@ -110,14 +110,11 @@ public class NestedBucketBuffer extends GSIBucket {
 
         super.serialize(out);
 
-        //
-        // The nesting is a bit tricky. First, we skip 4 bytes (here we store later the
-        // size of the nested serialized bucket buffer, which we don't know yet). Then, we
-        // serialize the nested bucket buffer and store it in the bytebuffer. Then we jump
-        // back to the previously marked position and store the size of the nested bucket buffer.
-        //
-        int start = out.writerIndex();
-        out.writeInt(0); // placeholder value
+        /*
+         *  The nested buckets know their sizes, so the length of this
+         *  buffer can be written before its content.
+         */
+        out.writeInt(getSize() - 8);
 
         writeZeroPad(_protocol, out, 4);
 
@@ -128,8 +125,6 @@ public class NestedBucketBuffer extends GSIBucket {
         }
 
         out.writeInt(BucketType.kXRS_none.getCode());
-
-        out.setInt(start, out.writerIndex() - start - 4);
     }
 
     @Override
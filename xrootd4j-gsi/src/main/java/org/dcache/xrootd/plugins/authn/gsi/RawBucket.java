@@ -16,7 +16,10 @@
  */
 package org.dcache.xrootd.plugins.authn.gsi;
 
+import static io.netty.buffer.Unpooled.wrappedBuffer;
+
 import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
 import org.dcache.xrootd.security.XrootdSecurityProtocol.BucketType;
 
 /**
@@ -24,6 +27,9 @@ import org.dcache.xrootd.security.XrootdSecurityProtocol.BucketType;
  * data, but a raw-bucket can also represent encryptet buckets of another
  * type.
  *
+ * A deserialized raw bucket is a view of the buffer it was read from and
+ * is only valid as long as that buffer has not been released.
+ *
  * @see GSIBucket
  *
  * @author radicke
@@ -32,11 +38,19 @@ import org.dcache.xrootd.security.XrootdSecurityProtocol.BucketType;
  */
 public class RawBucket extends GSIBucket {
 
-    private final byte[] _data;
+    private final ByteBuf _data;
+    private final byte[] _array;
 
     public RawBucket(BucketType type, byte[] data) {
+        super(type);
+        _data = wrappedBuffer(data);
+        _array = data;
+    }
+
+    public RawBucket(BucketType type, ByteBuf data) {
         super(type);
         _data = data;
+        _array = null;
     }
 
     /**
@@ -49,38 +63,54 @@ public class RawBucket extends GSIBucket {
         builder.append("//\n");
         builder.append("//                  RAW BYTE CONTENTS                  //\n");
         builder.append("//\n");
-        GSIBucketUtils.dumpBytes(builder, _data);
+        GSIBucketUtils.dumpBytes(builder, getContent());
         return number;
     }
 
+    /**
+     * @return the content as an array; this is a copy unless the bucket
+     *         was constructed from an array.
+     */
     public byte[] getContent() {
-        return _data;
+        /*
+         *  Not ByteBufUtil.getBytes(..., false): for a slice spanning its
+         *  whole capacity, it returns the backing array of the parent.
+         */
+        if (_array != null) {
+            return _array;
+        }
+        return ByteBufUtil.getBytes(_data);
+    }
+
+    /**
+     * @return a view of the content, sharing its bytes with this bucket.
+     */
+    public ByteBuf getContentBuffer() {
+        return _data.slice();
     }
 
     public static RawBucket deserialize(BucketType type, ByteBuf buffer) {
 
-        byte[] tmp = new byte[buffer.readableBytes()];
-        buffer.getBytes(0, tmp);
-        return new RawBucket(type, tmp);
+        return new RawBucket(type, buffer.slice());
     }
 
     @Override
     public void serialize(ByteBuf out) {
         super.serialize(out);
-        out.writeInt(_data.length);
-        out.writeBytes(_data);
+        out.writeInt(_data.readableBytes());
+        out.writeBytes(_data, _data.readerIndex(), _data.readableBytes());
     }
 
     @Override
     public int getSize() {
-        return super.getSize() + 4 + _data.length;
+        return super.getSize() + 4 + _data.readableBytes();
     }
 
     @Override
     public String toString() {
         StringBuilder sb = new StringBuilder(super.toString() + " hex dump:");
 
-        for (byte b : _data) {
+        for (byte b : getContent()) {
             sb.append(" ").append(Integer.toHexString(b));
         }
 
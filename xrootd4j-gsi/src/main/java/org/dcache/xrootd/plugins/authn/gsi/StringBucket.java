@@ -16,14 +16,20 @@
  */
 package org.dcache.xrootd.plugins.authn.gsi;
 
+import static io.netty.buffer.Unpooled.wrappedBuffer;
 import static java.nio.charset.StandardCharsets.US_ASCII;
 
 import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
 import org.dcache.xrootd.security.XrootdSecurityProtocol.BucketType;
 
 /**
  * A bucket containing a header plus a String.
  *
+ * A deserialized string bucket is a view of the buffer it was read from;
+ * the String is only decoded when asked for.  The view is valid as long
+ * as that buffer has not been released.
+ *
  * @see GSIBucket
  *
  * @author radicke
@@ -32,49 +38,72 @@ import org.dcache.xrootd.security.XrootdSecurityProtocol.BucketType;
  */
 public class StringBucket extends GSIBucket {
 
-    private final String _data;
+    private final ByteBuf _bytes;
+    private String _data;
 
     public StringBucket(BucketType type, String data) {
         super(type);
+        _bytes = null;
         _data = data;
     }
 
+    private StringBucket(BucketType type, ByteBuf bytes) {
+        super(type);
+        _bytes = bytes;
+    }
+
     @Override
     public int dump(StringBuilder builder, String step, int number) {
         super.dump(builder, step, number);
         builder.append("//\n");
         builder.append("//                   STRING CONTENTS                   //\n");
         builder.append("//\n");
-        GSIBucketUtils.dumpBytes(builder, _data.getBytes());
+        GSIBucketUtils.dumpBytes(builder, _bytes == null ?
+              _data.getBytes(US_ASCII) : ByteBufUtil.getBytes(_bytes));
         return number;
     }
 
     public String getContent() {
+        if (_data == null) {
+            _data = _bytes.toString(US_ASCII);
+        }
         return _data;
     }
 
+    /**
+     * @return a view of the ASCII encoded content; for deserialized
+     *         buckets, this shares its bytes with the received buffer.
+     */
+    public ByteBuf getContentBuffer() {
+        return _bytes == null ? wrappedBuffer(_data.getBytes(US_ASCII)) : _bytes.slice();
+    }
+
     public static StringBucket deserialize(BucketType type, ByteBuf buffer) {
 
-        String s = buffer.toString(US_ASCII);
-        return new StringBucket(type, s);
+        return new StringBucket(type, buffer.slice());
     }
 
     @Override
     public void serialize(ByteBuf out) {
         super.serialize(out);
-        byte[] bytes = _data.getBytes(US_ASCII);
-        out.writeInt(bytes.length);
-        out.writeBytes(bytes);
+        if (_bytes == null) {
+            out.writeInt(_data.length());
+            out.writeCharSequence(_data, US_ASCII);
+        } else {
+            out.writeInt(_bytes.readableBytes());
+            out.writeBytes(_bytes, _bytes.readerIndex(), _bytes.readableBytes());
+        }
     }
 
     @Override
     public int getSize() {
-        return super.getSize() + 4 + _data.length();
+        return super.getSize() + 4
+              + (_bytes == null ? _data.length() : _bytes.readableBytes());
     }
 
     @Override
     public String toString() {
-        return super.toString() + _data;
+        return super.toString() + getContent();
     }
 
 }
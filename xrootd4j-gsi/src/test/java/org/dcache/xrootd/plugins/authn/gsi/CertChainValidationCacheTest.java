@@ -0,0 +1,188 @@
+/**
+ * Copyright (C) 2011-2026 dCache.org <support@dcache.org>
+ *
+ * This file is part of xrootd4j.
+ *
+ * xrootd4j is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * xrootd4j is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with xrootd4j.  If
+ * not, see http://www.gnu.org/licenses/.
+ */
+package org.dcache.xrootd.plugins.authn.gsi;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import eu.emi.security.authn.x509.StoreUpdateListener;
+import eu.emi.security.authn.x509.StoreUpdateListener.Severity;
+import eu.emi.security.authn.x509.ValidationResult;
+import eu.emi.security.authn.x509.X509CertChainValidator;
+import java.security.cert.X509Certificate;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+public class CertChainValidationCacheTest {
+
+    private static final long LIFETIME = TimeUnit.MINUTES.toMillis(10);
+
+    private static final AtomicInteger SERIAL = new AtomicInteger();
+
+    private X509CertChainValidator validator;
+    private CertChainValidationCache cache;
+    private long now = TimeUnit.DAYS.toMillis(1);
+    private long nextRefresh = Long.MAX_VALUE;
+
+    @Before
+    public void setUp() {
+        validator = mock(X509CertChainValidator.class);
+        when(validator.validate(any(X509Certificate[].class)))
+              .thenReturn(new ValidationResult(true));
+        cache = new CertChainValidationCache(validator, 10, LIFETIME,
+              TimeUnit.MILLISECONDS, () -> nextRefresh, () -> now);
+    }
+
+    @Test
+    public void shouldReuseSuccessfulValidation() throws Exception {
+        X509Certificate[] chain = chain(TimeUnit.DAYS.toMillis(1));
+
+        cache.validate(chain);
+        ValidationResult result = cache.validate(chain);
+
+        assertThat(result.isValid(), is(true));
+        verify(validator, times(1)).validate(chain);
+    }
+
+    @Test
+    public void shouldNotCacheFailedValidation() throws Exception {
+        when(validator.validate(any(X509Certificate[].class)))
+              .thenReturn(new ValidationResult(false));
+        X509Certificate[] chain = chain(TimeUnit.DAYS.toMillis(1));
+
+        cache.validate(chain);
+        ValidationResult result = cache.validate(chain);
+
+        assertThat(result.isValid(), is(false));
+        assertThat(cache.size(), is(equalTo(0L)));
+        verify(validator, times(2)).validate(chain);
+    }
+
+    @Test
+    public void shouldNotReuseValidationOfOtherChain() throws Exception {
+        cache.validate(chain(TimeUnit.DAYS.toMillis(1)));
+        cache.validate(chain(TimeUnit.DAYS.toMillis(1)));
+
+        verify(validator, times(2)).validate(any(X509Certificate[].class));
+    }
+
+    @Test
+    public void shouldExpireAtEarliestNotAfterOfChain() throws Exception {
+        X509Certificate[] chain = chain(TimeUnit.MINUTES.toMillis(5),
+              TimeUnit.MINUTES.toMillis(2), TimeUnit.MINUTES.toMillis(8));
+
+        cache.validate(chain);
+        whenTimePasses(TimeUnit.MINUTES.toMillis(2) - 1);
+        cache.validate(chain);
+
+        verify(validator, times(1)).validate(chain);
+
+        whenTimePasses(1);
+        cache.validate(chain);
+
+        verify(validator, times(2)).validate(chain);
+    }
+
+    @Test
+    public void shouldExpireAtNextTrustAnchorRefresh() throws Exception {
+        nextRefresh = now + TimeUnit.MINUTES.toMillis(3);
+        X509Certificate[] chain = chain(TimeUnit.DAYS.toMillis(1));
+
+        cache.validate(chain);
+        whenTimePasses(TimeUnit.MINUTES.toMillis(3) - 1);
+        cache.validate(chain);
+
+        verify(validator, times(1)).validate(chain);
+
+        whenTimePasses(1);
+        cache.validate(chain);
+
+        verify(validator, times(2)).validate(chain);
+    }
+
+    @Test
+    public void shouldExpireAfterLifetime() throws Exception {
+        X509Certificate[] chain = chain(TimeUnit.DAYS.toMillis(1));
+
+        cache.validate(chain);
+        whenTimePasses(LIFETIME - 1);
+        cache.validate(chain);
+
+        verify(validator, times(1)).validate(chain);
+
+        whenTimePasses(1);
+        cache.validate(chain);
+
+        verify(validator, times(2)).validate(chain);
+    }
+
+    @Test
+    public void shouldNotCacheExpiredChain() throws Exception {
+        X509Certificate[] chain = chain(TimeUnit.DAYS.toMillis(1), 0);
+
+        cache.validate(chain);
+
+        assertThat(cache.size(), is(equalTo(0L)));
+    }
+
+    @Test
+    public void shouldFlushWhenTrustAnchorsAreReloaded() throws Exception {
+        ArgumentCaptor<StoreUpdateListener> listener
+              = ArgumentCaptor.forClass(StoreUpdateListener.class);
+        verify(validator).addUpdateListener(listener.capture());
+        X509Certificate[] chain = chain(TimeUnit.DAYS.toMillis(1));
+        cache.validate(chain);
+
+        listener.getValue().loadingNotification("/etc/grid-security/certificates",
+              StoreUpdateListener.CA_CERT, Severity.NOTIFICATION, null);
+
+        assertThat(cache.size(), is(equalTo(0L)));
+
+        cache.validate(chain);
+
+        verify(validator, times(2)).validate(chain);
+    }
+
+    private void whenTimePasses(long millis) {
+        now += millis;
+    }
+
+    /**
+     * @param lifetimes of the certificates in the chain, from now
+     */
+    private X509Certificate[] chain(long... lifetimes) throws Exception {
+        X509Certificate[] chain = new X509Certificate[lifetimes.length];
+        for (int i = 0; i < lifetimes.length; i++) {
+            X509Certificate certificate = mock(X509Certificate.class);
+            when(certificate.getEncoded())
+                  .thenReturn(Integer.toString(SERIAL.incrementAndGet()).getBytes());
+            when(certificate.getNotAfter()).thenReturn(new Date(now + lifetimes[i]));
+            chain[i] = certificate;
+        }
+        return chain;
+    }
+}
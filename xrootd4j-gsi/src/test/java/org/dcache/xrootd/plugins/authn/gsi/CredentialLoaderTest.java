@@ -0,0 +1,182 @@
+/**
+ * Copyright (C) 2011-2026 dCache.org <support@dcache.org>
+ *
+ * This file is part of xrootd4j.
+ *
+ * xrootd4j is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * xrootd4j is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with xrootd4j.  If
+ * not, see http://www.gnu.org/licenses/.
+ */
+package org.dcache.xrootd.plugins.authn.gsi;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.mock;
+
+import eu.emi.security.authn.x509.X509CertChainValidator;
+import eu.emi.security.authn.x509.X509Credential;
+import eu.emi.security.authn.x509.impl.PEMCredential;
+import java.io.IOException;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntSupplier;
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ *  PEM keys cannot be read by canl with the bcprov version of this build,
+ *  so reading the credentials is stubbed.
+ */
+public class CredentialLoaderTest {
+
+    private static final long REFRESH = 50;
+
+    private final List<PEMCredential> hostCredentials = new CopyOnWriteArrayList<>();
+    private final List<X509Credential> proxies = new CopyOnWriteArrayList<>();
+
+    private CredentialLoader loader;
+    private volatile boolean failing;
+
+    @After
+    public void tearDown() {
+        if (loader != null) {
+            loader.shutdown();
+        }
+    }
+
+    @Test
+    public void shouldReloadHostCredentialOnEveryCallWithZeroInterval() {
+        givenLoader(0);
+
+        loader.getHostCredential();
+        loader.getHostCredential();
+        PEMCredential credential = loader.getHostCredential();
+
+        assertThat(hostCredentials.size(), is(equalTo(3)));
+        assertThat(credential, is(sameInstance(hostCredentials.get(2))));
+    }
+
+    @Test
+    public void shouldReloadProxyOnEveryCallWithZeroInterval() {
+        givenLoader(0);
+
+        loader.getProxy();
+        loader.getProxy();
+        X509Credential credential = loader.getProxy();
+
+        assertThat(proxies.size(), is(equalTo(3)));
+        assertThat(credential, is(sameInstance(proxies.get(2))));
+    }
+
+    @Test
+    public void shouldKeepPreviousCredentialIfReloadFails() {
+        givenLoader(0);
+        PEMCredential credential = loader.getHostCredential();
+
+        failing = true;
+
+        assertThat(loader.getHostCredential(), is(sameInstance(credential)));
+    }
+
+    @Test
+    public void shouldLoadOnceWithRefreshInterval() {
+        givenLoader(TimeUnit.MINUTES.toMillis(10));
+
+        PEMCredential credential = loader.getHostCredential();
+
+        assertThat(loader.getHostCredential(), is(sameInstance(credential)));
+        assertThat(hostCredentials.size(), is(equalTo(1)));
+    }
+
+    @Test
+    public void shouldRefreshHostCredentialInBackground() throws Exception {
+        givenLoader(REFRESH);
+
+        PEMCredential credential = loader.getHostCredential();
+
+        whenRefreshed(hostCredentials::size);
+
+        assertThat(loader.getHostCredential(), is(not(sameInstance(credential))));
+    }
+
+    @Test
+    public void shouldRefreshProxyInBackground() throws Exception {
+        givenLoader(REFRESH);
+
+        X509Credential credential = loader.getProxy();
+
+        whenRefreshed(proxies::size);
+
+        assertThat(loader.getProxy(), is(not(sameInstance(credential))));
+    }
+
+    @Test
+    public void shouldStopRefreshingOnShutdown() throws Exception {
+        givenLoader(REFRESH);
+        loader.getHostCredential();
+        whenRefreshed(hostCredentials::size);
+
+        loader.shutdown();
+        Thread.sleep(REFRESH);
+        int loaded = hostCredentials.size();
+        Thread.sleep(4 * REFRESH);
+
+        assertThat(hostCredentials.size(), is(equalTo(loaded)));
+    }
+
+    private void givenLoader(long refresh) {
+        Properties properties = new Properties();
+        properties.setProperty("xrootd.gsi.hostcert.refresh", String.valueOf(refresh));
+        properties.setProperty("xrootd.gsi.hostcert.refresh.unit", "MILLISECONDS");
+        properties.setProperty("xrootd.gsi.tpc.cred.refresh", String.valueOf(refresh));
+        properties.setProperty("xrootd.gsi.tpc.cred.refresh.unit", "MILLISECONDS");
+        loader = new CredentialLoader(properties, mock(X509CertChainValidator.class)) {
+            @Override
+            PEMCredential readHostCredential() throws IOException {
+                if (failing) {
+                    throw new IOException("unreadable");
+                }
+                PEMCredential credential = mock(PEMCredential.class);
+                hostCredentials.add(credential);
+                return credential;
+            }
+
+            @Override
+            X509Credential readProxy() throws IOException {
+                if (failing) {
+                    throw new IOException("unreadable");
+                }
+                X509Credential credential = mock(X509Credential.class);
+                proxies.add(credential);
+                return credential;
+            }
+        };
+    }
+
+    /**
+     * Waits for at least two refreshes after the initial load.
+     */
+    private static void whenRefreshed(IntSupplier loaded)
+          throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(10);
+        while (loaded.getAsInt() < 3) {
+            if (System.currentTimeMillis() > deadline) {
+                fail("credential was not refreshed");
+            }
+            Thread.sleep(10);
+        }
+    }
+}
@@ -0,0 +1,105 @@
+/**
+ * Copyright (C) 2011-2026 dCache.org <support@dcache.org>
+ *
+ * This file is part of xrootd4j.
+ *
+ * xrootd4j is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * xrootd4j is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with xrootd4j.  If
+ * not, see http://www.gnu.org/licenses/.
+ */
+package org.dcache.xrootd.plugins.authn.gsi;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+import java.security.GeneralSecurityException;
+import java.security.KeyPair;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ *  Tests refilling and shutdown of the pool without generating real keys.
+ */
+public class DHKeyPairPoolTest {
+
+    private final AtomicInteger generated = new AtomicInteger();
+    private DHKeyPairPool pool;
+
+    @After
+    public void tearDown() {
+        if (pool != null) {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void testPoolIsFilledToDepth() throws Exception {
+        pool = new DHKeyPairPool(3, 2, this::generate, 1);
+        waitFor(() -> pool.available() == 3);
+        assertThat(pool.available(), is(3));
+    }
+
+    @Test
+    public void testTakeReturnsPooledPair() throws Exception {
+        KeyPair pair = new KeyPair(null, null);
+        pool = new DHKeyPairPool(1, 1, () -> pair, 1);
+        waitFor(() -> pool.available() == 1);
+        assertThat(pool.take(), is(sameInstance(pair)));
+    }
+
+    @Test
+    public void testRefillContinuesAfterFailures() throws Exception {
+        pool = new DHKeyPairPool(2, 1, () -> {
+            if (generated.incrementAndGet() <= 3) {
+                throw new GeneralSecurityException("transient");
+            }
+            return new KeyPair(null, null);
+        }, 1);
+        waitFor(() -> pool.available() == 2);
+        assertThat(pool.available(), is(2));
+    }
+
+    @Test
+    public void testShutdownStopsThreadsWaitingForRoom() throws Exception {
+        pool = new DHKeyPairPool(1, 2, this::generate, 1);
+        waitFor(() -> pool.available() == 1 && generated.get() == 3);
+        pool.shutdown();
+        assertTrue(pool.awaitTermination(5, TimeUnit.SECONDS));
+        assertThat(pool.available(), is(1));
+    }
+
+    @Test
+    public void testShutdownStopsThreadsWaitingToRetry() throws Exception {
+        pool = new DHKeyPairPool(1, 1, () -> {
+            generated.incrementAndGet();
+            throw new GeneralSecurityException("permanent");
+        }, TimeUnit.HOURS.toMillis(1));
+        waitFor(() -> generated.get() == 1);
+        pool.shutdown();
+        assertTrue(pool.awaitTermination(5, TimeUnit.SECONDS));
+    }
+
+    private KeyPair generate() {
+        generated.incrementAndGet();
+        return new KeyPair(null, null);
+    }
+
+    private static void waitFor(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!condition.getAsBoolean() && System.nanoTime() < deadline) {
+            Thread.sleep(1);
+        }
+    }
+}
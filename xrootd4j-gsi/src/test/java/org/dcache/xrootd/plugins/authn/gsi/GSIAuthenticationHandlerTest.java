@@ -0,0 +1,408 @@
+/**
+ * Copyright (C) 2011-2026 dCache.org <support@dcache.org>
+ *
+ * This file is part of xrootd4j.
+ *
+ * xrootd4j is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * xrootd4j is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with xrootd4j.  If
+ * not, see http://www.gnu.org/licenses/.
+ */
+package org.dcache.xrootd.plugins.authn.gsi;
+
+import static org.dcache.xrootd.protocol.XrootdProtocol.kXR_error;
+import static org.dcache.xrootd.protocol.XrootdProtocol.kXR_ok;
+import static org.dcache.xrootd.security.XrootdSecurityProtocol.AUTHN_PROTOCOL_PREFIX;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.notNullValue;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import com.google.common.collect.ImmutableMap;
+import eu.emi.security.authn.x509.ValidationResult;
+import eu.emi.security.authn.x509.X509CertChainValidator;
+import eu.emi.security.authn.x509.impl.PEMCredential;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.channel.ChannelHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.util.ReferenceCountUtil;
+import io.netty.util.ResourceLeakDetector;
+import java.io.File;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.security.KeyPair;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import org.dcache.xrootd.core.XrootdAuthenticationHandler;
+import org.dcache.xrootd.core.XrootdDecoder;
+import org.dcache.xrootd.core.XrootdEncoder;
+import org.dcache.xrootd.core.XrootdSessionHandler;
+import org.dcache.xrootd.plugins.AuthenticationFactory;
+import org.dcache.xrootd.plugins.ProxyDelegationClient;
+import org.dcache.xrootd.protocol.messages.AuthenticationRequest;
+import org.dcache.xrootd.security.SecurityInfo;
+import org.dcache.xrootd.security.SigningPolicy;
+import org.dcache.xrootd.security.TLSSessionInfo;
+import org.dcache.xrootd.tpc.TpcDelayedSyncWriteHandler;
+import org.dcache.xrootd.tpc.XrootdTpcClient;
+import org.dcache.xrootd.tpc.XrootdTpcInfo;
+import org.dcache.xrootd.tpc.core.XrootdClientDecoder;
+import org.dcache.xrootd.tpc.core.XrootdClientEncoder;
+import org.dcache.xrootd.tpc.protocol.messages.InboundAuthenticationResponse;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ *  Runs certreq and cert steps between the TPC client handler and the
+ *  server handler over pooled buffers, checking that the requests, whose
+ *  buckets are views of the received frames, are released after each
+ *  step and are not used once released.
+ */
+public class GSIAuthenticationHandlerTest {
+
+    private static final InetSocketAddress ADDRESS
+          = new InetSocketAddress("localhost", 1094);
+
+    private static ResourceLeakDetector.Level leakDetectionLevel;
+    private static TestCredentials credentials;
+    private static KeyPair hostKeyPair;
+    private static X509Certificate hostCertificate;
+    private static KeyPair userKeyPair;
+    private static X509Certificate userCertificate;
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    private final List<ByteBuf> frames = new ArrayList<>();
+    private final List<AuthenticationRequest> requests = new ArrayList<>();
+    private final List<InboundAuthenticationResponse> responses = new ArrayList<>();
+    private final List<Runnable> cryptoTasks = new ArrayList<>();
+
+    private GSICredentialManager serverCredentialManager;
+    private GSICredentialManager clientCredentialManager;
+    private GSIAuthenticationHandler serverHandler;
+    private GSIClientAuthenticationHandler clientHandler;
+    private EmbeddedChannel serverChannel;
+    private EmbeddedChannel clientChannel;
+
+    @BeforeClass
+    public static void setUpClass() throws Exception {
+        leakDetectionLevel = ResourceLeakDetector.getLevel();
+        ResourceLeakDetector.setLevel(ResourceLeakDetector.Level.PARANOID);
+        credentials = new TestCredentials();
+        hostKeyPair = credentials.generateKeyPair();
+        hostCertificate = credentials.issue("CN=localhost, O=dCache.org",
+              hostKeyPair.getPublic(), TimeUnit.DAYS.toMillis(1));
+        userKeyPair = credentials.generateKeyPair();
+        userCertificate = credentials.issue("CN=Test User, O=dCache.org",
+              userKeyPair.getPublic(), TimeUnit.DAYS.toMillis(1));
+    }
+
+    @AfterClass
+    public static void tearDownClass() {
+        ResourceLeakDetector.setLevel(leakDetectionLevel);
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        /*
+         *  canl cannot read PEM keys nor build certificate paths with
+         *  the bcprov version of this build, so the host credential is
+         *  not loaded from disk and chains are not really validated.
+         */
+        X509CertChainValidator validator = mock(X509CertChainValidator.class);
+        when(validator.validate(any(X509Certificate[].class)))
+              .thenReturn(new ValidationResult(true));
+        PEMCredential hostCredential = mock(PEMCredential.class);
+        when(hostCredential.getKey()).thenReturn(hostKeyPair.getPrivate());
+        when(hostCredential.getCertificate()).thenReturn(hostCertificate);
+        when(hostCredential.getCertificateChain())
+              .thenReturn(new X509Certificate[]{hostCertificate});
+        CredentialLoader credentialLoader = mock(CredentialLoader.class);
+        when(credentialLoader.getHostCredential()).thenReturn(hostCredential);
+
+        Properties properties = new Properties();
+        File serverCaDirectory = folder.newFolder("server-certificates");
+        credentials.writeCaDirectory(serverCaDirectory);
+        properties.setProperty("xrootd.gsi.ca.path", serverCaDirectory.getPath());
+        serverCredentialManager = new GSICredentialManager(properties,
+              credentialLoader, validator);
+
+        File clientCaDirectory = folder.newFolder("client-certificates");
+        credentials.writeCaDirectory(clientCaDirectory);
+        properties.setProperty("xrootd.gsi.ca.path", clientCaDirectory.getPath());
+        clientCredentialManager = new GSICredentialManager(properties,
+              credentialLoader, validator);
+    }
+
+    @After
+    public void tearDown() {
+        if (serverChannel != null) {
+            serverChannel.finishAndReleaseAll();
+        }
+        if (clientChannel != null) {
+            clientChannel.finishAndReleaseAll();
+        }
+    }
+
+    @Test
+    public void shouldReleaseRequestsAndFramesOfCompleteExchange()
+          throws Exception {
+        givenServerChannel();
+        givenClientChannel();
+
+        InboundAuthenticationResponse response = whenAuthenticating();
+
+        assertThat(response.getStatus(), is(equalTo(kXR_ok)));
+        assertThat(serverHandler.isCompleted(), is(true));
+        assertThatSubjectHasUserCertificate();
+        assertThat(requests.size(), is(equalTo(2)));
+        assertThatAllBuffersAreReleased();
+    }
+
+    @Test
+    public void shouldReleaseRequestsAndFramesOfOffloadedExchange()
+          throws Exception {
+        givenServerChannel();
+        givenOffloadedAuthentication();
+        givenClientChannel();
+
+        InboundAuthenticationResponse response = whenAuthenticating();
+
+        assertThat(response.getStatus(), is(equalTo(kXR_ok)));
+        assertThatSubjectHasUserCertificate();
+        assertThat(requests.size(), is(equalTo(2)));
+        assertThatAllBuffersAreReleased();
+    }
+
+    @Test
+    public void shouldRetainRequestUntilOffloadedStepHasRun() throws Exception {
+        givenServerChannel();
+        givenOffloadedAuthentication();
+        givenClientChannel();
+
+        clientHandler.sendAuthenticationRequest(clientContext());
+        ByteBuf frame = clientChannel.readOutbound();
+        frames.add(frame);
+        serverChannel.writeInbound(frame);
+
+        assertThat(requests.get(0).refCnt(), is(equalTo(1)));
+
+        ByteBuf reply = whenServerCompletes();
+
+        assertThat(reply, is(notNullValue()));
+        assertThat(requests.get(0).refCnt(), is(equalTo(0)));
+        assertThatAllBuffersAreReleased();
+    }
+
+    @Test
+    public void shouldSerializeResponsesAfterRequestsAreReleased()
+          throws Exception {
+        givenServerChannelReleasingRequestsBeforeResponding();
+        givenClientChannel();
+
+        InboundAuthenticationResponse response = whenAuthenticating();
+
+        assertThat(response.getStatus(), is(equalTo(kXR_ok)));
+        assertThatSubjectHasUserCertificate();
+        assertThat(requests.size(), is(equalTo(2)));
+        assertThatAllBuffersAreReleased();
+    }
+
+    @Test
+    public void shouldReleaseRequestOfFailedStep() throws Exception {
+        for (File file : new File(folder.getRoot(), "server-certificates").listFiles()) {
+            file.delete();
+        }
+        givenServerChannel();
+        givenClientChannel();
+
+        clientHandler.sendAuthenticationRequest(clientContext());
+        ByteBuf frame = clientChannel.readOutbound();
+        frames.add(frame);
+        serverChannel.writeInbound(frame);
+        ByteBuf reply = whenServerCompletes();
+
+        assertThat(reply.getUnsignedShort(2), is(equalTo(kXR_error)));
+        assertThat(serverHandler.isCompleted(), is(false));
+        assertThat(requests.size(), is(equalTo(1)));
+        assertThatAllBuffersAreReleased();
+    }
+
+    private void assertThatAllBuffersAreReleased() {
+        for (AuthenticationRequest request : requests) {
+            assertThat(request.refCnt(), is(equalTo(0)));
+        }
+        for (InboundAuthenticationResponse response : responses) {
+            if (response.getDataBuffer() != null) {
+                assertThat(response.getDataBuffer().refCnt(), is(equalTo(0)));
+            }
+        }
+        for (ByteBuf frame : frames) {
+            assertThat(frame.refCnt(), is(equalTo(0)));
+        }
+        assertThat(serverChannel.readInbound(), is(nullValue()));
+    }
+
+    private void assertThatSubjectHasUserCertificate() {
+        Set<X509Certificate[]> chains = serverHandler.getSubject()
+              .getPublicCredentials(X509Certificate[].class);
+        assertThat(chains.size(), is(equalTo(1)));
+        assertThat(chains.iterator().next()[0], is(equalTo(userCertificate)));
+    }
+
+    private void givenServerChannel() {
+        serverHandler = new GSIAuthenticationHandler(serverCredentialManager);
+        AuthenticationFactory factory = mock(AuthenticationFactory.class);
+        when(factory.createHandler(any(ProxyDelegationClient.class)))
+              .thenReturn(serverHandler);
+        XrootdAuthenticationHandler authenticationHandler
+              = new XrootdAuthenticationHandler("gsi", factory, null);
+        authenticationHandler.setSessionHandler(mock(XrootdSessionHandler.class));
+        serverChannel = givenChannel(new XrootdDecoder(), new XrootdEncoder(),
+              new RequestRecorder(), authenticationHandler);
+    }
+
+    private void givenOffloadedAuthentication() {
+        XrootdAuthenticationHandler authenticationHandler
+              = serverChannel.pipeline().get(XrootdAuthenticationHandler.class);
+        authenticationHandler.setCryptoExecutor(cryptoTasks::add);
+    }
+
+    /**
+     * Instead of the server pipeline, which responds before releasing
+     * the request, release the request first so that any view of it
+     * held by the response fails when the response is written.
+     */
+    private void givenServerChannelReleasingRequestsBeforeResponding() {
+        serverHandler = new GSIAuthenticationHandler(serverCredentialManager);
+        serverChannel = givenChannel(new XrootdDecoder(), new XrootdEncoder(),
+              new RequestRecorder(), new ChannelInboundHandlerAdapter() {
+                  @Override
+                  public void channelRead(ChannelHandlerContext ctx, Object msg)
+                        throws Exception {
+                      AuthenticationRequest request = (AuthenticationRequest) msg;
+                      Object response;
+                      try {
+                          response = serverHandler.authenticate(request);
+                      } finally {
+                          ReferenceCountUtil.release(request);
+                      }
+                      ctx.writeAndFlush(response);
+                  }
+              });
+    }
+
+    private void givenClientChannel() throws Exception {
+        XrootdTpcInfo info = new XrootdTpcInfo(ImmutableMap.of(
+              "tpc.key", "key",
+              "tpc.src", "localhost:1094",
+              "tpc.lfn", "/path/to/file"));
+        info.setDelegatedProxy(new SerializableX509Credential(
+              new X509Certificate[]{userCertificate}, userKeyPair.getPrivate()));
+        XrootdTpcClient client = new XrootdTpcClient("user.1@client.example.org",
+              info, mock(TpcDelayedSyncWriteHandler.class),
+              mock(ScheduledExecutorService.class));
+        client.setProtocolInfo(new SecurityInfo(serverHandler.getProtocol()
+              .substring(AUTHN_PROTOCOL_PREFIX.length())));
+        client.setSigningPolicy(SigningPolicy.OFF);
+        client.setTlsSessionInfo(mock(TLSSessionInfo.class));
+
+        clientHandler = new GSIClientAuthenticationHandler(clientCredentialManager);
+        clientHandler.setClient(client);
+        clientChannel = givenChannel(new XrootdClientDecoder(client),
+              new XrootdClientEncoder(client), new ResponseRecorder(),
+              clientHandler);
+    }
+
+    private EmbeddedChannel givenChannel(ChannelHandler... handlers) {
+        EmbeddedChannel channel = new EmbeddedChannel() {
+            @Override
+            protected SocketAddress localAddress0() {
+                return ADDRESS;
+            }
+
+            @Override
+            protected SocketAddress remoteAddress0() {
+                return ADDRESS;
+            }
+        };
+        channel.config().setAllocator(PooledByteBufAllocator.DEFAULT);
+        channel.pipeline().addLast(handlers);
+        return channel;
+    }
+
+    /**
+     * Passes the frames between client and server until the client
+     * has nothing more to send.
+     *
+     * @return the last response received by the client
+     */
+    private InboundAuthenticationResponse whenAuthenticating() throws Exception {
+        clientHandler.sendAuthenticationRequest(clientContext());
+
+        for (ByteBuf frame = clientChannel.readOutbound(); frame != null;
+              frame = clientChannel.readOutbound()) {
+            frames.add(frame);
+            serverChannel.writeInbound(frame);
+            ByteBuf reply = whenServerCompletes();
+            frames.add(reply);
+            clientChannel.writeInbound(reply);
+        }
+
+        return clientChannel.readInbound();
+    }
+
+    private ByteBuf whenServerCompletes() {
+        while (!cryptoTasks.isEmpty()) {
+            cryptoTasks.remove(0).run();
+            serverChannel.runPendingTasks();
+        }
+        return serverChannel.readOutbound();
+    }
+
+    private ChannelHandlerContext clientContext() {
+        return clientChannel.pipeline().context(clientHandler);
+    }
+
+    private class RequestRecorder extends ChannelInboundHandlerAdapter {
+
+        @Override
+        public void channelRead(ChannelHandlerContext ctx, Object msg) {
+            requests.add((AuthenticationRequest) msg);
+            ctx.fireChannelRead(msg);
+        }
+    }
+
+    private class ResponseRecorder extends ChannelInboundHandlerAdapter {
+
+        @Override
+        public void channelRead(ChannelHandlerContext ctx, Object msg) {
+            responses.add((InboundAuthenticationResponse) msg);
+            ctx.fireChannelRead(msg);
+        }
+    }
+}
@@ -0,0 +1,129 @@
+/**
+ * Copyright (C) 2011-2026 dCache.org <support@dcache.org>
+ *
+ * This file is part of xrootd4j.
+ *
+ * xrootd4j is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * xrootd4j is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with xrootd4j.  If
+ * not, see http://www.gnu.org/licenses/.
+ */
+package org.dcache.xrootd.plugins.authn.gsi;
+
+import eu.emi.security.authn.x509.helpers.trust.OpensslTruststoreHelper;
+import eu.emi.security.authn.x509.impl.CertificateUtils;
+import eu.emi.security.authn.x509.impl.CertificateUtils.Encoding;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigInteger;
+import java.security.GeneralSecurityException;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.PublicKey;
+import java.security.Security;
+import java.security.cert.X509Certificate;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.security.auth.x500.X500Principal;
+import org.bouncycastle.asn1.x509.BasicConstraints;
+import org.bouncycastle.asn1.x509.Extension;
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import org.bouncycastle.x509.X509V3CertificateGenerator;
+
+/**
+ *  A test CA, issuing certificates and writing them and the CA
+ *  directory as PEM files the way a real installation has them.
+ *
+ *  Certificates are generated with the bcprov generator, as the bcpkix
+ *  version pulled in by canl does not match the bcprov version.
+ */
+@SuppressWarnings("deprecation")
+class TestCredentials {
+
+    static {
+        if (Security.getProvider(BouncyCastleProvider.PROVIDER_NAME) == null) {
+            Security.addProvider(new BouncyCastleProvider());
+        }
+    }
+
+    private static final AtomicLong SERIAL = new AtomicLong();
+
+    private final KeyPairGenerator generator;
+    private final KeyPair caKeyPair;
+    private final X509Certificate caCertificate;
+
+    TestCredentials() throws GeneralSecurityException {
+        generator = KeyPairGenerator.getInstance("RSA");
+        generator.initialize(2048);
+        caKeyPair = generator.generateKeyPair();
+        X500Principal ca = new X500Principal("CN=Test CA, O=dCache.org");
+        X509V3CertificateGenerator builder = builder(ca, ca,
+              caKeyPair.getPublic(), TimeUnit.DAYS.toMillis(1));
+        builder.addExtension(Extension.basicConstraints, true,
+              new BasicConstraints(true));
+        caCertificate = sign(builder);
+    }
+
+    KeyPair generateKeyPair() {
+        return generator.generateKeyPair();
+    }
+
+    X509Certificate getCaCertificate() {
+        return caCertificate;
+    }
+
+    X509Certificate issue(String subject, PublicKey key, long lifetime)
+          throws GeneralSecurityException {
+        return sign(builder(caCertificate.getSubjectX500Principal(),
+              new X500Principal(subject), key, lifetime));
+    }
+
+    /**
+     * Writes the CA certificate under the hash names by which either
+     * side of a GSI exchange looks it up.
+     */
+    void writeCaDirectory(File directory) throws IOException {
+        X500Principal ca = caCertificate.getSubjectX500Principal();
+        writeCertificate(new File(directory,
+              CertUtil.computeMD5Hash(ca) + ".0"), caCertificate);
+        writeCertificate(new File(directory,
+              OpensslTruststoreHelper.getOpenSSLCAHash(ca, true) + ".0"),
+              caCertificate);
+    }
+
+    static void writeCertificate(File file, X509Certificate certificate)
+          throws IOException {
+        try (OutputStream out = new FileOutputStream(file)) {
+            CertificateUtils.saveCertificate(out, certificate, Encoding.PEM);
+        }
+    }
+
+    private static X509V3CertificateGenerator builder(X500Principal issuer,
+          X500Principal subject, PublicKey key, long lifetime) {
+        long now = System.currentTimeMillis();
+        X509V3CertificateGenerator builder = new X509V3CertificateGenerator();
+        builder.setSerialNumber(BigInteger.valueOf(SERIAL.incrementAndGet()));
+        builder.setIssuerDN(issuer);
+        builder.setSubjectDN(subject);
+        builder.setNotBefore(new Date(now - TimeUnit.HOURS.toMillis(1)));
+        builder.setNotAfter(new Date(now + lifetime));
+        builder.setPublicKey(key);
+        builder.setSignatureAlgorithm("SHA256WithRSAEncryption");
+        return builder;
+    }
+
+    private X509Certificate sign(X509V3CertificateGenerator builder)
+          throws GeneralSecurityException {
+        return builder.generate(caKeyPair.getPrivate(),
+              BouncyCastleProvider.PROVIDER_NAME);
+    }
+}
@@ -19,6 +19,7 @@ package org.dcache.xrootd.plugins.authz.scitokens;
 import io.netty.channel.ChannelHandlerContext;
 import org.dcache.xrootd.plugins.AuthorizationFactory;
 import org.dcache.xrootd.plugins.AuthorizationHandler;
+import org.dcache.xrootd.security.TokenValidationCache;
 import org.dcache.xrootd.security.TokenValidator;
 
 /**
@@ -29,9 +30,12 @@ public abstract class AbstractSciTokenAuthzFactory implements AuthorizationFacto
 
     private boolean strict;
 
+    private TokenValidationCache<Boolean> tokenCache = new TokenValidationCache<>();
+
     @Override
     public AuthorizationHandler createHandler(ChannelHandlerContext ctx) {
-        return new XrootdSciTokenAuthzHandler(getValidatorInstance(), strict, ctx);
+        return new XrootdSciTokenAuthzHandler(getValidatorInstance(), strict,
+              ctx, tokenCache);
     }
 
     @Override
@@ -49,6 +53,18 @@ public abstract class AbstractSciTokenAuthzFactory implements AuthorizationFacto
         this.strict = strict;
     }
 
+    /**
+     * @param tokenCache of validated tokens, possibly shared with other
+     *                   plugins; null disables caching.
+     */
+    public void setTokenCache(TokenValidationCache<Boolean> tokenCache) {
+        this.tokenCache = tokenCache;
+    }
+
+    public TokenValidationCache<Boolean> getTokenCache() {
+        return tokenCache;
+    }
+
     /*
      *  Should be a new instance per call.
      */
@@ -22,12 +22,18 @@ import static org.dcache.xrootd.security.TLSSessionInfo.isTLSOn;
 
 import io.netty.channel.ChannelHandlerContext;
 import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import javax.security.auth.Subject;
 import org.dcache.xrootd.core.XrootdException;
 import org.dcache.xrootd.plugins.AuthorizationHandler;
+import org.dcache.xrootd.plugins.PathPermission;
 import org.dcache.xrootd.protocol.XrootdProtocol.FilePerm;
 import org.dcache.xrootd.security.RequiresTLS;
+import org.dcache.xrootd.security.TokenValidationCache;
 import org.dcache.xrootd.security.TokenValidator;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -78,6 +84,11 @@ public class XrootdSciTokenAuthzHandler implements AuthorizationHandler, Require
     protected final TokenValidator validator;
     protected final ChannelHandlerContext ctx;
 
+    /**
+     * Results of previous validations; may be null.
+     */
+    protected final TokenValidationCache<Boolean> tokenCache;
+
     /**
      * @param validator validates authorization from the serializable token.
      *                  Note that this could involve a callout to other
@@ -89,9 +100,35 @@ public class XrootdSciTokenAuthzHandler implements AuthorizationHandler, Require
     public XrootdSciTokenAuthzHandler(TokenValidator validator,
           boolean strict,
           ChannelHandlerContext ctx) {
+        this(validator, strict, ctx, null);
+    }
+
+    /**
+     * @param validator validates authorization from the serializable token.
+     *                  Note that this could involve a callout to other
+     *                  strategies, depending on implementation.
+     * @param strict   whether to authorize in the absence of a token
+     *                 by falling back to a default.
+     * @param ctx      of current call
+     * @param tokenCache of validated tokens; only used if the validator
+     *                   is cacheable.  May be null.
+     */
+    public XrootdSciTokenAuthzHandler(TokenValidator validator,
+          boolean strict,
+          ChannelHandlerContext ctx,
+          TokenValidationCache<Boolean> tokenCache) {
         this.validator = validator;
         this.strict = strict;
         this.ctx = ctx;
+        this.tokenCache = validator.isCacheable() ? tokenCache : null;
+    }
+
+    /**
+     * The handler holds no per-request state.
+     */
+    @Override
+    public boolean isReusable() {
+        return true;
     }
 
     @Override
@@ -107,9 +144,66 @@ public class XrootdSciTokenAuthzHandler implements AuthorizationHandler, Require
               subject, localAddress, remoteAddress,
               path, opaque, request, mode);
 
+        String token = getToken(path, opaque);
+        if (token != null) {
+            checkTLS();
+
+            /*
+             *  Throws exception if not authorized.
+             */
+            validate(token);
+        }
+
+        return path;
+    }
+
+    /**
+     * The validation of a token does not depend on the path, so each
+     * distinct token carried by the request is validated only once.
+     */
+    @Override
+    public List<String> authorizeAll(Subject subject,
+          InetSocketAddress localAddress,
+          InetSocketAddress remoteAddress,
+          List<PathPermission> permissions,
+          int request)
+          throws XrootdException, SecurityException {
+        LOGGER.trace("authorizeAll: {}, {}, {}, {}, {}.",
+              subject, localAddress, remoteAddress,
+              permissions, request);
+
+        Set<String> tokens = new LinkedHashSet<>();
+        List<String> paths = new ArrayList<>(permissions.size());
+        for (PathPermission permission : permissions) {
+            String token = getToken(permission.getPath(),
+                  permission.getOpaque());
+            if (token != null) {
+                tokens.add(token);
+            }
+            paths.add(permission.getPath());
+        }
+
+        if (!tokens.isEmpty()) {
+            checkTLS();
+
+            for (String token : tokens) {
+                validate(token);
+            }
+        }
+
+        return paths;
+    }
+
+    /**
+     * @return the token with its prefix stripped off, or <code>null</code>
+     *         if no token needs to be validated for this path.
+     * @throws XrootdException if the token is missing and strict.
+     */
+    private String getToken(String path, Map<String, String> opaque)
+          throws XrootdException {
         String tpcStage = opaque.get(TPC_STAGE);
         if (TPC_PLACEMENT.equals(tpcStage)) {
-            return path;
+            return null;
         }
 
         String authz = opaque.get(SCITOKEN);
@@ -118,25 +212,33 @@ public class XrootdSciTokenAuthzHandler implements AuthorizationHandler, Require
             LOGGER.debug("no token for {}; strict? {}.", path, strict);
 
             if (!strict) {
-                return path;
+                return null;
             }
 
             throw new XrootdException(kXR_InvalidRequest,
                   "user provided no bearer token.");
         }
 
-        /*
-         *  check to see if we need TLS.
-         */
+        return TokenValidator.stripOffPrefix(authz);
+    }
+
+    private void validate(String token) throws XrootdException {
+        if (tokenCache == null) {
+            validator.validate(ctx, token);
+        } else {
+            tokenCache.validate(token, () -> {
+                validator.validate(ctx, token);
+                return Boolean.TRUE;
+            });
+        }
+    }
+
+    /*
+     *  check to see if we need TLS.
+     */
+    private void checkTLS() throws XrootdException {
         if (!isTLSOn(ctx)) {
             throw new XrootdException(kXR_Unsupported, "TLS is required for scitokens");
         }
-
-        /*
-         *  Throws exception if not authorized.
-         */
-        validator.validate(ctx, TokenValidator.stripOffPrefix(authz));
-
-        return path;
     }
 }
@@ -19,28 +19,49 @@ package org.dcache.xrootd.standalone;
 import io.netty.bootstrap.ServerBootstrap;
 import io.netty.channel.ChannelOption;
 import io.netty.channel.EventLoopGroup;
+import io.netty.channel.epoll.Epoll;
+import io.netty.channel.epoll.EpollEventLoopGroup;
+import io.netty.channel.epoll.EpollServerSocketChannel;
 import io.netty.channel.nio.NioEventLoopGroup;
 import io.netty.channel.socket.ServerSocketChannel;
 import io.netty.channel.socket.nio.NioServerSocketChannel;
 import java.util.NoSuchElementException;
 import joptsimple.OptionException;
 import joptsimple.OptionSet;
+import org.dcache.xrootd.plugins.ChannelHandlerFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 public class DataServer {
 
+    private static final Logger _log = LoggerFactory.getLogger(DataServer.class);
+
     private final DataServerConfiguration _configuration;
 
     public DataServer(DataServerConfiguration configuration) {
         _configuration = configuration;
     }
 
-    public void start() throws InterruptedException {
+    public void start() throws Exception {
         final EventLoopGroup bossGroup;
         final EventLoopGroup workerGroup;
         Class<? extends ServerSocketChannel> channelClass;
-        bossGroup = new NioEventLoopGroup();
-        workerGroup = new NioEventLoopGroup();
-        channelClass = NioServerSocketChannel.class;
+        if (_configuration.useEpoll && Epoll.isAvailable()) {
+            bossGroup = new EpollEventLoopGroup();
+            workerGroup = new EpollEventLoopGroup();
+            channelClass = EpollServerSocketChannel.class;
+        } else {
+            if (_configuration.useEpoll) {
+                _log.warn("Epoll transport is not available, using NIO: {}",
+                      Epoll.unavailabilityCause().toString());
+            }
+            bossGroup = new NioEventLoopGroup();
+            workerGroup = new NioEventLoopGroup();
+            channelClass = NioServerSocketChannel.class;
+        }
+
+        DataServerChannelInitializer initializer =
+              new DataServerChannelInitializer(_configuration);
 
         Runtime.getRuntime().addShutdownHook(new Thread() {
             @Override
@@ -48,6 +69,13 @@ public class DataServer {
                 // Shut down all event loops to terminate all threads.
                 bossGroup.shutdownGracefully();
                 workerGroup.shutdownGracefully();
+                if (_configuration.cryptoExecutor != null) {
+                    _configuration.cryptoExecutor.shutdown();
+                }
+                for (ChannelHandlerFactory factory : _configuration.channelHandlerFactories) {
+                    factory.shutdown();
+                }
+                initializer.shutdown();
 
                 try {
                     // Wait until all threads are terminated.
@@ -63,7 +91,7 @@ public class DataServer {
               .localAddress(_configuration.port)
               .childOption(ChannelOption.TCP_NODELAY, true)
               .childOption(ChannelOption.SO_KEEPALIVE, true)
-              .childHandler(new DataServerChannelInitializer(_configuration));
+              .childHandler(initializer);
 
         bootstrap.bind().sync().channel().closeFuture().sync();
     }
@@ -29,6 +29,7 @@ import nl.altindag.ssl.pem.util.PemUtils;
 import org.dcache.xrootd.core.XrootdAuthenticationHandler;
 import org.dcache.xrootd.core.XrootdDecoder;
 import org.dcache.xrootd.core.XrootdEncoder;
+import org.dcache.xrootd.core.XrootdFlushConsolidationHandler;
 import org.dcache.xrootd.core.XrootdHandshakeHandler;
 import org.dcache.xrootd.core.XrootdSessionHandler;
 import org.dcache.xrootd.plugins.ChannelHandlerFactory;
@@ -44,6 +45,7 @@ import javax.net.ssl.SSLException;
 import javax.net.ssl.X509ExtendedKeyManager;
 import java.nio.file.Paths;
 import java.util.Properties;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Supplier;
 
 public class DataServerChannelInitializer extends ChannelInitializer<SocketChannel> {
@@ -53,8 +55,29 @@ public class DataServerChannelInitializer extends ChannelInitializer<SocketChann
 
     private final DataServerConfiguration _options;
 
-    public DataServerChannelInitializer(DataServerConfiguration options) {
+    /**
+     * Shared by all channels, so that TLS sessions can be resumed across
+     * connections; null if TLS is disabled.
+     */
+    private final SSLHandlerFactory _tlsFactory;
+
+    public DataServerChannelInitializer(DataServerConfiguration options) throws Exception {
         _options = options;
+        if (options.withTls) {
+            _tlsFactory = new LocalPemTlsHandler(options.hostCert, options.hostKey);
+            _tlsFactory.initialize(new Properties(), true);
+        } else {
+            _tlsFactory = null;
+        }
+    }
+
+    /**
+     * Releases resources shared by all channels.
+     */
+    public void shutdown() {
+        if (_tlsFactory != null) {
+            _tlsFactory.shutdown();
+        }
     }
 
     @Override
@@ -62,7 +85,10 @@ public class DataServerChannelInitializer extends ChannelInitializer<SocketChann
         ChannelPipeline pipeline = ch.pipeline();
         pipeline.addLast("handshaker", new XrootdHandshakeHandler(DATA_SERVER));
         pipeline.addLast("encoder", new XrootdEncoder());
-        pipeline.addLast("decoder", new XrootdDecoder());
+        pipeline.addLast("flusher", new XrootdFlushConsolidationHandler());
+        XrootdDecoder decoder = new XrootdDecoder();
+        decoder.setStreamingWrites(_options.useStreamingWrites);
+        pipeline.addLast("decoder", decoder);
         if (logger.isDebugEnabled()) {
             pipeline.addLast("logger", new LoggingHandler(DataServerChannelInitializer.class));
         }
@@ -74,11 +100,8 @@ public class DataServerChannelInitializer extends ChannelInitializer<SocketChann
         SigningPolicy signingPolicy = new SigningPolicy();
         ServerProtocolFlags flags = new ServerProtocolFlags(0);
 
-        SSLHandlerFactory tlsFactory = null;
-        if (_options.withTls) {
-            tlsFactory = new LocalPemTlsHandler(_options.hostCert, _options.hostKey);
-            tlsFactory.initialize(new Properties(), true);
-
+        SSLHandlerFactory tlsFactory = _tlsFactory;
+        if (tlsFactory != null) {
             flags.setMode(ServerProtocolFlags.TlsMode.OPTIONAL);
             flags.setRequiresTLSForSession(true);
             flags.setRequiresTLSForLogin(true);
@@ -96,6 +119,7 @@ public class DataServerChannelInitializer extends ChannelInitializer<SocketChann
          */
         sessionHandler.setTlsSessionInfo(tlsSessionInfo);
         sessionHandler.setSigningPolicy(signingPolicy);
+        sessionHandler.setResumptionGracePeriod(_options.sessionGracePeriod, TimeUnit.SECONDS);
         pipeline.addLast(XrootdSessionHandler.SESSION_HANDLER, sessionHandler);
 
         for (ChannelHandlerFactory factory : _options.channelHandlerFactories) {
@@ -110,6 +134,7 @@ public class DataServerChannelInitializer extends ChannelInitializer<SocketChann
                  * of the authentication request.
                  */
                 authn.setSessionHandler(sessionHandler);
+                authn.setCryptoExecutor(_options.cryptoExecutor);
                 sessionHandler.add(authn);
             } else {
                 pipeline.addLast("plugin:" + factory.getName(), handler);
@@ -138,7 +163,10 @@ public class DataServerChannelInitializer extends ChannelInitializer<SocketChann
         LocalPemTlsHandler(String hostcert, String hostkey) throws SSLException {
             X509ExtendedKeyManager keyManager =
                     PemUtils.loadIdentityMaterial(Paths.get(hostcert), Paths.get(hostkey));
-            sslContext = SslContextBuilder.forServer(keyManager).startTls(true).build();
+            sslContext = withPerformanceDefaults(SslContextBuilder.forServer(keyManager))
+                    .startTls(true).build();
+            enableSessionTickets(sslContext, DEFAULT_TICKET_KEY_ROTATION_IN_SECONDS,
+                    TimeUnit.SECONDS);
         }
 
         @Override
@@ -17,6 +17,7 @@
 package org.dcache.xrootd.standalone;
 
 import com.google.common.io.PatternFilenameFilter;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import java.io.File;
 import java.io.FilenameFilter;
 import java.io.IOException;
@@ -29,6 +30,10 @@ import java.util.List;
 import java.util.NoSuchElementException;
 import java.util.Properties;
 import java.util.ServiceLoader;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import joptsimple.OptionSet;
 import org.dcache.xrootd.core.XrootdAuthenticationHandlerProvider;
 import org.dcache.xrootd.core.XrootdAuthorizationHandlerProvider;
@@ -48,6 +53,8 @@ public class DataServerConfiguration {
     private static final FilenameFilter PROPERTIES_FILTER =
           new PatternFilenameFilter(".*\\.properties");
 
+    private static final int CRYPTO_QUEUE_PER_THREAD = 256;
+
     private final ClassLoader _pluginLoader;
     private final ServiceLoader<ChannelHandlerProvider> _channelHandlerProviders;
     private final Properties _pluginDefaults;
@@ -57,6 +64,18 @@ public class DataServerConfiguration {
     public final List<File> pluginPath;
     public final List<String> channelHandlerPlugins;
     public final boolean useZeroCopy;
+    public final boolean useEpoll;
+    public final boolean useStreamingWrites;
+
+    /**
+     * Bounded executor for authentication steps, or null.
+     */
+    public final ExecutorService cryptoExecutor;
+
+    /**
+     * Seconds for which authenticated sessions can be resumed.
+     */
+    public final int sessionGracePeriod;
 
     public final boolean withTls;
     public final String hostCert;
@@ -71,6 +90,11 @@ public class DataServerConfiguration {
         pluginPath = options.valuesOf(parser.pluginPath);
         channelHandlerPlugins = options.valuesOf(parser.handlerPlugins);
         useZeroCopy = options.has(parser.zeroCopy);
+        useEpoll = options.has(parser.epoll);
+        useStreamingWrites = options.has(parser.streamingWrites);
+        int cryptoThreads = options.valueOf(parser.cryptoThreads);
+        cryptoExecutor = cryptoThreads > 0 ? createCryptoExecutor(cryptoThreads) : null;
+        sessionGracePeriod = options.valueOf(parser.sessionGracePeriod);
         withTls = options.has(parser.withTls);
         hostCert = options.valueOf(parser.hostCert);
         hostKey = options.valueOf(parser.hostKey);
@@ -94,6 +118,18 @@ public class DataServerConfiguration {
         }
     }
 
+    private static ExecutorService createCryptoExecutor(int threads) {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads,
+              60, TimeUnit.SECONDS,
+              new ArrayBlockingQueue<>(threads * CRYPTO_QUEUE_PER_THREAD),
+              new ThreadFactoryBuilder()
+                    .setNameFormat("xrootd-crypto-%d")
+                    .setDaemon(true)
+                    .build());
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
     private static Properties loadDefaultProperties(List<File> paths)
           throws IOException, MalformedURLException {
         Properties defaults = new Properties();
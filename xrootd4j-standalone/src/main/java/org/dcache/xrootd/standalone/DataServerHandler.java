@@ -32,6 +32,7 @@ import static org.dcache.xrootd.protocol.XrootdProtocol.kXR_other;
 import static org.dcache.xrootd.protocol.XrootdProtocol.kXR_readable;
 import static org.dcache.xrootd.protocol.XrootdProtocol.kXR_writable;
 import static org.dcache.xrootd.protocol.XrootdProtocol.kXR_xset;
+import static org.dcache.xrootd.security.TLSSessionInfo.isTLSOn;
 
 import com.google.common.hash.HashCode;
 import com.google.common.hash.Hashing;
@@ -362,7 +363,11 @@ public class DataServerHandler extends XrootdProtocolRequestHandler {
         RandomAccessFile raf = getOpenFile(msg.getFileHandle());
         if (msg.bytesToRead() == 0) {
             return withOk(msg);
-        } else if (_configuration.useZeroCopy) {
+        } else if (_configuration.useZeroCopy && !isTLSOn(ctx)) {
+            /*
+             *  A file region cannot pass through the SslHandler, so on TLS
+             *  protected connections the file is read in chunks instead.
+             */
             try {
                 return new ZeroCopyReadResponse(msg, raf.getChannel());
             } catch (IOException e) {
@@ -30,6 +30,10 @@ public class DataServerOptionParser extends OptionParser {
     public final OptionSpec<String> handlerPlugins;
     public final OptionSpec<File> pluginPath;
     public final OptionSpec<Void> zeroCopy;
+    public final OptionSpec<Void> epoll;
+    public final OptionSpec<Void> streamingWrites;
+    public final OptionSpec<Integer> cryptoThreads;
+    public final OptionSpec<Integer> sessionGracePeriod;
     public final OptionSpec<Void> withTls;
     public final OptionSpec<String> hostCert;
     public final OptionSpec<String> hostKey;
@@ -57,7 +61,26 @@ public class DataServerOptionParser extends OptionParser {
               .withValuesSeparatedBy(File.pathSeparatorChar)
               .describedAs("url")
               .ofType(File.class);
-        zeroCopy = acceptsAll(asList("z", "zerocopy"), "Use zero copy reads");
+        zeroCopy = acceptsAll(asList("z", "zerocopy"),
+              "Use zero copy reads on connections not protected by TLS");
+        epoll = acceptsAll(asList("epoll"),
+              "Use the native epoll transport where available (Linux)");
+        streamingWrites = acceptsAll(asList("streaming-writes"),
+              "Pass write payloads on as they arrive instead of accumulating them");
+        cryptoThreads = acceptsAll(asList("crypto-threads"),
+              "Number of threads verifying credentials off the event loop; "
+                    + "0 verifies them on the event loop")
+              .withRequiredArg()
+              .describedAs("threads")
+              .ofType(Integer.class)
+              .defaultsTo(0);
+        sessionGracePeriod = acceptsAll(asList("session-grace-period"),
+              "Seconds for which the authenticated TLS session of a closed connection "
+                    + "can be resumed by the client; 0 disables resumption")
+              .withRequiredArg()
+              .describedAs("seconds")
+              .ofType(Integer.class)
+              .defaultsTo(0);
         withTls = acceptsAll(asList("tls"), "Enable TLS for session and data protection");
         hostCert = acceptsAll(asList("hostcert"), "Path to the host certificate file")
               .withRequiredArg()
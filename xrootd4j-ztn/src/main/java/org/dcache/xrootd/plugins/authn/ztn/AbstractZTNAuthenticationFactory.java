@@ -20,7 +20,10 @@ import com.google.common.base.Strings;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+import javax.security.auth.Subject;
 import org.dcache.xrootd.plugins.AuthenticationFactory;
+import org.dcache.xrootd.security.TokenValidationCache;
 
 /**
  * Authentication factory that returns ztn authentication handlers.
@@ -30,11 +33,21 @@ public abstract class AbstractZTNAuthenticationFactory implements Authentication
     private static final String MAX_TOKEN_SZ = "xrootd.plugin!ztn.max-token-len-in-bytes";
     private static final String TOKEN_FLAGS = "xrootd.plugin!ztn.token-flags";
     private static final String ALT_TOKEN_LOCS = "xrootd.plugin!ztn.alt-token-locs";
+    private static final String TOKEN_CACHE_SZ = "xrootd.plugin!ztn.token-cache-size";
+    private static final String TOKEN_CACHE_LIFETIME
+          = "xrootd.plugin!ztn.token-cache-lifetime-in-seconds";
 
     protected Integer maxTokenSize;
     protected Long tokenUsageFlags;
     protected List<String> alternateTokenLocations;
 
+    /**
+     * Subjects of validated tokens, shared by all handlers of this factory;
+     * null unless a cache size is configured.  Handlers only use it if they
+     * declare their validation cacheable.
+     */
+    protected TokenValidationCache<Subject> tokenCache;
+
     protected AbstractZTNAuthenticationFactory(Properties properties)
           throws ClassNotFoundException {
         String property = Strings.emptyToNull(properties.getProperty(MAX_TOKEN_SZ));
@@ -51,5 +64,37 @@ public abstract class AbstractZTNAuthenticationFactory implements Authentication
         if (property != null) {
             alternateTokenLocations = Arrays.asList(property.split(","));
         }
+
+        long cacheSize = 0;
+        property = Strings.emptyToNull(properties.getProperty(TOKEN_CACHE_SZ));
+        if (property != null) {
+            cacheSize = Long.parseLong(property);
+        }
+
+        long cacheLifetime = TimeUnit.MILLISECONDS.toSeconds(
+              TokenValidationCache.DEFAULT_MAX_LIFETIME);
+        property = Strings.emptyToNull(properties.getProperty(TOKEN_CACHE_LIFETIME));
+        if (property != null) {
+            cacheLifetime = Long.parseLong(property);
+        }
+
+        if (cacheSize > 0 && cacheLifetime > 0) {
+            tokenCache = new TokenValidationCache<>(cacheSize, cacheLifetime,
+                  TimeUnit.SECONDS);
+        }
+    }
+
+    /**
+     * Applies the settings common to all ZTN handlers.
+     */
+    protected void configure(AbstractZTNAuthenticationHandler handler) {
+        handler.setMaxTokenSize(maxTokenSize);
+        handler.setTokenUsageFlags(tokenUsageFlags);
+        handler.setAlternateTokenLocations(alternateTokenLocations);
+        handler.setTokenCache(tokenCache);
+    }
+
+    public TokenValidationCache<Subject> getTokenCache() {
+        return tokenCache;
     }
 }
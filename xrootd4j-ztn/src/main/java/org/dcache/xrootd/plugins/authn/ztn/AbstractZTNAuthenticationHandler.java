@@ -31,6 +31,7 @@ import org.dcache.xrootd.protocol.messages.OkResponse;
 import org.dcache.xrootd.protocol.messages.XrootdResponse;
 import org.dcache.xrootd.security.BufferDecrypter;
 import org.dcache.xrootd.security.RequiresTLS;
+import org.dcache.xrootd.security.TokenValidationCache;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -53,6 +54,7 @@ public abstract class AbstractZTNAuthenticationHandler
     private Integer maxTokenSize;
     private List<String> alternateTokenLocations;
     private Long tokenUsageFlags;
+    private TokenValidationCache<Subject> tokenCache;
     private boolean completed;
 
     @Override
@@ -61,7 +63,6 @@ public abstract class AbstractZTNAuthenticationHandler
         subject = new Subject();
 
         credential = ZTNCredentialUtils.deserialize(request.getCredentialBuffer());
-        request.releaseBuffer();
 
         LOGGER.trace("ZTNCredential: {}.", credential);
 
@@ -70,7 +71,21 @@ public abstract class AbstractZTNAuthenticationHandler
             throw new XrootdException(kXR_ArgTooLong, "token exceeds max length");
         }
 
-        validateToken();
+        if (tokenCache == null || !isTokenCacheable()) {
+            validateToken();
+        } else {
+            /*
+             *  The outcome of validateToken() is the subject; a copy of it
+             *  is cached, so that changes made to the subject of this
+             *  session do not leak into others.
+             */
+            Subject validated = tokenCache.validate(credential.getToken(),
+                  () -> {
+                      validateToken();
+                      return copyOf(subject);
+                  });
+            subject = copyOf(validated);
+        }
 
         completed = true;
 
@@ -134,6 +149,15 @@ public abstract class AbstractZTNAuthenticationHandler
         return completed;
     }
 
+    /**
+     * Token validation does not depend on the channel, and verifying the
+     * token signature is CPU bound.
+     */
+    @Override
+    public boolean isOffloadable() {
+        return true;
+    }
+
     @Override
     public BufferDecrypter getDecrypter() {
         return null;
@@ -156,6 +180,34 @@ public abstract class AbstractZTNAuthenticationHandler
         this.trustedIssuers = trustedIssuers;
     }
 
+    /**
+     * Whether the outcome of {@link #validateToken()} only depends on the
+     * token, and it has no side effects, so that the subject it produced
+     * may be reused for later sessions presenting the same token.  Checks
+     * such as revocation are then skipped until the cache entry expires.
+     *
+     * The default is <code>false</code>, so that the token cache is not
+     * used even if one is set.
+     */
+    protected boolean isTokenCacheable() {
+        return false;
+    }
+
+    /**
+     * @param tokenCache of subjects resulting from previous token
+     *                   validations; null disables caching.  Only used if
+     *                   {@link #isTokenCacheable()}.
+     */
+    public void setTokenCache(TokenValidationCache<Subject> tokenCache) {
+        this.tokenCache = tokenCache;
+    }
+
+    private static Subject copyOf(Subject subject) {
+        return new Subject(false, subject.getPrincipals(),
+              subject.getPublicCredentials(),
+              subject.getPrivateCredentials());
+    }
+
     private boolean hasParams() {
         return maxTokenSize != null ||
               tokenUsageFlags != null ||
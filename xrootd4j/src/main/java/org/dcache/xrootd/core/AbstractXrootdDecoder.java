@@ -44,6 +44,7 @@ import static org.dcache.xrootd.protocol.XrootdProtocol.kXR_write;
 
 import com.google.common.base.Throwables;
 import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.handler.codec.ByteToMessageDecoder;
 import javax.net.ssl.SSLException;
@@ -82,6 +83,13 @@ import org.slf4j.LoggerFactory;
  * Modified to handle (serial) segmentation of write requests
  * such that the amount of data written never exceeds a maximum
  * direct I/O buffer size.
+ *
+ * When streaming writes are enabled, the payload of a write request
+ * is not accumulated up to the maximum buffer size; instead, whatever
+ * has arrived from the socket is passed on immediately as a partial
+ * write request sliced from the received buffer.  Together with
+ * composite cumulation this avoids copying the payload and bounds
+ * the amount of data buffered per channel to roughly one socket read.
  */
 public abstract class AbstractXrootdDecoder extends ByteToMessageDecoder {
 
@@ -96,6 +104,8 @@ public abstract class AbstractXrootdDecoder extends ByteToMessageDecoder {
     }
 
     private int maxWriteBufferSize = Integer.MAX_VALUE;
+    private boolean streamingWrites;
+    private boolean suspended;
 
     private WriteRequest lastWrite;
     private int remainingDataLength;
@@ -110,6 +120,49 @@ public abstract class AbstractXrootdDecoder extends ByteToMessageDecoder {
         this.maxWriteBufferSize = maxFrameSize;
     }
 
+    public boolean isStreamingWrites() {
+        return streamingWrites;
+    }
+
+    /**
+     * @param streamingWrites if true, write payloads are passed on as they
+     *                        arrive and the cumulator is switched to
+     *                        composite cumulation; otherwise the default
+     *                        merging cumulator is used.
+     */
+    public void setStreamingWrites(boolean streamingWrites) {
+        this.streamingWrites = streamingWrites;
+        setCumulator(streamingWrites ? COMPOSITE_CUMULATOR : MERGE_CUMULATOR);
+    }
+
+    /**
+     * Stops decoding of further frames, e.g., while an authentication
+     * step completes asynchronously.  Data that has already been received
+     * remains buffered; should the decoder be removed from the pipeline
+     * in the meantime, it is passed on to its successor.
+     */
+    public void suspendDecoding() {
+        suspended = true;
+    }
+
+    /**
+     * Resumes decoding, including any data buffered while suspended.
+     */
+    public void resumeDecoding(ChannelHandlerContext ctx) throws Exception {
+        suspended = false;
+        if (internalBuffer().isReadable()) {
+            channelRead(ctx, Unpooled.EMPTY_BUFFER);
+        }
+    }
+
+    /**
+     * @return true if the next frame is the continuation of the payload
+     *         of a segmented write request (and thus has no header).
+     */
+    protected boolean isWriteContinuation() {
+        return lastWrite != null;
+    }
+
     public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) throws Exception {
         if (cause instanceof SSLException) {
             super.exceptionCaught(ctx, createException(ctx, (SSLException) cause, sessionToken));
@@ -180,6 +233,10 @@ public abstract class AbstractXrootdDecoder extends ByteToMessageDecoder {
     }
 
     protected int verifyMessageLength(ByteBuf in) {
+        if (suspended) {
+            return 0;
+        }
+
         int readable = in.readableBytes();
 
         /*
@@ -187,9 +244,12 @@ public abstract class AbstractXrootdDecoder extends ByteToMessageDecoder {
          */
         if (remainingDataLength > 0) {
             int desiredChunk = Math.min(maxWriteBufferSize, remainingDataLength);
+            if (streamingWrites) {
+                desiredChunk = Math.min(desiredChunk, readable);
+            }
             LOGGER.trace("verifyMessageLength: remaining {}, desired {}, readable {}",
                   remainingDataLength, desiredChunk, readable);
-            if (readable < desiredChunk) {
+            if (readable < desiredChunk || desiredChunk == 0) {
                 return 0;
             } else {
                 remainingDataLength -= desiredChunk;
@@ -223,7 +283,20 @@ public abstract class AbstractXrootdDecoder extends ByteToMessageDecoder {
         LOGGER.trace("verifyMessageLength: {}, frame length: {}",
               XrootdProtocol.getClientRequest(requestId), frameLength);
 
-        int length = CLIENT_REQUEST_LEN + Math.min(frameLength, maxWriteBufferSize);
+        int dataLength = Math.min(frameLength, maxWriteBufferSize);
+
+        /*
+         *  When streaming, a write request is passed on as soon as the
+         *  header and at least part of the payload have arrived.
+         */
+        if (streamingWrites && requestId == kXR_write) {
+            dataLength = Math.min(dataLength, readable - CLIENT_REQUEST_LEN);
+            if (dataLength == 0 && frameLength > 0) {
+                return 0;
+            }
+        }
+
+        int length = CLIENT_REQUEST_LEN + dataLength;
 
         if (readable < length) {
             return 0;
@@ -233,14 +306,14 @@ public abstract class AbstractXrootdDecoder extends ByteToMessageDecoder {
          *  It is only feasible to segment the data payload of a write request;
          *  should any other request exceed the max buffer size, we disconnect.
          */
-        if (frameLength > maxWriteBufferSize) {
+        if (frameLength > dataLength) {
             if (requestId != kXR_write) {
                 /*
                  * disconnect
                  */
                 return -1;
             }
-            remainingDataLength = frameLength - maxWriteBufferSize;
+            remainingDataLength = frameLength - dataLength;
             LOGGER.trace("verifyMessageLength: write request data length: {}", frameLength);
         } else {
             remainingDataLength = 0;
@@ -261,11 +334,11 @@ public abstract class AbstractXrootdDecoder extends ByteToMessageDecoder {
             fhandle = frame.getInt(4);
             offset = frame.getLong(8);
             /*
-             *  The full frame size is in the header of this buffer, so we need to
-             *  compare to the max size and take the lesser.
+             *  The full frame size is in the header of this buffer, but the
+             *  frame may hold only the first segment of the payload.
              */
-            length = Math.min(frame.getInt(20), maxWriteBufferSize);
-            data = frame.retainedSlice(24, length);
+            length = frame.readableBytes() - CLIENT_REQUEST_LEN;
+            data = frame.retainedSlice(CLIENT_REQUEST_LEN, length);
         } else {
             streamId = lastWrite.getStreamId();
             fhandle = lastWrite.getFileHandle();
@@ -0,0 +1,211 @@
+/**
+ * Copyright (C) 2011-2026 dCache.org <support@dcache.org>
+ *
+ * This file is part of xrootd4j.
+ *
+ * xrootd4j is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * xrootd4j is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with xrootd4j.  If
+ * not, see http://www.gnu.org/licenses/.
+ */
+package org.dcache.xrootd.core;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import javax.security.auth.Subject;
+import org.dcache.xrootd.plugins.AuthorizationScope;
+import org.dcache.xrootd.protocol.XrootdProtocol.FilePerm;
+
+/**
+ * Bounded cache of positive authorization decisions of a single session.
+ *
+ * Decisions are keyed by path prefix, request type, permission and opaque
+ * data, and are only valid for the subject for which they were taken; the cache
+ * is cleared when the subject of the session changes.
+ *
+ * Not thread safe; the cache is only accessed from the event loop of
+ * the channel to which it belongs.
+ */
+public class AuthorizationDecisionCache {
+
+    public static final int DEFAULT_MAX_ENTRIES = 1024;
+
+    private static class Key {
+
+        private final String prefix;
+        private final int request;
+        private final FilePerm mode;
+        private final Map<String, String> opaque;
+
+        private Key(String prefix, int request, FilePerm mode,
+              Map<String, String> opaque) {
+            this.prefix = prefix;
+            this.request = request;
+            this.mode = mode;
+            this.opaque = opaque;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return prefix.equals(other.prefix) && request == other.request
+                  && mode == other.mode && opaque.equals(other.opaque);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(prefix, request, mode, opaque);
+        }
+    }
+
+    private static class Decision {
+
+        private final String mappedPrefix;
+        private final long expiresAt;
+
+        private Decision(String mappedPrefix, long expiresAt) {
+            this.mappedPrefix = mappedPrefix;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    private final Map<Key, Decision> decisions;
+
+    private Subject subject;
+
+    public AuthorizationDecisionCache(int maxEntries) {
+        decisions = new LinkedHashMap<Key, Decision>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, Decision> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    /**
+     * @return the mapped path if a valid decision covers the path,
+     *         otherwise <code>null</code>.
+     */
+    public String get(Subject subject, String path, Map<String, String> opaque,
+          int request, FilePerm mode) {
+        checkSubject(subject);
+
+        if (decisions.isEmpty() || !isNormalized(path)) {
+            return null;
+        }
+
+        long now = System.nanoTime();
+        String prefix = stripTrailingSlash(path);
+        while (true) {
+            Key key = new Key(prefix, request, mode, opaque);
+            Decision decision = decisions.get(key);
+            if (decision != null) {
+                if (decision.expiresAt - now > 0) {
+                    return decision.mappedPrefix + path.substring(prefix.length());
+                }
+                decisions.remove(key);
+            }
+            if (prefix.isEmpty()) {
+                return null;
+            }
+            prefix = prefix.substring(0, prefix.lastIndexOf('/'));
+        }
+    }
+
+    /**
+     * Stores a decision for the given scope.  The scope is ignored unless
+     * it covers the authorized path and is consistent with its mapping.
+     */
+    public void put(Subject subject, String path, Map<String, String> opaque,
+          int request, FilePerm mode, String mappedPath,
+          AuthorizationScope scope) {
+        checkSubject(subject);
+
+        if (!isNormalized(path) || !isNormalized(scope.getPrefix())) {
+            return;
+        }
+
+        String prefix = stripTrailingSlash(scope.getPrefix());
+        String mappedPrefix = stripTrailingSlash(scope.getMappedPrefix());
+        String normalizedPath = stripTrailingSlash(path);
+        if (!isCovered(normalizedPath, prefix)) {
+            return;
+        }
+        String remainder = path.substring(prefix.length());
+        if (!mappedPath.equals(mappedPrefix + remainder)) {
+            return;
+        }
+
+        decisions.put(new Key(prefix, request, mode, opaque),
+              new Decision(mappedPrefix, System.nanoTime() + scope.getLifetime()));
+    }
+
+    public void clear() {
+        decisions.clear();
+    }
+
+    public int size() {
+        return decisions.size();
+    }
+
+    private void checkSubject(Subject subject) {
+        if (this.subject != subject) {
+            decisions.clear();
+            this.subject = subject;
+        }
+    }
+
+    private static boolean isCovered(String path, String prefix) {
+        return path.startsWith(prefix)
+              && (path.length() == prefix.length()
+              || path.charAt(prefix.length()) == '/');
+    }
+
+    private static String stripTrailingSlash(String path) {
+        int end = path.length();
+        while (end > 0 && path.charAt(end - 1) == '/') {
+            end--;
+        }
+        return path.substring(0, end);
+    }
+
+    /**
+     * Only absolute paths without empty, '.' or '..' elements may be
+     * resolved through a prefix; anything else could escape the prefix.
+     */
+    private static boolean isNormalized(String path) {
+        if (path.isEmpty() || path.charAt(0) != '/') {
+            return false;
+        }
+        int start = 1;
+        int length = stripTrailingSlash(path).length();
+        while (start < length) {
+            int end = path.indexOf('/', start);
+            if (end == -1 || end > length) {
+                end = length;
+            }
+            int elementLength = end - start;
+            if (elementLength == 0
+                  || (elementLength == 1 && path.charAt(start) == '.')
+                  || (elementLength == 2 && path.charAt(start) == '.'
+                  && path.charAt(start + 1) == '.')) {
+                return false;
+            }
+            start = end + 1;
+        }
+        return true;
+    }
+}
@@ -0,0 +1,118 @@
+/**
+ * Copyright (C) 2011-2026 dCache.org <support@dcache.org>
+ *
+ * This file is part of xrootd4j.
+ *
+ * xrootd4j is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * xrootd4j is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with xrootd4j.  If
+ * not, see http://www.gnu.org/licenses/.
+ */
+package org.dcache.xrootd.core;
+
+import com.google.common.collect.Maps;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import javax.security.auth.Subject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Authenticated sessions of closed connections, kept for a grace period so
+ * that a reconnecting client can continue them without kXR_auth.
+ * <p>
+ * The session id is the only proof the client offers, so it must never have
+ * been visible on the wire.  A session is therefore only kept if its login,
+ * and with it the login response carrying the id, went over TLS; and it is
+ * only handed to a login which is itself over TLS, by the same user.  Each
+ * session can be taken at most once.
+ */
+class ResumableSessions {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ResumableSessions.class);
+
+    private static class Entry {
+
+        private final XrootdSession session;
+        private final long deadline;
+
+        private Entry(XrootdSession session, long deadline) {
+            this.session = session;
+            this.deadline = deadline;
+        }
+    }
+
+    private final ConcurrentMap<XrootdSessionIdentifier, Entry> entries =
+          Maps.newConcurrentMap();
+
+    /**
+     * Keeps an authenticated session whose connection has closed.
+     *
+     * @param session the authenticated session
+     * @param loginOverTls whether the login of the session was protected by TLS;
+     *                     if not, the session is not kept.
+     * @param gracePeriod milliseconds for which the session can be resumed
+     * @param executor used to discard the session when the period has passed
+     */
+    void park(XrootdSession session, boolean loginOverTls, long gracePeriod,
+          ScheduledExecutorService executor) {
+        if (!loginOverTls) {
+            LOGGER.debug("Session {} was established without TLS and cannot be resumed.",
+                  session.getSessionIdentifier());
+            return;
+        }
+        XrootdSessionIdentifier id = session.getSessionIdentifier();
+        Entry entry = new Entry(session,
+              System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(gracePeriod));
+        entries.put(id, entry);
+        executor.schedule(() -> entries.remove(id, entry), gracePeriod, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * @param id of the session to resume
+     * @param userName of the login presenting the id
+     * @param loginOverTls whether that login is protected by TLS
+     * @return the parked session, or null if it cannot be resumed.
+     */
+    XrootdSession take(XrootdSessionIdentifier id, String userName, boolean loginOverTls) {
+        if (!loginOverTls) {
+            LOGGER.debug("Session {} can only be resumed over TLS.", id);
+            return null;
+        }
+
+        Entry entry = entries.remove(id);
+        if (entry == null || entry.deadline - System.nanoTime() <= 0) {
+            LOGGER.debug("Session {} cannot be resumed.", id);
+            return null;
+        }
+
+        if (!Objects.equals(entry.session.getUserName(), userName)) {
+            LOGGER.debug("Session {} belongs to a different user.", id);
+            return null;
+        }
+
+        return entry.session;
+    }
+
+    /**
+     * Discards a parked session on request of its owner.
+     */
+    void discard(XrootdSessionIdentifier id, Subject owner) {
+        Entry entry = entries.get(id);
+        if (entry != null && entry.session.hasOwner(owner)) {
+            entries.remove(id, entry);
+        }
+    }
+
+    int size() {
+        return entries.size();
+    }
+}
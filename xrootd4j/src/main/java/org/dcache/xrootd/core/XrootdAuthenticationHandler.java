@@ -16,10 +16,15 @@
  */
 package org.dcache.xrootd.core;
 
+import static org.dcache.xrootd.protocol.XrootdProtocol.kXR_Overloaded;
+import static org.dcache.xrootd.protocol.XrootdProtocol.kXR_ServerError;
 import static org.dcache.xrootd.protocol.XrootdProtocol.kXR_auth;
 
+import com.google.common.base.Throwables;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.util.ReferenceCountUtil;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
 import javax.security.auth.Subject;
 import org.dcache.xrootd.plugins.AuthenticationFactory;
 import org.dcache.xrootd.plugins.AuthenticationHandler;
@@ -52,6 +57,8 @@ public class XrootdAuthenticationHandler extends XrootdRequestHandler {
 
     private XrootdSessionHandler sessionHandler;
 
+    private Executor cryptoExecutor;
+
     /*
      *  NOTE:  we maintain the now unused first String parameter for backward compatibility.
      */
@@ -80,6 +87,17 @@ public class XrootdAuthenticationHandler extends XrootdRequestHandler {
         this.sessionHandler = sessionHandler;
     }
 
+    /**
+     * @param cryptoExecutor on which authentication steps of offloadable
+     *                       handlers are run; if null, all steps run on
+     *                       the event loop.  The executor should be bounded;
+     *                       when it rejects a step, authentication fails
+     *                       with kXR_Overloaded.
+     */
+    public void setCryptoExecutor(Executor cryptoExecutor) {
+        this.cryptoExecutor = cryptoExecutor;
+    }
+
     @Override
     protected Object doOnAuthentication(ChannelHandlerContext context,
           AuthenticationRequest request)
@@ -97,6 +115,14 @@ public class XrootdAuthenticationHandler extends XrootdRequestHandler {
     protected Object getResponse(ChannelHandlerContext ctx, XrootdRequest req) {
         switch (req.getRequestId()) {
             case kXR_auth:
+                if (cryptoExecutor != null && authenticationHandler.isOffloadable()) {
+                    authenticateAsync(ctx, (AuthenticationRequest) req);
+                    return null;
+                }
+                /*
+                 *  A non-null response leaves the release of the request
+                 *  to requestReceived.
+                 */
                 try {
                     return doOnAuthentication(ctx, (AuthenticationRequest) req);
                 } catch (XrootdException e) {
@@ -104,9 +130,8 @@ public class XrootdAuthenticationHandler extends XrootdRequestHandler {
                           e.getMessage());
                     sessionHandler.setAuthFailed(ctx);
                     respond(ctx, withError(ctx, req, e.getError(), e.getMessage()));
-                    return null;
-                } finally {
                     ReferenceCountUtil.release(req);
+                    return null;
                 }
             default:
                 ctx.fireChannelRead(req);
@@ -114,6 +139,70 @@ public class XrootdAuthenticationHandler extends XrootdRequestHandler {
         }
     }
 
+    /**
+     * Runs the authentication step on the crypto executor.  Processing of
+     * the session is suspended until the step has completed on the event
+     * loop, so that requests following kXR_auth are not handled before it.
+     */
+    private void authenticateAsync(ChannelHandlerContext ctx, AuthenticationRequest request) {
+        sessionHandler.suspend(ctx);
+        try {
+            cryptoExecutor.execute(() -> {
+                XrootdResponse<AuthenticationRequest> response = null;
+                Throwable failure = null;
+                try {
+                    response = authenticationHandler.authenticate(request);
+                } catch (Throwable t) {
+                    failure = t;
+                }
+                XrootdResponse<AuthenticationRequest> result = response;
+                Throwable error = failure;
+                ctx.executor().execute(() -> authenticationStepCompleted(ctx,
+                      request, result, error));
+            });
+        } catch (RejectedExecutionException e) {
+            /*
+             *  Complete in a later task, as we are still within the decoder.
+             */
+            XrootdException error = new XrootdException(kXR_Overloaded,
+                  "Too many concurrent logins, please retry later");
+            ctx.executor().execute(() -> authenticationStepCompleted(ctx,
+                  request, null, error));
+        }
+    }
+
+    private void authenticationStepCompleted(ChannelHandlerContext ctx,
+          AuthenticationRequest request,
+          XrootdResponse<AuthenticationRequest> response,
+          Throwable failure) {
+        try {
+            if (failure != null) {
+                Throwables.throwIfInstanceOf(failure, XrootdException.class);
+                Throwables.throwIfUnchecked(failure);
+                throw new RuntimeException(failure);
+            }
+            if (authenticationHandler.isCompleted()) {
+                LOGGER.debug("authenticateAsync, response {}, is completed.", response);
+                authenticated(ctx, authenticationHandler.getSubject());
+            }
+            respond(ctx, response);
+        } catch (XrootdException e) {
+            LOGGER.debug("authenticated, login failed {}: {}.", e.getError(),
+                  e.getMessage());
+            sessionHandler.setAuthFailed(ctx);
+            respond(ctx, withError(ctx, request, e.getError(), e.getMessage()));
+        } catch (RuntimeException e) {
+            LOGGER.error("xrootd server error while processing " + request
+                  + " (please report this to support@dcache.org)", e);
+            sessionHandler.setAuthFailed(ctx);
+            respond(ctx, withError(ctx, request, kXR_ServerError,
+                  String.format("Internal server error (%s)", e.getMessage())));
+        } finally {
+            ReferenceCountUtil.release(request);
+            sessionHandler.resume(ctx);
+        }
+    }
+
     /**
      * Called at the end of successful login/authentication.
      * <p>
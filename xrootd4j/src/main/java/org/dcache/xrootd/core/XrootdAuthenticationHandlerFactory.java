@@ -55,4 +55,9 @@ public class XrootdAuthenticationHandlerFactory implements ChannelHandlerFactory
     public ChannelHandler createHandler() {
         return new XrootdAuthenticationHandler(name, authenticationFactory, proxyDelegationClient);
     }
+
+    @Override
+    public void shutdown() {
+        authenticationFactory.shutdown();
+    }
 }
@@ -17,6 +17,7 @@
 package org.dcache.xrootd.core;
 
 import static org.dcache.xrootd.protocol.XrootdProtocol.FilePerm;
+import static org.dcache.xrootd.protocol.XrootdProtocol.OPAQUE_DELIMITER;
 import static org.dcache.xrootd.protocol.XrootdProtocol.kXR_ArgMissing;
 import static org.dcache.xrootd.protocol.XrootdProtocol.kXR_InvalidRequest;
 import static org.dcache.xrootd.protocol.XrootdProtocol.kXR_NotAuthorized;
@@ -25,10 +26,18 @@ import static org.dcache.xrootd.protocol.XrootdProtocol.kXR_Qxattr;
 
 import io.netty.channel.ChannelHandler.Sharable;
 import io.netty.channel.ChannelHandlerContext;
+import io.netty.util.Attribute;
+import io.netty.util.AttributeKey;
 import java.net.InetSocketAddress;
 import java.security.GeneralSecurityException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import javax.security.auth.Subject;
 import org.dcache.xrootd.plugins.AuthorizationFactory;
 import org.dcache.xrootd.plugins.AuthorizationHandler;
+import org.dcache.xrootd.plugins.AuthorizationScope;
+import org.dcache.xrootd.plugins.PathPermission;
 import org.dcache.xrootd.protocol.messages.CloseRequest;
 import org.dcache.xrootd.protocol.messages.DirListRequest;
 import org.dcache.xrootd.protocol.messages.LocateRequest;
@@ -49,16 +58,52 @@ import org.dcache.xrootd.protocol.messages.StatxRequest;
 import org.dcache.xrootd.protocol.messages.SyncRequest;
 import org.dcache.xrootd.protocol.messages.WriteRequest;
 import org.dcache.xrootd.protocol.messages.XrootdRequest;
-import org.dcache.xrootd.util.OpaqueStringParser;
 import org.dcache.xrootd.util.ParseException;
 
 @Sharable
 public class XrootdAuthorizationHandler extends XrootdRequestHandler {
 
+    /**
+     * Authorization state of a single channel: the reusable
+     * authorization handler, if any, and the cached decisions.
+     */
+    private static class SessionAuthorization {
+
+        private final AuthorizationDecisionCache decisions;
+
+        /*
+         *  Whether the factory's handlers are reusable is learnt from the
+         *  first one created for the channel.
+         */
+        private boolean checked;
+        private AuthorizationHandler handler;
+
+        private SessionAuthorization(AuthorizationDecisionCache decisions) {
+            this.decisions = decisions;
+        }
+    }
+
+    private static final AttributeKey<SessionAuthorization> SESSION_AUTHORIZATION
+          = AttributeKey.valueOf(XrootdAuthorizationHandler.class,
+          "sessionAuthorization");
+
     private final AuthorizationFactory _authorizationFactory;
 
+    private final int _maxCachedDecisions;
+
     public XrootdAuthorizationHandler(AuthorizationFactory authorizationFactory) {
+        this(authorizationFactory, AuthorizationDecisionCache.DEFAULT_MAX_ENTRIES);
+    }
+
+    /**
+     * @param authorizationFactory creates the plugin handlers
+     * @param maxCachedDecisions maximum number of authorization decisions
+     *                           cached per session; zero disables caching.
+     */
+    public XrootdAuthorizationHandler(AuthorizationFactory authorizationFactory,
+          int maxCachedDecisions) {
         _authorizationFactory = authorizationFactory;
+        _maxCachedDecisions = maxCachedDecisions;
     }
 
     @Override
@@ -87,15 +132,13 @@ public class XrootdAuthorizationHandler extends XrootdRequestHandler {
         }
 
         String[] paths = req.getPaths();
-        String[] opaques = req.getOpaques();
+        List<PathPermission> permissions = new ArrayList<>(paths.length);
         for (int i = 0; i < paths.length; i++) {
-            paths[i] = authorize(ctx,
-                  req,
-                  FilePerm.READ,
-                  paths[i],
-                  opaques[i]);
+            permissions.add(new PathPermission(paths[i],
+                  getOpaqueMap(req, i),
+                  FilePerm.READ));
         }
-        req.setPaths(paths);
+        req.setPaths(authorizeAll(ctx, req, permissions));
 
         ctx.fireChannelRead(req);
         return null;
@@ -149,16 +192,20 @@ public class XrootdAuthorizationHandler extends XrootdRequestHandler {
             throw new XrootdException(kXR_ArgMissing, "No target path specified");
         }
 
-        req.setSourcePath(authorize(ctx,
-              req,
-              FilePerm.DELETE,
-              req.getSourcePath(),
-              req.getSourceOpaque()));
-        req.setTargetPath(authorize(ctx,
-              req,
-              FilePerm.WRITE,
-              req.getTargetPath(),
-              req.getTargetOpaque()));
+        try {
+            req.setSourcePath(authorize(ctx,
+                  req,
+                  FilePerm.DELETE,
+                  req.getSourcePath(),
+                  req.getSourceOpaqueMap()));
+            req.setTargetPath(authorize(ctx,
+                  req,
+                  FilePerm.WRITE,
+                  req.getTargetPath(),
+                  req.getTargetOpaqueMap()));
+        } catch (ParseException e) {
+            throw invalidOpaque(e);
+        }
         ctx.fireChannelRead(req);
         return null;
     }
@@ -176,7 +223,38 @@ public class XrootdAuthorizationHandler extends XrootdRequestHandler {
     }
 
     @Override
-    protected Void doOnPrepare(ChannelHandlerContext ctx, PrepareRequest msg) {
+    protected Void doOnPrepare(ChannelHandlerContext ctx, PrepareRequest msg)
+          throws XrootdException {
+        /*
+         *  Prepared paths are authorized like those of any other request.
+         *  When cancelling, the list holds the request id rather than paths.
+         */
+        if (!msg.isCancel()) {
+            String[] plist = msg.getPathList();
+            String[] opaques = new String[plist.length];
+            FilePerm mode = msg.isWriteMode() ? FilePerm.WRITE : FilePerm.READ;
+            List<PathPermission> permissions = new ArrayList<>(plist.length);
+            for (int i = 0; i < plist.length; i++) {
+                String path = plist[i];
+                int pos = path.indexOf(OPAQUE_DELIMITER);
+                if (pos > -1) {
+                    opaques[i] = path.substring(pos + 1);
+                    path = path.substring(0, pos);
+                }
+                permissions.add(new PathPermission(path,
+                      getOpaqueMap(msg, i),
+                      mode));
+            }
+
+            String[] paths = authorizeAll(ctx, msg, permissions);
+            for (int i = 0; i < paths.length; i++) {
+                if (opaques[i] != null) {
+                    paths[i] = paths[i] + (char) OPAQUE_DELIMITER + opaques[i];
+                }
+            }
+            msg.setPathList(paths);
+        }
+
         ctx.fireChannelRead(msg);
         return null;
     }
@@ -186,9 +264,9 @@ public class XrootdAuthorizationHandler extends XrootdRequestHandler {
           throws XrootdException {
         String path = msg.getPath();
         if (!path.startsWith("*")) {
-            path = authorize(ctx, msg, FilePerm.READ, path, msg.getOpaque());
+            path = authorize(ctx, msg, FilePerm.READ, path, getOpaqueMap(msg));
         } else if (!path.equals("*")) {
-            path = authorize(ctx, msg, FilePerm.READ, path.substring(1), msg.getOpaque());
+            path = authorize(ctx, msg, FilePerm.READ, path.substring(1), getOpaqueMap(msg));
         }
         msg.setPath(path);
         ctx.fireChannelRead(msg);
@@ -251,10 +329,14 @@ public class XrootdAuthorizationHandler extends XrootdRequestHandler {
         switch (req.getReqcode()) {
             case kXR_Qcksum:
             case kXR_Qxattr:
-                req.setPath(authorize(ctx, req,
-                      FilePerm.READ,
-                      req.getPath(),
-                      req.getOpaque()));
+                try {
+                    req.setPath(authorize(ctx, req,
+                          FilePerm.READ,
+                          req.getPath(),
+                          req.getOpaqueMap()));
+                } catch (ParseException e) {
+                    throw invalidOpaque(e);
+                }
                 break;
         }
         ctx.fireChannelRead(req);
@@ -275,7 +357,118 @@ public class XrootdAuthorizationHandler extends XrootdRequestHandler {
               request,
               neededPerm,
               request.getPath(),
-              request.getOpaque()));
+              getOpaqueMap(request)));
+    }
+
+    private static Map<String, String> getOpaqueMap(PathRequest request)
+          throws XrootdException {
+        try {
+            return request.getOpaqueMap();
+        } catch (ParseException e) {
+            throw invalidOpaque(e);
+        }
+    }
+
+    private static Map<String, String> getOpaqueMap(StatxRequest request, int index)
+          throws XrootdException {
+        try {
+            return request.getOpaqueMap(index);
+        } catch (ParseException e) {
+            throw invalidOpaque(e);
+        }
+    }
+
+    private static Map<String, String> getOpaqueMap(PrepareRequest request, int index)
+          throws XrootdException {
+        try {
+            return request.getOpaqueMap(index);
+        } catch (ParseException e) {
+            throw invalidOpaque(e);
+        }
+    }
+
+    private static XrootdException invalidOpaque(ParseException e) {
+        return new XrootdException(kXR_InvalidRequest,
+              "Invalid opaque data: " + e.getMessage());
+    }
+
+    /**
+     * Performs authorization check and path mapping for all paths of
+     * a request.  Paths covered by a cached decision are not passed to
+     * the authorization handler; the others are checked with a single
+     * call, and the decisions are cached as for single paths.
+     *
+     * @param ctx The ChannelHandlerContext
+     * @param request The xrootd message
+     * @param permissions The paths, their opaque data and required permissions
+     * @return The paths to which access is granted, in order.
+     * @throws XrootdException if the request is denied
+     */
+    private String[] authorizeAll(ChannelHandlerContext ctx,
+          XrootdRequest request,
+          List<PathPermission> permissions)
+          throws XrootdException {
+        Subject subject = request.getSubject();
+        int requestId = request.getRequestId();
+        String[] mappedPaths = new String[permissions.size()];
+
+        /*
+         *  The positions in the request of the paths left to check.
+         */
+        List<Integer> unchecked = new ArrayList<>(permissions.size());
+        List<PathPermission> toCheck = new ArrayList<>(permissions.size());
+        AuthorizationDecisionCache decisions = getDecisionCache(ctx);
+        for (int i = 0; i < permissions.size(); i++) {
+            PathPermission permission = permissions.get(i);
+            if (decisions != null) {
+                mappedPaths[i] = decisions.get(subject, permission.getPath(),
+                      permission.getOpaque(), requestId, permission.getMode());
+            }
+            if (mappedPaths[i] == null) {
+                unchecked.add(i);
+                toCheck.add(permission);
+            }
+        }
+
+        if (toCheck.isEmpty()) {
+            return mappedPaths;
+        }
+
+        try {
+            AuthorizationHandler handler = getHandler(ctx);
+
+            List<String> granted = handler.authorizeAll(subject,
+                  getDestinationAddress(),
+                  getSourceAddress(),
+                  toCheck,
+                  requestId);
+
+            for (int i = 0; i < toCheck.size(); i++) {
+                PathPermission permission = toCheck.get(i);
+                String mappedPath = granted.get(i);
+                mappedPaths[unchecked.get(i)] = mappedPath;
+
+                if (decisions != null) {
+                    AuthorizationScope scope = handler.getCacheScope(subject,
+                          permission.getPath(), permission.getOpaque(),
+                          permission.getMode(), mappedPath);
+                    if (scope != null) {
+                        decisions.put(subject, permission.getPath(),
+                              permission.getOpaque(), requestId,
+                              permission.getMode(), mappedPath, scope);
+                    }
+                }
+            }
+
+            return mappedPaths;
+        } catch (GeneralSecurityException e) {
+            throw new XrootdException(kXR_NotAuthorized,
+                  "Authorization check failed: " +
+                        e.getMessage());
+        } catch (SecurityException e) {
+            throw new XrootdException(kXR_NotAuthorized,
+                  "Permission denied: " + e.getMessage());
+        }
     }
 
     /**
@@ -285,7 +478,7 @@ public class XrootdAuthorizationHandler extends XrootdRequestHandler {
      * @param request The xrootd message
      * @param neededPerm The permission level that is required for the operation
      * @param path The path to which access is requested
-     * @param opaque Opaque data sent with the request
+     * @param opaque Opaque data sent with the request, already parsed
      * @return The path to which access is granted.
      * @throws XrootdException if the request is denied
      */
@@ -293,22 +486,43 @@ public class XrootdAuthorizationHandler extends XrootdRequestHandler {
           XrootdRequest request,
           FilePerm neededPerm,
           String path,
-          String opaque)
+          Map<String, String> opaque)
           throws XrootdException {
+        Subject subject = request.getSubject();
+        AuthorizationDecisionCache decisions = getDecisionCache(ctx);
+        if (decisions != null) {
+            String mappedPath = decisions.get(subject, path, opaque,
+                  request.getRequestId(), neededPerm);
+            if (mappedPath != null) {
+                return mappedPath;
+            }
+        }
+
         try {
             InetSocketAddress destinationAddress = getDestinationAddress();
             InetSocketAddress sourceAddress = getSourceAddress();
 
-            AuthorizationHandler handler
-                  = _authorizationFactory.createHandler(ctx);
+            AuthorizationHandler handler = getHandler(ctx);
 
-            return handler.authorize(request.getSubject(),
+            String mappedPath = handler.authorize(subject,
                   destinationAddress,
                   sourceAddress,
                   path,
-                  OpaqueStringParser.getOpaqueMap(opaque),
+                  opaque,
                   request.getRequestId(),
                   neededPerm);
+
+            if (decisions != null) {
+                AuthorizationScope scope = handler.getCacheScope(subject,
+                      path, opaque, neededPerm, mappedPath);
+                if (scope != null) {
+                    decisions.put(subject, path, opaque,
+                          request.getRequestId(), neededPerm, mappedPath,
+                          scope);
+                }
+            }
+
+            return mappedPath;
         } catch (GeneralSecurityException e) {
             throw new XrootdException(kXR_NotAuthorized,
                   "Authorization check failed: " +
@@ -316,9 +530,42 @@ public class XrootdAuthorizationHandler extends XrootdRequestHandler {
         } catch (SecurityException e) {
             throw new XrootdException(kXR_NotAuthorized,
                   "Permission denied: " + e.getMessage());
-        } catch (ParseException e) {
-            throw new XrootdException(kXR_InvalidRequest,
-                  "Invalid opaque data: " + e.getMessage());
         }
     }
+
+    private SessionAuthorization getSessionAuthorization(ChannelHandlerContext ctx) {
+        Attribute<SessionAuthorization> attribute
+              = ctx.channel().attr(SESSION_AUTHORIZATION);
+        SessionAuthorization session = attribute.get();
+        if (session == null) {
+            session = new SessionAuthorization(_maxCachedDecisions > 0
+                  ? new AuthorizationDecisionCache(_maxCachedDecisions)
+                  : null);
+            attribute.set(session);
+        }
+        return session;
+    }
+
+    /**
+     * @return the reusable handler of the channel, or else a new handler
+     *         for the current request; the factory is asked only once.
+     */
+    private AuthorizationHandler getHandler(ChannelHandlerContext ctx) {
+        SessionAuthorization session = getSessionAuthorization(ctx);
+        if (session.handler != null) {
+            return session.handler;
+        }
+        AuthorizationHandler handler = _authorizationFactory.createHandler(ctx);
+        if (!session.checked) {
+            session.checked = true;
+            if (handler.isReusable()) {
+                session.handler = handler;
+            }
+        }
+        return handler;
+    }
+
+    private AuthorizationDecisionCache getDecisionCache(ChannelHandlerContext ctx) {
+        return getSessionAuthorization(ctx).decisions;
+    }
 }
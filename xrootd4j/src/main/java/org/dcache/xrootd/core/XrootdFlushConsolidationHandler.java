@@ -0,0 +1,219 @@
+/**
+ * Copyright (C) 2011-2026 dCache.org <support@dcache.org>
+ *
+ * This file is part of xrootd4j.
+ *
+ * xrootd4j is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * xrootd4j is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with xrootd4j.  If
+ * not, see http://www.gnu.org/licenses/.
+ */
+package org.dcache.xrootd.core;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static org.dcache.xrootd.protocol.XrootdProtocol.kXR_attn;
+import static org.dcache.xrootd.protocol.XrootdProtocol.kXR_auth;
+import static org.dcache.xrootd.protocol.XrootdProtocol.kXR_authmore;
+import static org.dcache.xrootd.protocol.XrootdProtocol.kXR_endsess;
+import static org.dcache.xrootd.protocol.XrootdProtocol.kXR_login;
+import static org.dcache.xrootd.protocol.XrootdProtocol.kXR_protocol;
+import static org.dcache.xrootd.protocol.XrootdProtocol.kXR_redirect;
+import static org.dcache.xrootd.protocol.XrootdProtocol.kXR_wait;
+import static org.dcache.xrootd.protocol.XrootdProtocol.kXR_waitresp;
+
+import io.netty.channel.ChannelDuplexHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelPromise;
+import org.dcache.xrootd.protocol.messages.AsyncResponse;
+import org.dcache.xrootd.protocol.messages.XrootdResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Consolidates flushes of xrootd responses.
+ * <p>
+ * Request handlers flush every response they write.  When a client pipelines many small
+ * requests, this results in one system call per response.  This handler defers flushes
+ * while a read burst is in progress and flushes once the burst is complete; flushes
+ * requested outside of a read burst (e.g., by asynchronously completed requests) are
+ * deferred to the end of the current event loop task, so that all responses produced
+ * in the same tick are gathered into a single write.
+ * <p>
+ * Responses which the client is waiting on before it can proceed (session setup,
+ * redirects, waits and asynchronous notifications) are flushed immediately, as is any
+ * response written when the channel is no longer writable or after
+ * {@code explicitFlushAfterResponses} responses have been deferred.
+ * <p>
+ * Must be placed between the {@link XrootdEncoder} and the request handlers, so that it
+ * sees the response objects rather than the encoded buffers.
+ */
+public class XrootdFlushConsolidationHandler extends ChannelDuplexHandler {
+
+    private static final Logger LOGGER =
+          LoggerFactory.getLogger(XrootdFlushConsolidationHandler.class);
+
+    public static final int DEFAULT_EXPLICIT_FLUSH_AFTER_RESPONSES = 256;
+
+    private final int explicitFlushAfterResponses;
+
+    private ChannelHandlerContext ctx;
+    private Runnable flushTask;
+    private boolean flushScheduled;
+    private boolean readInProgress;
+    private boolean flushNow;
+    private int pendingFlushes;
+
+    private long responseCount;
+    private long flushCount;
+
+    public XrootdFlushConsolidationHandler() {
+        this(DEFAULT_EXPLICIT_FLUSH_AFTER_RESPONSES);
+    }
+
+    public XrootdFlushConsolidationHandler(int explicitFlushAfterResponses) {
+        checkArgument(explicitFlushAfterResponses > 0,
+              "explicitFlushAfterResponses must be positive");
+        this.explicitFlushAfterResponses = explicitFlushAfterResponses;
+    }
+
+    /**
+     * @return the number of xrootd responses which have passed through this handler.
+     */
+    public long getResponseCount() {
+        return responseCount;
+    }
+
+    /**
+     * @return the number of flushes actually passed on to the transport.
+     */
+    public long getFlushCount() {
+        return flushCount;
+    }
+
+    @Override
+    public void handlerAdded(ChannelHandlerContext ctx) throws Exception {
+        this.ctx = ctx;
+        flushTask = () -> {
+            flushScheduled = false;
+            flushPending(this.ctx);
+        };
+    }
+
+    @Override
+    public void handlerRemoved(ChannelHandlerContext ctx) throws Exception {
+        flushPending(ctx);
+    }
+
+    @Override
+    public void write(ChannelHandlerContext ctx, Object msg, ChannelPromise promise)
+          throws Exception {
+        if (msg instanceof XrootdResponse<?>) {
+            responseCount++;
+            if (isLatencySensitive((XrootdResponse<?>) msg)) {
+                flushNow = true;
+            }
+        }
+        ctx.write(msg, promise);
+    }
+
+    @Override
+    public void flush(ChannelHandlerContext ctx) throws Exception {
+        pendingFlushes++;
+        if (flushNow || !ctx.channel().isWritable()
+              || pendingFlushes >= explicitFlushAfterResponses) {
+            flushPending(ctx);
+        } else if (!readInProgress && !flushScheduled) {
+            flushScheduled = true;
+            ctx.channel().eventLoop().execute(flushTask);
+        }
+    }
+
+    @Override
+    public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
+        readInProgress = true;
+        ctx.fireChannelRead(msg);
+    }
+
+    @Override
+    public void channelReadComplete(ChannelHandlerContext ctx) throws Exception {
+        readInProgress = false;
+        flushPending(ctx);
+        ctx.fireChannelReadComplete();
+    }
+
+    @Override
+    public void channelWritabilityChanged(ChannelHandlerContext ctx) throws Exception {
+        if (!ctx.channel().isWritable()) {
+            flushPending(ctx);
+        }
+        ctx.fireChannelWritabilityChanged();
+    }
+
+    @Override
+    public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+        LOGGER.debug("{} xrootd responses written with {} flushes.", responseCount, flushCount);
+        ctx.fireChannelInactive();
+    }
+
+    @Override
+    public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) throws Exception {
+        flushPending(ctx);
+        ctx.fireExceptionCaught(cause);
+    }
+
+    @Override
+    public void disconnect(ChannelHandlerContext ctx, ChannelPromise promise) throws Exception {
+        flushPending(ctx);
+        ctx.disconnect(promise);
+    }
+
+    @Override
+    public void close(ChannelHandlerContext ctx, ChannelPromise promise) throws Exception {
+        flushPending(ctx);
+        ctx.close(promise);
+    }
+
+    /**
+     * Whether the response should be flushed right away rather than be batched with
+     * other responses.  Sub-classes may override this to adapt the policy.
+     */
+    protected boolean isLatencySensitive(XrootdResponse<?> response) {
+        if (response instanceof AsyncResponse) {
+            return true;
+        }
+
+        switch (response.getStatus()) {
+            case kXR_attn:
+            case kXR_authmore:
+            case kXR_redirect:
+            case kXR_wait:
+            case kXR_waitresp:
+                return true;
+        }
+
+        switch (response.getRequest().getRequestId()) {
+            case kXR_protocol:
+            case kXR_login:
+            case kXR_auth:
+            case kXR_endsess:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    private void flushPending(ChannelHandlerContext ctx) {
+        flushNow = false;
+        if (pendingFlushes > 0) {
+            pendingFlushes = 0;
+            flushCount++;
+            ctx.flush();
+        }
+    }
+}
@@ -31,11 +31,17 @@ import static org.dcache.xrootd.security.TLSSessionInfo.isTLSOn;
 import static org.dcache.xrootd.security.XrootdSecurityProtocol.ZTN;
 
 import com.google.common.collect.Maps;
+import com.google.common.io.BaseEncoding;
+import io.netty.channel.ChannelConfig;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.ChannelPipeline;
+import io.netty.util.ReferenceCountUtil;
+import java.util.ArrayDeque;
+import java.util.Deque;
 import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.stream.Collectors;
 import javax.security.auth.Subject;
@@ -51,6 +57,8 @@ import org.dcache.xrootd.security.BufferDecrypter;
 import org.dcache.xrootd.security.RequiresTLS;
 import org.dcache.xrootd.security.SigningPolicy;
 import org.dcache.xrootd.security.TLSSessionInfo;
+import org.dcache.xrootd.util.OpaqueStringParser;
+import org.dcache.xrootd.util.ParseException;
 import org.dcache.xrootd.util.UserNameUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -58,16 +66,31 @@ import org.slf4j.LoggerFactory;
 /**
  * Manages kXR_login and the login session.  This handler is responsible for adding the
  * correct authentication handler to the pipeline based on the client protocol interaction.
+ * <p>
+ * If a resumption grace period is set, the authenticated session of a closed connection
+ * is kept for that long.  A client reconnecting within the period may present the id of
+ * the session in the login CGI under {@link #RESUME_SESSION_KEY}; it then continues with
+ * the authenticated subject without kXR_auth.  Since the id is the only proof offered,
+ * resumption is limited to sessions whose id never went over the wire in the clear: both
+ * the original login and the resuming login must be protected by TLS.  A session can be
+ * presented only once, by the same user.
  */
 public class XrootdSessionHandler extends XrootdRequestHandler {
 
     public static final String SESSION_HANDLER = "sessionHandler";
 
+    /**
+     * Login CGI key of the (hex encoded) id of the session to be resumed.
+     */
+    public static final String RESUME_SESSION_KEY = "xrd.resume";
+
     private static final Logger LOGGER = LoggerFactory.getLogger(XrootdSessionHandler.class);
 
     private static final ConcurrentMap<XrootdSessionIdentifier, XrootdSession> SESSIONS =
           Maps.newConcurrentMap();
 
+    private static final ResumableSessions RESUMABLE = new ResumableSessions();
+
     private static final XrootdSessionIdentifier CURRENT_SESSION_PLACEHOLDER =
           new XrootdSessionIdentifier(new byte[SESSION_ID_SIZE]);
 
@@ -84,13 +107,122 @@ public class XrootdSessionHandler extends XrootdRequestHandler {
     private State state = State.NO_LOGIN;
     private XrootdAuthenticationHandler currentHandler;
     private String currentProtocol;
+    private boolean loginOverTls;
+    private long resumptionGracePeriod;
+
+    /*
+     *  Messages received while an authentication step completes
+     *  asynchronously; they are processed in order once it has completed.
+     */
+    private final Deque<Object> deferred = new ArrayDeque<>();
+    private boolean suspended;
+    private boolean autoReadDisabled;
+    private boolean restoreAutoRead;
 
     @Override
     public void channelInactive(ChannelHandlerContext ctx) throws Exception {
         SESSIONS.remove(sessionId);
+        if (resumptionGracePeriod > 0 && state == State.AUTH) {
+            RESUMABLE.park(session, loginOverTls, resumptionGracePeriod, ctx.executor());
+        }
+        Object msg;
+        while ((msg = deferred.poll()) != null) {
+            ReferenceCountUtil.release(msg);
+        }
         super.channelInactive(ctx);
     }
 
+    @Override
+    public void channelRead(ChannelHandlerContext ctx, Object msg) {
+        if (suspended) {
+            deferred.add(msg);
+        } else {
+            super.channelRead(ctx, msg);
+        }
+    }
+
+    /**
+     * Stops processing of requests while an authentication step completes
+     * off the event loop, so that kXR_auth keeps its place in the order
+     * of requests.  Reading from the channel and decoding are paused;
+     * requests which have already been decoded are deferred.
+     *
+     * Must be called on the event loop of the channel.
+     */
+    public void suspend(ChannelHandlerContext ctx) {
+        if (suspended) {
+            return;
+        }
+        suspended = true;
+
+        if (!autoReadDisabled) {
+            ChannelConfig config = ctx.channel().config();
+            restoreAutoRead = config.isAutoRead();
+            autoReadDisabled = true;
+            config.setAutoRead(false);
+        }
+
+        AbstractXrootdDecoder decoder = ctx.pipeline().get(AbstractXrootdDecoder.class);
+        if (decoder != null) {
+            decoder.suspendDecoding();
+        }
+    }
+
+    /**
+     * Resumes processing of requests after {@link #suspend}, starting with
+     * the deferred ones.
+     *
+     * Must be called on the event loop of the channel.
+     */
+    public void resume(ChannelHandlerContext ctx) {
+        if (!suspended) {
+            return;
+        }
+        suspended = false;
+
+        ChannelHandlerContext sessionCtx = ctx.pipeline().context(this);
+        if (sessionCtx == null) {
+            return;
+        }
+
+        Object msg;
+        while (!suspended && (msg = deferred.poll()) != null) {
+            super.channelRead(sessionCtx, msg);
+        }
+
+        if (suspended) {
+            return;
+        }
+
+        /*
+         *  The decoder may have been replaced when authentication completed.
+         */
+        ChannelPipeline pipeline = ctx.pipeline();
+        AbstractXrootdDecoder decoder = pipeline.get(AbstractXrootdDecoder.class);
+        if (decoder != null) {
+            try {
+                decoder.resumeDecoding(pipeline.context(decoder));
+            } catch (Exception e) {
+                pipeline.fireExceptionCaught(e);
+            }
+        }
+
+        if (!suspended && autoReadDisabled) {
+            autoReadDisabled = false;
+            if (restoreAutoRead) {
+                ctx.channel().config().setAutoRead(true);
+            }
+        }
+    }
+
+    /**
+     * @param gracePeriod for which the authenticated session of a closed
+     *                    connection can be resumed; zero disables resumption.
+     */
+    public void setResumptionGracePeriod(long gracePeriod, TimeUnit unit) {
+        resumptionGracePeriod = unit.toMillis(gracePeriod);
+    }
+
     public void add(XrootdAuthenticationHandler handler) {
         handlerMap.put(handler.getProtocol(), handler);
     }
@@ -188,6 +320,12 @@ public class XrootdSessionHandler extends XrootdRequestHandler {
                 request.setUserName(UserNameUtils.checkUsernameValid(request.getUserName()));
                 session = new XrootdSession(sessionId, ctx.channel(), request);
                 request.setSession(session);
+                loginOverTls = isTLSOn(ctx);
+                if (resumeSession(request)) {
+                    SESSIONS.put(sessionId, session);
+                    state = State.AUTH;
+                    return new LoginResponse(request, sessionId, "");
+                }
                 LoginResponse response = new LoginResponse(request, sessionId,
                       protocolString());
                 SESSIONS.put(sessionId, session);
@@ -218,6 +356,8 @@ public class XrootdSessionHandler extends XrootdRequestHandler {
                 throw new XrootdException(kXR_NotAuthorized, "not session owner");
             }
             session.getChannel().close();
+        } else {
+            RESUMABLE.discard(id, this.session.getSubject());
         }
 
         /*
@@ -274,22 +414,10 @@ public class XrootdSessionHandler extends XrootdRequestHandler {
             if (!(authHandler instanceof NoAuthenticationHandler) && !isTLSOn(ctx)
                   && signingPolicy.isSigningOn()) {
                 /*
-                 * Add the sigver decoder to the pipeline and remove the original
-                 * message decoder.
-                 *
                  * We only do this if we are in fact enforcing a protocol;
                  * hence the check that the handler is not the NOP placeholder.
                  */
-                BufferDecrypter decrypter = authHandler.getDecrypter();
-                ChannelPipeline pipeline = ctx.pipeline();
-                XrootdDecoder decoder = (XrootdDecoder) pipeline.get("decoder");
-                XrootdSigverDecoder sigverDecoder = new XrootdSigverDecoder(signingPolicy,
-                      decrypter);
-                sigverDecoder.setMaxWriteBufferSize(decoder.getMaxWriteBufferSize());
-                ctx.pipeline().addAfter("decoder", "sigverDecoder",
-                      sigverDecoder);
-                ctx.pipeline().remove("decoder");
-                LOGGER.debug("switched decoder to sigverDecoder, decrypter {}.", decrypter);
+                switchToSigverDecoder(ctx, authHandler.getDecrypter());
             }
         }
         ctx.pipeline().remove(currentHandler);
@@ -312,6 +440,56 @@ public class XrootdSessionHandler extends XrootdRequestHandler {
         this.tlsSessionInfo = tlsSessionInfo;
     }
 
+    /**
+     * Adds the sigver decoder to the pipeline and removes the original
+     * message decoder.
+     */
+    private void switchToSigverDecoder(ChannelHandlerContext ctx,
+          BufferDecrypter decrypter) {
+        ChannelPipeline pipeline = ctx.pipeline();
+        XrootdDecoder decoder = (XrootdDecoder) pipeline.get("decoder");
+        XrootdSigverDecoder sigverDecoder = new XrootdSigverDecoder(signingPolicy,
+              decrypter);
+        sigverDecoder.setMaxWriteBufferSize(decoder.getMaxWriteBufferSize());
+        sigverDecoder.setStreamingWrites(decoder.isStreamingWrites());
+        pipeline.addAfter("decoder", "sigverDecoder", sigverDecoder);
+        pipeline.remove("decoder");
+        LOGGER.debug("switched decoder to sigverDecoder, decrypter {}.", decrypter);
+    }
+
+    /**
+     * @return true if the login presented a resumable session and the
+     *         subject of that session has been taken over.
+     */
+    private boolean resumeSession(LoginRequest request) {
+        if (resumptionGracePeriod <= 0) {
+            return false;
+        }
+
+        XrootdSessionIdentifier id;
+        try {
+            String value = OpaqueStringParser.getOpaqueMap(request.getToken())
+                  .get(RESUME_SESSION_KEY);
+            if (value == null) {
+                return false;
+            }
+            id = new XrootdSessionIdentifier(BaseEncoding.base16().decode(value.toUpperCase()));
+        } catch (ParseException | IllegalArgumentException e) {
+            LOGGER.debug("Ignoring malformed session to resume: {}.", e.getMessage());
+            return false;
+        }
+
+        XrootdSession resumed = RESUMABLE.take(id, request.getUserName(), loginOverTls);
+        if (resumed == null) {
+            return false;
+        }
+
+        session.setSubject(resumed.getSubject());
+        session.setDelegatedCredential(resumed.getDelegatedCredential());
+        LOGGER.debug("Resumed session {} as {}.", id, sessionId);
+        return true;
+    }
+
     private String protocolString() {
         String protocols =
               handlerMap.values().stream().map(h -> h.getHandler())
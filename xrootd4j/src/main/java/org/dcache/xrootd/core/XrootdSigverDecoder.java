@@ -16,6 +16,7 @@
  */
 package org.dcache.xrootd.core;
 
+import static org.dcache.xrootd.protocol.XrootdProtocol.CLIENT_REQUEST_LEN;
 import static org.dcache.xrootd.protocol.XrootdProtocol.kXR_DecryptErr;
 import static org.dcache.xrootd.protocol.XrootdProtocol.kXR_SigVerErr;
 import static org.dcache.xrootd.protocol.XrootdProtocol.kXR_write;
@@ -24,14 +25,16 @@ import static org.dcache.xrootd.security.XrootdSecurityProtocol.kXR_nodata;
 
 import com.google.common.base.Strings;
 import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
 import io.netty.channel.ChannelFutureListener;
 import io.netty.channel.ChannelHandlerContext;
+import java.nio.ByteBuffer;
+import java.security.DigestException;
 import java.security.InvalidAlgorithmParameterException;
 import java.security.InvalidKeyException;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.security.NoSuchProviderException;
-import java.util.Arrays;
 import java.util.Formatter;
 import java.util.List;
 import javax.crypto.BadPaddingException;
@@ -67,9 +70,14 @@ public class XrootdSigverDecoder extends AbstractXrootdDecoder {
     private final BufferDecrypter decryptionHandler;
     private final SigningPolicy signingPolicy;
 
+    private final ByteBuffer seqnoBuffer = ByteBuffer.allocate(8);
+
     private SigverRequest currentSigverRequest;
     private long lastSeqNo = -1L;
 
+    private MessageDigest digest;
+    private byte[] hash;
+
     public XrootdSigverDecoder(SigningPolicy signingPolicy,
           BufferDecrypter decryptionHandler) {
         this.signingPolicy = signingPolicy;
@@ -89,6 +97,11 @@ public class XrootdSigverDecoder extends AbstractXrootdDecoder {
             return;
         }
 
+        /*
+         *  Continuation segments of a write carry no header and are covered
+         *  by the signature verified for the first segment.
+         */
+        boolean isContinuation = isWriteContinuation();
         ByteBuf frame = in.readSlice(length);
         XrootdRequest request = getRequest(frame);
 
@@ -103,11 +116,10 @@ public class XrootdSigverDecoder extends AbstractXrootdDecoder {
 
             int requestId = request.getRequestId();
 
-            if (signingPolicy.requiresSigning(request)) {
+            if (!isContinuation && signingPolicy.requiresSigning(request)) {
                 verifySignedHash(request.getStreamId(),
                       requestId,
-                      frame,
-                      ctx);
+                      frame);
             }
         } catch (XrootdException e) {
             ErrorResponse<?> response = new ErrorResponse<>(ctx, request, e.getError(),
@@ -150,8 +162,7 @@ public class XrootdSigverDecoder extends AbstractXrootdDecoder {
 
     private void verifySignedHash(int streamId,
           int requestId,
-          ByteBuf frame,
-          ChannelHandlerContext ctx)
+          ByteBuf frame)
           throws XrootdException {
         boolean forceSigning = signingPolicy.isForceSigning();
 
@@ -204,13 +215,13 @@ public class XrootdSigverDecoder extends AbstractXrootdDecoder {
         }
 
         if (received != null) {
-            byte[] contents = extractContents(requestId,
+            int length = getContentLength(requestId,
                   currentSigverRequest.getFlags(),
                   frame);
             compareHashes(received,
                   generateHash(currentSigverRequest.getSeqno(),
-                        contents,
-                        ctx));
+                        frame,
+                        length));
         }
 
         LOGGER.debug("verify signed hash for request {} on stream {}, "
@@ -229,7 +240,10 @@ public class XrootdSigverDecoder extends AbstractXrootdDecoder {
                   + " received hash length does not match generated hash.");
         }
 
-        if (!Arrays.equals(received, generated)) {
+        /*
+         *  Constant-time comparison.
+         */
+        if (!MessageDigest.isEqual(received, generated)) {
             LOGGER.info("compareHashes, do not match:\n\treceived {}\n\tgenerated {}",
                   printHex(received),
                   printHex(generated));
@@ -238,12 +252,10 @@ public class XrootdSigverDecoder extends AbstractXrootdDecoder {
         }
     }
 
-    private byte[] extractContents(int requestId,
+    private int getContentLength(int requestId,
           int flags,
           ByteBuf frame)
           throws XrootdException {
-        int len;
-
         /*
          *  If this is a write request, kXR_nodata should be set;
          *  extract only the header.
@@ -255,14 +267,10 @@ public class XrootdSigverDecoder extends AbstractXrootdDecoder {
                             + " kXR_nodata not set, "
                             + "cannot verify write request.");
             }
-            len = 24;
-        } else {
-            len = frame.readableBytes();
+            return CLIENT_REQUEST_LEN;
         }
 
-        byte[] contents = new byte[len];
-        frame.getBytes(0, contents);
-        return contents;
+        return frame.readableBytes();
     }
 
     /**
@@ -270,25 +278,41 @@ public class XrootdSigverDecoder extends AbstractXrootdDecoder {
      * request header, and 3. the request payload, in that exact order.
      * <p>
      * In this case, 2 + 3 are given in order by the frame buffer, which contains the raw bytes of
-     * the request.
+     * the request.  The frame is hashed in place through its NIO buffers; the digest and the
+     * buffers holding the sequence number and the resulting hash are reused for the lifetime
+     * of the channel.
      */
     private byte[] generateHash(long seqno,
-          byte[] payload,
-          ChannelHandlerContext ctx)
+          ByteBuf frame,
+          int length)
           throws XrootdException {
-        ByteBuf buffer = ctx.alloc().buffer(8 + payload.length);
         try {
-            buffer.writeLong(seqno);
-            buffer.writeBytes(payload);
-            byte[] contents = new byte[buffer.readableBytes()];
-            buffer.getBytes(0, contents);
-
-            MessageDigest digest = MessageDigest.getInstance("SHA-256");
-            return digest.digest(contents);
-        } catch (NoSuchAlgorithmException e) {
+            if (digest == null) {
+                digest = MessageDigest.getInstance("SHA-256");
+                hash = new byte[digest.getDigestLength()];
+            }
+
+            seqnoBuffer.clear();
+            seqnoBuffer.putLong(seqno);
+            seqnoBuffer.flip();
+            digest.update(seqnoBuffer);
+
+            if (frame.nioBufferCount() > 0) {
+                for (ByteBuffer buffer : frame.nioBuffers(0, length)) {
+                    digest.update(buffer);
+                }
+            } else {
+                digest.update(ByteBufUtil.getBytes(frame, 0, length));
+            }
+
+            digest.digest(hash, 0, hash.length);
+            return hash;
+        } catch (NoSuchAlgorithmException | DigestException e) {
             throw new XrootdException(kXR_SigVerErr, e.toString());
         } finally {
-            buffer.release();
+            if (digest != null) {
+                digest.reset();
+            }
         }
     }
 
@@ -19,4 +19,11 @@ package org.dcache.xrootd.plugins;
 public interface AuthenticationFactory {
 
     AuthenticationHandler createHandler(ProxyDelegationClient client);
+
+    /**
+     * Releases resources held by the factory, such as background
+     * threads.  No handlers are created after this call.
+     */
+    default void shutdown() {
+    }
 }
@@ -65,4 +65,16 @@ public interface AuthenticationHandler {
      * Indicates if the authentication process completed successfully.
      */
     public boolean isCompleted();
+
+    /**
+     * Indicates whether {@link #authenticate} may be called on a thread
+     * other than the event loop of the channel, so that expensive
+     * signature and certificate verification does not delay other
+     * channels.  Calls for the same handler never overlap.
+     *
+     * The default is <code>false</code>.
+     */
+    default boolean isOffloadable() {
+        return false;
+    }
 }
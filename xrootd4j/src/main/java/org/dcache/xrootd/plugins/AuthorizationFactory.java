@@ -33,7 +33,8 @@ public interface AuthorizationFactory {
 
     /**
      * Creates a new authorization handler. The authorization handler
-     * is only valid for a single request.
+     * is only valid for a single request, unless it declares itself
+     * reusable through {@link AuthorizationHandler#isReusable()}.
      *
      * @param ctx channel handler context
      * @return the new authorization handler instance
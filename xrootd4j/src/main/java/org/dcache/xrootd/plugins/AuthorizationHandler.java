@@ -18,6 +18,8 @@ package org.dcache.xrootd.plugins;
 
 import java.net.InetSocketAddress;
 import java.security.GeneralSecurityException;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 import javax.security.auth.Subject;
 import org.dcache.xrootd.core.XrootdException;
@@ -55,4 +57,75 @@ public interface AuthorizationHandler {
           String path, Map<String, String> opaque,
           int request, FilePerm mode)
           throws XrootdException, SecurityException, GeneralSecurityException;
+
+    /**
+     * Authorization and path mapping hook for requests carrying several
+     * paths, such as kXR_statx and kXR_prepare.
+     *
+     * The default implementation calls {@link #authorize} for each path.
+     * Plugins whose decision involves expensive work common to all paths
+     * (e.g., verifying a token) should override this method to do that
+     * work only once.  Paths covered by a decision cached through
+     * {@link #getCacheScope} are not passed to this method.
+     *
+     * @param subject the user
+     * @param localAddress local socket address of client connection
+     * @param remoteAddress remote socket address of client connection
+     * @param permissions the paths, their opaque data and the requested modes
+     * @param request xrootd request id of the operation
+     * @return the mapped paths, in the same order as the permissions
+     * @throws SecurityException when the requested access to any path is denied
+     * @throws GeneralSecurityException when the process of
+     *         authorizing fails
+     * @throws XrootdException when some specific error should be propagated
+     *         back to the xrootd client.
+     */
+    default List<String> authorizeAll(Subject subject,
+          InetSocketAddress localAddress,
+          InetSocketAddress remoteAddress,
+          List<PathPermission> permissions,
+          int request)
+          throws XrootdException, SecurityException, GeneralSecurityException {
+        List<String> paths = new ArrayList<>(permissions.size());
+        for (PathPermission permission : permissions) {
+            paths.add(authorize(subject, localAddress, remoteAddress,
+                  permission.getPath(), permission.getOpaque(),
+                  request, permission.getMode()));
+        }
+        return paths;
+    }
+
+    /**
+     * Whether this handler may be used for all requests of the channel
+     * for which it was created, rather than for a single request.
+     *
+     * The default is <code>false</code>.
+     */
+    default boolean isReusable() {
+        return false;
+    }
+
+    /**
+     * Called after {@link #authorize} or {@link #authorizeAll} granted
+     * access to a path, to determine whether and for which paths this
+     * decision may be reused for later requests of the same session with
+     * the same subject, request type, permission and opaque data.
+     *
+     * The default implementation returns <code>null</code>, meaning
+     * that the decision must not be reused.
+     *
+     * @param subject the user
+     * @param path the file which was authorized
+     * @param opaque the opaque data of the request
+     * @param mode the permission which was granted
+     * @param mappedPath the path to which access was granted
+     * @return the scope of the decision, or <code>null</code>
+     */
+    default AuthorizationScope getCacheScope(Subject subject,
+          String path,
+          Map<String, String> opaque,
+          FilePerm mode,
+          String mappedPath) {
+        return null;
+    }
 }
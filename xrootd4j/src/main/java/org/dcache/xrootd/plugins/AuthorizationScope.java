@@ -0,0 +1,73 @@
+/**
+ * Copyright (C) 2011-2026 dCache.org <support@dcache.org>
+ *
+ * This file is part of xrootd4j.
+ *
+ * xrootd4j is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * xrootd4j is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with xrootd4j.  If
+ * not, see http://www.gnu.org/licenses/.
+ */
+package org.dcache.xrootd.plugins;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static java.util.Objects.requireNonNull;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Describes for which paths and for how long a positive authorization
+ * decision may be reused within the same session.
+ *
+ * A decision taken for a path covers the prefix itself and every path
+ * beneath it, provided the subject, the requested permission and the
+ * opaque data are the same.  Paths beneath the prefix are mapped by
+ * replacing the prefix with the mapped prefix.
+ */
+public class AuthorizationScope {
+
+    private final String prefix;
+    private final String mappedPrefix;
+    private final long lifetime;
+
+    /**
+     * @param prefix directory covered by the decision
+     * @param mappedPrefix the directory to which the prefix is mapped
+     * @param lifetime for how long the decision may be reused
+     * @param unit of the lifetime
+     */
+    public AuthorizationScope(String prefix, String mappedPrefix,
+          long lifetime, TimeUnit unit) {
+        checkArgument(lifetime > 0, "lifetime must be positive");
+        this.prefix = requireNonNull(prefix);
+        this.mappedPrefix = requireNonNull(mappedPrefix);
+        this.lifetime = unit.toNanos(lifetime);
+    }
+
+    public String getPrefix() {
+        return prefix;
+    }
+
+    public String getMappedPrefix() {
+        return mappedPrefix;
+    }
+
+    /**
+     * @return the lifetime in nanoseconds
+     */
+    public long getLifetime() {
+        return lifetime;
+    }
+
+    @Override
+    public String toString() {
+        return "(" + prefix + " -> " + mappedPrefix + ", "
+              + TimeUnit.NANOSECONDS.toMillis(lifetime) + " ms)";
+    }
+}
@@ -38,4 +38,11 @@ public interface ChannelHandlerFactory {
      * @return the new channel handler instance
      */
     ChannelHandler createHandler();
+
+    /**
+     * Releases resources held by the factory, such as background
+     * threads.  No handlers are created after this call.
+     */
+    default void shutdown() {
+    }
 }
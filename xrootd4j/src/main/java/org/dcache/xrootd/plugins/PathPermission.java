@@ -0,0 +1,56 @@
+/**
+ * Copyright (C) 2011-2026 dCache.org <support@dcache.org>
+ *
+ * This file is part of xrootd4j.
+ *
+ * xrootd4j is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * xrootd4j is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with xrootd4j.  If
+ * not, see http://www.gnu.org/licenses/.
+ */
+package org.dcache.xrootd.plugins;
+
+import static java.util.Objects.requireNonNull;
+
+import java.util.Map;
+import org.dcache.xrootd.protocol.XrootdProtocol.FilePerm;
+
+/**
+ * A single path of a multi-path request, together with its opaque data
+ * and the permission required on it.
+ */
+public class PathPermission {
+
+    private final String path;
+    private final Map<String, String> opaque;
+    private final FilePerm mode;
+
+    public PathPermission(String path, Map<String, String> opaque, FilePerm mode) {
+        this.path = requireNonNull(path);
+        this.opaque = requireNonNull(opaque);
+        this.mode = requireNonNull(mode);
+    }
+
+    public String getPath() {
+        return path;
+    }
+
+    public Map<String, String> getOpaque() {
+        return opaque;
+    }
+
+    public FilePerm getMode() {
+        return mode;
+    }
+
+    @Override
+    public String toString() {
+        return "(" + path + ", " + opaque + ", " + mode + ")";
+    }
+}
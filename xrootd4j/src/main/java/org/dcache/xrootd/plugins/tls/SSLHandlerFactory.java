@@ -16,11 +16,24 @@
  */
 package org.dcache.xrootd.plugins.tls;
 
+import com.google.common.collect.ImmutableList;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import io.netty.buffer.ByteBufAllocator;
 import io.netty.channel.ChannelHandler;
+import io.netty.handler.ssl.OpenSsl;
+import io.netty.handler.ssl.OpenSslSessionContext;
+import io.netty.handler.ssl.OpenSslSessionTicketKey;
 import io.netty.handler.ssl.SslContext;
+import io.netty.handler.ssl.SslContextBuilder;
+import io.netty.handler.ssl.SslProvider;
+import io.netty.handler.ssl.SupportedCipherSuiteFilter;
+import java.security.SecureRandom;
 import java.util.List;
 import java.util.Properties;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Supplier;
 
 import org.dcache.xrootd.plugins.ChannelHandlerFactory;
@@ -33,13 +46,36 @@ import org.dcache.xrootd.plugins.ChannelHandlerFactory;
  *  (server) or initiate the TLS handshake (client).
  *  <p/>
  *  Construction of the SSL Context is implementation specific, so
- *  a subclass of this class must be provided.
+ *  a subclass of this class must be provided.  Subclasses may apply
+ *  {@link #withPerformanceDefaults} to their context builder and
+ *  {@link #enableSessionTickets} to the resulting server context; the
+ *  latter starts a background thread which {@link #shutdown} stops.
  */
 public abstract class SSLHandlerFactory implements ChannelHandlerFactory {
 
     public static final String SERVER_TLS = "tls";
     public static final String CLIENT_TLS = "tls-client";
 
+    /**
+     * AEAD cipher suites, AES-GCM first as it is accelerated by AES-NI.
+     */
+    public static final List<String> PREFERRED_CIPHERS = ImmutableList.of(
+          "TLS_AES_128_GCM_SHA256",
+          "TLS_AES_256_GCM_SHA384",
+          "TLS_ECDHE_ECDSA_WITH_AES_128_GCM_SHA256",
+          "TLS_ECDHE_RSA_WITH_AES_128_GCM_SHA256",
+          "TLS_ECDHE_ECDSA_WITH_AES_256_GCM_SHA384",
+          "TLS_ECDHE_RSA_WITH_AES_256_GCM_SHA384",
+          "TLS_CHACHA20_POLY1305_SHA256",
+          "TLS_ECDHE_ECDSA_WITH_CHACHA20_POLY1305_SHA256",
+          "TLS_ECDHE_RSA_WITH_CHACHA20_POLY1305_SHA256");
+
+    public static final long DEFAULT_SESSION_CACHE_SIZE = 16384;
+    public static final long DEFAULT_SESSION_TIMEOUT_IN_SECONDS = 300;
+    public static final long DEFAULT_TICKET_KEY_ROTATION_IN_SECONDS = 3600;
+
+    private static final SecureRandom RANDOM = new SecureRandom();
+
     public static SSLHandlerFactory getHandlerFactory(String name,
           List<ChannelHandlerFactory> list) {
         return (SSLHandlerFactory) list.stream()
@@ -51,6 +87,9 @@ public abstract class SSLHandlerFactory implements ChannelHandlerFactory {
     protected boolean startTls;
     protected String name;
 
+    private ScheduledExecutorService ticketKeyRotation;
+    private ScheduledFuture<?> ticketKeyTask;
+
     public void initialize(Properties properties, boolean startTls) throws Exception {
         this.startTls = startTls;
         name = startTls ? SERVER_TLS : CLIENT_TLS;
@@ -69,7 +108,88 @@ public abstract class SSLHandlerFactory implements ChannelHandlerFactory {
 
     @Override
     public ChannelHandler createHandler() {
-        return sslContextSupplier.get().newHandler(ByteBufAllocator.DEFAULT);
+        return createHandler(ByteBufAllocator.DEFAULT);
+    }
+
+    /**
+     * @param allocator of the channel the handler is added to, so that
+     *                  TLS records are allocated like the rest of its buffers.
+     */
+    public ChannelHandler createHandler(ByteBufAllocator allocator) {
+        return sslContextSupplier.get().newHandler(allocator);
+    }
+
+    /**
+     * Prefers the OpenSSL (BoringSSL) provider when it is available, restricts
+     * the cipher suites to {@link #PREFERRED_CIPHERS} and enables a session
+     * cache, so that reconnecting clients can skip the full handshake.
+     */
+    public static SslContextBuilder withPerformanceDefaults(SslContextBuilder builder) {
+        return builder.sslProvider(OpenSsl.isAvailable() ? SslProvider.OPENSSL : SslProvider.JDK)
+              .ciphers(PREFERRED_CIPHERS, SupportedCipherSuiteFilter.INSTANCE)
+              .sessionCacheSize(DEFAULT_SESSION_CACHE_SIZE)
+              .sessionTimeout(DEFAULT_SESSION_TIMEOUT_IN_SECONDS);
+    }
+
+    /**
+     * Enables session tickets with a key which is replaced every rotation
+     * period.  The previous key remains valid for decryption for another
+     * period, so that tickets issued shortly before a rotation are still
+     * accepted.  Has no effect unless the context is provided by OpenSSL.
+     * <p/>
+     * Only the keys of the context passed last are rotated; the factory
+     * is expected to hand out handlers of that context only.
+     */
+    protected synchronized void enableSessionTickets(SslContext context, long rotation,
+          TimeUnit unit) {
+        if (!(context.sessionContext() instanceof OpenSslSessionContext)) {
+            return;
+        }
+
+        OpenSslSessionContext sessionContext
+              = (OpenSslSessionContext) context.sessionContext();
+        OpenSslSessionTicketKey[] current = {newTicketKey()};
+        sessionContext.setTicketKeys(current[0]);
+
+        if (ticketKeyRotation == null) {
+            ticketKeyRotation = Executors.newSingleThreadScheduledExecutor(
+                  new ThreadFactoryBuilder().setNameFormat("tls-ticket-keys-%d")
+                        .setDaemon(true).build());
+        }
+        if (ticketKeyTask != null) {
+            ticketKeyTask.cancel(false);
+        }
+        ticketKeyTask = ticketKeyRotation.scheduleAtFixedRate(() -> {
+            OpenSslSessionTicketKey previous = current[0];
+            current[0] = newTicketKey();
+            sessionContext.setTicketKeys(current[0], previous);
+        }, rotation, rotation, unit);
+    }
+
+    /**
+     * Stops the rotation of session ticket keys.  The current keys stay
+     * in use.
+     */
+    @Override
+    public synchronized void shutdown() {
+        if (ticketKeyTask != null) {
+            ticketKeyTask.cancel(false);
+            ticketKeyTask = null;
+        }
+        if (ticketKeyRotation != null) {
+            ticketKeyRotation.shutdownNow();
+            ticketKeyRotation = null;
+        }
+    }
+
+    private static OpenSslSessionTicketKey newTicketKey() {
+        byte[] name = new byte[OpenSslSessionTicketKey.NAME_SIZE];
+        byte[] hmacKey = new byte[OpenSslSessionTicketKey.HMAC_KEY_SIZE];
+        byte[] aesKey = new byte[OpenSslSessionTicketKey.AES_KEY_SIZE];
+        RANDOM.nextBytes(name);
+        RANDOM.nextBytes(hmacKey);
+        RANDOM.nextBytes(aesKey);
+        return new OpenSslSessionTicketKey(name, hmacKey, aesKey);
     }
 
     /**
@@ -22,6 +22,7 @@ import static org.dcache.xrootd.protocol.messages.LoginResponse.AUTHN_PROTOCOL_T
 
 import io.netty.buffer.ByteBuf;
 import io.netty.buffer.Unpooled;
+import io.netty.util.ReferenceCounted;
 
 /**
  *  The structure of the authentication request according to the protocol:
@@ -36,8 +37,13 @@ import io.netty.buffer.Unpooled;
  *  Different security protocols will use the cred data differently.
  *  That functionality should not be here, but in the specific protocol's
  *  processing.
+ *  <p/>
+ *  The credential is a retained slice of the frame, so that protocols
+ *  can parse it without copying.  It is released together with the
+ *  request.
  */
-public class AuthenticationRequest extends AbstractXrootdRequest {
+public class AuthenticationRequest extends AbstractXrootdRequest
+      implements ReferenceCounted {
 
     private final String credType;
     private final int credLen;
@@ -56,12 +62,11 @@ public class AuthenticationRequest extends AbstractXrootdRequest {
         credLen = buffer.readInt();
 
         if (credLen == 0) {
-            credential = null;
+            credential = Unpooled.EMPTY_BUFFER;
             return;
         }
 
-        credential = Unpooled.buffer(credLen);
-        credential.writeBytes(buffer);
+        credential = buffer.readRetainedSlice(credLen);
     }
 
     public String getCredType() {
@@ -72,13 +77,58 @@ public class AuthenticationRequest extends AbstractXrootdRequest {
         return credLen;
     }
 
+    /**
+     * @return a view of the credential which is valid until this request
+     *         has been released; null if the credential is empty.
+     */
     public ByteBuf getCredentialBuffer() {
-        return credential;
+        return credLen == 0 ? null : credential;
     }
 
+    /**
+     * @deprecated the credential buffer is now released together with
+     *             the request; this method does nothing.
+     */
+    @Deprecated
     public void releaseBuffer() {
-        if (credential != null) {
-            credential.release();
-        }
+    }
+
+    @Override
+    public int refCnt() {
+        return credential.refCnt();
+    }
+
+    @Override
+    public boolean release() {
+        return credential.release();
+    }
+
+    @Override
+    public boolean release(int decrement) {
+        return credential.release(decrement);
+    }
+
+    @Override
+    public AuthenticationRequest retain(int increment) {
+        credential.retain(increment);
+        return this;
+    }
+
+    @Override
+    public AuthenticationRequest retain() {
+        credential.retain();
+        return this;
+    }
+
+    @Override
+    public ReferenceCounted touch() {
+        credential.touch();
+        return this;
+    }
+
+    @Override
+    public ReferenceCounted touch(Object hint) {
+        credential.touch(hint);
+        return this;
     }
 }
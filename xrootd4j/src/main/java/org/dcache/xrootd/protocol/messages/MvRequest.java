@@ -20,6 +20,10 @@ import static java.nio.charset.StandardCharsets.US_ASCII;
 import static org.dcache.xrootd.protocol.XrootdProtocol.kXR_mv;
 
 import io.netty.buffer.ByteBuf;
+import java.util.Map;
+import java.util.Objects;
+import org.dcache.xrootd.util.OpaqueStringParser;
+import org.dcache.xrootd.util.ParseException;
 
 public class MvRequest extends AbstractXrootdRequest {
 
@@ -27,6 +31,8 @@ public class MvRequest extends AbstractXrootdRequest {
     private String targetPath;
     private String sourceOpaque;
     private String targetOpaque;
+    private Map<String, String> sourceOpaqueMap;
+    private Map<String, String> targetOpaqueMap;
 
     public MvRequest(ByteBuf buffer) {
         super(buffer, kXR_mv);
@@ -73,7 +79,7 @@ public class MvRequest extends AbstractXrootdRequest {
 
     @Deprecated
     public void setOpaque(String opaque) {
-        targetOpaque = opaque;
+        setTargetOpaque(opaque);
     }
 
     public String getSourceOpaque() {
@@ -82,6 +88,17 @@ public class MvRequest extends AbstractXrootdRequest {
 
     public void setSourceOpaque(String sourceOpaque) {
         this.sourceOpaque = sourceOpaque;
+        this.sourceOpaqueMap = null;
+    }
+
+    /**
+     * The source opaque data parsed into an immutable map; parsed on first use.
+     */
+    public Map<String, String> getSourceOpaqueMap() throws ParseException {
+        if (sourceOpaqueMap == null) {
+            sourceOpaqueMap = OpaqueStringParser.getOpaqueMap(sourceOpaque);
+        }
+        return sourceOpaqueMap;
     }
 
     public String getTargetOpaque() {
@@ -90,6 +107,20 @@ public class MvRequest extends AbstractXrootdRequest {
 
     public void setTargetOpaque(String targetOpaque) {
         this.targetOpaque = targetOpaque;
+        this.targetOpaqueMap = null;
+    }
+
+    /**
+     * The target opaque data parsed into an immutable map; parsed on first
+     * use, and shared with the source if both opaque strings are equal.
+     */
+    public Map<String, String> getTargetOpaqueMap() throws ParseException {
+        if (targetOpaqueMap == null) {
+            targetOpaqueMap = Objects.equals(sourceOpaque, targetOpaque)
+                  ? getSourceOpaqueMap()
+                  : OpaqueStringParser.getOpaqueMap(targetOpaque);
+        }
+        return targetOpaqueMap;
     }
 
     public void setSourcePath(String sourcePath) {
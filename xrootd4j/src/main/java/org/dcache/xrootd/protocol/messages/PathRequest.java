@@ -19,7 +19,10 @@ package org.dcache.xrootd.protocol.messages;
 import static java.nio.charset.StandardCharsets.US_ASCII;
 
 import io.netty.buffer.ByteBuf;
+import java.util.Map;
 import org.dcache.xrootd.protocol.XrootdProtocol;
+import org.dcache.xrootd.util.OpaqueStringParser;
+import org.dcache.xrootd.util.ParseException;
 
 /**
  * Base class for requests that contain a path.
@@ -32,6 +35,7 @@ public class PathRequest extends AbstractXrootdRequest {
 
     private String path;
     private String opaque;
+    private Map<String, String> opaqueMap;
 
     public PathRequest(ByteBuf buffer, int requestId) {
         super(buffer, requestId);
@@ -56,6 +60,19 @@ public class PathRequest extends AbstractXrootdRequest {
 
     public void setOpaque(String opaque) {
         this.opaque = opaque;
+        this.opaqueMap = null;
+    }
+
+    /**
+     * The opaque data parsed into an immutable map.  The string is parsed
+     * on first use and the result is shared by all later stages of the
+     * pipeline.
+     */
+    public Map<String, String> getOpaqueMap() throws ParseException {
+        if (opaqueMap == null) {
+            opaqueMap = OpaqueStringParser.getOpaqueMap(opaque);
+        }
+        return opaqueMap;
     }
 
     public String getPath() {
@@ -17,6 +17,7 @@
 package org.dcache.xrootd.protocol.messages;
 
 import static java.nio.charset.StandardCharsets.US_ASCII;
+import static org.dcache.xrootd.protocol.XrootdProtocol.OPAQUE_DELIMITER;
 import static org.dcache.xrootd.protocol.XrootdProtocol.kXR_cancel;
 import static org.dcache.xrootd.protocol.XrootdProtocol.kXR_coloc;
 import static org.dcache.xrootd.protocol.XrootdProtocol.kXR_fresh;
@@ -28,12 +29,17 @@ import static org.dcache.xrootd.protocol.XrootdProtocol.kXR_wmode;
 
 import io.netty.buffer.ByteBuf;
 import java.util.Arrays;
+import java.util.Map;
+import java.util.Objects;
+import org.dcache.xrootd.util.OpaqueStringParser;
+import org.dcache.xrootd.util.ParseException;
 
 public class PrepareRequest extends AbstractXrootdRequest {
 
     private final int options;
     private final int priority;
-    private final String[] plist;
+    private String[] plist;
+    private Map<String, String>[] opaqueMaps;
 
     public PrepareRequest(ByteBuf buffer) {
         super(buffer, kXR_prepare);
@@ -59,6 +65,51 @@ public class PrepareRequest extends AbstractXrootdRequest {
         return plist;
     }
 
+    /**
+     * Replaces the path list.  Parsed opaque data is kept for entries
+     * whose opaque data is unchanged.
+     */
+    public void setPathList(String[] plist) {
+        if (opaqueMaps != null) {
+            if (plist.length != this.plist.length) {
+                opaqueMaps = null;
+            } else {
+                for (int i = 0; i < plist.length; i++) {
+                    if (!Objects.equals(getOpaque(plist[i]),
+                          getOpaque(this.plist[i]))) {
+                        opaqueMaps[i] = null;
+                    }
+                }
+            }
+        }
+        this.plist = plist;
+    }
+
+    /**
+     * The opaque data of the given entry of the path list parsed into an
+     * immutable map.  Each opaque string is parsed on first use; entries
+     * carrying the same opaque data as the preceding entry share its map.
+     */
+    @SuppressWarnings("unchecked")
+    public Map<String, String> getOpaqueMap(int index) throws ParseException {
+        if (opaqueMaps == null) {
+            opaqueMaps = new Map[plist.length];
+        }
+
+        Map<String, String> map = opaqueMaps[index];
+        if (map == null) {
+            String opaque = getOpaque(plist[index]);
+            if (index > 0 && opaqueMaps[index - 1] != null
+                  && Objects.equals(opaque, getOpaque(plist[index - 1]))) {
+                map = opaqueMaps[index - 1];
+            } else {
+                map = OpaqueStringParser.getOpaqueMap(opaque);
+            }
+            opaqueMaps[index] = map;
+        }
+        return map;
+    }
+
     public boolean isCancel() {
         return (getOptions() & kXR_cancel) == kXR_cancel;
     }
@@ -87,6 +138,11 @@ public class PrepareRequest extends AbstractXrootdRequest {
         return (getOptions() & kXR_fresh) == kXR_fresh;
     }
 
+    private static String getOpaque(String entry) {
+        int pos = entry.indexOf(OPAQUE_DELIMITER);
+        return pos > -1 ? entry.substring(pos + 1) : null;
+    }
+
     @Override
     public String toString() {
         return String.format("prepare[%d,%d,%s]", options, priority,
@@ -24,6 +24,9 @@ import static org.dcache.xrootd.protocol.XrootdProtocol.kXR_query;
 
 import com.google.common.base.CharMatcher;
 import io.netty.buffer.ByteBuf;
+import java.util.Map;
+import org.dcache.xrootd.util.OpaqueStringParser;
+import org.dcache.xrootd.util.ParseException;
 
 /**
  *  Not every QueryRequest is a path request, so it
@@ -36,6 +39,7 @@ public class QueryRequest extends AbstractXrootdRequest {
     private final int fhandle;
     private final String args;
     private final String opaque;
+    private Map<String, String> opaqueMap;
 
     /*
      *  Can be altered by authorization plugins.
@@ -87,6 +91,16 @@ public class QueryRequest extends AbstractXrootdRequest {
         return opaque;
     }
 
+    /**
+     * The opaque data parsed into an immutable map; parsed on first use.
+     */
+    public Map<String, String> getOpaqueMap() throws ParseException {
+        if (opaqueMap == null) {
+            opaqueMap = OpaqueStringParser.getOpaqueMap(opaque);
+        }
+        return opaqueMap;
+    }
+
     public String getPath() {
         return path;
     }
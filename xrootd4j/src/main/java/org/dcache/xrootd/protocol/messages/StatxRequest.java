@@ -20,11 +20,16 @@ import static java.nio.charset.StandardCharsets.US_ASCII;
 import static org.dcache.xrootd.protocol.XrootdProtocol.kXR_statx;
 
 import io.netty.buffer.ByteBuf;
+import java.util.Map;
+import java.util.Objects;
+import org.dcache.xrootd.util.OpaqueStringParser;
+import org.dcache.xrootd.util.ParseException;
 
 public class StatxRequest extends AbstractXrootdRequest {
 
     private String[] paths;
     private String[] opaques;
+    private Map<String, String>[] opaqueMaps;
 
     public StatxRequest(ByteBuf buffer) {
         super(buffer, kXR_statx);
@@ -53,9 +58,34 @@ public class StatxRequest extends AbstractXrootdRequest {
 
     public void setOpaques(String[] opaques) {
         this.opaques = opaques;
+        this.opaqueMaps = null;
     }
 
     public String[] getOpaques() {
         return opaques;
     }
+
+    /**
+     * The opaque data of the given path parsed into an immutable map.
+     * Each opaque string is parsed on first use; paths carrying the same
+     * opaque data as the preceding path share its map.
+     */
+    @SuppressWarnings("unchecked")
+    public Map<String, String> getOpaqueMap(int index) throws ParseException {
+        if (opaqueMaps == null) {
+            opaqueMaps = new Map[opaques.length];
+        }
+
+        Map<String, String> map = opaqueMaps[index];
+        if (map == null) {
+            if (index > 0 && opaqueMaps[index - 1] != null
+                  && Objects.equals(opaques[index], opaques[index - 1])) {
+                map = opaqueMaps[index - 1];
+            } else {
+                map = OpaqueStringParser.getOpaqueMap(opaques[index]);
+            }
+            opaqueMaps[index] = map;
+        }
+        return map;
+    }
 }
@@ -380,7 +380,7 @@ public class TLSSessionInfo {
 
             if (activate) {
                 serverFlags.setGoToTLS(true);
-                sslHandler = (SslHandler) serverSslHandlerFactory.createHandler();
+                sslHandler = (SslHandler) serverSslHandlerFactory.createHandler(ctx.alloc());
                 sslHandler.engine().setNeedClientAuth(false);
                 sslHandler.engine().setWantClientAuth(false);
                 ctx.pipeline().addFirst(sslHandler);
@@ -520,7 +520,7 @@ public class TLSSessionInfo {
             }
 
             if (activate) {
-                sslHandler = (SslHandler) clientSslHandlerFactory.createHandler();
+                sslHandler = (SslHandler) clientSslHandlerFactory.createHandler(ctx.alloc());
                 sslHandler.engine().setNeedClientAuth(false);
                 sslHandler.engine().setWantClientAuth(false);
                 ctx.pipeline().addFirst(sslHandler);
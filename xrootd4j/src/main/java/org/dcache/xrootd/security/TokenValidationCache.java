@@ -0,0 +1,267 @@
+/**
+ * Copyright (C) 2011-2026 dCache.org <support@dcache.org>
+ *
+ * This file is part of xrootd4j.
+ *
+ * xrootd4j is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * xrootd4j is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with xrootd4j.  If
+ * not, see http://www.gnu.org/licenses/.
+ */
+package org.dcache.xrootd.security;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.dcache.xrootd.protocol.XrootdProtocol.kXR_ServerError;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Ticker;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hashing;
+import com.google.common.util.concurrent.ExecutionError;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import java.util.Base64;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+import org.dcache.xrootd.core.XrootdException;
+
+/**
+ * Bounded cache of the results of successful token validations.
+ *
+ * Entries are keyed by the SHA-256 hash of the token, so the cache
+ * does not retain the bearer tokens themselves.  If the token is a JWT,
+ * its <code>exp</code> and <code>nbf</code> claims limit the lifetime of
+ * the entry; tokens which are not yet valid or already expired are
+ * never cached.  Concurrent validations of the same token are coalesced
+ * into a single call of the validation.  Failed validations are not
+ * cached.
+ *
+ * @param <T> the result of a validation
+ */
+public class TokenValidationCache<T> {
+
+    public static final long DEFAULT_MAX_SIZE = 1024;
+    public static final long DEFAULT_MAX_LIFETIME = TimeUnit.MINUTES.toMillis(5);
+
+    @FunctionalInterface
+    public interface Validation<T> {
+
+        /**
+         * @return the result of the validation; never null.
+         * @throws XrootdException if the token is not valid.
+         */
+        T validate() throws XrootdException;
+    }
+
+    private static class Entry<T> {
+
+        private final T value;
+        private final long expiresAt;
+
+        private Entry(T value, long expiresAt) {
+            this.value = value;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    private final Cache<HashCode, Entry<T>> cache;
+    private final long maxLifetime;
+    private final LongSupplier clock;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    public TokenValidationCache() {
+        this(DEFAULT_MAX_SIZE, DEFAULT_MAX_LIFETIME, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * @param maxSize maximum number of tokens held by the cache
+     * @param maxLifetime upper bound for the lifetime of an entry
+     * @param unit of the lifetime
+     */
+    public TokenValidationCache(long maxSize, long maxLifetime, TimeUnit unit) {
+        this(maxSize, maxLifetime, unit, System::currentTimeMillis);
+    }
+
+    /**
+     * @param clock current time in milliseconds since the epoch
+     */
+    @VisibleForTesting
+    TokenValidationCache(long maxSize, long maxLifetime, TimeUnit unit,
+          LongSupplier clock) {
+        this.maxLifetime = unit.toMillis(maxLifetime);
+        this.clock = clock;
+        cache = CacheBuilder.newBuilder()
+              .maximumSize(maxSize)
+              .expireAfterWrite(maxLifetime, unit)
+              .ticker(new Ticker() {
+                  @Override
+                  public long read() {
+                      return TimeUnit.MILLISECONDS.toNanos(clock.getAsLong());
+                  }
+              })
+              .build();
+    }
+
+    /**
+     * Returns the result of a previous successful validation of the
+     * token, or runs the validation.
+     *
+     * @param token the token, stripped of any prefix
+     * @param validation to run if there is no valid cached result
+     * @return the result of the validation
+     * @throws XrootdException as thrown by the validation
+     */
+    public T validate(String token, Validation<T> validation)
+          throws XrootdException {
+        long now = clock.getAsLong();
+        long expiresAt = getExpiration(token, now);
+        if (expiresAt <= now) {
+            misses.increment();
+            return validation.validate();
+        }
+
+        HashCode key = Hashing.sha256().hashString(token, UTF_8);
+        AtomicBoolean loaded = new AtomicBoolean();
+        try {
+            Entry<T> entry = cache.get(key, () -> {
+                loaded.set(true);
+                return new Entry<>(validation.validate(), expiresAt);
+            });
+
+            if (entry.expiresAt <= now) {
+                cache.asMap().remove(key, entry);
+                return validate(token, validation);
+            }
+
+            (loaded.get() ? misses : hits).increment();
+            return entry.value;
+        } catch (ExecutionException | UncheckedExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof XrootdException) {
+                throw (XrootdException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new XrootdException(kXR_ServerError,
+                  "token validation failed: " + cause);
+        } catch (ExecutionError e) {
+            throw (Error) e.getCause();
+        }
+    }
+
+    public void invalidateAll() {
+        cache.invalidateAll();
+    }
+
+    public long size() {
+        return cache.size();
+    }
+
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    public double getHitRate() {
+        long hitCount = hits.sum();
+        long requestCount = hitCount + misses.sum();
+        return requestCount == 0 ? 1.0 : (double) hitCount / requestCount;
+    }
+
+    @Override
+    public String toString() {
+        return "TokenValidationCache[size=" + size()
+              + ", hits=" + getHitCount()
+              + ", misses=" + getMissCount() + "]";
+    }
+
+    /**
+     * @return until when a validation of this token may be reused;
+     *         a time not after now if it must not be cached.
+     */
+    private long getExpiration(String token, long now) {
+        long expiresAt = now + maxLifetime;
+
+        String payload = getJwtPayload(token);
+        if (payload == null) {
+            return expiresAt;
+        }
+
+        long nbf = getNumericClaim(payload, "nbf");
+        if (nbf != -1 && nbf * 1000 > now) {
+            return now;
+        }
+
+        long exp = getNumericClaim(payload, "exp");
+        if (exp != -1) {
+            expiresAt = Math.min(expiresAt, exp * 1000);
+        }
+
+        return expiresAt;
+    }
+
+    private static String getJwtPayload(String token) {
+        int start = token.indexOf('.');
+        if (start == -1) {
+            return null;
+        }
+        int end = token.indexOf('.', start + 1);
+        if (end == -1) {
+            return null;
+        }
+        try {
+            return new String(Base64.getUrlDecoder()
+                  .decode(token.substring(start + 1, end)), UTF_8);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    /**
+     * @return the value of a top-level numeric claim in seconds,
+     *         or -1 if it is absent or not a number.
+     */
+    private static long getNumericClaim(String payload, String name) {
+        String quoted = '"' + name + '"';
+        int index = payload.indexOf(quoted);
+        while (index != -1) {
+            int pos = skipWhitespace(payload, index + quoted.length());
+            if (pos < payload.length() && payload.charAt(pos) == ':') {
+                pos = skipWhitespace(payload, pos + 1);
+                int end = pos;
+                while (end < payload.length()
+                      && Character.isDigit(payload.charAt(end))) {
+                    end++;
+                }
+                if (end == pos || end - pos > 18) {
+                    return -1;
+                }
+                return Long.parseLong(payload.substring(pos, end));
+            }
+            index = payload.indexOf(quoted, index + 1);
+        }
+        return -1;
+    }
+
+    private static int skipWhitespace(String s, int pos) {
+        while (pos < s.length() && Character.isWhitespace(s.charAt(pos))) {
+            pos++;
+        }
+        return pos;
+    }
+}
@@ -55,4 +55,15 @@ public interface TokenValidator {
      * @throws XrootdException
      */
     void validate(ChannelHandlerContext ctx, String token) throws XrootdException;
+
+    /**
+     * Whether a successful validation only depends on the token, and
+     * has no side effects on the channel, so that its outcome may be
+     * reused for later requests carrying the same token.
+     *
+     * The default is <code>false</code>.
+     */
+    default boolean isCacheable() {
+        return false;
+    }
 }
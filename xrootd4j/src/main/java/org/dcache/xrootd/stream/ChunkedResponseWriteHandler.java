@@ -214,8 +214,6 @@ public class ChunkedResponseWriteHandler
                 });
             }
 
-            // Always need to flush
-            ctx.flush();
             flushed = true;
 
             if (!channel.isActive()) {
@@ -223,6 +221,14 @@ public class ChunkedResponseWriteHandler
                 break;
             }
         }
+
+        /*
+         * Chunks are written until the outbound buffer exceeds its high water
+         * mark, and are then flushed together.
+         */
+        if (flushed) {
+            ctx.flush();
+        }
         return flushed;
 
     }
@@ -404,6 +404,11 @@ public abstract class AbstractClientRequestHandler extends
           XrootdInboundResponse response) {
         try {
             if (response instanceof InboundWaitResponse) {
+                TpcTransferScheduler.Ticket ticket = client.getSchedulerTicket();
+                if (ticket != null) {
+                    ticket.waitRequested(getWaitInSeconds(
+                          (InboundWaitResponse) response));
+                }
                 doOnWaitResponse(ctx, (InboundWaitResponse) response);
                 return;
             }
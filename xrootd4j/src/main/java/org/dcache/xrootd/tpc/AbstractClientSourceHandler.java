@@ -47,8 +47,8 @@ import org.dcache.xrootd.tpc.protocol.messages.OutboundOpenReadOnlyRequest;
  * Concrete implementations must handle the actual read and checksum
  *    requests and responses.</p>
  *
- * If the close response is OK, it hands it off to the next handler
- *    in the chain.</p>
+ * If the close response is OK, the session is either returned to the
+ *    session pool or ended.</p>
  */
 public abstract class AbstractClientSourceHandler extends
       AbstractClientRequestHandler {
@@ -141,7 +141,9 @@ public abstract class AbstractClientSourceHandler extends
                       tpcInfo.getSrc(),
                       id,
                       client.getStreamId());
-                client.doEndsession(ctx);
+                if (!client.releaseSession()) {
+                    client.doEndsession(ctx);
+                }
                 break;
             default:
                 String error = String.format("Close of %s on %s failed "
@@ -0,0 +1,386 @@
+/**
+ * Copyright (C) 2011-2026 dCache.org <support@dcache.org>
+ *
+ * This file is part of xrootd4j.
+ *
+ * xrootd4j is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * xrootd4j is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with xrootd4j.  If
+ * not, see http://www.gnu.org/licenses/.
+ */
+package org.dcache.xrootd.tpc;
+
+import static org.dcache.xrootd.tpc.XrootdTpcInfo.CksumType.ADLER32;
+import static org.dcache.xrootd.tpc.XrootdTpcInfo.CksumType.MD5;
+
+import com.google.common.io.BaseEncoding;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.zip.Adler32;
+import java.util.zip.Checksum;
+import org.dcache.xrootd.tpc.XrootdTpcInfo.CksumType;
+
+/**
+ * Computes the checksum of a third-party copy from the data as it is
+ *    received, so that the destination need not re-read the file to
+ *    compare it with the source's value.</p>
+ *
+ * Adler32 and CRC32 values of adjacent pieces can be combined, so data may
+ *    arrive in any order, as it does with pipelined or striped reads; each
+ *    piece is summed separately and merged with its neighbours as soon as
+ *    they are known.  MD5 has to see the data in order; if a piece arrives
+ *    out of order, no local MD5 value is produced.</p>
+ *
+ * CRC32 is the POSIX cksum CRC, which is what XRootD servers report for
+ *    crc32, not the zlib one.  Pieces hold the bare CRC of their data; the
+ *    length of the file is appended and the result complemented only once
+ *    the pieces cover the whole file.</p>
+ */
+public class TpcChecksumAccumulator {
+
+    private static final int ADLER_BASE = 65521;
+
+    private static final long CKSUM_POLYNOMIAL = 0x04c11db7L;
+
+    private static final int[] CKSUM_TABLE = new int[256];
+
+    static {
+        for (int i = 0; i < 256; i++) {
+            int crc = i << 24;
+            for (int bit = 0; bit < 8; bit++) {
+                crc = (crc & 0x80000000) != 0 ?
+                      (crc << 1) ^ (int) CKSUM_POLYNOMIAL : crc << 1;
+            }
+            CKSUM_TABLE[i] = crc;
+        }
+    }
+
+    /**
+     * @return an accumulator for the given tpc.cks algorithm, or null if
+     *         the algorithm is not supported.
+     */
+    public static TpcChecksumAccumulator forAlgorithm(String cks) {
+        if (cks == null) {
+            return null;
+        }
+        String name = cks.split("[:|]", 2)[0];
+        for (CksumType type : CksumType.values()) {
+            if (type.key().equalsIgnoreCase(name)) {
+                return new TpcChecksumAccumulator(type);
+            }
+        }
+        return null;
+    }
+
+    private final CksumType type;
+
+    /*
+     *  ADLER32 and CRC32: combined pieces by offset.
+     */
+    private final TreeMap<Long, Piece> pieces = new TreeMap<>();
+
+    /*
+     *  MD5: digest of the data up to nextOffset; null once data
+     *  has arrived out of order.
+     */
+    private MessageDigest digest;
+    private long nextOffset;
+
+    private TpcChecksumAccumulator(CksumType type) {
+        this.type = type;
+        if (type == MD5) {
+            try {
+                digest = MessageDigest.getInstance("MD5");
+            } catch (NoSuchAlgorithmException e) {
+                throw new RuntimeException("MD5 is not available: " + e);
+            }
+        }
+    }
+
+    public CksumType getType() {
+        return type;
+    }
+
+    public synchronized void update(long offset, ByteBuffer[] data) {
+        if (type == MD5) {
+            updateDigest(offset, data);
+            return;
+        }
+
+        Checksum checksum = type == ADLER32 ? new Adler32() : new CksumCrc();
+        long length = 0;
+        for (ByteBuffer buffer : data) {
+            length += buffer.remaining();
+            update(checksum, buffer.duplicate());
+        }
+
+        if (length > 0) {
+            add(new Piece(offset, length, checksum.getValue()));
+        }
+    }
+
+    /**
+     * Forgets everything received from the given offset onwards, as when
+     *    a transfer is resumed there.  A piece spanning the offset is
+     *    lost entirely, as is an MD5 digest which has gone beyond it.</p>
+     */
+    public synchronized void truncate(long offset) {
+        if (type == MD5) {
+            if (nextOffset != offset) {
+                digest = null;
+            }
+            return;
+        }
+
+        pieces.tailMap(offset, true).clear();
+        Map.Entry<Long, Piece> last = pieces.lastEntry();
+        if (last != null
+              && last.getValue().offset + last.getValue().length > offset) {
+            pieces.remove(last.getKey());
+        }
+    }
+
+    /**
+     * @return the checksum as a lower-case hex string, or null if the data
+     *         received does not cover the whole file (or, for MD5, did not
+     *         arrive in order).
+     */
+    public synchronized String getValue(long fileSize) {
+        if (type == MD5) {
+            if (digest == null || nextOffset != fileSize) {
+                return null;
+            }
+            try {
+                return BaseEncoding.base16().lowerCase()
+                      .encode(((MessageDigest) digest.clone()).digest());
+            } catch (CloneNotSupportedException e) {
+                return null;
+            }
+        }
+
+        long value;
+        if (fileSize == 0) {
+            value = type == ADLER32 ? 1L : 0L;
+        } else {
+            Map.Entry<Long, Piece> first = pieces.firstEntry();
+            if (first == null || pieces.size() != 1 || first.getKey() != 0L
+                  || first.getValue().length != fileSize) {
+                return null;
+            }
+            value = first.getValue().value;
+        }
+
+        if (type != ADLER32) {
+            value = cksumFinish(value, fileSize);
+        }
+        return String.format("%08x", value);
+    }
+
+    private void updateDigest(long offset, ByteBuffer[] data) {
+        if (digest == null) {
+            return;
+        }
+        if (offset != nextOffset) {
+            digest = null;
+            return;
+        }
+        for (ByteBuffer buffer : data) {
+            ByteBuffer view = buffer.duplicate();
+            nextOffset += view.remaining();
+            digest.update(view);
+        }
+    }
+
+    private void add(Piece piece) {
+        Map.Entry<Long, Piece> before = pieces.lowerEntry(piece.offset);
+        if (before != null
+              && before.getValue().offset + before.getValue().length == piece.offset) {
+            pieces.remove(before.getKey());
+            piece = combine(before.getValue(), piece);
+        }
+
+        Piece after = pieces.get(piece.offset + piece.length);
+        if (after != null) {
+            pieces.remove(after.offset);
+            piece = combine(piece, after);
+        }
+
+        pieces.put(piece.offset, piece);
+    }
+
+    private Piece combine(Piece first, Piece second) {
+        long value = type == ADLER32 ?
+              adler32Combine(first.value, second.value, second.length) :
+              cksumCombine(first.value, second.value, second.length);
+        return new Piece(first.offset, first.length + second.length, value);
+    }
+
+    private static void update(Checksum checksum, ByteBuffer buffer) {
+        if (buffer.hasArray()) {
+            checksum.update(buffer.array(),
+                  buffer.arrayOffset() + buffer.position(),
+                  buffer.remaining());
+        } else {
+            byte[] bytes = new byte[Math.min(buffer.remaining(), 64 * 1024)];
+            while (buffer.hasRemaining()) {
+                int n = Math.min(bytes.length, buffer.remaining());
+                buffer.get(bytes, 0, n);
+                checksum.update(bytes, 0, n);
+            }
+        }
+    }
+
+    /*
+     *  As adler32_combine in zlib.
+     */
+    static long adler32Combine(long adler1, long adler2, long len2) {
+        long rem = len2 % ADLER_BASE;
+        long sum1 = adler1 & 0xffff;
+        long sum2 = (rem * sum1) % ADLER_BASE;
+        sum1 += (adler2 & 0xffff) + ADLER_BASE - 1;
+        sum2 += ((adler1 >> 16) & 0xffff) + ((adler2 >> 16) & 0xffff)
+              + ADLER_BASE - rem;
+        if (sum1 >= ADLER_BASE) {
+            sum1 -= ADLER_BASE;
+        }
+        if (sum1 >= ADLER_BASE) {
+            sum1 -= ADLER_BASE;
+        }
+        if (sum2 >= (ADLER_BASE << 1)) {
+            sum2 -= (ADLER_BASE << 1);
+        }
+        if (sum2 >= ADLER_BASE) {
+            sum2 -= ADLER_BASE;
+        }
+        return sum1 | (sum2 << 16);
+    }
+
+    private static int cksumUpdate(int crc, int b) {
+        return (crc << 8) ^ CKSUM_TABLE[((crc >>> 24) ^ b) & 0xff];
+    }
+
+    /*
+     *  As cksum: the length, least significant byte first and without
+     *  trailing zero bytes, follows the data; the result is complemented.
+     */
+    static long cksumFinish(long crc, long length) {
+        int value = (int) crc;
+        for (long n = length; n != 0; n >>>= 8) {
+            value = cksumUpdate(value, (int) (n & 0xff));
+        }
+        return ~value & 0xffffffffL;
+    }
+
+    /*
+     *  As crc32_combine in zlib, but for the bare (not reflected, not
+     *  complemented) cksum CRC: applies len2 zero bytes to crc1 using
+     *  powers of the CRC shift operator, then adds crc2.
+     */
+    static long cksumCombine(long crc1, long crc2, long len2) {
+        if (len2 <= 0) {
+            return crc1;
+        }
+
+        long[] even = new long[32];
+        long[] odd = new long[32];
+
+        /*
+         *  Shifting in one zero bit moves each bit up by one, and the top
+         *  bit out as the polynomial.
+         */
+        for (int n = 0; n < 31; n++) {
+            odd[n] = 1L << (n + 1);
+        }
+        odd[31] = CKSUM_POLYNOMIAL;
+
+        gf2MatrixSquare(even, odd);
+        gf2MatrixSquare(odd, even);
+
+        do {
+            gf2MatrixSquare(even, odd);
+            if ((len2 & 1) != 0) {
+                crc1 = gf2MatrixTimes(even, crc1);
+            }
+            len2 >>= 1;
+            if (len2 == 0) {
+                break;
+            }
+            gf2MatrixSquare(odd, even);
+            if ((len2 & 1) != 0) {
+                crc1 = gf2MatrixTimes(odd, crc1);
+            }
+            len2 >>= 1;
+        } while (len2 != 0);
+
+        return crc1 ^ crc2;
+    }
+
+    private static long gf2MatrixTimes(long[] mat, long vec) {
+        long sum = 0;
+        int i = 0;
+        while (vec != 0) {
+            if ((vec & 1) != 0) {
+                sum ^= mat[i];
+            }
+            vec >>>= 1;
+            i++;
+        }
+        return sum;
+    }
+
+    private static void gf2MatrixSquare(long[] square, long[] mat) {
+        for (int n = 0; n < 32; n++) {
+            square[n] = gf2MatrixTimes(mat, mat[n]);
+        }
+    }
+
+    /*
+     *  The bare cksum CRC: no initial value, length or complement.
+     */
+    private static class CksumCrc implements Checksum {
+        private int crc;
+
+        @Override
+        public void update(int b) {
+            crc = cksumUpdate(crc, b);
+        }
+
+        @Override
+        public void update(byte[] b, int off, int len) {
+            for (int i = off; i < off + len; i++) {
+                crc = cksumUpdate(crc, b[i]);
+            }
+        }
+
+        @Override
+        public long getValue() {
+            return crc & 0xffffffffL;
+        }
+
+        @Override
+        public void reset() {
+            crc = 0;
+        }
+    }
+
+    private static class Piece {
+        final long offset;
+        final long length;
+        final long value;
+
+        Piece(long offset, long length, long value) {
+            this.offset = offset;
+            this.length = length;
+            this.value = value;
+        }
+    }
+}
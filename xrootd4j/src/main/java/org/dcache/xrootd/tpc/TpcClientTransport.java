@@ -0,0 +1,198 @@
+/**
+ * Copyright (C) 2011-2026 dCache.org <support@dcache.org>
+ *
+ * This file is part of xrootd4j.
+ *
+ * xrootd4j is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * xrootd4j is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with xrootd4j.  If
+ * not, see http://www.gnu.org/licenses/.
+ */
+package org.dcache.xrootd.tpc;
+
+import io.netty.bootstrap.Bootstrap;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.WriteBufferWaterMark;
+import io.netty.channel.epoll.Epoll;
+import io.netty.channel.epoll.EpollEventLoopGroup;
+import io.netty.channel.epoll.EpollSocketChannel;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.channel.socket.nio.NioSocketChannel;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Transport settings for third-party clients: the event loop group, which
+ *    is meant to be shared by all clients, the channel implementation, and
+ *    the socket options.</p>
+ *
+ * The native epoll transport is used where requested and available, NIO
+ *    otherwise.  Its jar is an optional dependency; without it on the class
+ *    path, clients use NIO.  Socket buffer sizes are left to the OS (and its
+ *    autotuning) unless set; on high bandwidth-delay links they should be
+ *    at least the bandwidth-delay product, and must be set before
+ *    connecting for the TCP window scale to allow it.</p>
+ *
+ * The congestion control algorithm cannot be chosen per socket with this
+ *    version of Netty; it is the system default
+ *    (net.ipv4.tcp_congestion_control on Linux).</p>
+ */
+public class TpcClientTransport {
+
+    private static final Logger LOGGER
+          = LoggerFactory.getLogger(TpcClientTransport.class);
+
+    /*
+     *  The epoll classes may only be touched if this is true.
+     */
+    private static final boolean EPOLL_ON_CLASS_PATH = isEpollOnClassPath();
+
+    private final EventLoopGroup group;
+    private final Class<? extends SocketChannel> channelClass;
+    private final boolean epoll;
+    private final boolean ownsGroup;
+
+    private int receiveBufferSize;
+    private int sendBufferSize;
+    private WriteBufferWaterMark writeBufferWaterMark;
+
+    /**
+     * Creates a transport with its own event loop group.</p>
+     *
+     * @param preferEpoll whether to use the native epoll transport if
+     *                    it is available
+     * @param threads event loop threads; 0 for one per available
+     *                processor
+     */
+    public TpcClientTransport(boolean preferEpoll, int threads) {
+        int n = threads > 0 ? threads :
+              Runtime.getRuntime().availableProcessors();
+        if (preferEpoll && EPOLL_ON_CLASS_PATH && Epoll.isAvailable()) {
+            group = new EpollEventLoopGroup(n);
+            channelClass = EpollSocketChannel.class;
+            epoll = true;
+        } else {
+            if (preferEpoll && !EPOLL_ON_CLASS_PATH) {
+                LOGGER.warn("Epoll transport is not on the class path, "
+                      + "using NIO for TPC clients.");
+            } else if (preferEpoll) {
+                LOGGER.warn("Epoll transport is not available for TPC clients, "
+                      + "using NIO: {}", Epoll.unavailabilityCause().toString());
+            }
+            group = new NioEventLoopGroup(n);
+            channelClass = NioSocketChannel.class;
+            epoll = false;
+        }
+        ownsGroup = true;
+    }
+
+    /**
+     * Uses an event loop group owned by the caller.</p>
+     *
+     * @throws IllegalArgumentException if the group is neither an NIO nor
+     *                                  an epoll event loop group.
+     */
+    public TpcClientTransport(EventLoopGroup group) {
+        this.group = group;
+        if (group instanceof NioEventLoopGroup) {
+            channelClass = NioSocketChannel.class;
+            epoll = false;
+        } else if (EPOLL_ON_CLASS_PATH && group instanceof EpollEventLoopGroup) {
+            channelClass = EpollSocketChannel.class;
+            epoll = true;
+        } else {
+            throw new IllegalArgumentException("Unsupported event loop group "
+                  + "for TPC clients: " + group.getClass().getName());
+        }
+        ownsGroup = false;
+    }
+
+    public EventLoopGroup getGroup() {
+        return group;
+    }
+
+    public boolean isEpoll() {
+        return epoll;
+    }
+
+    public int getReceiveBufferSize() {
+        return receiveBufferSize;
+    }
+
+    public int getSendBufferSize() {
+        return sendBufferSize;
+    }
+
+    /**
+     * @param receiveBufferSize SO_RCVBUF in bytes; 0 for the OS default.
+     */
+    public void setReceiveBufferSize(int receiveBufferSize) {
+        this.receiveBufferSize = receiveBufferSize;
+    }
+
+    /**
+     * @param sendBufferSize SO_SNDBUF in bytes; 0 for the OS default.
+     */
+    public void setSendBufferSize(int sendBufferSize) {
+        this.sendBufferSize = sendBufferSize;
+    }
+
+    public void setWriteBufferWaterMark(int low, int high) {
+        writeBufferWaterMark = new WriteBufferWaterMark(low, high);
+    }
+
+    /**
+     * Applies group, channel class and socket options.</p>
+     */
+    public Bootstrap configure(Bootstrap bootstrap) {
+        bootstrap.group(group)
+              .channel(channelClass)
+              .option(ChannelOption.TCP_NODELAY, true)
+              .option(ChannelOption.SO_KEEPALIVE, true);
+        if (receiveBufferSize > 0) {
+            bootstrap.option(ChannelOption.SO_RCVBUF, receiveBufferSize);
+        }
+        if (sendBufferSize > 0) {
+            bootstrap.option(ChannelOption.SO_SNDBUF, sendBufferSize);
+        }
+        if (writeBufferWaterMark != null) {
+            bootstrap.option(ChannelOption.WRITE_BUFFER_WATER_MARK,
+                  writeBufferWaterMark);
+        }
+        return bootstrap;
+    }
+
+    /**
+     * Shuts down the event loop group, if this transport created it.</p>
+     */
+    public void shutdown() {
+        if (ownsGroup) {
+            group.shutdownGracefully();
+        }
+    }
+
+    private static boolean isEpollOnClassPath() {
+        try {
+            Class.forName("io.netty.channel.epoll.Epoll", false,
+                  TpcClientTransport.class.getClassLoader());
+            return true;
+        } catch (ClassNotFoundException e) {
+            return false;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "(" + (isEpoll() ? "epoll" : "nio") + ")(rcvbuf "
+              + receiveBufferSize + ")(sndbuf " + sendBufferSize
+              + ")(watermark " + writeBufferWaterMark + ")";
+    }
+}
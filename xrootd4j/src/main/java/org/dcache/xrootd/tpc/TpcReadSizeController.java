@@ -0,0 +1,201 @@
+/**
+ * Copyright (C) 2011-2026 dCache.org <support@dcache.org>
+ *
+ * This file is part of xrootd4j.
+ *
+ * xrootd4j is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * xrootd4j is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with xrootd4j.  If
+ * not, see http://www.gnu.org/licenses/.
+ */
+package org.dcache.xrootd.tpc;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.util.concurrent.TimeUnit;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Adapts the size and number of outstanding TPC read requests to the
+ *    measured round-trip time and throughput of the source.</p>
+ *
+ * The smallest observed request latency is taken as the path RTT, and
+ *    the delivery rate is sampled over intervals of at least one RTT.
+ *    While the bytes requested in flight (chunk size times window) fall
+ *    short of twice their product (the bandwidth-delay product), the
+ *    chunk size is doubled up to its maximum, and then the window is
+ *    widened by one.  A kXR_wait or a failed read halves both.</p>
+ *
+ * A controller may be shared by the transfers from one source, in which
+ *    case they start from what the previous ones learned.  Embedders who
+ *    prefer a fixed size simply do not install one; the handler then
+ *    uses {@link TpcSourceReadHandler#getChunkSize()} and
+ *    {@link TpcSourceReadHandler#getReadWindow()}.</p>
+ */
+public class TpcReadSizeController {
+
+    private static final Logger LOGGER
+          = LoggerFactory.getLogger(TpcReadSizeController.class);
+
+    /*
+     *  Minimum interval over which to sample the delivery rate.
+     */
+    private static final long MIN_SAMPLE_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+
+    /*
+     *  Weight of a new rate sample.
+     */
+    private static final double RATE_GAIN = 0.25;
+
+    private final int minChunkSize;
+    private final int maxChunkSize;
+    private final int maxWindow;
+
+    private int chunkSize;
+    private int window;
+
+    private long minRttNanos = Long.MAX_VALUE;
+    private double bytesPerSecond;
+    private long sampleStart;
+    private long sampleBytes;
+
+    private long increases;
+    private long decreases;
+
+    public TpcReadSizeController(int minChunkSize, int maxChunkSize,
+          int maxWindow) {
+        checkArgument(minChunkSize > 0 && minChunkSize <= maxChunkSize,
+              "invalid chunk size bounds");
+        checkArgument(maxWindow > 0, "window must be at least 1");
+        this.minChunkSize = minChunkSize;
+        this.maxChunkSize = maxChunkSize;
+        this.maxWindow = maxWindow;
+        chunkSize = minChunkSize;
+        window = 1;
+    }
+
+    public synchronized int getChunkSize() {
+        return chunkSize;
+    }
+
+    public synchronized int getWindow() {
+        return window;
+    }
+
+    /**
+     * @return smallest request latency seen, in microseconds, or -1
+     *         if there has been no measurement yet.
+     */
+    public synchronized long getRttMicros() {
+        return minRttNanos == Long.MAX_VALUE ? -1 :
+              TimeUnit.NANOSECONDS.toMicros(minRttNanos);
+    }
+
+    public synchronized long getBytesPerSecond() {
+        return (long) bytesPerSecond;
+    }
+
+    /**
+     * @return bandwidth-delay product in bytes, from current estimates.
+     */
+    public synchronized long getBandwidthDelayProduct() {
+        if (minRttNanos == Long.MAX_VALUE) {
+            return 0L;
+        }
+        return (long) (bytesPerSecond * minRttNanos / TimeUnit.SECONDS.toNanos(1));
+    }
+
+    public synchronized long getIncreases() {
+        return increases;
+    }
+
+    public synchronized long getDecreases() {
+        return decreases;
+    }
+
+    /**
+     * Records a completed read request.</p>
+     *
+     * @param bytes the number of bytes it returned
+     * @param latencyNanos time from sending the request to its first
+     *                     response
+     * @param now current value of {@link System#nanoTime()}
+     */
+    public synchronized void readCompleted(long bytes, long latencyNanos,
+          long now) {
+        if (latencyNanos > 0) {
+            minRttNanos = Math.min(minRttNanos, latencyNanos);
+        }
+
+        /*
+         *  The bytes of the read which starts a sample were delivered
+         *  before it, and so are not counted.
+         */
+        if (sampleStart == 0L) {
+            sampleStart = now;
+            sampleBytes = 0L;
+            return;
+        }
+
+        sampleBytes += bytes;
+        long elapsed = now - sampleStart;
+        if (elapsed < Math.max(MIN_SAMPLE_NANOS, minRttNanos)) {
+            return;
+        }
+
+        double rate = sampleBytes * (double) TimeUnit.SECONDS.toNanos(1) / elapsed;
+        bytesPerSecond = bytesPerSecond == 0.0 ? rate :
+              bytesPerSecond + RATE_GAIN * (rate - bytesPerSecond);
+        sampleStart = now;
+        sampleBytes = 0L;
+
+        long target = 2 * getBandwidthDelayProduct();
+        if ((long) chunkSize * window >= target) {
+            return;
+        }
+
+        if (chunkSize < maxChunkSize) {
+            chunkSize = (int) Math.min(maxChunkSize, 2L * chunkSize);
+        } else if (window < maxWindow) {
+            ++window;
+        } else {
+            return;
+        }
+
+        ++increases;
+        LOGGER.debug("Raised TPC reads to {} x {} bytes (rtt {} us, "
+                    + "{} bytes/s, target {} bytes in flight).",
+              window, chunkSize, getRttMicros(), getBytesPerSecond(), target);
+    }
+
+    /**
+     * Called when the source asks the client to wait, or a read fails.</p>
+     */
+    public synchronized void backOff(String reason) {
+        int oldChunkSize = chunkSize;
+        int oldWindow = window;
+        chunkSize = Math.max(minChunkSize, chunkSize / 2);
+        window = Math.max(1, window / 2);
+        sampleStart = 0L;
+        if (chunkSize != oldChunkSize || window != oldWindow) {
+            ++decreases;
+            LOGGER.info("Lowered TPC reads from {} x {} to {} x {} bytes: {}.",
+                  oldWindow, oldChunkSize, window, chunkSize, reason);
+        }
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "(chunk " + chunkSize + ")(window " + window
+              + ")(rtt " + getRttMicros() + " us)(rate "
+              + getBytesPerSecond() + " B/s)(up " + increases
+              + ")(down " + decreases + ")";
+    }
+}
@@ -0,0 +1,190 @@
+/**
+ * Copyright (C) 2011-2026 dCache.org <support@dcache.org>
+ *
+ * This file is part of xrootd4j.
+ *
+ * xrootd4j is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * xrootd4j is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with xrootd4j.  If
+ * not, see http://www.gnu.org/licenses/.
+ */
+package org.dcache.xrootd.tpc;
+
+import java.net.URL;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import org.dcache.xrootd.tpc.protocol.messages.InboundRedirectResponse;
+
+/**
+ * Bounded cache of recent redirects received from TPC sources.
+ *
+ * Redirects are keyed by the source which issued them, the identity of
+ * the credential the transfer presented and the directory of the file, on
+ * the assumption that a redirector sends the files of one directory to the
+ * same data server.  A lookup resolves a source through cached redirects,
+ * so that a transfer can go to the data server directly; if that fails,
+ * the entry should be invalidated and the transfer retried against the
+ * redirector.
+ *
+ * Only the host, port and protocol of a redirect are kept.  The token and
+ * opaque data it carried belong to the transfer which received it, so a
+ * transfer resolved through the cache presents its own.
+ *
+ * The redirect responses in this protocol carry no lifetime, so entries
+ * expire after a fixed time.  Thread safe; meant to be shared by all
+ * transfers.
+ */
+public class TpcRedirectCache {
+
+    public static final int DEFAULT_MAX_ENTRIES = 1024;
+
+    /*
+     *  Redirect chains are followed at most this far.
+     */
+    private static final int MAX_HOPS = 4;
+
+    private static class Key {
+
+        private final String source;
+        private final String identity;
+        private final String prefix;
+
+        private Key(XrootdTpcInfo info, String identity) {
+            source = info.getSrc();
+            this.identity = identity;
+            String lfn = Objects.toString(info.getLfn(), "");
+            int slash = lfn.lastIndexOf('/');
+            prefix = slash > 0 ? lfn.substring(0, slash) : lfn;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return Objects.equals(source, other.source)
+                  && Objects.equals(identity, other.identity)
+                  && prefix.equals(other.prefix);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(source, identity, prefix);
+        }
+    }
+
+    private static class Target {
+
+        private final String host;
+        private final int port;
+        private final Optional<String> protocol;
+        private final long expiresAt;
+
+        private Target(InboundRedirectResponse redirect, long expiresAt) {
+            URL url = redirect.getUrl();
+            if (url != null) {
+                host = url.getHost();
+                port = url.getPort();
+                protocol = Optional.ofNullable(url.getProtocol());
+            } else {
+                host = redirect.getHost();
+                port = redirect.getPort();
+                protocol = Optional.empty();
+            }
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    private final Map<Key, Target> targets;
+    private final long lifetime;
+
+    private long hits;
+    private long misses;
+
+    public TpcRedirectCache(int maxEntries, long lifetime, TimeUnit unit) {
+        this.lifetime = unit.toNanos(lifetime);
+        targets = new LinkedHashMap<Key, Target>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, Target> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    /**
+     * @param identity of the credential the transfer presents to the source
+     * @return info for the data server to which the source has recently
+     *         redirected files of the same directory, or null.
+     */
+    public synchronized XrootdTpcInfo lookup(XrootdTpcInfo info,
+          String identity) {
+        XrootdTpcInfo resolved = info;
+        long now = System.nanoTime();
+        for (int hop = 0; hop < MAX_HOPS; hop++) {
+            Key key = new Key(resolved, identity);
+            Target target = targets.get(key);
+            if (target == null) {
+                break;
+            }
+            if (target.expiresAt - now <= 0) {
+                targets.remove(key);
+                break;
+            }
+            resolved = resolved.copyForEndpoint(target.host, target.port,
+                  target.protocol);
+        }
+
+        if (resolved == info) {
+            ++misses;
+            return null;
+        }
+        ++hits;
+        return resolved;
+    }
+
+    /**
+     * Remembers that the source in the given info redirected the transfer.
+     * Reconnect and deferred-response redirects, which name no server,
+     * are not cached.
+     */
+    public synchronized void put(XrootdTpcInfo info, String identity,
+          InboundRedirectResponse redirect) {
+        if (redirect.isReconnect()) {
+            return;
+        }
+        targets.put(new Key(info, identity),
+              new Target(redirect, System.nanoTime() + lifetime));
+    }
+
+    /**
+     * Forgets where the source in the given info redirects to.
+     */
+    public synchronized void invalidate(XrootdTpcInfo info, String identity) {
+        targets.remove(new Key(info, identity));
+    }
+
+    public synchronized int size() {
+        return targets.size();
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+}
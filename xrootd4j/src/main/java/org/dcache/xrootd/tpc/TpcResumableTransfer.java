@@ -0,0 +1,350 @@
+/**
+ * Copyright (C) 2011-2026 dCache.org <support@dcache.org>
+ *
+ * This file is part of xrootd4j.
+ *
+ * xrootd4j is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * xrootd4j is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with xrootd4j.  If
+ * not, see http://www.gnu.org/licenses/.
+ */
+package org.dcache.xrootd.tpc;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static org.dcache.xrootd.protocol.XrootdProtocol.kXR_IOError;
+import static org.dcache.xrootd.protocol.XrootdProtocol.kXR_Overloaded;
+import static org.dcache.xrootd.protocol.XrootdProtocol.kXR_ServerError;
+import static org.dcache.xrootd.protocol.XrootdProtocol.kXR_error;
+import static org.dcache.xrootd.protocol.XrootdProtocol.kXR_noResponsesYet;
+import static org.dcache.xrootd.protocol.XrootdProtocol.kXR_noserver;
+import static org.dcache.xrootd.protocol.XrootdProtocol.kXR_ok;
+
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Range;
+import com.google.common.collect.RangeSet;
+import com.google.common.collect.TreeRangeSet;
+import io.netty.channel.ChannelHandlerContext;
+import java.io.IOException;
+import java.util.Set;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import org.dcache.xrootd.core.XrootdException;
+import org.dcache.xrootd.tpc.protocol.messages.InboundReadResponse;
+import org.dcache.xrootd.tpc.protocol.messages.InboundRedirectResponse;
+import org.dcache.xrootd.util.ParseException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Makes a third-party copy survive transient failures: instead of failing
+ *    the whole transfer, a new client is started which reopens the file
+ *    and continues reading from the last offset the destination has
+ *    written.</p>
+ *
+ * Each attempt gets its own write handler, which forwards to this
+ *    transfer; events from attempts that have already been given up are
+ *    ignored.  The embedder supplies a {@link Restarter} which constructs
+ *    and connects a client for an attempt, setting its write offset
+ *    to the given offset and, for inline checksumming, giving its read
+ *    handler {@link #getChecksumAccumulator}.  The source's checksum is
+ *    then queried, as usual, at the end of the final attempt.</p>
+ *
+ * Redirects are followed here as well, by starting a new attempt against
+ *    the redirect target from the current offset; they do not count
+ *    against the retry budget.  With a {@link TpcRedirectCache}, they are
+ *    also remembered, and later transfers start at the cached target,
+ *    falling back on the original source if that fails.</p>
+ *
+ * The resume offset is the point below which the destination write
+ *    handler has accepted all data.  Embedders whose writes only become
+ *    durable later should override {@link #getDurableOffset()}.</p>
+ */
+public class TpcResumableTransfer implements TpcDelayedSyncWriteHandler {
+
+    private static final Logger LOGGER
+          = LoggerFactory.getLogger(TpcResumableTransfer.class);
+
+    private static final int MAX_REDIRECTS = 256;
+
+    /*
+     *  Errors that may go away on a retry; anything else (authorization,
+     *  missing file, bad arguments, ...) fails the transfer at once.
+     */
+    private static final Set<Integer> RETRYABLE = ImmutableSet.of(
+          kXR_IOError, kXR_ServerError, kXR_noserver, kXR_Overloaded,
+          kXR_noResponsesYet, kXR_error);
+
+    /**
+     * Starts one attempt of the transfer.
+     */
+    @FunctionalInterface
+    public interface Restarter {
+        /**
+         * @param info the source to read from
+         * @param offset where to resume reading; the client's write offset
+         *               must be set to it before connecting
+         * @param writeHandler to construct the client with
+         */
+        void start(XrootdTpcInfo info, long offset,
+              TpcDelayedSyncWriteHandler writeHandler) throws Exception;
+    }
+
+    private final TpcDelayedSyncWriteHandler writeHandler;
+    private final Restarter restarter;
+    private final ScheduledExecutorService executor;
+    private final int maxRetries;
+    private final long retryDelay;
+    private final RangeSet<Long> written = TreeRangeSet.create();
+
+    private XrootdTpcInfo info;
+    private TpcChecksumAccumulator checksum;
+
+    /*
+     *  Optional; when the source was taken from the cache, the original
+     *  (redirector) info is kept to fall back on.
+     */
+    private TpcRedirectCache redirectCache;
+    private String identity;
+    private XrootdTpcInfo redirector;
+
+    private Attempt current;
+    private int retries;
+    private int redirects;
+    private boolean done;
+
+    public TpcResumableTransfer(XrootdTpcInfo info,
+          TpcDelayedSyncWriteHandler writeHandler,
+          Restarter restarter,
+          int maxRetries,
+          long retryDelay,
+          TimeUnit unit,
+          ScheduledExecutorService executor) {
+        checkArgument(maxRetries >= 0, "retries cannot be negative");
+        this.info = info;
+        this.writeHandler = writeHandler;
+        this.restarter = restarter;
+        this.maxRetries = maxRetries;
+        this.retryDelay = unit.toMillis(retryDelay);
+        this.executor = executor;
+    }
+
+    /**
+     * Lets the transfer go straight to a data server the source has
+     *    recently redirected to, falling back on the source itself if that
+     *    fails, and record the redirects it follows.  Redirects are only
+     *    shared between transfers presenting the same credential, which
+     *    <code>identity</code> names.</p>
+     */
+    public synchronized void setRedirectCache(TpcRedirectCache redirectCache,
+          String identity) {
+        this.redirectCache = redirectCache;
+        this.identity = identity;
+    }
+
+    /**
+     * Starts the first attempt.</p>
+     */
+    public void start() {
+        synchronized (this) {
+            if (redirectCache != null) {
+                XrootdTpcInfo cached = redirectCache.lookup(info, identity);
+                if (cached != null) {
+                    LOGGER.debug("Using cached redirect of {} from {} to {}.",
+                          info.getLfn(), info.getSrc(), cached.getSrc());
+                    redirector = info;
+                    info = cached;
+                }
+            }
+        }
+        startAttempt(0L);
+    }
+
+    public synchronized int getRetries() {
+        return retries;
+    }
+
+    /**
+     * @return the accumulator for inline checksumming, shared by all
+     *         attempts, or null if no (supported) checksum was requested.
+     */
+    public synchronized TpcChecksumAccumulator getChecksumAccumulator() {
+        if (checksum == null && info.getCks() != null) {
+            checksum = TpcChecksumAccumulator.forAlgorithm(info.getCks());
+        }
+        return checksum;
+    }
+
+    /**
+     * @return the offset below which the destination holds all data.
+     */
+    public synchronized long getDurableOffset() {
+        Range<Long> first = written.rangeContaining(0L);
+        return first == null ? 0L : first.upperEndpoint();
+    }
+
+    /**
+     * Fails the transfer for good.</p>
+     */
+    @Override
+    public void fireDelayedSync(int result, String error) {
+        synchronized (this) {
+            if (done) {
+                return;
+            }
+            done = true;
+            current = null;
+        }
+        writeHandler.fireDelayedSync(result, error);
+    }
+
+    @Override
+    public void write(InboundReadResponse response) throws IOException {
+        writeHandler.write(response);
+        synchronized (this) {
+            if (response.getDlen() > 0) {
+                written.add(Range.closedOpen(response.getWriteOffset(),
+                      response.getWriteOffset() + response.getDlen()));
+            }
+        }
+    }
+
+    @Override
+    public void redirect(ChannelHandlerContext ctx,
+          InboundRedirectResponse response) throws XrootdException {
+        throw new XrootdException(kXR_ServerError, "redirects are handled "
+              + "by the attempt");
+    }
+
+    private void startAttempt(long offset) {
+        Attempt attempt;
+        XrootdTpcInfo source;
+        synchronized (this) {
+            if (done) {
+                return;
+            }
+            written.remove(Range.atLeast(offset));
+            if (checksum != null) {
+                checksum.truncate(offset);
+            }
+            attempt = new Attempt();
+            current = attempt;
+            source = info;
+        }
+
+        try {
+            restarter.start(source, offset, attempt);
+        } catch (Exception e) {
+            LOGGER.warn("Failed to start TPC of {} from {} at {}: {}.",
+                  source.getLfn(), source.getSrc(), offset, e.toString());
+            attempt.fireDelayedSync(kXR_ServerError,
+                  "could not start third-party client: " + e);
+        }
+    }
+
+    private void attemptFailed(Attempt attempt, int result, String error) {
+        synchronized (this) {
+            if (done || attempt != current) {
+                return;
+            }
+            current = null;
+            if (redirector != null) {
+                /*
+                 *  The cached data server did not work out; go back to
+                 *  the redirector, whatever the error.
+                 */
+                LOGGER.info("TPC of {} from cached target {} failed "
+                            + "({}: {}); falling back to {}.",
+                      info.getLfn(), info.getSrc(), result, error,
+                      redirector.getSrc());
+                redirectCache.invalidate(redirector, identity);
+                info = redirector;
+                redirector = null;
+                long offset = getDurableOffset();
+                executor.execute(() -> startAttempt(offset));
+                return;
+            }
+            if (RETRYABLE.contains(result) && retries < maxRetries) {
+                ++retries;
+                long offset = getDurableOffset();
+                LOGGER.info("TPC of {} from {} failed ({}: {}); retry {} of {} "
+                            + "from offset {}.",
+                      info.getLfn(), info.getSrc(), result, error, retries,
+                      maxRetries, offset);
+                executor.schedule(() -> startAttempt(offset), retryDelay,
+                      TimeUnit.MILLISECONDS);
+                return;
+            }
+        }
+        fireDelayedSync(result, error);
+    }
+
+    private void attemptRedirected(Attempt attempt, ChannelHandlerContext ctx,
+          InboundRedirectResponse response) throws XrootdException {
+        long offset;
+        synchronized (this) {
+            if (done || attempt != current) {
+                return;
+            }
+            if (++redirects > MAX_REDIRECTS) {
+                throw new XrootdException(kXR_ServerError,
+                      "too many redirects");
+            }
+            if (redirectCache != null) {
+                redirectCache.put(info, identity, response);
+            }
+            redirector = null;
+            try {
+                info = info.copyForRedirect(response);
+            } catch (ParseException e) {
+                throw new XrootdException(kXR_ServerError,
+                      "bad redirect: " + e.getMessage());
+            }
+            offset = getDurableOffset();
+            current = null;
+        }
+
+        LOGGER.info("TPC redirected to {}; resuming at {}.", info.getSrc(),
+              offset);
+        ctx.channel().close();
+        executor.execute(() -> startAttempt(offset));
+    }
+
+    private class Attempt implements TpcDelayedSyncWriteHandler {
+
+        @Override
+        public void fireDelayedSync(int result, String error) {
+            if (result == kXR_ok) {
+                synchronized (TpcResumableTransfer.this) {
+                    if (this != current) {
+                        return;
+                    }
+                }
+                TpcResumableTransfer.this.fireDelayedSync(result, error);
+            } else {
+                attemptFailed(this, result, error);
+            }
+        }
+
+        @Override
+        public void write(InboundReadResponse response) throws IOException {
+            synchronized (TpcResumableTransfer.this) {
+                if (this != current) {
+                    throw new IOException("attempt was abandoned");
+                }
+            }
+            TpcResumableTransfer.this.write(response);
+        }
+
+        @Override
+        public void redirect(ChannelHandlerContext ctx,
+              InboundRedirectResponse response) throws XrootdException {
+            attemptRedirected(this, ctx, response);
+        }
+    }
+}
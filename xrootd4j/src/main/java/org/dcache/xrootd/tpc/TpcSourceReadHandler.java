@@ -26,11 +26,23 @@ import static org.dcache.xrootd.protocol.XrootdProtocol.kXR_oksofar;
 import static org.dcache.xrootd.protocol.XrootdProtocol.kXR_query;
 import static org.dcache.xrootd.protocol.XrootdProtocol.kXR_read;
 
+import com.google.common.collect.Range;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.util.ReferenceCountUtil;
 import java.io.IOException;
 import java.nio.channels.ClosedChannelException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Queue;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import org.dcache.xrootd.core.XrootdException;
 import org.dcache.xrootd.tpc.protocol.messages.AbstractXrootdInboundResponse;
 import org.dcache.xrootd.tpc.protocol.messages.InboundAttnResponse;
@@ -45,18 +57,84 @@ import org.dcache.xrootd.tpc.protocol.messages.OutboundReadRequest;
  *      send a reply to the kXR_sync request received from the initiating client,
  *      and calls back to disconnect the third-party client.</p>
  *
+ * Reads are pipelined: up to {@link #getReadWindow()} requests, each on
+ *    its own stream id, are kept outstanding, and the data is handed to
+ *    the write handler at the offset of the request it answers.  The
+ *    client's write offset is the point below which all data has been
+ *    written.</p>
+ *
+ * The handler may also read just one stripe of a striped transfer, in
+ *    which case it claims its chunks from a {@link TpcStripeCoordinator}
+ *    and only the last stripe to finish goes on to the checksum and the
+ *    reply.</p>
+ *
  * Optional checksum verification (done prior to the sync reply)
  *    is implemented by subclasses.</p>
  */
 public abstract class TpcSourceReadHandler extends AbstractClientSourceHandler {
 
+    /**
+     * Stop-and-wait, as before windowing was introduced.
+     */
+    public static final int DEFAULT_READ_WINDOW = 1;
+
+    /*
+     *  Outstanding reads, by the stream on which they were sent and
+     *  by the offset at which they start.
+     */
+    private final Map<Integer, PendingRead> readsByStream = new HashMap<>();
+    private final NavigableMap<Long, PendingRead> readsByOffset = new TreeMap<>();
+    private final Deque<Integer> freeStreamIds = new ArrayDeque<>();
+
+    private int allocatedStreamIds;
+    private long nextReadOffset;
+
+    /*
+     *  Set when this handler reads one stripe of a striped transfer.
+     */
+    private TpcStripeCoordinator stripes;
+    private boolean stripeFinished;
+
+    /*
+     *  Optional; replaces the fixed chunk size and window.
+     */
+    private TpcReadSizeController sizeController;
+
+    /*
+     *  Optional write-behind: responses are queued, retained, and written
+     *  out in order on the write executor, off the event loop.
+     */
+    private Executor writeExecutor;
+    private int maxQueuedWrites;
+    private final Queue<InboundReadResponse> writeQueue
+          = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger queuedWrites = new AtomicInteger();
+    private final AtomicBoolean draining = new AtomicBoolean();
+    private volatile boolean readsSuspended;
+    private volatile Throwable writeFailure;
+    private volatile boolean terminated;
+    private boolean waitingForWrites;
+    private boolean writeFailureReported;
+
+    /*
+     *  Checksum of the data received, in the algorithm requested by
+     *  tpc.cks; shared with the other stripes when striped.
+     */
+    private TpcChecksumAccumulator checksum;
+    private boolean checksumInitialized;
+
     @Override
     protected void doOnAsynResponse(ChannelHandlerContext ctx,
           InboundAttnResponse response)
           throws XrootdException {
         switch (response.getRequestId()) {
             case kXR_read:
-                sendReadRequest(ctx);
+                PendingRead read = readsByStream.get(response.getrStreamId());
+                if (read == null) {
+                    sendReadRequest(ctx);
+                } else {
+                    sendReadRequest(ctx, read);
+                }
                 break;
             case kXR_query:
                 sendChecksumRequest(ctx);
@@ -86,7 +164,11 @@ public abstract class TpcSourceReadHandler extends AbstractClientSourceHandler {
             return;
         }
 
-        validateChecksum(response, ctx);
+        String localChecksum = checksum == null ? null :
+              checksum.getValue(tpcInfo.computeFileSize());
+        LOGGER.debug("Checksum of {}: source {}, computed locally {}.",
+              tpcInfo.getLfn(), response.getChecksums(), localChecksum);
+        validateChecksum(response, localChecksum, ctx);
     }
 
     @Override
@@ -105,17 +187,21 @@ public abstract class TpcSourceReadHandler extends AbstractClientSourceHandler {
 
             int status = response.getStatus();
             int bytesRcvd = response.getDlen();
+            int streamId = response.getStreamId();
             LOGGER.debug("Read response received for {} on {}, channel {}, "
                         + "stream {}: status {}, "
                         + "got {} more bytes.",
                   tpcInfo.getLfn(),
                   tpcInfo.getSrc(),
                   ctx.channel().id(),
-                  client.getStreamId(),
+                  streamId,
                   status,
                   bytesRcvd);
 
             if (status != kXR_ok && status != kXR_oksofar) {
+                if (sizeController != null) {
+                    sizeController.backOff("read failed with status " + status);
+                }
                 String error = String.format(
                       "Read of %s failed with status %s.",
                       tpcInfo.getLfn(), status);
@@ -123,7 +209,22 @@ public abstract class TpcSourceReadHandler extends AbstractClientSourceHandler {
                 return;
             }
 
-            long writeOffset = client.getWriteOffset();
+            PendingRead read = readsByStream.get(streamId);
+            if (read == null) {
+                String error = String.format(
+                      "Read response for %s received on stream %d "
+                            + "with no outstanding request.",
+                      tpcInfo.getLfn(), streamId);
+                handleTransferTerminated(kXR_ServerError, error, ctx);
+                return;
+            }
+
+            long now = System.nanoTime();
+            if (read.latency == 0L) {
+                read.latency = now - read.sentAt;
+            }
+
+            long writeOffset = read.offset + read.received;
             long remaining = fileSize - writeOffset;
 
             if (bytesRcvd > remaining) {
@@ -135,9 +236,16 @@ public abstract class TpcSourceReadHandler extends AbstractClientSourceHandler {
             if (bytesRcvd > 0) {
                 try {
                     response.setWriteOffset(writeOffset);
-                    client.getWriteHandler().write(response);
-                    writeOffset += bytesRcvd;
-                    client.setWriteOffset(writeOffset);
+                    if (writeExecutor == null) {
+                        write(response);
+                    } else {
+                        queueWrite(ctx, response);
+                    }
+                    read.received += bytesRcvd;
+                    if (stripes != null) {
+                        stripes.completed(writeOffset, bytesRcvd);
+                    }
+                    client.setWriteOffset(getCompletedOffset());
                 } catch (ClosedChannelException e) {
                     handleTransferTerminated(kXR_ServerError, "Channel "
                                 + ctx.channel().id()
@@ -151,14 +259,15 @@ public abstract class TpcSourceReadHandler extends AbstractClientSourceHandler {
                 }
 
                 LOGGER.debug("Read of {} on {}, channel {}, stream {}: "
-                            + "wrote {}, "
-                            + "so far {}, expected {}.",
+                            + "wrote {} at {}, "
+                            + "completed {}, expected {}.",
                       tpcInfo.getLfn(),
                       tpcInfo.getSrc(),
                       ctx.channel().id(),
-                      client.getStreamId(),
+                      streamId,
                       bytesRcvd,
                       writeOffset,
+                      client.getWriteOffset(),
                       fileSize);
             }
 
@@ -168,24 +277,35 @@ public abstract class TpcSourceReadHandler extends AbstractClientSourceHandler {
                       tpcInfo.getLfn(),
                       tpcInfo.getSrc(),
                       ctx.channel().id(),
-                      client.getStreamId());
+                      streamId);
+                client.startTimer(ctx);
                 return;
             }
 
-            if (writeOffset < fileSize) {
-                sendReadRequest(ctx);
-            } else if (tpcInfo.getCks() != null) {
-                sendChecksumRequest(ctx);
-            } else {
-                LOGGER.debug("Read for {} on {}, channel {}, stream {},"
-                            + " completed without "
-                            + "checksum verification.",
-                      tpcInfo.getLfn(),
-                      tpcInfo.getSrc(),
-                      ctx.channel().id(),
-                      client.getStreamId());
-                handleTransferTerminated(kXR_ok, null, ctx);
+            readsByOffset.remove(read.offset);
+
+            if (sizeController != null) {
+                sizeController.readCompleted(read.received, read.latency, now);
+            }
+
+            if (read.received < read.length
+                  && read.offset + read.received < fileSize) {
+                /*
+                 *  Short read; ask again for the remainder on the same stream.
+                 */
+                read.offset += read.received;
+                read.length -= read.received;
+                read.received = 0;
+                readsByOffset.put(read.offset, read);
+                sendReadRequest(ctx, read);
+                return;
             }
+
+            readsByStream.remove(streamId);
+            freeStreamIds.push(streamId);
+            client.setWriteOffset(getCompletedOffset());
+
+            sendReadRequest(ctx);
         } finally {
             ReferenceCountUtil.release(response);
         }
@@ -197,8 +317,18 @@ public abstract class TpcSourceReadHandler extends AbstractClientSourceHandler {
           throws XrootdException {
         switch (response.getRequestId()) {
             case kXR_read:
+                if (sizeController != null) {
+                    sizeController.backOff("kXR_wait from source");
+                }
+                PendingRead read = readsByStream.get(response.getStreamId());
                 client.getExecutor().schedule(() -> {
-                    sendReadRequest(ctx);
+                    ctx.channel().eventLoop().execute(() -> {
+                        if (read == null) {
+                            sendReadRequest(ctx);
+                        } else {
+                            sendReadRequest(ctx, read);
+                        }
+                    });
                 }, getWaitInSeconds(response), TimeUnit.SECONDS);
                 break;
             case kXR_query:
@@ -214,46 +344,129 @@ public abstract class TpcSourceReadHandler extends AbstractClientSourceHandler {
     protected void handleTransferTerminated(int status,
           String error,
           ChannelHandlerContext ctx) {
+        terminated = true;
         client.getWriteHandler().fireDelayedSync(status, error);
         LOGGER.debug("handleTransferTerminated called fire delayed sync, "
               + "calling client shutdown");
         client.shutDown(ctx);
     }
 
+    /**
+     * Keeps up to {@link #getReadWindow()} read requests outstanding,
+     * each on its own stream, until the whole file has been requested.
+     * Once every request has been answered, proceeds to checksum
+     * verification or terminates the transfer.
+     */
     @Override
     protected void sendReadRequest(ChannelHandlerContext ctx) {
         XrootdTpcInfo tpcInfo = client.getInfo();
-        int requestBlock;
+        long fileSize;
         try {
-            long remaining = tpcInfo.computeFileSize() - client.getWriteOffset();
+            fileSize = tpcInfo.computeFileSize();
 
-            if (remaining < 0) {
+            if (client.getWriteOffset() > fileSize) {
                 throw new XrootdException(kXR_IOError,
                       "tpc request has written beyond EOF.");
             }
+        } catch (XrootdException e) {
+            exceptionCaught(ctx, e);
+            return;
+        }
 
-            requestBlock = (int) Math.min(getChunkSize(), remaining);
-            LOGGER.debug("sendReadRequest to {}, channel {}, stream {}, "
-                        + "fhandle {}, offset {}, requested block {}.",
+        if (!checksumInitialized) {
+            checksumInitialized = true;
+            if (checksum == null && tpcInfo.getCks() != null) {
+                checksum = stripes == null ?
+                      TpcChecksumAccumulator.forAlgorithm(tpcInfo.getCks()) :
+                      stripes.getChecksumAccumulator(tpcInfo.getCks());
+            }
+        }
+
+        if (readsByStream.isEmpty() && stripes == null) {
+            nextReadOffset = Math.max(nextReadOffset, client.getWriteOffset());
+        }
+
+        int window = sizeController == null ? Math.max(1, getReadWindow()) :
+              sizeController.getWindow();
+        int chunkSize = sizeController == null ? getChunkSize() :
+              sizeController.getChunkSize();
+        while (readsByStream.size() < window) {
+            long offset;
+            int requestBlock;
+            if (stripes == null) {
+                if (nextReadOffset >= fileSize) {
+                    break;
+                }
+                offset = nextReadOffset;
+                requestBlock = (int) Math.min(chunkSize,
+                      fileSize - nextReadOffset);
+                nextReadOffset += requestBlock;
+            } else {
+                Range<Long> range = stripes.claim(fileSize, chunkSize);
+                if (range == null) {
+                    break;
+                }
+                offset = range.lowerEndpoint();
+                requestBlock = (int) (range.upperEndpoint() - offset);
+            }
+            PendingRead read = new PendingRead(nextStreamId(), offset,
+                  requestBlock);
+            readsByStream.put(read.streamId, read);
+            readsByOffset.put(read.offset, read);
+            sendReadRequest(ctx, read);
+        }
+
+        if (!readsByStream.isEmpty()) {
+            client.startTimer(ctx);
+            return;
+        }
+
+        if (queuedWrites.get() > 0) {
+            LOGGER.debug("All reads for {} on {}, channel {}, stream {}, "
+                        + "are in; waiting for {} queued writes.",
+                  tpcInfo.getLfn(),
                   tpcInfo.getSrc(),
                   ctx.channel().id(),
                   client.getStreamId(),
-                  client.getFhandle(),
-                  client.getWriteOffset(),
-                  requestBlock);
-            client.setExpectedResponse(kXR_read);
-        } catch (XrootdException e) {
-            exceptionCaught(ctx, e);
+                  queuedWrites.get());
+            waitingForWrites = true;
             return;
         }
 
-        ctx.writeAndFlush(new OutboundReadRequest(client.getStreamId(),
-                          client.getFhandle(),
-                          client.getWriteOffset(),
-                          requestBlock),
-                    ctx.newPromise())
-              .addListener(FIRE_EXCEPTION_ON_FAILURE);
-        client.startTimer(ctx);
+        if (stripes != null) {
+            if (stripeFinished) {
+                return;
+            }
+            stripeFinished = true;
+            try {
+                if (!stripes.finish(fileSize)) {
+                    LOGGER.debug("Stripe of {} on {}, channel {}, stream {}, "
+                                + "has no more to read; closing.",
+                          tpcInfo.getLfn(),
+                          tpcInfo.getSrc(),
+                          ctx.channel().id(),
+                          client.getStreamId());
+                    client.shutDown(ctx);
+                    return;
+                }
+            } catch (XrootdException e) {
+                exceptionCaught(ctx, e);
+                return;
+            }
+        }
+
+        if (tpcInfo.getCks() != null) {
+            sendChecksumRequest(ctx);
+        } else {
+            LOGGER.debug("Read for {} on {}, channel {}, stream {},"
+                        + " completed without "
+                        + "checksum verification.",
+                  tpcInfo.getLfn(),
+                  tpcInfo.getSrc(),
+                  ctx.channel().id(),
+                  client.getStreamId());
+            handleTransferTerminated(kXR_ok, null, ctx);
+        }
     }
 
     @Override
@@ -277,5 +490,254 @@ public abstract class TpcSourceReadHandler extends AbstractClientSourceHandler {
           ChannelHandlerContext ctx)
           throws XrootdException;
 
+    /**
+     * Called with the checksum of the data as received, so that it can be
+     * compared with the source's value without re-reading the file.  By
+     * default, the local value is ignored.
+     *
+     * @param localChecksum lower-case hex value, in the tpc.cks algorithm,
+     *                      of the data received; null if it could not be
+     *                      computed (unsupported algorithm, or MD5 over
+     *                      data received out of order).
+     */
+    protected void validateChecksum(InboundChecksumResponse response,
+          String localChecksum,
+          ChannelHandlerContext ctx)
+          throws XrootdException {
+        validateChecksum(response, ctx);
+    }
+
     protected abstract int getChunkSize();
+
+    @Override
+    public void setClient(XrootdTpcClient client) {
+        super.setClient(client);
+        if (stripes != null) {
+            stripes.addClient(client);
+        }
+    }
+
+    /**
+     * Lets the controller choose the size and number of outstanding
+     * reads, instead of {@link #getChunkSize()} and {@link #getReadWindow()}.
+     */
+    public void setSizeController(TpcReadSizeController sizeController) {
+        this.sizeController = sizeController;
+    }
+
+    /**
+     * Moves writes off the event loop: received data is queued and passed
+     * to the write handler in order on the given executor.  Once
+     * maxQueuedWrites responses are waiting, reading from the source is
+     * suspended until the queue has drained to half that.  The transfer
+     * completes only when every queued write has been done.
+     */
+    public void setWriteBehind(Executor writeExecutor, int maxQueuedWrites) {
+        this.writeExecutor = writeExecutor;
+        this.maxQueuedWrites = Math.max(1, maxQueuedWrites);
+    }
+
+    /**
+     * Accumulates the checksum of the data received into an existing
+     * accumulator, as when resuming a transfer; otherwise one is created
+     * for the tpc.cks algorithm.
+     */
+    public void setChecksumAccumulator(TpcChecksumAccumulator checksum) {
+        this.checksum = checksum;
+    }
+
+    /**
+     * Makes this handler read one stripe of a striped transfer; must be
+     * called before the client connects.
+     */
+    public void setStripeCoordinator(TpcStripeCoordinator stripes) {
+        this.stripes = stripes;
+    }
+
+    /**
+     * @return the maximum number of read requests kept outstanding
+     *         on the connection to the source; 1 means stop-and-wait.
+     */
+    protected int getReadWindow() {
+        return DEFAULT_READ_WINDOW;
+    }
+
+    private void sendReadRequest(ChannelHandlerContext ctx, PendingRead read) {
+        LOGGER.debug("sendReadRequest to {}, channel {}, stream {}, "
+                    + "fhandle {}, offset {}, requested block {}.",
+              client.getInfo().getSrc(),
+              ctx.channel().id(),
+              read.streamId,
+              client.getFhandle(),
+              read.offset + read.received,
+              read.length - read.received);
+        client.setExpectedResponse(kXR_read);
+        read.sentAt = System.nanoTime();
+        read.latency = 0L;
+        ctx.writeAndFlush(new OutboundReadRequest(read.streamId,
+                          client.getFhandle(),
+                          read.offset + read.received,
+                          read.length - read.received),
+                    ctx.newPromise())
+              .addListener(FIRE_EXCEPTION_ON_FAILURE);
+        client.startTimer(ctx);
+    }
+
+    /**
+     * The write handler sees the data first, so that data it rejects, such
+     * as that of an abandoned attempt of a resumed transfer, never reaches
+     * the (possibly shared) checksum.
+     */
+    private void write(InboundReadResponse response) throws IOException {
+        client.getWriteHandler().write(response);
+        if (checksum != null) {
+            checksum.update(response.getWriteOffset(),
+                  response.toByteBuffers());
+        }
+    }
+
+    private void queueWrite(ChannelHandlerContext ctx,
+          InboundReadResponse response) {
+        response.retain();
+        writeQueue.add(response);
+        if (queuedWrites.incrementAndGet() >= maxQueuedWrites
+              && !readsSuspended) {
+            readsSuspended = true;
+            ctx.channel().config().setAutoRead(false);
+
+            /*
+             *  The drain may have gone below the low mark before it could
+             *  see that reads were suspended.
+             */
+            resumeReads(ctx);
+        }
+        if (draining.compareAndSet(false, true)) {
+            writeExecutor.execute(() -> drainWrites(ctx));
+        }
+    }
+
+    /**
+     * Runs on the write executor; only one drain per handler is active
+     * at a time, so writes reach the write handler in the order received.
+     * Writes still queued when the transfer has been terminated are
+     * dropped.
+     */
+    private void drainWrites(ChannelHandlerContext ctx) {
+        try {
+            InboundReadResponse response;
+            while ((response = writeQueue.poll()) != null) {
+                try {
+                    if (writeFailure == null && !terminated) {
+                        write(response);
+                    }
+                } catch (IOException | RuntimeException e) {
+                    writeFailure = e;
+                } finally {
+                    response.release();
+                }
+
+                int left = queuedWrites.decrementAndGet();
+                if (left <= maxQueuedWrites / 2 && readsSuspended) {
+                    ctx.channel().eventLoop().execute(() -> resumeReads(ctx));
+                }
+            }
+        } finally {
+            draining.set(false);
+        }
+
+        /*
+         *  A response may have been queued after the last poll but before
+         *  draining was cleared.
+         */
+        if (!writeQueue.isEmpty() && draining.compareAndSet(false, true)) {
+            writeExecutor.execute(() -> drainWrites(ctx));
+            return;
+        }
+
+        if (writeFailure != null || queuedWrites.get() == 0) {
+            ctx.channel().eventLoop().execute(() -> onWritesDrained(ctx));
+        }
+    }
+
+    /**
+     * Runs on the event loop, as does every change to auto-read.
+     */
+    private void resumeReads(ChannelHandlerContext ctx) {
+        if (readsSuspended && queuedWrites.get() <= maxQueuedWrites / 2) {
+            readsSuspended = false;
+            ctx.channel().config().setAutoRead(true);
+        }
+    }
+
+    private void onWritesDrained(ChannelHandlerContext ctx) {
+        if (writeFailure != null) {
+            if (!writeFailureReported) {
+                writeFailureReported = true;
+                readsSuspended = false;
+                ctx.channel().config().setAutoRead(true);
+                handleTransferTerminated(kXR_IOError,
+                      writeFailure.toString(), ctx);
+            }
+            return;
+        }
+
+        if (waitingForWrites && queuedWrites.get() == 0) {
+            waitingForWrites = false;
+            sendReadRequest(ctx);
+        }
+    }
+
+    /**
+     * @return the offset below which every byte has been handed to the
+     *         write handler (or, with write-behind, queued for it).
+     */
+    private long getCompletedOffset() {
+        if (stripes != null) {
+            return stripes.getCompletedOffset();
+        }
+
+        Map.Entry<Long, PendingRead> first = readsByOffset.firstEntry();
+        if (first == null) {
+            return nextReadOffset;
+        }
+        PendingRead read = first.getValue();
+        return read.offset + read.received;
+    }
+
+    /**
+     * The first read uses the client's own stream; further reads in the
+     * window each take another id, which is recycled once its read has
+     * been answered.  Ids travel as unsigned shorts and 0 is reserved.
+     */
+    private int nextStreamId() {
+        if (!freeStreamIds.isEmpty()) {
+            return freeStreamIds.pop();
+        }
+
+        int ownId = client.getStreamId() & 0xFFFF;
+        if (allocatedStreamIds++ == 0 && ownId != 0) {
+            return ownId;
+        }
+
+        int id;
+        do {
+            id = XrootdTpcClient.getNextStreamId() & 0xFFFF;
+        } while (id == 0 || id == ownId || readsByStream.containsKey(id));
+        return id;
+    }
+
+    private static class PendingRead {
+        final int streamId;
+        long offset;
+        int length;
+        int received;
+        long sentAt;
+        long latency;
+
+        PendingRead(int streamId, long offset, int length) {
+            this.streamId = streamId;
+            this.offset = offset;
+            this.length = length;
+        }
+    }
 }
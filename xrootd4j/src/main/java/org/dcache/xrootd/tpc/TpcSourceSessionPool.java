@@ -0,0 +1,240 @@
+/**
+ * Copyright (C) 2011-2026 dCache.org <support@dcache.org>
+ *
+ * This file is part of xrootd4j.
+ *
+ * xrootd4j is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * xrootd4j is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with xrootd4j.  If
+ * not, see http://www.gnu.org/licenses/.
+ */
+package org.dcache.xrootd.tpc;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import com.google.common.annotations.VisibleForTesting;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFuture;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Keeps the connections of finished third-party transfers open, logged in
+ *    and authenticated, so that the next transfer from the same source
+ *    with the same credentials can go straight to kXR_open.</p>
+ *
+ * Sessions are keyed by source host and port, the identity of the
+ *    credential used (as named by the embedder, e.g. a DN or token
+ *    subject), and whether TLS was requested.  A client takes part by
+ *    calling {@link XrootdTpcClient#setSessionPool} before connecting;
+ *    if its transfer succeeds and the file is closed cleanly, the session
+ *    is returned here instead of being ended.</p>
+ *
+ * Idle sessions are closed after the idle timeout, and a session whose
+ *    channel has gone inactive (the server closed it, or the network
+ *    failed) is never handed out.</p>
+ */
+public class TpcSourceSessionPool {
+
+    private static final Logger LOGGER
+          = LoggerFactory.getLogger(TpcSourceSessionPool.class);
+
+    private final LongSupplier clock;
+    private final long idleTimeout;
+    private final int maxIdlePerSource;
+    private final Map<Key, Deque<IdleSession>> idle = new HashMap<>();
+    private final ScheduledFuture<?> sweeper;
+
+    public TpcSourceSessionPool(long idleTimeout, TimeUnit unit,
+          int maxIdlePerSource, ScheduledExecutorService executor) {
+        this(idleTimeout, unit, maxIdlePerSource, executor,
+              System::currentTimeMillis);
+    }
+
+    /**
+     * @param clock current time in milliseconds
+     */
+    @VisibleForTesting
+    TpcSourceSessionPool(long idleTimeout, TimeUnit unit,
+          int maxIdlePerSource, ScheduledExecutorService executor,
+          LongSupplier clock) {
+        checkArgument(idleTimeout > 0, "idle timeout must be positive");
+        checkArgument(maxIdlePerSource > 0, "at least one idle session "
+              + "per source must be allowed");
+        this.idleTimeout = unit.toMillis(idleTimeout);
+        this.maxIdlePerSource = maxIdlePerSource;
+        this.clock = clock;
+        long period = Math.max(1L, this.idleTimeout / 2);
+        sweeper = executor.scheduleWithFixedDelay(this::closeExpired,
+              period, period, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * @return an idle, still connected client whose session can be taken
+     *         over by the given one, or null if there is none.
+     */
+    synchronized XrootdTpcClient acquire(XrootdTpcClient client) {
+        Deque<IdleSession> sessions = idle.get(new Key(client));
+        if (sessions == null) {
+            return null;
+        }
+
+        long now = clock.getAsLong();
+        IdleSession session;
+        while ((session = sessions.pollLast()) != null) {
+            if (session.isUsable(now)) {
+                LOGGER.debug("Reusing session {} to {} for {}.",
+                      session.client.getSessionId(),
+                      client.getInfo().getSrc(),
+                      client.getInfo().getLfn());
+                break;
+            }
+            session.close();
+        }
+
+        if (sessions.isEmpty()) {
+            idle.remove(new Key(client));
+        }
+
+        return session == null ? null : session.client;
+    }
+
+    /**
+     * @return true if the client's session has been taken into the pool,
+     *         false if the caller should end it.
+     */
+    synchronized boolean release(XrootdTpcClient client) {
+        ChannelFuture future = client.getChannelFuture();
+        if (future == null || !future.channel().isActive()) {
+            return false;
+        }
+
+        Key key = new Key(client);
+        Deque<IdleSession> sessions = idle.computeIfAbsent(key,
+              k -> new ArrayDeque<>());
+        if (sessions.size() >= maxIdlePerSource) {
+            return false;
+        }
+
+        IdleSession session = new IdleSession(client);
+        sessions.addLast(session);
+        future.channel().closeFuture().addListener(f -> remove(key, session));
+        return true;
+    }
+
+    /**
+     * Closes all idle sessions and stops the idle timer.</p>
+     */
+    public void shutdown() {
+        sweeper.cancel(false);
+        List<IdleSession> sessions = new ArrayList<>();
+        synchronized (this) {
+            idle.values().forEach(sessions::addAll);
+            idle.clear();
+        }
+        sessions.forEach(IdleSession::close);
+    }
+
+    public synchronized int getIdleCount() {
+        return idle.values().stream().mapToInt(Deque::size).sum();
+    }
+
+    private synchronized void remove(Key key, IdleSession session) {
+        Deque<IdleSession> sessions = idle.get(key);
+        if (sessions != null && sessions.remove(session) && sessions.isEmpty()) {
+            idle.remove(key);
+        }
+    }
+
+    private void closeExpired() {
+        List<IdleSession> expired = new ArrayList<>();
+        long now = clock.getAsLong();
+        synchronized (this) {
+            for (Iterator<Deque<IdleSession>> i = idle.values().iterator();
+                  i.hasNext(); ) {
+                Deque<IdleSession> sessions = i.next();
+                sessions.removeIf(s -> !s.isUsable(now) && expired.add(s));
+                if (sessions.isEmpty()) {
+                    i.remove();
+                }
+            }
+        }
+        expired.forEach(IdleSession::close);
+    }
+
+    private class IdleSession {
+        final XrootdTpcClient client;
+        final long since;
+
+        IdleSession(XrootdTpcClient client) {
+            this.client = client;
+            since = clock.getAsLong();
+        }
+
+        boolean isUsable(long now) {
+            return now - since < idleTimeout
+                  && client.getChannelFuture().channel().isActive();
+        }
+
+        void close() {
+            Channel channel = client.getChannelFuture().channel();
+            LOGGER.debug("Closing idle session {} to {}, channel {}.",
+                  client.getSessionId(), client.getInfo().getSrc(),
+                  channel.id());
+            channel.close();
+        }
+    }
+
+    private static class Key {
+        final String host;
+        final Integer port;
+        final String identity;
+        final boolean tls;
+
+        Key(XrootdTpcClient client) {
+            XrootdTpcInfo info = client.getInfo();
+            host = info.getSrcHost();
+            port = info.getSrcPort();
+            identity = client.getSessionIdentity();
+            tls = info.isTls();
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return tls == other.tls
+                  && Objects.equals(port, other.port)
+                  && Objects.equals(host, other.host)
+                  && Objects.equals(identity, other.identity);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(host, port, identity, tls);
+        }
+    }
+}
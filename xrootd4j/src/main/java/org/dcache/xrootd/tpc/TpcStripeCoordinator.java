@@ -0,0 +1,208 @@
+/**
+ * Copyright (C) 2011-2026 dCache.org <support@dcache.org>
+ *
+ * This file is part of xrootd4j.
+ *
+ * xrootd4j is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * xrootd4j is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with xrootd4j.  If
+ * not, see http://www.gnu.org/licenses/.
+ */
+package org.dcache.xrootd.tpc;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static org.dcache.xrootd.protocol.XrootdProtocol.kXR_ServerError;
+import static org.dcache.xrootd.protocol.XrootdProtocol.kXR_Unsupported;
+import static org.dcache.xrootd.protocol.XrootdProtocol.kXR_ok;
+
+import com.google.common.collect.Range;
+import com.google.common.collect.RangeSet;
+import com.google.common.collect.TreeRangeSet;
+import io.netty.channel.ChannelHandlerContext;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import org.dcache.xrootd.core.XrootdException;
+import org.dcache.xrootd.tpc.protocol.messages.InboundReadResponse;
+import org.dcache.xrootd.tpc.protocol.messages.InboundRedirectResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Coordinates a striped third-party copy, in which several clients, each
+ *    with its own connection, login and authentication, read disjoint
+ *    parts of the same source file in parallel.</p>
+ *
+ * Each stripe's client is constructed with this coordinator as its write
+ *    handler, and each stripe's read handler is given the coordinator via
+ *    {@link TpcSourceReadHandler#setStripeCoordinator}.  The read handlers
+ *    claim chunks from the coordinator rather than walking the file
+ *    themselves, so faster stripes take on more of the file.  Data is
+ *    passed on to the destination's write handler as it arrives, at its
+ *    own offset and in whatever order the stripes deliver it.</p>
+ *
+ * Only the stripe which finishes last verifies the checksum (if requested)
+ *    and completes the transfer; the others simply close.  Any failure
+ *    is reported once and the remaining stripes are disconnected.</p>
+ *
+ * Redirects cannot be followed by an individual stripe; striping should be
+ *    started against the source to which any redirection has already led.</p>
+ */
+public class TpcStripeCoordinator implements TpcDelayedSyncWriteHandler {
+
+    private static final Logger LOGGER
+          = LoggerFactory.getLogger(TpcStripeCoordinator.class);
+
+    private final TpcDelayedSyncWriteHandler writeHandler;
+    private final int stripes;
+    private final List<XrootdTpcClient> clients = new ArrayList<>();
+    private final RangeSet<Long> completed = TreeRangeSet.create();
+
+    /*
+     *  Serializes writes without holding the monitor which the read
+     *  handlers need to claim and complete ranges.
+     */
+    private final Object writeLock = new Object();
+
+    private TpcChecksumAccumulator checksum;
+    private long nextOffset;
+    private int finished;
+    private boolean done;
+
+    public TpcStripeCoordinator(TpcDelayedSyncWriteHandler writeHandler,
+          int stripes) {
+        checkArgument(stripes > 0, "at least one stripe is required");
+        this.writeHandler = writeHandler;
+        this.stripes = stripes;
+    }
+
+    public int getStripes() {
+        return stripes;
+    }
+
+    /**
+     * Registers a stripe's client, so that it can be stopped if another
+     *    stripe fails.</p>
+     */
+    public synchronized void addClient(XrootdTpcClient client) {
+        if (done) {
+            client.disconnect();
+        } else {
+            clients.add(client);
+        }
+    }
+
+    /**
+     * @return the next part of the file to read, at most length bytes long,
+     *         or null if the whole file has been handed out or the
+     *         transfer has failed.
+     */
+    public synchronized Range<Long> claim(long fileSize, int length) {
+        if (done || nextOffset >= fileSize) {
+            return null;
+        }
+        long start = nextOffset;
+        nextOffset = Math.min(fileSize, start + length);
+        return Range.closedOpen(start, nextOffset);
+    }
+
+    /**
+     * @return the accumulator shared by all stripes for the checksum
+     *         of the data received, or null if the algorithm is not
+     *         supported.
+     */
+    public synchronized TpcChecksumAccumulator getChecksumAccumulator(
+          String cks) {
+        if (checksum == null) {
+            checksum = TpcChecksumAccumulator.forAlgorithm(cks);
+        }
+        return checksum;
+    }
+
+    /**
+     * Records that a claimed range has been fully written.</p>
+     */
+    public synchronized void completed(long offset, long length) {
+        if (length > 0) {
+            completed.add(Range.closedOpen(offset, offset + length));
+        }
+    }
+
+    /**
+     * @return the offset below which every byte, across all stripes,
+     *         has been written.
+     */
+    public synchronized long getCompletedOffset() {
+        Range<Long> first = completed.rangeContaining(0L);
+        return first == null ? 0L : first.upperEndpoint();
+    }
+
+    /**
+     * Called by a stripe once it has no reads outstanding and nothing
+     *    left to claim.</p>
+     *
+     * @return true if this was the last stripe, in which case the caller
+     *         should verify the checksum and terminate the transfer;
+     *         false if the caller should just close its own session.
+     */
+    public synchronized boolean finish(long fileSize) throws XrootdException {
+        if (++finished < stripes || done) {
+            return false;
+        }
+
+        if (!completed.encloses(Range.closedOpen(0L, fileSize))
+              && fileSize > 0) {
+            throw new XrootdException(kXR_ServerError,
+                  "striped transfer finished with ranges missing: "
+                        + TreeRangeSet.create(completed).complement()
+                        .subRangeSet(Range.closedOpen(0L, fileSize)));
+        }
+        return true;
+    }
+
+    @Override
+    public void fireDelayedSync(int result, String error) {
+        List<XrootdTpcClient> others;
+        synchronized (this) {
+            if (done) {
+                return;
+            }
+            done = true;
+            others = new ArrayList<>(clients);
+        }
+
+        if (result != kXR_ok) {
+            LOGGER.warn("Striped transfer failed ({}: {}); stopping {} stripes.",
+                  result, error, others.size());
+            others.forEach(XrootdTpcClient::disconnect);
+        }
+
+        writeHandler.fireDelayedSync(result, error);
+    }
+
+    /**
+     * The destination's write handler need not be safe for concurrent
+     *    use, so writes from the stripes are serialized; other stripes
+     *    may meanwhile go on claiming and completing ranges.</p>
+     */
+    @Override
+    public void write(InboundReadResponse response) throws IOException {
+        synchronized (writeLock) {
+            writeHandler.write(response);
+        }
+    }
+
+    @Override
+    public void redirect(ChannelHandlerContext ctx,
+          InboundRedirectResponse response) throws XrootdException {
+        throw new XrootdException(kXR_Unsupported, "striped third-party copy "
+              + "cannot follow a redirect to "
+              + response.getHost() + ":" + response.getPort());
+    }
+}
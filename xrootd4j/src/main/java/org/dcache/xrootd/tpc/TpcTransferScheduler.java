@@ -0,0 +1,530 @@
+/**
+ * Copyright (C) 2011-2026 dCache.org <support@dcache.org>
+ *
+ * This file is part of xrootd4j.
+ *
+ * xrootd4j is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * xrootd4j is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with xrootd4j.  If
+ * not, see http://www.gnu.org/licenses/.
+ */
+package org.dcache.xrootd.tpc;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static org.dcache.xrootd.protocol.XrootdProtocol.kXR_ServerError;
+import static org.dcache.xrootd.protocol.XrootdProtocol.kXR_ok;
+
+import com.google.common.annotations.VisibleForTesting;
+import io.netty.channel.ChannelHandlerContext;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.LongSupplier;
+import org.dcache.xrootd.core.XrootdException;
+import org.dcache.xrootd.tpc.protocol.messages.InboundReadResponse;
+import org.dcache.xrootd.tpc.protocol.messages.InboundRedirectResponse;
+import org.dcache.xrootd.util.ParseException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Admits third-party transfers according to per-source and global limits,
+ *    instead of connecting every client as soon as it is requested.</p>
+ *
+ * Transfers are queued by source host.  Within a source, higher priorities
+ *    go first, and at equal priority the owners (VO or user, as named by
+ *    the embedder) are served round-robin.  A transfer is started when
+ *    the source is below its concurrency limit, the global number of
+ *    active transfers is below its limit, and the aggregate rate over the
+ *    last second is below the bandwidth limit (if any).  The sources share
+ *    the global slots round-robin.</p>
+ *
+ * The embedder starts the transfer from the callback given to
+ *    {@link #submit}, constructing its client for {@link Ticket#getInfo}
+ *    with the {@link Ticket} as write handler and passing it to
+ *    {@link XrootdTpcClient#setSchedulerTicket}.  The ticket frees the slot
+ *    when the delayed sync is fired, counts the bytes written, and learns
+ *    of kXR_wait responses from the source: these halve the source's
+ *    concurrency limit and hold back further starts for the time asked;
+ *    each successful transfer raises the limit again by one.  A transfer
+ *    which is given up before its client is started must be cancelled,
+ *    so that it does not keep its place or slot.</p>
+ *
+ * Redirects are followed by the ticket: it points its info at the
+ *    target and calls the start callback again, so that the new client,
+ *    too, writes through the ticket.  The transfer keeps its slot with
+ *    the source it was submitted for.  When the ticket's write handler
+ *    is a {@link TpcResumableTransfer}, whose attempts follow redirects
+ *    themselves, the ticket is not involved.</p>
+ */
+public class TpcTransferScheduler {
+
+    private static final Logger LOGGER
+          = LoggerFactory.getLogger(TpcTransferScheduler.class);
+
+    /*
+     *  The aggregate rate is measured over intervals of one second.
+     */
+    private static final long RATE_INTERVAL = TimeUnit.SECONDS.toMillis(1);
+
+    private static final int MAX_REDIRECTS = 256;
+
+    private final ScheduledExecutorService executor;
+    private final LongSupplier clock;
+    private final int maxActive;
+    private final int maxActivePerSource;
+    private final long maxBytesPerSecond;
+
+    /*
+     *  In round-robin order: a source which has been given a slot moves
+     *  to the back.
+     */
+    private final LinkedHashMap<String, SourceQueue> sources
+          = new LinkedHashMap<>();
+
+    private int active;
+
+    /*
+     *  Aggregate rate over the current and the previous interval.
+     */
+    private long intervalStart;
+    private long intervalBytes;
+    private long lastIntervalBytes;
+
+    /*
+     *  Queueing statistics.
+     */
+    private long started;
+    private long totalWaitMillis;
+    private long maxWaitMillis;
+
+    /**
+     * @param maxBytesPerSecond aggregate rate above which no further
+     *                          transfers are started; 0 for no limit.
+     */
+    public TpcTransferScheduler(int maxActive, int maxActivePerSource,
+          long maxBytesPerSecond, ScheduledExecutorService executor) {
+        this(maxActive, maxActivePerSource, maxBytesPerSecond, executor,
+              System::currentTimeMillis);
+    }
+
+    /**
+     * @param clock current time in milliseconds
+     */
+    @VisibleForTesting
+    TpcTransferScheduler(int maxActive, int maxActivePerSource,
+          long maxBytesPerSecond, ScheduledExecutorService executor,
+          LongSupplier clock) {
+        checkArgument(maxActive > 0 && maxActivePerSource > 0,
+              "limits must be positive");
+        this.maxActive = maxActive;
+        this.maxActivePerSource = maxActivePerSource;
+        this.maxBytesPerSecond = maxBytesPerSecond;
+        this.executor = executor;
+        this.clock = clock;
+    }
+
+    /**
+     * Queues a transfer.</p>
+     *
+     * @param info of the transfer; it is queued by the source host
+     * @param owner VO or user, for fair sharing
+     * @param priority higher values are started first
+     * @param writeHandler to which the ticket passes on writes and the
+     *                     delayed sync
+     * @param start called, on the scheduler's executor, with the ticket
+     *              once the transfer may begin, and again after each
+     *              redirect
+     */
+    public synchronized Ticket submit(XrootdTpcInfo info, String owner,
+          int priority, TpcDelayedSyncWriteHandler writeHandler,
+          Consumer<Ticket> start) {
+        Ticket ticket = new Ticket(info, owner, priority, writeHandler,
+              start);
+        sources.computeIfAbsent(ticket.source, SourceQueue::new)
+              .add(ticket);
+        executor.execute(this::dispatch);
+        return ticket;
+    }
+
+    public synchronized int getActive() {
+        return active;
+    }
+
+    public synchronized int getActive(String source) {
+        SourceQueue queue = sources.get(source);
+        return queue == null ? 0 : queue.active;
+    }
+
+    public synchronized int getQueued() {
+        return sources.values().stream().mapToInt(q -> q.queued).sum();
+    }
+
+    public synchronized int getQueued(String source) {
+        SourceQueue queue = sources.get(source);
+        return queue == null ? 0 : queue.queued;
+    }
+
+    /**
+     * @return the current concurrency limit for the source, as lowered
+     *         by kXR_wait responses.
+     */
+    public synchronized int getLimit(String source) {
+        SourceQueue queue = sources.get(source);
+        return queue == null ? maxActivePerSource : queue.limit;
+    }
+
+    public synchronized long getMeanQueueWaitMillis() {
+        return started == 0 ? 0L : totalWaitMillis / started;
+    }
+
+    public synchronized long getMaxQueueWaitMillis() {
+        return maxWaitMillis;
+    }
+
+    /**
+     * @return aggregate write rate over the last complete interval.
+     */
+    public synchronized long getBytesPerSecond() {
+        rollInterval(clock.getAsLong());
+        return lastIntervalBytes;
+    }
+
+    private void dispatch() {
+        List<Ticket> ready = new ArrayList<>();
+        long retryAt = Long.MAX_VALUE;
+        synchronized (this) {
+            long now = clock.getAsLong();
+            rollInterval(now);
+            boolean overRate = maxBytesPerSecond > 0
+                  && Math.max(intervalBytes, lastIntervalBytes)
+                  >= maxBytesPerSecond;
+
+            List<SourceQueue> eligible = new ArrayList<>();
+            for (SourceQueue queue : new ArrayList<>(sources.values())) {
+                if (queue.queued == 0) {
+                    if (queue.active == 0 && queue.backoffUntil <= now
+                          && queue.limit == maxActivePerSource) {
+                        sources.remove(queue.source);
+                    }
+                } else if (queue.backoffUntil > now) {
+                    retryAt = Math.min(retryAt, queue.backoffUntil);
+                } else if (overRate) {
+                    retryAt = Math.min(retryAt, intervalStart + RATE_INTERVAL);
+                } else {
+                    eligible.add(queue);
+                }
+            }
+
+            /*
+             *  One transfer per source and pass, so that the global limit
+             *  does not let the first sources take all slots.
+             */
+            boolean progress = true;
+            while (progress && active < maxActive) {
+                progress = false;
+                for (SourceQueue queue : eligible) {
+                    if (active == maxActive) {
+                        break;
+                    }
+                    if (queue.active < queue.limit && queue.queued > 0) {
+                        ready.add(start(queue, now));
+                        progress = true;
+                    }
+                }
+            }
+        }
+
+        if (retryAt != Long.MAX_VALUE) {
+            executor.schedule(this::dispatch,
+                  Math.max(1L, retryAt - clock.getAsLong()),
+                  TimeUnit.MILLISECONDS);
+        }
+
+        for (Ticket ticket : ready) {
+            LOGGER.debug("Starting TPC from {} for {} (priority {}).",
+                  ticket.source, ticket.owner, ticket.priority);
+            startTransfer(ticket);
+        }
+    }
+
+    private Ticket start(SourceQueue queue, long now) {
+        Ticket ticket = queue.next();
+        ticket.started = true;
+        ++queue.active;
+        ++active;
+        long waited = now - ticket.submitted;
+        ++started;
+        totalWaitMillis += waited;
+        maxWaitMillis = Math.max(maxWaitMillis, waited);
+
+        /*
+         *  Move the source to the back of the line.
+         */
+        sources.remove(queue.source);
+        sources.put(queue.source, queue);
+        return ticket;
+    }
+
+    private void startTransfer(Ticket ticket) {
+        if (ticket.isDone()) {
+            return;
+        }
+        try {
+            ticket.start.accept(ticket);
+        } catch (RuntimeException e) {
+            LOGGER.error("Failed to start TPC from {}: {}.",
+                  ticket.getInfo().getSrc(), e.toString());
+            ticket.fireDelayedSync(kXR_ServerError,
+                  "failed to start third-party transfer: " + e);
+        }
+    }
+
+    private void rollInterval(long now) {
+        if (now - intervalStart >= 2 * RATE_INTERVAL) {
+            lastIntervalBytes = 0;
+            intervalBytes = 0;
+            intervalStart = now;
+        } else if (now - intervalStart >= RATE_INTERVAL) {
+            lastIntervalBytes = intervalBytes;
+            intervalBytes = 0;
+            intervalStart += RATE_INTERVAL;
+        }
+    }
+
+    private synchronized void finished(Ticket ticket, boolean success) {
+        SourceQueue queue = sources.get(ticket.source);
+        if (!ticket.started) {
+            if (queue != null) {
+                queue.remove(ticket);
+            }
+            return;
+        }
+        if (queue != null) {
+            --queue.active;
+            if (success && queue.limit < maxActivePerSource) {
+                ++queue.limit;
+            }
+        }
+        --active;
+        executor.execute(this::dispatch);
+    }
+
+    private synchronized void waitRequested(Ticket ticket, int seconds) {
+        SourceQueue queue = sources.get(ticket.source);
+        if (queue == null) {
+            return;
+        }
+        long until = clock.getAsLong()
+              + TimeUnit.SECONDS.toMillis(Math.max(1, seconds));
+        queue.backoffUntil = Math.max(queue.backoffUntil, until);
+        int limit = Math.max(1, queue.limit / 2);
+        if (limit != queue.limit) {
+            LOGGER.info("Source {} asked to wait {} s; lowering its TPC "
+                  + "limit from {} to {}.", ticket.source, seconds,
+                  queue.limit, limit);
+            queue.limit = limit;
+        }
+    }
+
+    private synchronized void written(long bytes) {
+        rollInterval(clock.getAsLong());
+        intervalBytes += bytes;
+    }
+
+    private class SourceQueue {
+        final String source;
+
+        /*
+         *  By descending priority; owners in round-robin order.
+         */
+        final TreeMap<Integer, LinkedHashMap<String, Deque<Ticket>>> byPriority
+              = new TreeMap<>();
+        int queued;
+        int active;
+        int limit = maxActivePerSource;
+        long backoffUntil;
+
+        SourceQueue(String source) {
+            this.source = source;
+        }
+
+        void add(Ticket ticket) {
+            byPriority.computeIfAbsent(-ticket.priority,
+                        p -> new LinkedHashMap<>())
+                  .computeIfAbsent(ticket.owner, o -> new ArrayDeque<>())
+                  .add(ticket);
+            ++queued;
+        }
+
+        Ticket next() {
+            Map.Entry<Integer, LinkedHashMap<String, Deque<Ticket>>> first
+                  = byPriority.firstEntry();
+            LinkedHashMap<String, Deque<Ticket>> owners = first.getValue();
+            Map.Entry<String, Deque<Ticket>> owner
+                  = owners.entrySet().iterator().next();
+            Ticket ticket = owner.getValue().poll();
+
+            /*
+             *  Move the owner to the back of the line.
+             */
+            owners.remove(owner.getKey());
+            if (!owner.getValue().isEmpty()) {
+                owners.put(owner.getKey(), owner.getValue());
+            }
+            if (owners.isEmpty()) {
+                byPriority.remove(first.getKey());
+            }
+            --queued;
+            return ticket;
+        }
+
+        void remove(Ticket ticket) {
+            LinkedHashMap<String, Deque<Ticket>> owners
+                  = byPriority.get(-ticket.priority);
+            Deque<Ticket> tickets = owners == null ? null
+                  : owners.get(ticket.owner);
+            if (tickets == null || !tickets.remove(ticket)) {
+                return;
+            }
+            if (tickets.isEmpty()) {
+                owners.remove(ticket.owner);
+            }
+            if (owners.isEmpty()) {
+                byPriority.remove(-ticket.priority);
+            }
+            --queued;
+        }
+    }
+
+    /**
+     * A transfer's place in the scheduler; serves as the write handler
+     *    of the transfer's client(s).</p>
+     */
+    public class Ticket implements TpcDelayedSyncWriteHandler {
+
+        private final String source;
+        private final String owner;
+        private final int priority;
+        private final TpcDelayedSyncWriteHandler writeHandler;
+        private final Consumer<Ticket> start;
+        private final long submitted;
+
+        /*
+         *  Guarded by the scheduler.
+         */
+        private boolean started;
+
+        private XrootdTpcInfo info;
+        private int redirects;
+        private boolean done;
+
+        private Ticket(XrootdTpcInfo info, String owner, int priority,
+              TpcDelayedSyncWriteHandler writeHandler,
+              Consumer<Ticket> start) {
+            this.info = info;
+            this.source = info.getSrcHost();
+            this.owner = owner;
+            this.priority = priority;
+            this.writeHandler = writeHandler;
+            this.start = start;
+            submitted = clock.getAsLong();
+        }
+
+        /**
+         * @return the source to read from, which is the redirect target
+         *         after a redirect.
+         */
+        public synchronized XrootdTpcInfo getInfo() {
+            return info;
+        }
+
+        /**
+         * Called when the source answers with kXR_wait.</p>
+         */
+        public void waitRequested(int seconds) {
+            TpcTransferScheduler.this.waitRequested(this, seconds);
+        }
+
+        /**
+         * Gives up the transfer without notifying the write handler,
+         *    as when it is aborted while still queued or its client could
+         *    not be started.  A queued transfer is removed from the queue,
+         *    a started one frees its slot.</p>
+         */
+        public void cancel() {
+            synchronized (this) {
+                if (done) {
+                    return;
+                }
+                done = true;
+            }
+            finished(this, false);
+        }
+
+        @Override
+        public void fireDelayedSync(int result, String error) {
+            synchronized (this) {
+                if (done) {
+                    return;
+                }
+                done = true;
+            }
+            finished(this, result == kXR_ok);
+            writeHandler.fireDelayedSync(result, error);
+        }
+
+        @Override
+        public void write(InboundReadResponse response) throws IOException {
+            writeHandler.write(response);
+            written(response.getDlen());
+        }
+
+        /**
+         * Follows the redirect with a new client, started by the start
+         *    callback, keeping the slot.</p>
+         */
+        @Override
+        public void redirect(ChannelHandlerContext ctx,
+              InboundRedirectResponse response) throws XrootdException {
+            synchronized (this) {
+                if (done) {
+                    return;
+                }
+                if (++redirects > MAX_REDIRECTS) {
+                    throw new XrootdException(kXR_ServerError,
+                          "too many redirects");
+                }
+                try {
+                    info = info.copyForRedirect(response);
+                } catch (ParseException e) {
+                    throw new XrootdException(kXR_ServerError,
+                          "bad redirect: " + e.getMessage());
+                }
+            }
+
+            LOGGER.info("TPC from {} redirected to {}.", source,
+                  getInfo().getSrc());
+            ctx.channel().close();
+            executor.execute(() -> startTransfer(this));
+        }
+
+        private synchronized boolean isDone() {
+            return done;
+        }
+    }
+}
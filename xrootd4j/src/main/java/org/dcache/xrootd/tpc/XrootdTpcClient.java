@@ -16,6 +16,7 @@
  */
 package org.dcache.xrootd.tpc;
 
+import static com.google.common.base.Preconditions.checkNotNull;
 import static io.netty.channel.ChannelFutureListener.FIRE_EXCEPTION_ON_FAILURE;
 import static org.dcache.xrootd.protocol.XrootdProtocol.kXR_ArgInvalid;
 import static org.dcache.xrootd.protocol.XrootdProtocol.kXR_FSError;
@@ -29,6 +30,7 @@ import static org.dcache.xrootd.tpc.XrootdTpcInfo.Cgi.AUTHZ;
 import static org.dcache.xrootd.tpc.XrootdTpcInfo.Cgi.CLIENT;
 import static org.dcache.xrootd.tpc.XrootdTpcInfo.Cgi.RENDEZVOUS_KEY;
 
+import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Strings;
 import io.netty.bootstrap.Bootstrap;
 import io.netty.channel.Channel;
@@ -37,10 +39,8 @@ import io.netty.channel.ChannelHandler;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.ChannelId;
 import io.netty.channel.ChannelInitializer;
-import io.netty.channel.ChannelOption;
 import io.netty.channel.ChannelPipeline;
 import io.netty.channel.nio.NioEventLoopGroup;
-import io.netty.channel.socket.nio.NioSocketChannel;
 import java.io.IOException;
 import java.net.UnknownHostException;
 import java.util.Date;
@@ -105,7 +105,7 @@ public class XrootdTpcClient {
      *  Stream value of 0 is reserved for initial handshakes.
      *  Also watch for overflow.
      */
-    private static synchronized int getNextStreamId() {
+    static synchronized int getNextStreamId() {
         if (lastId < 0) {
             lastId = 1;
         }
@@ -184,6 +184,17 @@ public class XrootdTpcClient {
      */
     private ScheduledFuture attnFuture;
 
+    /*
+     *  Optional reuse of authenticated sessions across transfers.
+     */
+    private TpcSourceSessionPool sessionPool;
+    private String sessionIdentity;
+
+    /*
+     *  Set when the transfer was admitted by a scheduler.
+     */
+    private TpcTransferScheduler.Ticket schedulerTicket;
+
     public XrootdTpcClient(String userUrn,
           XrootdTpcInfo info,
           TpcDelayedSyncWriteHandler writeHandler,
@@ -244,21 +255,32 @@ public class XrootdTpcClient {
         this.responseTimeout = preceding.responseTimeout;
     }
 
-    public synchronized void connect(final NioEventLoopGroup group,
+    public void connect(final NioEventLoopGroup group,
+          final List<ChannelHandlerFactory> plugins,
+          final TpcSourceReadHandler readHandler)
+          throws InterruptedException {
+        connect(new TpcClientTransport(group), plugins, readHandler);
+    }
+
+    public synchronized void connect(final TpcClientTransport transport,
           final List<ChannelHandlerFactory> plugins,
           final TpcSourceReadHandler readHandler)
           throws InterruptedException {
-        Bootstrap b = new Bootstrap();
-        b.group(group)
-              .channel(NioSocketChannel.class)
-              .option(ChannelOption.TCP_NODELAY, true)
-              .option(ChannelOption.SO_KEEPALIVE, true)
-              .handler(new ChannelInitializer<Channel>() {
-                  @Override
-                  protected void initChannel(Channel ch) throws Exception {
-                      injectHandlers(ch.pipeline(), plugins, readHandler);
-                  }
-              });
+        if (sessionPool != null) {
+            XrootdTpcClient idle = sessionPool.acquire(this);
+            if (idle != null) {
+                adopt(idle, readHandler);
+                return;
+            }
+        }
+
+        Bootstrap b = transport.configure(new Bootstrap());
+        b.handler(new ChannelInitializer<Channel>() {
+            @Override
+            protected void initChannel(Channel ch) throws Exception {
+                injectHandlers(ch.pipeline(), plugins, readHandler);
+            }
+        });
 
         try {
             LOGGER.info("Third-party client trying to connect to host '{}', port '{}'.",
@@ -354,6 +376,31 @@ public class XrootdTpcClient {
         }
     }
 
+    /**
+     * Called once the file has been closed successfully.  If this client
+     *    takes part in session pooling, its session is handed to the pool
+     *    instead of being ended.</p>
+     *
+     * @return true if the session was pooled; the channel then stays open
+     *         but this client is no longer running.
+     */
+    public synchronized boolean releaseSession() {
+        if (sessionPool == null || !isRunning || errno != kXR_ok
+              || !sessionPool.release(this)) {
+            return false;
+        }
+
+        isRunning = false;
+
+        notifyAll();
+
+        LOGGER.info("Third-party client released session {} to {}, "
+                    + "channel {}, stream {}, for reuse.",
+              sessionId, info.getSrc(), channelFuture.channel().id(),
+              streamId);
+        return true;
+    }
+
     public ScheduledExecutorService getExecutor() {
         return executorService;
     }
@@ -405,6 +452,16 @@ public class XrootdTpcClient {
         return channelFuture;
     }
 
+    /**
+     * Puts the client in the state of having connected on the given
+     *    channel.</p>
+     */
+    @VisibleForTesting
+    synchronized void setChannelFuture(ChannelFuture channelFuture) {
+        this.channelFuture = channelFuture;
+        isRunning = true;
+    }
+
     public Map<String, ChannelHandler> getAuthnHandlers() {
         return authnHandlers;
     }
@@ -520,6 +577,14 @@ public class XrootdTpcClient {
         return tlsSessionInfo;
     }
 
+    public TpcTransferScheduler.Ticket getSchedulerTicket() {
+        return schedulerTicket;
+    }
+
+    public String getSessionIdentity() {
+        return sessionIdentity;
+    }
+
     public String getUname() {
         return uname;
     }
@@ -608,6 +673,27 @@ public class XrootdTpcClient {
         this.sessionId = sessionId;
     }
 
+    /**
+     * Lets this client reuse, and afterwards return, an authenticated
+     *    session to the source.  The identity names the credential used
+     *    to authenticate; sessions are only shared between clients
+     *    presenting the same identity, so it is required.</p>
+     */
+    public void setSessionPool(TpcSourceSessionPool sessionPool,
+          String sessionIdentity) {
+        this.sessionPool = sessionPool;
+        this.sessionIdentity = checkNotNull(sessionIdentity,
+              "session identity is required for session pooling");
+    }
+
+    /**
+     * Lets the scheduler which admitted this transfer learn of
+     *    kXR_wait responses from the source.</p>
+     */
+    public void setSchedulerTicket(TpcTransferScheduler.Ticket schedulerTicket) {
+        this.schedulerTicket = schedulerTicket;
+    }
+
     public void setSigningPolicy(SigningPolicy signingPolicy) {
         this.signingPolicy = signingPolicy;
     }
@@ -681,6 +767,46 @@ public class XrootdTpcClient {
               + " seconds.");
     }
 
+    /**
+     * Takes over the connection of an idle client from the session pool,
+     *    rebinding its pipeline to this client and proceeding directly
+     *    to kXR_open.</p>
+     */
+    private void adopt(XrootdTpcClient idle, TpcSourceReadHandler readHandler) {
+        pval = idle.pval;
+        flag = idle.flag;
+        sessionId = idle.sessionId;
+        signingPolicy = idle.signingPolicy;
+        protocolInfo = idle.protocolInfo;
+        tlsSessionInfo = idle.tlsSessionInfo;
+        channelFuture = idle.channelFuture;
+
+        isRunning = true;
+
+        notifyAll();
+
+        Channel channel = channelFuture.channel();
+        channel.eventLoop().execute(() -> {
+            ChannelPipeline pipeline = channel.pipeline();
+            pipeline.replace("decoder", "decoder", new XrootdClientDecoder(this));
+            pipeline.replace("encoder", "encoder", new XrootdClientEncoder(this));
+            pipeline.forEach(e -> {
+                if (!"read".equals(e.getKey())
+                      && e.getValue() instanceof AbstractClientRequestHandler) {
+                    ((AbstractClientRequestHandler) e.getValue()).setClient(this);
+                }
+            });
+            readHandler.setClient(this);
+            pipeline.replace("read", "read", readHandler);
+
+            LOGGER.info("Third-party client reusing session {} to {}, "
+                        + "channel {}, stream {}.",
+                  sessionId, info.getSrc(), channel.id(), streamId);
+
+            readHandler.sendOpenRequest(pipeline.context(readHandler));
+        });
+    }
+
     private void injectHandlers(ChannelPipeline pipeline,
           List<ChannelHandlerFactory> plugins,
           TpcSourceReadHandler readHandler) {
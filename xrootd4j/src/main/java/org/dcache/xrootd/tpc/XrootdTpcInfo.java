@@ -498,23 +498,9 @@ public class XrootdTpcInfo {
         info.uid = uid;
         info.gid = gid;
 
-        String opaque = response.getOpaque();
-
-        if (opaque == null && url != null) {
-            opaque = url.getQuery();
-        }
-
-        if (opaque != null) {
-            /*
-             * Perform the transformation to map and back as a way of
-             * checking that the string parses.
-             */
-            if (!opaque.startsWith("?")) {
-                opaque = "?" + opaque;
-            }
-
-            Map<String, String> map = OpaqueStringParser.getOpaqueMap(opaque);
+        Map<String, String> map = response.getOpaqueMap();
 
+        if (map != null) {
             /*
              *  The opaque data returned with the redirect will usually
              *  be the same as what the client provided the redirector,
@@ -523,7 +509,7 @@ public class XrootdTpcInfo {
              *
              *  In either case, the token will be the value of 'authz'.
              */
-            info.sourceToken = map.get(AUTHZ);
+            info.sourceToken = map.get(AUTHZ.key());
 
             info.addExternal(map);
         }
@@ -539,6 +525,36 @@ public class XrootdTpcInfo {
         return info;
     }
 
+    /**
+     * Constructs info for another endpoint of the same source, as when
+     *    going straight to a data server to which earlier transfers were
+     *    redirected.  Unlike {@link #copyForRedirect}, the credentials and
+     *    opaque data are all this transfer's own.</p>
+     *
+     * @param protocol to use instead of this transfer's, if present.
+     * @return new info object which can be used to instantiate new client.
+     */
+    public XrootdTpcInfo copyForEndpoint(String host, int port,
+          Optional<String> protocol) {
+        XrootdTpcInfo info = new XrootdTpcInfo(key);
+        info.srcHost = host;
+        info.srcPort = port;
+        info.src = host + ":" + port;
+        info.sourceProtocol = protocol.isPresent() ? protocol : sourceProtocol;
+        info.dlgon = dlgon;
+        info.lfn = lfn;
+        info.asize = asize;
+        info.cks = cks;
+        info.delegatedProxy = delegatedProxy;
+        info.uid = uid;
+        info.gid = gid;
+        info.sourceToken = sourceToken;
+        info.external = external;
+        info.status = Status.READY;
+        info.calculateRoles();
+        return info;
+    }
+
     public boolean isTls() {
         return sourceProtocol.filter("xroots"::equals).isPresent();
     }
@@ -804,8 +820,11 @@ public class XrootdTpcInfo {
          */
         String scgi = opaque.get(SCGI.key());
         if (scgi != null) {
-            scgi = scgi.replaceAll("\\t+",
-                  String.valueOf(OpaqueStringParser.OPAQUE_PREFIX));
+            /*
+             *  The scgi value is itself a CGI string, with its ampersands
+             *  converted to tabs, and so is not part of the parsed request map.
+             */
+            scgi = scgi.replace('\t', OpaqueStringParser.OPAQUE_PREFIX);
             Map<String, String> sourceOpaque
                   = OpaqueStringParser.getOpaqueMap(scgi);
             sourceToken = sourceOpaque.get(AUTHZ.key());
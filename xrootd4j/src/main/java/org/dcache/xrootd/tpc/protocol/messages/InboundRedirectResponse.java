@@ -23,6 +23,8 @@ import io.netty.buffer.ByteBuf;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import org.dcache.xrootd.util.OpaqueStringParser;
 import org.dcache.xrootd.util.ParseException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -51,6 +53,7 @@ public class InboundRedirectResponse extends AbstractXrootdInboundResponse {
     private int port;
     private String host;
     private String opaque;
+    private Map<String, String> opaqueMap;
 
     private String token;
     private URL url;
@@ -107,6 +110,25 @@ public class InboundRedirectResponse extends AbstractXrootdInboundResponse {
         return opaque;
     }
 
+    /**
+     * The opaque data, or failing that the query of the redirect url,
+     * parsed into an immutable map on first use.
+     *
+     * @return the map, or null if the redirect carries neither.
+     */
+    public Map<String, String> getOpaqueMap() throws ParseException {
+        if (opaqueMap == null) {
+            String data = opaque;
+            if (data == null && url != null) {
+                data = url.getQuery();
+            }
+            if (data != null) {
+                opaqueMap = OpaqueStringParser.getOpaqueMap(data);
+            }
+        }
+        return opaqueMap;
+    }
+
     public int getPort() {
         return this.port;
     }
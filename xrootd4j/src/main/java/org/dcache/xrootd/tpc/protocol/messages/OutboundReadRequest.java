@@ -38,6 +38,18 @@ public class OutboundReadRequest extends AbstractXrootdOutboundRequest {
         this.rlen = rlen;
     }
 
+    public int getFileHandle() {
+        return fhandle;
+    }
+
+    public long getReadOffset() {
+        return offset;
+    }
+
+    public int bytesToRead() {
+        return rlen;
+    }
+
     @Override
     protected void getParams(ByteBuf buffer) {
         buffer.writeInt(fhandle);
@@ -17,8 +17,9 @@
 package org.dcache.xrootd.util;
 
 import com.google.common.base.Joiner;
+import com.google.common.collect.ImmutableMap;
+import java.util.Arrays;
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.Map;
 
 /**
@@ -75,49 +76,134 @@ public class OpaqueStringParser {
      *  firstKey=firstValue?&amp;secondKey=secondValue
      *  firstKey=firstValue?secondkey=secondValue
      *
+     * The string is parsed without regular expressions or intermediate
+     * arrays.  User names embedded in values (bounded by '=' and '@') are
+     * validated first, as by {@link UserNameUtils#checkAllUsernamesValid},
+     * so that non-compliant names containing separator characters are
+     * replaced rather than split.
+     *
      * @param opaque The opaque string, as usually attached to the path
-     * @return Map from keys to values in the opaque string
+     * @return Immutable map from keys to values in the opaque string
      * @throws ParseException if value is missing for a key in the string
      */
     public static Map<String, String> getOpaqueMap(String opaque)
           throws ParseException {
         if (opaque == null || opaque.isEmpty()) {
             return Collections.emptyMap();
-        } else {
-            opaque = UserNameUtils.checkAllUsernamesValid(opaque);
+        }
 
-            Map<String, String> map = new HashMap<>();
+        opaque = checkUsernameSlots(opaque);
 
-            String[] prefixBlocks = opaque.split("\\?");
+        int length = opaque.length();
+        String[] entries = new String[8];
+        int size = 0;
+        int pos = 0;
 
-            for (String prefixBlock : prefixBlocks) {
+        while (pos < length) {
+            char c = opaque.charAt(pos);
+            if (isSeparator(c)) {
+                ++pos;
+                continue;
+            }
 
-                if (prefixBlock.isEmpty()) {
-                    continue;
+            int keyStart = pos;
+            int delimiter = -1;
+            while (pos < length && !isSeparator(c = opaque.charAt(pos))) {
+                if (delimiter == -1 && c == OPAQUE_SEPARATOR) {
+                    delimiter = pos;
                 }
+                ++pos;
+            }
 
-                String[] prefixSubBlocks = prefixBlock.split("&");
+            if (delimiter == -1) {
+                throw new ParseException("Opaque information is missing a"
+                      + "value for variable " +
+                      opaque.substring(keyStart, pos));
+            }
 
-                for (String prefixSubBlock : prefixSubBlocks) {
+            String key = opaque.substring(keyStart, delimiter);
+            String value = opaque.substring(delimiter + 1, pos);
 
-                    if (prefixSubBlock.isEmpty()) {
-                        continue;
-                    }
+            /*
+             *  Later occurrences of a key replace earlier ones.
+             */
+            int i = 0;
+            while (i < size && !entries[i].equals(key)) {
+                i += 2;
+            }
 
-                    int delimiter = prefixSubBlock.indexOf(OPAQUE_SEPARATOR);
-                    if (delimiter == -1) {
-                        throw new ParseException("Opaque information is missing a"
-                              + "value for variable " +
-                              prefixSubBlock);
-                    }
+            if (i == size) {
+                if (size == entries.length) {
+                    entries = Arrays.copyOf(entries, size * 2);
+                }
+                entries[size] = key;
+                size += 2;
+            }
+
+            entries[i + 1] = value;
+        }
+
+        ImmutableMap.Builder<String, String> builder =
+              ImmutableMap.builderWithExpectedSize(size / 2);
+        for (int i = 0; i < size; i += 2) {
+            builder.put(entries[i], entries[i + 1]);
+        }
+        return builder.build();
+    }
 
-                    map.put(prefixSubBlock.substring(0, delimiter),
-                          prefixSubBlock.substring(delimiter + 1, prefixSubBlock.length()));
+    /**
+     * Replaces non-compliant user names as {@link UserNameUtils#checkAllUsernamesValid}
+     * does, but without regular expressions.  Returns the same string if no substitution
+     * was necessary.
+     */
+    private static String checkUsernameSlots(String opaque) {
+        StringBuilder builder = null;
+        int copied = 0;
+        int pos = opaque.indexOf(OPAQUE_SEPARATOR);
+
+        while (pos > -1) {
+            int end = findUsernameSlotEnd(opaque, pos);
+            if (end == -1) {
+                pos = opaque.indexOf(OPAQUE_SEPARATOR, pos + 1);
+                continue;
+            }
+
+            String slot = opaque.substring(pos + 1, end);
+            String checked = UserNameUtils.checkUsernameSlot(slot);
+            if (!checked.equals(slot)) {
+                if (builder == null) {
+                    builder = new StringBuilder(opaque.length());
                 }
+                builder.append(opaque, copied, pos + 1).append(checked);
+                copied = end;
             }
+            pos = opaque.indexOf(OPAQUE_SEPARATOR, end);
+        }
+
+        return builder == null ? opaque
+              : builder.append(opaque, copied, opaque.length()).toString();
+    }
+
+    private static boolean isSeparator(char c) {
+        return c == OPAQUE_STRING_PREFIX || c == OPAQUE_PREFIX;
+    }
 
-            return map;
+    /**
+     * A user name slot is a non-empty sequence of characters other than
+     * '=' and '@' following an '=' and terminated by '@'.
+     *
+     * @param opaque string being parsed
+     * @param separator index of the '=' character
+     * @return the index of the terminating '@', or -1 if there is no slot.
+     */
+    private static int findUsernameSlotEnd(String opaque, int separator) {
+        int length = opaque.length();
+        int pos = separator + 1;
+        char c = 0;
+        while (pos < length && (c = opaque.charAt(pos)) != '@' && c != OPAQUE_SEPARATOR) {
+            ++pos;
         }
+        return pos < length && c == '@' && pos > separator + 1 ? pos : -1;
     }
 
     /**
@@ -59,6 +59,30 @@ public class UserNameUtils {
         return username;
     }
 
+    /**
+     * Checks a single user name slot, i.e. the characters bounded by '='
+     * and '@'.  Every part of the slot up to the last period is validated;
+     * whatever follows the last period (usually the pid) is left as is.
+     *
+     * @param slot the characters between '=' and '@'.
+     * @return slot with "magic" substitutions, if any.
+     */
+    public static String checkUsernameSlot(String slot) {
+        int last = slot.lastIndexOf('.');
+        if (last == -1) {
+            return checkUsernameValid(slot);
+        }
+
+        StringBuilder builder = new StringBuilder(slot.length());
+        int from = 0;
+        while (from <= last) {
+            int to = slot.indexOf('.', from);
+            builder.append(checkUsernameValid(slot.substring(from, to))).append('.');
+            from = to + 1;
+        }
+        return builder.append(slot, from, slot.length()).toString();
+    }
+
     /**
      * Finds all segments/groups of the string which could potentially be
      * usernames (bounded by '=' and '@'), and checks each for validity.
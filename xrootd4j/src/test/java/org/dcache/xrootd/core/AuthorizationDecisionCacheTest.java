@@ -0,0 +1,118 @@
+/**
+ * Copyright (C) 2011-2026 dCache.org <support@dcache.org>
+ *
+ * This file is part of xrootd4j.
+ *
+ * xrootd4j is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * xrootd4j is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with xrootd4j.  If
+ * not, see http://www.gnu.org/licenses/.
+ */
+package org.dcache.xrootd.core;
+
+import static org.dcache.xrootd.protocol.XrootdProtocol.kXR_open;
+import static org.dcache.xrootd.protocol.XrootdProtocol.kXR_stat;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+import com.google.common.collect.ImmutableMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import javax.security.auth.Subject;
+import org.dcache.xrootd.plugins.AuthorizationScope;
+import org.dcache.xrootd.protocol.XrootdProtocol.FilePerm;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ *  Tests reuse of cached authorization decisions within a session.
+ */
+public class AuthorizationDecisionCacheTest {
+
+    private static final Map<String, String> OPAQUE = ImmutableMap.of("authz", "token");
+
+    private AuthorizationDecisionCache cache;
+    private Subject subject;
+
+    @Before
+    public void setUp() {
+        cache = new AuthorizationDecisionCache(2);
+        subject = new Subject();
+        cache.put(subject, "/data/a/file", OPAQUE, kXR_stat, FilePerm.READ, "/pnfs/data/a/file",
+              new AuthorizationScope("/data/a", "/pnfs/data/a", 1, TimeUnit.HOURS));
+    }
+
+    @Test
+    public void testPathsBelowPrefixAreMapped() {
+        assertThat(cache.get(subject, "/data/a/b/other", OPAQUE, kXR_stat, FilePerm.READ),
+              is(equalTo("/pnfs/data/a/b/other")));
+    }
+
+    @Test
+    public void testPathsOutsidePrefixMiss() {
+        assertThat(cache.get(subject, "/data/ab", OPAQUE, kXR_stat, FilePerm.READ), is(nullValue()));
+        assertThat(cache.get(subject, "/data", OPAQUE, kXR_stat, FilePerm.READ), is(nullValue()));
+    }
+
+    @Test
+    public void testParentReferencesMiss() {
+        assertThat(cache.get(subject, "/data/a/../secret", OPAQUE, kXR_stat, FilePerm.READ),
+              is(nullValue()));
+        assertThat(cache.get(subject, "/data/a//file", OPAQUE, kXR_stat, FilePerm.READ),
+              is(nullValue()));
+    }
+
+    @Test
+    public void testOtherPermissionOrOpaqueMiss() {
+        assertThat(cache.get(subject, "/data/a/file", OPAQUE, kXR_stat, FilePerm.WRITE), is(nullValue()));
+        assertThat(cache.get(subject, "/data/a/file", ImmutableMap.of(), kXR_stat, FilePerm.READ),
+              is(nullValue()));
+    }
+
+    @Test
+    public void testOtherRequestTypeMiss() {
+        assertThat(cache.get(subject, "/data/a/file", OPAQUE, kXR_open, FilePerm.READ),
+              is(nullValue()));
+    }
+
+    @Test
+    public void testSubjectChangeClearsCache() {
+        assertThat(cache.get(new Subject(), "/data/a/file", OPAQUE, kXR_stat, FilePerm.READ),
+              is(nullValue()));
+        assertThat(cache.get(subject, "/data/a/file", OPAQUE, kXR_stat, FilePerm.READ), is(nullValue()));
+    }
+
+    @Test
+    public void testInconsistentScopeIsIgnored() {
+        cache.put(subject, "/other/file", OPAQUE, kXR_stat, FilePerm.READ, "/pnfs/other/file",
+              new AuthorizationScope("/data", "/pnfs/data", 1, TimeUnit.HOURS));
+        cache.put(subject, "/other/file", OPAQUE, kXR_stat, FilePerm.READ, "/elsewhere/file",
+              new AuthorizationScope("/other", "/pnfs/other", 1, TimeUnit.HOURS));
+        assertThat(cache.size(), is(1));
+    }
+
+    @Test
+    public void testExpiredDecisionMisses() {
+        cache.put(subject, "/x/file", OPAQUE, kXR_stat, FilePerm.READ, "/x/file",
+              new AuthorizationScope("/x", "/x", 1, TimeUnit.NANOSECONDS));
+        assertThat(cache.get(subject, "/x/file", OPAQUE, kXR_stat, FilePerm.READ), is(nullValue()));
+    }
+
+    @Test
+    public void testLeastRecentlyUsedIsEvicted() {
+        cache.put(subject, "/b/file", OPAQUE, kXR_stat, FilePerm.READ, "/b/file",
+              new AuthorizationScope("/b", "/b", 1, TimeUnit.HOURS));
+        cache.put(subject, "/c/file", OPAQUE, kXR_stat, FilePerm.READ, "/c/file",
+              new AuthorizationScope("/c", "/c", 1, TimeUnit.HOURS));
+        assertThat(cache.size(), is(2));
+        assertThat(cache.get(subject, "/data/a/file", OPAQUE, kXR_stat, FilePerm.READ), is(nullValue()));
+    }
+}
@@ -0,0 +1,153 @@
+/**
+ * Copyright (C) 2011-2026 dCache.org <support@dcache.org>
+ *
+ * This file is part of xrootd4j.
+ *
+ * xrootd4j is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * xrootd4j is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with xrootd4j.  If
+ * not, see http://www.gnu.org/licenses/.
+ */
+package org.dcache.xrootd.core;
+
+import static java.nio.charset.StandardCharsets.US_ASCII;
+import static org.dcache.xrootd.protocol.XrootdProtocol.kXR_login;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertThat;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import java.util.Collections;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import javax.security.auth.Subject;
+import javax.security.auth.x500.X500Principal;
+import org.dcache.xrootd.protocol.messages.LoginRequest;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ *  Tests which logins may take over a parked session.
+ */
+public class ResumableSessionsTest {
+
+    private static final long GRACE_PERIOD = TimeUnit.MINUTES.toMillis(1);
+
+    private ScheduledExecutorService executor;
+    private ResumableSessions sessions;
+    private XrootdSession session;
+    private XrootdSessionIdentifier id;
+
+    @Before
+    public void setUp() {
+        executor = Executors.newSingleThreadScheduledExecutor();
+        sessions = new ResumableSessions();
+        session = session("alice", "CN=alice");
+        id = session.getSessionIdentifier();
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void testSessionOfTlsLoginIsResumedOverTls() {
+        sessions.park(session, true, GRACE_PERIOD, executor);
+        assertThat(sessions.take(id, "alice", true), is(sameInstance(session)));
+    }
+
+    @Test
+    public void testSessionOfPlainLoginIsNotKept() {
+        sessions.park(session, false, GRACE_PERIOD, executor);
+        assertThat(sessions.size(), is(0));
+        assertThat(sessions.take(id, "alice", true), is(nullValue()));
+    }
+
+    @Test
+    public void testPlainLoginCannotResume() {
+        sessions.park(session, true, GRACE_PERIOD, executor);
+        assertThat(sessions.take(id, "alice", false), is(nullValue()));
+        assertThat(sessions.take(id, "alice", true), is(sameInstance(session)));
+    }
+
+    @Test
+    public void testOtherUserCannotResume() {
+        sessions.park(session, true, GRACE_PERIOD, executor);
+        assertThat(sessions.take(id, "mallory", true), is(nullValue()));
+        assertThat(sessions.take(id, "alice", true), is(nullValue()));
+    }
+
+    @Test
+    public void testSessionIsResumedOnlyOnce() {
+        sessions.park(session, true, GRACE_PERIOD, executor);
+        sessions.take(id, "alice", true);
+        assertThat(sessions.take(id, "alice", true), is(nullValue()));
+    }
+
+    @Test
+    public void testUnknownSessionCannotBeResumed() {
+        sessions.park(session, true, GRACE_PERIOD, executor);
+        assertThat(sessions.take(new XrootdSessionIdentifier(), "alice", true),
+              is(nullValue()));
+    }
+
+    @Test
+    public void testSessionExpires() throws Exception {
+        sessions.park(session, true, 1, executor);
+        Thread.sleep(20);
+        assertThat(sessions.take(id, "alice", true), is(nullValue()));
+        assertThat(sessions.size(), is(0));
+    }
+
+    @Test
+    public void testOnlyOwnerCanDiscard() {
+        sessions.park(session, true, GRACE_PERIOD, executor);
+        sessions.discard(id, subject("CN=mallory"));
+        assertThat(sessions.size(), is(1));
+        sessions.discard(id, subject("CN=alice"));
+        assertThat(sessions.size(), is(0));
+    }
+
+    private static XrootdSession session(String user, String dn) {
+        XrootdSession session = new XrootdSession(new XrootdSessionIdentifier(), null,
+              login(user));
+        session.setSubject(subject(dn));
+        return session;
+    }
+
+    private static Subject subject(String dn) {
+        return new Subject(false, Collections.singleton(new X500Principal(dn)),
+              Collections.emptySet(), Collections.emptySet());
+    }
+
+    private static LoginRequest login(String user) {
+        byte[] name = user.getBytes(US_ASCII);
+        ByteBuf buffer = Unpooled.buffer();
+        buffer.writeShort(1);        // streamid
+        buffer.writeShort(kXR_login);
+        buffer.writeInt(2);          // pid
+        buffer.writeBytes(name);
+        buffer.writeZero(8 - name.length);
+        buffer.writeZero(1);         // reserved
+        buffer.writeByte(3);         // zone
+        buffer.writeByte(4);         // capver
+        buffer.writeByte(0);         // role
+        buffer.writeInt(0);          // token length
+        try {
+            return new LoginRequest(buffer);
+        } finally {
+            buffer.release();
+        }
+    }
+}
@@ -0,0 +1,255 @@
+/**
+ * Copyright (C) 2011-2026 dCache.org <support@dcache.org>
+ *
+ * This file is part of xrootd4j.
+ *
+ * xrootd4j is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * xrootd4j is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with xrootd4j.  If
+ * not, see http://www.gnu.org/licenses/.
+ */
+package org.dcache.xrootd.core;
+
+import static java.nio.charset.StandardCharsets.US_ASCII;
+import static java.util.stream.Collectors.toList;
+import static org.dcache.xrootd.protocol.XrootdProtocol.kXR_dirlist;
+import static org.dcache.xrootd.protocol.XrootdProtocol.kXR_prepare;
+import static org.dcache.xrootd.protocol.XrootdProtocol.kXR_stat;
+import static org.dcache.xrootd.protocol.XrootdProtocol.kXR_statx;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyListOf;
+import static org.mockito.Matchers.anyMapOf;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.embedded.EmbeddedChannel;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import javax.security.auth.Subject;
+import org.dcache.xrootd.plugins.AuthorizationFactory;
+import org.dcache.xrootd.plugins.AuthorizationHandler;
+import org.dcache.xrootd.plugins.AuthorizationScope;
+import org.dcache.xrootd.plugins.PathPermission;
+import org.dcache.xrootd.protocol.XrootdProtocol.FilePerm;
+import org.dcache.xrootd.protocol.messages.DirListRequest;
+import org.dcache.xrootd.protocol.messages.PrepareRequest;
+import org.dcache.xrootd.protocol.messages.StatRequest;
+import org.dcache.xrootd.protocol.messages.StatxRequest;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+public class XrootdAuthorizationHandlerTest {
+
+    private static final InetSocketAddress ADDRESS
+          = new InetSocketAddress("localhost", 1094);
+
+    private AuthorizationFactory factory;
+    private AuthorizationHandler handler;
+    private EmbeddedChannel channel;
+
+    @Before
+    @SuppressWarnings("unchecked")
+    public void setUp() throws Exception {
+        handler = mock(AuthorizationHandler.class);
+        when(handler.authorize(any(Subject.class), any(InetSocketAddress.class),
+              any(InetSocketAddress.class), anyString(),
+              anyMapOf(String.class, String.class), anyInt(),
+              any(FilePerm.class)))
+              .thenAnswer(invocation -> invocation.getArguments()[3]);
+        when(handler.authorizeAll(any(Subject.class), any(InetSocketAddress.class),
+              any(InetSocketAddress.class), anyListOf(PathPermission.class),
+              anyInt()))
+              .thenAnswer(invocation -> ((List<PathPermission>) invocation
+                    .getArguments()[3]).stream()
+                    .map(PathPermission::getPath)
+                    .collect(toList()));
+        factory = mock(AuthorizationFactory.class);
+        when(factory.createHandler(any(ChannelHandlerContext.class)))
+              .thenReturn(handler);
+    }
+
+    @Test
+    public void shouldCreateOneHandlerPerRequestIfNotReusable() throws Exception {
+        givenChannel();
+
+        whenReceived(new StatRequest(request(kXR_stat, "/data/a")));
+        whenReceived(new StatRequest(request(kXR_stat, "/data/b")));
+
+        verify(factory, times(2)).createHandler(any(ChannelHandlerContext.class));
+    }
+
+    @Test
+    public void shouldCreateOneHandlerPerChannelIfReusable() throws Exception {
+        when(handler.isReusable()).thenReturn(true);
+        givenChannel();
+
+        whenReceived(new StatRequest(request(kXR_stat, "/data/a")));
+        whenReceived(new StatRequest(request(kXR_stat, "/data/b")));
+
+        verify(factory, times(1)).createHandler(any(ChannelHandlerContext.class));
+    }
+
+    @Test
+    public void shouldPassAuthorizedRequestOn() throws Exception {
+        givenChannel();
+
+        whenReceived(new StatRequest(request(kXR_stat, "/data/a")));
+
+        StatRequest passed = channel.readInbound();
+        assertThat(passed.getPath(), is(equalTo("/data/a")));
+    }
+
+    @Test
+    public void shouldReuseDecisionForSameRequestType() throws Exception {
+        givenCacheableDecisions();
+        givenChannel();
+
+        whenReceived(new StatRequest(request(kXR_stat, "/data/a")));
+        whenReceived(new StatRequest(request(kXR_stat, "/data/b")));
+
+        verify(handler, times(1)).authorize(any(Subject.class),
+              any(InetSocketAddress.class), any(InetSocketAddress.class),
+              anyString(), anyMapOf(String.class, String.class), anyInt(),
+              any(FilePerm.class));
+    }
+
+    @Test
+    public void shouldNotReuseDecisionForOtherRequestType() throws Exception {
+        givenCacheableDecisions();
+        givenChannel();
+
+        whenReceived(new StatRequest(request(kXR_stat, "/data/a")));
+        whenReceived(new DirListRequest(request(kXR_dirlist, "/data/a")));
+
+        verify(handler, times(2)).authorize(any(Subject.class),
+              any(InetSocketAddress.class), any(InetSocketAddress.class),
+              anyString(), anyMapOf(String.class, String.class), anyInt(),
+              any(FilePerm.class));
+    }
+
+    @Test
+    public void shouldOnlyPassUncachedPathsToBatch() throws Exception {
+        givenCacheableDecisions();
+        givenChannel();
+
+        whenReceived(new StatxRequest(request(kXR_statx, "/data/a")));
+        whenReceived(new StatxRequest(request(kXR_statx, "/data/b\n/other/c")));
+
+        assertThat(pathsOfBatches(), contains(contains("/data/a"),
+              contains("/other/c")));
+        StatxRequest passed = lastInbound();
+        assertThat(passed.getPaths(), is(equalTo(new String[]{"/data/b", "/other/c"})));
+    }
+
+    @Test
+    public void shouldNotCallBatchIfAllPathsAreCached() throws Exception {
+        givenCacheableDecisions();
+        givenChannel();
+
+        whenReceived(new StatxRequest(request(kXR_statx, "/data/a")));
+        whenReceived(new StatxRequest(request(kXR_statx, "/data/b\n/data/c")));
+
+        assertThat(pathsOfBatches(), contains(contains("/data/a")));
+    }
+
+    @Test
+    public void shouldAuthorizePreparedPathsWithTheirOpaqueData() throws Exception {
+        givenChannel();
+
+        whenReceived(new PrepareRequest(request(kXR_prepare,
+              "/data/a?authz=token\n/data/b?authz=token")));
+
+        ArgumentCaptor<List> batch = ArgumentCaptor.forClass(List.class);
+        verify(handler).authorizeAll(any(Subject.class),
+              any(InetSocketAddress.class), any(InetSocketAddress.class),
+              batch.capture(), anyInt());
+        @SuppressWarnings("unchecked")
+        List<PathPermission> permissions = batch.getValue();
+        assertThat(permissions.get(0).getOpaque().get("authz"), is(equalTo("token")));
+        assertThat(permissions.get(1).getOpaque().get("authz"), is(equalTo("token")));
+
+        PrepareRequest passed = lastInbound();
+        assertThat(passed.getPathList(), is(equalTo(
+              new String[]{"/data/a?authz=token", "/data/b?authz=token"})));
+        assertThat(passed.getOpaqueMap(1).get("authz"), is(equalTo("token")));
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<List<String>> pathsOfBatches() throws Exception {
+        ArgumentCaptor<List> batches = ArgumentCaptor.forClass(List.class);
+        verify(handler, atLeastOnce()).authorizeAll(any(Subject.class),
+              any(InetSocketAddress.class), any(InetSocketAddress.class),
+              batches.capture(), anyInt());
+        return batches.getAllValues().stream()
+              .map(batch -> ((List<PathPermission>) batch).stream()
+                    .map(PathPermission::getPath)
+                    .collect(toList()))
+              .collect(toList());
+    }
+
+    private <T> T lastInbound() {
+        T last = null;
+        for (T msg = channel.readInbound(); msg != null; msg = channel.readInbound()) {
+            last = msg;
+        }
+        return last;
+    }
+
+    private void givenCacheableDecisions() {
+        when(handler.isReusable()).thenReturn(true);
+        when(handler.getCacheScope(any(Subject.class), anyString(),
+              anyMapOf(String.class, String.class), any(FilePerm.class),
+              anyString()))
+              .thenReturn(new AuthorizationScope("/data", "/data", 1,
+                    TimeUnit.HOURS));
+    }
+
+    private void givenChannel() {
+        channel = new EmbeddedChannel(new XrootdAuthorizationHandler(factory)) {
+            @Override
+            protected SocketAddress localAddress0() {
+                return ADDRESS;
+            }
+
+            @Override
+            protected SocketAddress remoteAddress0() {
+                return ADDRESS;
+            }
+        };
+    }
+
+    private void whenReceived(Object request) {
+        channel.writeInbound(request);
+    }
+
+    private static ByteBuf request(int requestId, String path) {
+        ByteBuf buffer = Unpooled.buffer();
+        buffer.writeShort(1);
+        buffer.writeShort(requestId);
+        buffer.writeZero(16);
+        buffer.writeInt(path.length());
+        buffer.writeCharSequence(path, US_ASCII);
+        return buffer;
+    }
+}
@@ -0,0 +1,148 @@
+/**
+ * Copyright (C) 2011-2026 dCache.org <support@dcache.org>
+ *
+ * This file is part of xrootd4j.
+ *
+ * xrootd4j is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * xrootd4j is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with xrootd4j.  If
+ * not, see http://www.gnu.org/licenses/.
+ */
+package org.dcache.xrootd.core;
+
+import static org.dcache.xrootd.protocol.XrootdProtocol.kXR_write;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.embedded.EmbeddedChannel;
+import org.dcache.xrootd.protocol.messages.WriteRequest;
+import org.junit.After;
+import org.junit.Test;
+
+public class XrootdDecoderTest {
+
+    private static final int FHANDLE = 7;
+    private static final long OFFSET = 1000L;
+
+    private EmbeddedChannel channel;
+
+    @After
+    public void tearDown() {
+        if (channel != null) {
+            channel.finishAndReleaseAll();
+        }
+    }
+
+    @Test
+    public void shouldWaitForFullPayloadByDefault() {
+        givenDecoder(false, Integer.MAX_VALUE);
+
+        channel.writeInbound(writeHeader(100).writeZero(30));
+        assertThat(channel.readInbound(), is(nullValue()));
+
+        channel.writeInbound(Unpooled.buffer().writeZero(70));
+        WriteRequest request = channel.readInbound();
+
+        assertThat(request.getWriteOffset(), is(equalTo(OFFSET)));
+        assertThat(request.getDataLength(), is(equalTo(100)));
+        assertThat(request.isComplete(), is(true));
+        request.release();
+    }
+
+    @Test
+    public void shouldPassOnPartialPayloadWhenStreaming() {
+        givenDecoder(true, Integer.MAX_VALUE);
+
+        channel.writeInbound(writeHeader(100).writeZero(30));
+        WriteRequest first = channel.readInbound();
+
+        assertThat(first.getFileHandle(), is(equalTo(FHANDLE)));
+        assertThat(first.getWriteOffset(), is(equalTo(OFFSET)));
+        assertThat(first.getDataLength(), is(equalTo(30)));
+        assertThat(first.isComplete(), is(false));
+        first.release();
+
+        channel.writeInbound(Unpooled.buffer().writeZero(70));
+        WriteRequest second = channel.readInbound();
+
+        assertThat(second.getFileHandle(), is(equalTo(FHANDLE)));
+        assertThat(second.getWriteOffset(), is(equalTo(OFFSET + 30)));
+        assertThat(second.getDataLength(), is(equalTo(70)));
+        assertThat(second.isComplete(), is(true));
+        second.release();
+    }
+
+    @Test
+    public void shouldRespectMaxWriteBufferSizeWhenStreaming() {
+        givenDecoder(true, 40);
+
+        channel.writeInbound(writeHeader(100).writeZero(100));
+
+        WriteRequest first = channel.readInbound();
+        WriteRequest second = channel.readInbound();
+        WriteRequest third = channel.readInbound();
+
+        assertThat(first.getDataLength(), is(equalTo(40)));
+        assertThat(second.getWriteOffset(), is(equalTo(OFFSET + 40)));
+        assertThat(second.getDataLength(), is(equalTo(40)));
+        assertThat(third.getWriteOffset(), is(equalTo(OFFSET + 80)));
+        assertThat(third.getDataLength(), is(equalTo(20)));
+        assertThat(third.isComplete(), is(true));
+        first.release();
+        second.release();
+        third.release();
+    }
+
+    @Test
+    public void shouldNotPassOnHeaderWithoutPayloadWhenStreaming() {
+        givenDecoder(true, Integer.MAX_VALUE);
+
+        channel.writeInbound(writeHeader(100));
+
+        assertThat(channel.readInbound(), is(nullValue()));
+    }
+
+    @Test
+    public void shouldBufferFramesWhileSuspended() throws Exception {
+        XrootdDecoder decoder = givenDecoder(false, Integer.MAX_VALUE);
+
+        decoder.suspendDecoding();
+        channel.writeInbound(writeHeader(10).writeZero(10));
+        assertThat(channel.readInbound(), is(nullValue()));
+
+        decoder.resumeDecoding(channel.pipeline().context(decoder));
+        WriteRequest request = channel.readInbound();
+
+        assertThat(request.getDataLength(), is(equalTo(10)));
+        request.release();
+    }
+
+    private XrootdDecoder givenDecoder(boolean streaming, int maxWriteBufferSize) {
+        XrootdDecoder decoder = new XrootdDecoder();
+        decoder.setStreamingWrites(streaming);
+        decoder.setMaxWriteBufferSize(maxWriteBufferSize);
+        channel = new EmbeddedChannel(decoder);
+        return decoder;
+    }
+
+    private static ByteBuf writeHeader(int dataLength) {
+        return Unpooled.buffer()
+              .writeShort(1)          // streamid
+              .writeShort(kXR_write)  // requestid
+              .writeInt(FHANDLE)      // fhandle
+              .writeLong(OFFSET)      // offset
+              .writeByte(0)           // pathid
+              .writeZero(3)           // reserved
+              .writeInt(dataLength);  // dlen
+    }
+}
@@ -0,0 +1,219 @@
+/**
+ * Copyright (C) 2011-2026 dCache.org <support@dcache.org>
+ *
+ * This file is part of xrootd4j.
+ *
+ * xrootd4j is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * xrootd4j is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with xrootd4j.  If
+ * not, see http://www.gnu.org/licenses/.
+ */
+package org.dcache.xrootd.core;
+
+import static org.dcache.xrootd.protocol.XrootdProtocol.kXR_login;
+import static org.dcache.xrootd.protocol.XrootdProtocol.kXR_read;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import io.netty.buffer.Unpooled;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.ChannelOutboundHandlerAdapter;
+import io.netty.channel.ChannelPromise;
+import io.netty.channel.WriteBufferWaterMark;
+import io.netty.channel.embedded.EmbeddedChannel;
+import java.util.ArrayList;
+import java.util.List;
+import org.dcache.xrootd.protocol.messages.OkResponse;
+import org.dcache.xrootd.protocol.messages.XrootdRequest;
+import org.dcache.xrootd.protocol.messages.XrootdResponse;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class XrootdFlushConsolidationHandlerTest {
+
+    private final List<String> events = new ArrayList<>();
+
+    private XrootdFlushConsolidationHandler handler;
+    private EmbeddedChannel channel;
+
+    @Before
+    public void setUp() {
+        handler = new XrootdFlushConsolidationHandler();
+        channel = new EmbeddedChannel(new EventRecorder(), handler, new Responder());
+    }
+
+    @After
+    public void tearDown() {
+        channel.finishAndReleaseAll();
+    }
+
+    @Test
+    public void shouldConsolidateFlushesWithinReadBurst() {
+        whenReceived(kXR_read);
+        whenReceived(kXR_read);
+        whenReceived(kXR_read);
+
+        assertThat(handler.getFlushCount(), is(equalTo(0L)));
+
+        whenReadCompletes();
+
+        assertThat(handler.getResponseCount(), is(equalTo(3L)));
+        assertThat(handler.getFlushCount(), is(equalTo(1L)));
+        assertThat(events, contains("flush"));
+        assertThat(channel.outboundMessages().size(), is(equalTo(3)));
+    }
+
+    @Test
+    public void shouldFlushLatencySensitiveResponseWithinReadBurst() {
+        whenReceived(kXR_read);
+        whenReceived(kXR_login);
+
+        assertThat(handler.getFlushCount(), is(equalTo(1L)));
+        assertThat(channel.outboundMessages().size(), is(equalTo(2)));
+    }
+
+    @Test
+    public void shouldFlushOnceExplicitFlushLimitIsReached() {
+        handler = new XrootdFlushConsolidationHandler(2);
+        channel = new EmbeddedChannel(new EventRecorder(), handler, new Responder());
+
+        whenReceived(kXR_read);
+        whenReceived(kXR_read);
+        whenReceived(kXR_read);
+
+        assertThat(handler.getFlushCount(), is(equalTo(1L)));
+        assertThat(channel.outboundMessages().size(), is(equalTo(2)));
+    }
+
+    @Test
+    public void shouldPassFlushOnAtEndOfTaskWhenIdle() {
+        whenRespondedAsynchronously(kXR_read);
+
+        assertThat(handler.getFlushCount(), is(equalTo(0L)));
+
+        channel.runPendingTasks();
+
+        assertThat(handler.getFlushCount(), is(equalTo(1L)));
+        assertThat(channel.outboundMessages().size(), is(equalTo(1)));
+    }
+
+    @Test
+    public void shouldConsolidateFlushesOfSameTaskWhenIdle() {
+        /*
+         *  EmbeddedChannel runs pending tasks on every write reaching the
+         *  transport, so the responses are written before flushing.
+         */
+        channel.write(new OkResponse<>(request(kXR_read)));
+        channel.write(new OkResponse<>(request(kXR_read)));
+        channel.pipeline().flush();
+        channel.pipeline().flush();
+
+        assertThat(handler.getFlushCount(), is(equalTo(0L)));
+
+        channel.runPendingTasks();
+
+        assertThat(handler.getFlushCount(), is(equalTo(1L)));
+        assertThat(events, contains("flush"));
+        assertThat(channel.outboundMessages().size(), is(equalTo(2)));
+    }
+
+    @Test
+    public void shouldPassFlushOfLatencySensitiveResponseOnWhenIdle() {
+        whenRespondedAsynchronously(kXR_login);
+
+        assertThat(handler.getFlushCount(), is(equalTo(1L)));
+        assertThat(channel.outboundMessages().size(), is(equalTo(1)));
+    }
+
+    @Test
+    public void shouldNotFlushOnReadCompleteWithoutPendingFlushes() {
+        whenReadCompletes();
+
+        assertThat(handler.getFlushCount(), is(equalTo(0L)));
+        assertThat(events.isEmpty(), is(true));
+    }
+
+    @Test
+    public void shouldFlushPendingResponsesBeforeClose() {
+        whenReceived(kXR_read);
+
+        channel.close();
+
+        assertThat(handler.getFlushCount(), is(equalTo(1L)));
+        assertThat(events, contains("flush", "close"));
+    }
+
+    @Test
+    public void shouldFlushPendingResponsesWhenChannelBecomesUnwritable() {
+        channel.config().setWriteBufferWaterMark(new WriteBufferWaterMark(1024, 2048));
+        whenReceived(kXR_read);
+
+        assertThat(handler.getFlushCount(), is(equalTo(0L)));
+
+        channel.pipeline().write(Unpooled.buffer().writeZero(4096));
+
+        assertThat(handler.getFlushCount(), is(equalTo(1L)));
+        assertThat(channel.outboundMessages().size(), is(equalTo(2)));
+    }
+
+    private void whenReceived(int requestId) {
+        channel.pipeline().fireChannelRead(request(requestId));
+    }
+
+    private void whenReadCompletes() {
+        channel.pipeline().fireChannelReadComplete();
+    }
+
+    private void whenRespondedAsynchronously(int requestId) {
+        channel.writeAndFlush(new OkResponse<>(request(requestId)));
+    }
+
+    private static XrootdRequest request(int requestId) {
+        XrootdRequest request = mock(XrootdRequest.class);
+        when(request.getRequestId()).thenReturn(requestId);
+        return request;
+    }
+
+    /**
+     * Responds to each request with a flush, as the request handlers do.
+     */
+    private static class Responder extends ChannelInboundHandlerAdapter {
+
+        @Override
+        public void channelRead(ChannelHandlerContext ctx, Object msg) {
+            XrootdResponse<?> response = new OkResponse<>((XrootdRequest) msg);
+            ctx.writeAndFlush(response);
+        }
+    }
+
+    /**
+     * Records the flushes and closes reaching the transport.
+     */
+    private class EventRecorder extends ChannelOutboundHandlerAdapter {
+
+        @Override
+        public void flush(ChannelHandlerContext ctx) throws Exception {
+            events.add("flush");
+            ctx.flush();
+        }
+
+        @Override
+        public void close(ChannelHandlerContext ctx, ChannelPromise promise)
+              throws Exception {
+            events.add("close");
+            ctx.close(promise);
+        }
+    }
+}
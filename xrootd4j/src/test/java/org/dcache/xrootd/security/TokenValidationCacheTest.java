@@ -0,0 +1,169 @@
+/**
+ * Copyright (C) 2011-2026 dCache.org <support@dcache.org>
+ *
+ * This file is part of xrootd4j.
+ *
+ * xrootd4j is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * xrootd4j is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with xrootd4j.  If
+ * not, see http://www.gnu.org/licenses/.
+ */
+package org.dcache.xrootd.security;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.dcache.xrootd.protocol.XrootdProtocol.kXR_NotAuthorized;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+import java.util.Base64;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.dcache.xrootd.core.XrootdException;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ *  Tests reuse and expiry of cached token validations.
+ */
+public class TokenValidationCacheTest {
+
+    private static final long START = TimeUnit.DAYS.toMillis(20000);
+
+    private long now;
+    private AtomicInteger validations;
+    private TokenValidationCache<String> cache;
+
+    @Before
+    public void setUp() {
+        now = START;
+        validations = new AtomicInteger();
+        cache = new TokenValidationCache<>(2, 60, TimeUnit.SECONDS, () -> now);
+    }
+
+    @Test
+    public void testOpaqueTokenIsReused() throws Exception {
+        assertThat(validate("opaque"), is(equalTo("opaque")));
+        assertThat(validate("opaque"), is(equalTo("opaque")));
+        assertThat(validations.get(), is(1));
+        assertThat(cache.getHitCount(), is(1L));
+        assertThat(cache.getMissCount(), is(1L));
+    }
+
+    @Test
+    public void testEntryExpiresAfterMaximumLifetime() throws Exception {
+        validate("opaque");
+        now += TimeUnit.SECONDS.toMillis(61);
+        validate("opaque");
+        assertThat(validations.get(), is(2));
+    }
+
+    @Test
+    public void testEntryExpiresWithToken() throws Exception {
+        String token = jwt("{\"sub\":\"user\",\"exp\":" + seconds(START + 10_000) + "}");
+        validate(token);
+        now += 9_000;
+        validate(token);
+        assertThat(validations.get(), is(1));
+        now += 1_000;
+        validate(token);
+        assertThat(validations.get(), is(2));
+    }
+
+    @Test
+    public void testExpiredTokenIsNotCached() throws Exception {
+        String token = jwt("{\"exp\": " + seconds(START - 1_000) + "}");
+        validate(token);
+        validate(token);
+        assertThat(validations.get(), is(2));
+        assertThat(cache.size(), is(0L));
+    }
+
+    @Test
+    public void testTokenNotYetValidIsNotCached() throws Exception {
+        String token = jwt("{\"nbf\":" + seconds(START + 5_000)
+              + ",\"exp\":" + seconds(START + 50_000) + "}");
+        validate(token);
+        validate(token);
+        assertThat(validations.get(), is(2));
+        assertThat(cache.size(), is(0L));
+    }
+
+    @Test
+    public void testTokenAlreadyValidIsCached() throws Exception {
+        String token = jwt("{\"nbf\":" + seconds(START - 5_000) + "}");
+        validate(token);
+        validate(token);
+        assertThat(validations.get(), is(1));
+    }
+
+    @Test
+    public void testUnparseablePayloadIsLimitedByMaximumLifetime() throws Exception {
+        String[] tokens = {
+              "header.!!not-base64!!.signature",
+              jwt("not json"),
+              jwt("{\"exp\":\"tomorrow\"}"),
+              jwt("{\"exp\":123456789012345678901234}")
+        };
+        for (String token : tokens) {
+            cache.invalidateAll();
+            validations.set(0);
+            validate(token);
+            validate(token);
+            assertThat(token, validations.get(), is(1));
+            now += TimeUnit.SECONDS.toMillis(61);
+            validate(token);
+            assertThat(token, validations.get(), is(2));
+            now = START;
+        }
+    }
+
+    @Test
+    public void testSizeIsBounded() throws Exception {
+        validate("a");
+        validate("b");
+        validate("c");
+        assertThat(cache.size(), is(2L));
+    }
+
+    @Test
+    public void testFailedValidationIsNotCached() throws Exception {
+        for (int i = 0; i < 2; i++) {
+            try {
+                cache.validate("bad", () -> {
+                    validations.incrementAndGet();
+                    throw new XrootdException(kXR_NotAuthorized, "invalid");
+                });
+                fail("validation should have failed");
+            } catch (XrootdException e) {
+                assertThat(e.getError(), is(kXR_NotAuthorized));
+            }
+        }
+        assertThat(validations.get(), is(2));
+        assertThat(cache.size(), is(0L));
+    }
+
+    private String validate(String token) throws XrootdException {
+        return cache.validate(token, () -> {
+            validations.incrementAndGet();
+            return token;
+        });
+    }
+
+    private static long seconds(long millis) {
+        return TimeUnit.MILLISECONDS.toSeconds(millis);
+    }
+
+    private static String jwt(String payload) {
+        Base64.Encoder encoder = Base64.getUrlEncoder().withoutPadding();
+        return encoder.encodeToString("{\"alg\":\"none\"}".getBytes(UTF_8)) + '.'
+              + encoder.encodeToString(payload.getBytes(UTF_8)) + ".sig";
+    }
+}
@@ -0,0 +1,128 @@
+/**
+ * Copyright (C) 2011-2026 dCache.org <support@dcache.org>
+ *
+ * This file is part of xrootd4j.
+ *
+ * xrootd4j is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * xrootd4j is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with xrootd4j.  If
+ * not, see http://www.gnu.org/licenses/.
+ */
+package org.dcache.xrootd.tpc;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.zip.Adler32;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TpcChecksumAccumulatorTest {
+
+    private byte[] data;
+    private List<int[]> pieces;
+
+    @Before
+    public void setUp() {
+        Random random = new Random(42);
+        data = new byte[300_007];
+        random.nextBytes(data);
+        pieces = new ArrayList<>();
+        for (int offset = 0; offset < data.length; offset += 10_000) {
+            pieces.add(new int[]{offset, Math.min(10_000, data.length - offset)});
+        }
+        Collections.shuffle(pieces, random);
+    }
+
+    @Test
+    public void shouldCombineAdler32OfPiecesReceivedOutOfOrder() {
+        TpcChecksumAccumulator accumulator =
+              TpcChecksumAccumulator.forAlgorithm("adler32");
+        givenPiecesReceivedBy(accumulator);
+
+        Adler32 expected = new Adler32();
+        expected.update(data, 0, data.length);
+        assertThat(accumulator.getValue(data.length),
+              equalTo(String.format("%08x", expected.getValue())));
+    }
+
+    @Test
+    public void shouldCombineCrc32OfPiecesReceivedOutOfOrder() {
+        TpcChecksumAccumulator accumulator =
+              TpcChecksumAccumulator.forAlgorithm("crc32");
+        givenPiecesReceivedBy(accumulator);
+
+        /*
+         *  As printed, in decimal, by cksum: 2673845338.
+         */
+        assertThat(accumulator.getValue(data.length), equalTo("9f5fa45a"));
+    }
+
+    @Test
+    public void shouldComputeCrc32AsCksumDoes() {
+        byte[] check = "123456789".getBytes(StandardCharsets.US_ASCII);
+        TpcChecksumAccumulator accumulator =
+              TpcChecksumAccumulator.forAlgorithm("crc32");
+
+        accumulator.update(5, new ByteBuffer[]{ByteBuffer.wrap(check, 5, 4)});
+        accumulator.update(0, new ByteBuffer[]{ByteBuffer.wrap(check, 0, 2),
+              ByteBuffer.wrap(check, 2, 3)});
+
+        /*
+         *  cksum prints 930766865.
+         */
+        assertThat(accumulator.getValue(check.length), equalTo("377a6011"));
+    }
+
+    @Test
+    public void shouldComputeCrc32OfEmptyFileAsCksumDoes() {
+        TpcChecksumAccumulator accumulator =
+              TpcChecksumAccumulator.forAlgorithm("crc32");
+
+        assertThat(accumulator.getValue(0), equalTo("ffffffff"));
+    }
+
+    @Test
+    public void shouldNotProvideMd5OfPiecesReceivedOutOfOrder() {
+        TpcChecksumAccumulator accumulator =
+              TpcChecksumAccumulator.forAlgorithm("md5");
+        givenPiecesReceivedBy(accumulator);
+
+        assertThat(accumulator.getValue(data.length), nullValue());
+    }
+
+    @Test
+    public void shouldNotProvideValueForIncompleteData() {
+        TpcChecksumAccumulator accumulator =
+              TpcChecksumAccumulator.forAlgorithm("adler32");
+        pieces.remove(0);
+        givenPiecesReceivedBy(accumulator);
+
+        assertThat(accumulator.getValue(data.length), nullValue());
+    }
+
+    @Test
+    public void shouldNotSupportUnknownAlgorithm() {
+        assertThat(TpcChecksumAccumulator.forAlgorithm("sha1"), nullValue());
+    }
+
+    private void givenPiecesReceivedBy(TpcChecksumAccumulator accumulator) {
+        for (int[] piece : pieces) {
+            accumulator.update(piece[0], new ByteBuffer[]{
+                  ByteBuffer.wrap(data, piece[0], piece[1]).slice()});
+        }
+    }
+}
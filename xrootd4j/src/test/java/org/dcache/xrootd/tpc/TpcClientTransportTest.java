@@ -0,0 +1,50 @@
+/**
+ * Copyright (C) 2011-2026 dCache.org <support@dcache.org>
+ *
+ * This file is part of xrootd4j.
+ *
+ * xrootd4j is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * xrootd4j is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with xrootd4j.  If
+ * not, see http://www.gnu.org/licenses/.
+ */
+package org.dcache.xrootd.tpc;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+import io.netty.channel.DefaultEventLoopGroup;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.nio.NioEventLoopGroup;
+import org.junit.Test;
+
+public class TpcClientTransportTest {
+
+    @Test
+    public void shouldUseNioForNioGroup() {
+        EventLoopGroup group = new NioEventLoopGroup(1);
+        try {
+            TpcClientTransport transport = new TpcClientTransport(group);
+
+            assertThat(transport.isEpoll(), is(false));
+        } finally {
+            group.shutdownGracefully();
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldRejectUnsupportedGroup() {
+        EventLoopGroup group = new DefaultEventLoopGroup(1);
+        try {
+            new TpcClientTransport(group);
+        } finally {
+            group.shutdownGracefully();
+        }
+    }
+}
@@ -0,0 +1,174 @@
+/**
+ * Copyright (C) 2011-2026 dCache.org <support@dcache.org>
+ *
+ * This file is part of xrootd4j.
+ *
+ * xrootd4j is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * xrootd4j is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with xrootd4j.  If
+ * not, see http://www.gnu.org/licenses/.
+ */
+package org.dcache.xrootd.tpc;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThan;
+import static org.junit.Assert.assertThat;
+
+import java.util.concurrent.TimeUnit;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TpcReadSizeControllerTest {
+
+    private static final int MIN_CHUNK = 64 << 10;
+    private static final int MAX_CHUNK = 1 << 20;
+    private static final int MAX_WINDOW = 8;
+
+    private static final long RTT = TimeUnit.MILLISECONDS.toNanos(10);
+
+    private TpcReadSizeController controller;
+
+    /*
+     *  Starts away from zero, which the controller treats as "no sample".
+     */
+    private long now = TimeUnit.SECONDS.toNanos(1);
+
+    @Before
+    public void setUp() {
+        controller = new TpcReadSizeController(MIN_CHUNK, MAX_CHUNK, MAX_WINDOW);
+    }
+
+    @Test
+    public void shouldStartWithMinimumChunkAndSingleRequest() {
+        assertThat(controller.getChunkSize(), is(equalTo(MIN_CHUNK)));
+        assertThat(controller.getWindow(), is(equalTo(1)));
+        assertThat(controller.getRttMicros(), is(equalTo(-1L)));
+        assertThat(controller.getBandwidthDelayProduct(), is(equalTo(0L)));
+    }
+
+    @Test
+    public void shouldTakeSmallestLatencyAsRtt() {
+        controller.readCompleted(MIN_CHUNK, 3 * RTT, now);
+        controller.readCompleted(MIN_CHUNK, RTT, now);
+        controller.readCompleted(MIN_CHUNK, 2 * RTT, now);
+
+        assertThat(controller.getRttMicros(), is(equalTo(10_000L)));
+    }
+
+    @Test
+    public void shouldGrowUntilTwiceBandwidthDelayProductIsInFlight() {
+        whenTransferring(100_000_000L, 50);
+
+        long bdp = controller.getBandwidthDelayProduct();
+        assertThat(bdp, is(equalTo(1_000_000L)));
+        assertThat(controller.getChunkSize(), is(equalTo(MAX_CHUNK)));
+        assertThat(controller.getWindow(), is(equalTo(2)));
+        assertThat(inFlight(), is(greaterThanOrEqualTo(2 * bdp)));
+        assertThat(inFlight() - controller.getChunkSize(), is(lessThan(2 * bdp)));
+        assertThat(controller.getIncreases(), is(equalTo(5L)));
+    }
+
+    @Test
+    public void shouldDoubleChunkSizeBeforeWideningWindow() {
+        whenTransferring(100_000_000L, 2);
+
+        assertThat(controller.getChunkSize(), is(equalTo(4 * MIN_CHUNK)));
+        assertThat(controller.getWindow(), is(equalTo(1)));
+    }
+
+    @Test
+    public void shouldNotGrowBeyondTwiceBandwidthDelayProduct() {
+        whenTransferring(100_000_000L, 50);
+        long increases = controller.getIncreases();
+
+        whenTransferring(100_000_000L, 50);
+
+        assertThat(controller.getIncreases(), is(equalTo(increases)));
+    }
+
+    @Test
+    public void shouldNotGrowChunkBeyondMaximumNorWindowBeyondMaximum() {
+        whenTransferring(10_000_000_000L, 100);
+
+        assertThat(inFlight(), is(lessThan(2 * controller.getBandwidthDelayProduct())));
+        assertThat(controller.getChunkSize(), is(equalTo(MAX_CHUNK)));
+        assertThat(controller.getWindow(), is(equalTo(MAX_WINDOW)));
+        assertThat(controller.getIncreases(),
+              is(equalTo(4L + MAX_WINDOW - 1)));
+    }
+
+    @Test
+    public void shouldNotCountBytesOfReadStartingSample() {
+        controller.readCompleted(1_000_000L, RTT, now);
+        now += RTT;
+        controller.readCompleted(1_000_000L, RTT, now);
+
+        assertThat(controller.getBytesPerSecond(), is(equalTo(100_000_000L)));
+    }
+
+    @Test
+    public void shouldNotSampleRateOverLessThanRtt() {
+        controller.readCompleted(MIN_CHUNK, RTT, now);
+        now += RTT / 2;
+        controller.readCompleted(MIN_CHUNK, RTT, now);
+
+        assertThat(controller.getBytesPerSecond(), is(equalTo(0L)));
+        assertThat(controller.getChunkSize(), is(equalTo(MIN_CHUNK)));
+    }
+
+    @Test
+    public void shouldHalveChunkAndWindowOnBackOff() {
+        whenTransferring(10_000_000_000L, 100);
+
+        controller.backOff("kXR_wait");
+
+        assertThat(controller.getChunkSize(), is(equalTo(MAX_CHUNK / 2)));
+        assertThat(controller.getWindow(), is(equalTo(MAX_WINDOW / 2)));
+        assertThat(controller.getDecreases(), is(equalTo(1L)));
+    }
+
+    @Test
+    public void shouldNotBackOffBelowMinimum() {
+        controller.backOff("kXR_wait");
+
+        assertThat(controller.getChunkSize(), is(equalTo(MIN_CHUNK)));
+        assertThat(controller.getWindow(), is(equalTo(1)));
+        assertThat(controller.getDecreases(), is(equalTo(0L)));
+    }
+
+    @Test
+    public void shouldRestartRateSampleAfterBackOff() {
+        whenTransferring(100_000_000L, 3);
+        int chunkSize = controller.getChunkSize();
+        controller.backOff("read failed");
+
+        now += RTT;
+        controller.readCompleted(1_000_000L, RTT, now);
+
+        assertThat(controller.getChunkSize(), is(equalTo(chunkSize / 2)));
+    }
+
+    /**
+     * Simulates steps of one RTT each, in which the source delivers at
+     * the given rate.
+     */
+    private void whenTransferring(long bytesPerSecond, int steps) {
+        long bytesPerRtt = bytesPerSecond * RTT / TimeUnit.SECONDS.toNanos(1);
+        for (int i = 0; i <= steps; i++) {
+            controller.readCompleted(bytesPerRtt, RTT, now);
+            now += RTT;
+        }
+    }
+
+    private long inFlight() {
+        return (long) controller.getChunkSize() * controller.getWindow();
+    }
+}
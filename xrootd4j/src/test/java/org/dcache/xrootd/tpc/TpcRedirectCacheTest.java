@@ -0,0 +1,219 @@
+/**
+ * Copyright (C) 2011-2026 dCache.org <support@dcache.org>
+ *
+ * This file is part of xrootd4j.
+ *
+ * xrootd4j is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * xrootd4j is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with xrootd4j.  If
+ * not, see http://www.gnu.org/licenses/.
+ */
+package org.dcache.xrootd.tpc;
+
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import com.google.common.collect.ImmutableMap;
+import java.net.URL;
+import java.net.URLConnection;
+import java.net.URLStreamHandler;
+import java.util.concurrent.TimeUnit;
+import org.dcache.xrootd.tpc.protocol.messages.InboundRedirectResponse;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TpcRedirectCacheTest {
+
+    private static final String ALICE = "alice";
+    private static final String BOB = "bob";
+
+    private TpcRedirectCache cache;
+
+    @Before
+    public void setUp() {
+        givenLifetime(1, TimeUnit.HOURS);
+    }
+
+    @Test
+    public void shouldResolveSourceToCachedDataServer() throws Exception {
+        cache.put(info("/data/file1"), ALICE,
+              redirectTo("data.example.org", 1095));
+
+        XrootdTpcInfo resolved = cache.lookup(info("/data/file2"), ALICE);
+
+        assertThat(resolved.getSrcHost(), is(equalTo("data.example.org")));
+        assertThat(resolved.getSrcPort(), is(equalTo(1095)));
+        assertThat(resolved.getSrc(), is(equalTo("data.example.org:1095")));
+        assertThat(resolved.getLfn(), is(equalTo("/data/file2")));
+        assertThat(cache.getHits(), is(equalTo(1L)));
+    }
+
+    @Test
+    public void shouldNotReuseTokenOrOpaqueOfCachedRedirect() throws Exception {
+        InboundRedirectResponse redirect = redirectTo("data.example.org", 1095);
+        when(redirect.getToken()).thenReturn("login-token-of-first");
+        when(redirect.getOpaque()).thenReturn(
+              "authz=token-of-first&org.dcache.uuid=uuid-of-first");
+        cache.put(info("/data/file1"), ALICE, redirect);
+
+        XrootdTpcInfo resolved = cache.lookup(info("/data/file2"), ALICE);
+
+        assertThat(resolved.getLoginToken(), is(nullValue()));
+        assertThat(resolved.getSourceToken(), is(nullValue()));
+        assertThat(resolved.getExternal(), not(containsString("uuid-of-first")));
+    }
+
+    @Test
+    public void shouldKeepTokenAndOpaqueOfTransferBeingResolved()
+          throws Exception {
+        cache.put(info("/data/file1"), ALICE,
+              redirectTo("data.example.org", 1095));
+
+        XrootdTpcInfo resolved = cache.lookup(info("/data/file2",
+              ImmutableMap.of("tpc.scgi", "authz=token-of-second",
+                    "org.dcache.uuid", "uuid-of-second")), ALICE);
+
+        assertThat(resolved.getSourceToken(), is(equalTo("token-of-second")));
+        assertThat(resolved.getExternal(), containsString("uuid-of-second"));
+    }
+
+    @Test
+    public void shouldNotShareRedirectsBetweenIdentities() throws Exception {
+        cache.put(info("/data/file1"), ALICE,
+              redirectTo("data.example.org", 1095));
+
+        assertThat(cache.lookup(info("/data/file2"), BOB), is(nullValue()));
+        assertThat(cache.getMisses(), is(equalTo(1L)));
+    }
+
+    @Test
+    public void shouldNotShareRedirectsBetweenDirectories() throws Exception {
+        cache.put(info("/data/file1"), ALICE,
+              redirectTo("data.example.org", 1095));
+
+        assertThat(cache.lookup(info("/other/file2"), ALICE), is(nullValue()));
+    }
+
+    @Test
+    public void shouldExpireEntries() throws Exception {
+        givenLifetime(0, TimeUnit.SECONDS);
+        cache.put(info("/data/file1"), ALICE,
+              redirectTo("data.example.org", 1095));
+
+        assertThat(cache.lookup(info("/data/file2"), ALICE), is(nullValue()));
+        assertThat(cache.size(), is(equalTo(0)));
+    }
+
+    @Test
+    public void shouldForgetInvalidatedEntry() throws Exception {
+        cache.put(info("/data/file1"), ALICE,
+              redirectTo("data.example.org", 1095));
+
+        cache.invalidate(info("/data/file2"), ALICE);
+
+        assertThat(cache.lookup(info("/data/file2"), ALICE), is(nullValue()));
+    }
+
+    @Test
+    public void shouldNotCacheReconnect() throws Exception {
+        InboundRedirectResponse reconnect = mock(InboundRedirectResponse.class);
+        when(reconnect.isReconnect()).thenReturn(true);
+
+        cache.put(info("/data/file1"), ALICE, reconnect);
+
+        assertThat(cache.size(), is(equalTo(0)));
+    }
+
+    @Test
+    public void shouldFollowChainOfRedirects() throws Exception {
+        cache.put(info("/data/file1"), ALICE,
+              redirectTo("manager.example.org", 1094));
+        cache.put(info("manager.example.org", "/data/file1"), ALICE,
+              redirectTo("data.example.org", 1095));
+
+        XrootdTpcInfo resolved = cache.lookup(info("/data/file2"), ALICE);
+
+        assertThat(resolved.getSrc(), is(equalTo("data.example.org:1095")));
+    }
+
+    @Test
+    public void shouldTakeProtocolFromRedirectUrl() throws Exception {
+        InboundRedirectResponse redirect = mock(InboundRedirectResponse.class);
+        when(redirect.getUrl()).thenReturn(new URL("xroots", "data.example.org",
+              1095, "/data/file1?authz=token-of-first", new NullHandler()));
+        cache.put(info("/data/file1"), ALICE, redirect);
+
+        XrootdTpcInfo resolved = cache.lookup(info("/data/file2"), ALICE);
+
+        assertThat(resolved.getSrc(), is(equalTo("data.example.org:1095")));
+        assertThat(resolved.isTls(), is(true));
+        assertThat(resolved.getSourceToken(), is(nullValue()));
+    }
+
+    @Test
+    public void shouldKeepProtocolOfTransferWithoutRedirectUrl()
+          throws Exception {
+        cache.put(info("/data/file1"), ALICE,
+              redirectTo("data.example.org", 1095));
+
+        XrootdTpcInfo resolved = cache.lookup(info("/data/file2",
+              ImmutableMap.of("tpc.spr", "xroots")), ALICE);
+
+        assertThat(resolved.isTls(), is(true));
+    }
+
+    private void givenLifetime(long lifetime, TimeUnit unit) {
+        cache = new TpcRedirectCache(TpcRedirectCache.DEFAULT_MAX_ENTRIES,
+              lifetime, unit);
+    }
+
+    private static XrootdTpcInfo info(String lfn) throws Exception {
+        return info("source.example.org", lfn, ImmutableMap.of());
+    }
+
+    private static XrootdTpcInfo info(String lfn, ImmutableMap<String, String> opaque)
+          throws Exception {
+        return info("source.example.org", lfn, opaque);
+    }
+
+    private static XrootdTpcInfo info(String host, String lfn) throws Exception {
+        return info(host, lfn, ImmutableMap.of());
+    }
+
+    private static XrootdTpcInfo info(String host, String lfn,
+          ImmutableMap<String, String> opaque) throws Exception {
+        return new XrootdTpcInfo(ImmutableMap.<String, String>builder()
+              .put("tpc.key", "key")
+              .put("tpc.src", host + ":1094")
+              .put("tpc.lfn", lfn)
+              .putAll(opaque)
+              .build());
+    }
+
+    private static InboundRedirectResponse redirectTo(String host, int port) {
+        InboundRedirectResponse response = mock(InboundRedirectResponse.class);
+        when(response.getHost()).thenReturn(host);
+        when(response.getPort()).thenReturn(port);
+        return response;
+    }
+
+    private static class NullHandler extends URLStreamHandler {
+
+        @Override
+        protected URLConnection openConnection(URL url) {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
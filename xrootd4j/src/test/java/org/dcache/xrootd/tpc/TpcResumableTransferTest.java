@@ -0,0 +1,222 @@
+/**
+ * Copyright (C) 2011-2026 dCache.org <support@dcache.org>
+ *
+ * This file is part of xrootd4j.
+ *
+ * xrootd4j is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * xrootd4j is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with xrootd4j.  If
+ * not, see http://www.gnu.org/licenses/.
+ */
+package org.dcache.xrootd.tpc;
+
+import static org.dcache.xrootd.protocol.XrootdProtocol.kXR_IOError;
+import static org.dcache.xrootd.protocol.XrootdProtocol.kXR_NotAuthorized;
+import static org.dcache.xrootd.protocol.XrootdProtocol.kXR_ServerError;
+import static org.dcache.xrootd.protocol.XrootdProtocol.kXR_ok;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.google.common.collect.ImmutableMap;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.Adler32;
+import org.dcache.xrootd.tpc.protocol.messages.InboundReadResponse;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TpcResumableTransferTest {
+
+    private final Deque<Runnable> tasks = new ArrayDeque<>();
+    private final List<Long> offsets = new ArrayList<>();
+    private final List<TpcDelayedSyncWriteHandler> attempts = new ArrayList<>();
+
+    private ScheduledExecutorService executor;
+    private TpcDelayedSyncWriteHandler writeHandler;
+    private TpcResumableTransfer transfer;
+
+    @Before
+    public void setUp() {
+        executor = mock(ScheduledExecutorService.class);
+        doAnswer(invocation -> {
+            tasks.add((Runnable) invocation.getArguments()[0]);
+            return null;
+        }).when(executor).execute(any(Runnable.class));
+        doAnswer(invocation -> {
+            tasks.add((Runnable) invocation.getArguments()[0]);
+            return null;
+        }).when(executor).schedule(any(Runnable.class), anyLong(),
+              any(TimeUnit.class));
+        writeHandler = mock(TpcDelayedSyncWriteHandler.class);
+    }
+
+    @Test
+    public void shouldRetryRetryableFailuresUntilBudgetIsSpent()
+          throws Exception {
+        givenTransfer(2, ImmutableMap.of());
+        transfer.start();
+
+        attempt(0).fireDelayedSync(kXR_IOError, "connection reset");
+        runTasks();
+        attempt(1).fireDelayedSync(kXR_ServerError, "source crashed");
+        runTasks();
+        verify(writeHandler, never()).fireDelayedSync(anyInt(), anyString());
+
+        attempt(2).fireDelayedSync(kXR_IOError, "connection reset");
+        runTasks();
+
+        assertThat(attempts.size(), is(equalTo(3)));
+        assertThat(transfer.getRetries(), is(equalTo(2)));
+        verify(writeHandler).fireDelayedSync(kXR_IOError, "connection reset");
+    }
+
+    @Test
+    public void shouldNotRetryNonRetryableFailure() throws Exception {
+        givenTransfer(2, ImmutableMap.of());
+        transfer.start();
+
+        attempt(0).fireDelayedSync(kXR_NotAuthorized, "permission denied");
+        runTasks();
+
+        assertThat(attempts.size(), is(equalTo(1)));
+        assertThat(transfer.getRetries(), is(equalTo(0)));
+        verify(writeHandler).fireDelayedSync(kXR_NotAuthorized,
+              "permission denied");
+    }
+
+    @Test
+    public void shouldResumeFromOffsetBelowWhichAllWasWritten()
+          throws Exception {
+        givenTransfer(1, ImmutableMap.of());
+        transfer.start();
+        attempt(0).write(response(0, 100));
+        attempt(0).write(response(200, 100));
+
+        attempt(0).fireDelayedSync(kXR_IOError, "connection reset");
+        runTasks();
+
+        assertThat(offsets, contains(0L, 100L));
+        assertThat(transfer.getDurableOffset(), is(equalTo(100L)));
+
+        attempt(1).write(response(100, 100));
+
+        assertThat(transfer.getDurableOffset(), is(equalTo(200L)));
+    }
+
+    @Test
+    public void shouldIgnoreEventsOfAbandonedAttempt() throws Exception {
+        givenTransfer(2, ImmutableMap.of());
+        transfer.start();
+        attempt(0).fireDelayedSync(kXR_IOError, "connection reset");
+        runTasks();
+
+        try {
+            attempt(0).write(response(0, 100));
+            fail("abandoned attempt was allowed to write");
+        } catch (IOException expected) {
+        }
+        attempt(0).fireDelayedSync(kXR_IOError, "connection reset");
+        attempt(0).fireDelayedSync(kXR_ok, null);
+        runTasks();
+
+        assertThat(attempts.size(), is(equalTo(2)));
+        assertThat(transfer.getRetries(), is(equalTo(1)));
+        assertThat(transfer.getDurableOffset(), is(equalTo(0L)));
+        verify(writeHandler, never()).write(any(InboundReadResponse.class));
+        verify(writeHandler, never()).fireDelayedSync(anyInt(), anyString());
+
+        attempt(1).fireDelayedSync(kXR_ok, null);
+
+        verify(writeHandler, times(1)).fireDelayedSync(kXR_ok, null);
+    }
+
+    @Test
+    public void shouldForgetChecksumOfDataBeyondResumeOffset()
+          throws Exception {
+        givenTransfer(1, ImmutableMap.of("tpc.cks", "adler32"));
+        byte[] data = new byte[300];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) (i * 7);
+        }
+        transfer.start();
+        TpcChecksumAccumulator checksum = transfer.getChecksumAccumulator();
+
+        checksum.update(0, buffers(data, 0, 100));
+        attempt(0).write(response(0, 100));
+        checksum.update(150, buffers(data, 150, 100));
+        attempt(0).write(response(150, 100));
+        attempt(0).fireDelayedSync(kXR_IOError, "connection reset");
+        runTasks();
+
+        checksum.update(100, buffers(data, 100, 200));
+
+        Adler32 expected = new Adler32();
+        expected.update(data, 0, data.length);
+        assertThat(offsets, contains(0L, 100L));
+        assertThat(checksum.getValue(data.length),
+              is(equalTo(String.format("%08x", expected.getValue()))));
+    }
+
+    private void givenTransfer(int maxRetries, Map<String, String> opaque)
+          throws Exception {
+        XrootdTpcInfo info = new XrootdTpcInfo(ImmutableMap.<String, String>builder()
+              .put("tpc.key", "key")
+              .put("tpc.src", "source.example.org:1094")
+              .put("tpc.lfn", "/path/to/file")
+              .putAll(opaque)
+              .build());
+        transfer = new TpcResumableTransfer(info, writeHandler,
+              (source, offset, handler) -> {
+                  offsets.add(offset);
+                  attempts.add(handler);
+              }, maxRetries, 1, TimeUnit.SECONDS, executor);
+    }
+
+    private TpcDelayedSyncWriteHandler attempt(int index) {
+        return attempts.get(index);
+    }
+
+    private void runTasks() {
+        Runnable task;
+        while ((task = tasks.poll()) != null) {
+            task.run();
+        }
+    }
+
+    private static InboundReadResponse response(long offset, int length) {
+        InboundReadResponse response = mock(InboundReadResponse.class);
+        when(response.getWriteOffset()).thenReturn(offset);
+        when(response.getDlen()).thenReturn(length);
+        return response;
+    }
+
+    private static ByteBuffer[] buffers(byte[] data, int offset, int length) {
+        return new ByteBuffer[]{ByteBuffer.wrap(data, offset, length)};
+    }
+}
@@ -0,0 +1,461 @@
+/**
+ * Copyright (C) 2011-2026 dCache.org <support@dcache.org>
+ *
+ * This file is part of xrootd4j.
+ *
+ * xrootd4j is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * xrootd4j is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with xrootd4j.  If
+ * not, see http://www.gnu.org/licenses/.
+ */
+package org.dcache.xrootd.tpc;
+
+import static org.dcache.xrootd.protocol.XrootdProtocol.kXR_IOError;
+import static org.dcache.xrootd.protocol.XrootdProtocol.kXR_ServerError;
+import static org.dcache.xrootd.protocol.XrootdProtocol.kXR_error;
+import static org.dcache.xrootd.protocol.XrootdProtocol.kXR_ok;
+import static org.dcache.xrootd.protocol.XrootdProtocol.kXR_oksofar;
+import static org.dcache.xrootd.protocol.XrootdProtocol.kXR_read;
+import static org.dcache.xrootd.protocol.XrootdProtocol.kXR_wait;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Mockito.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
+import com.google.common.collect.ImmutableMap;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.embedded.EmbeddedChannel;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import org.dcache.xrootd.core.XrootdException;
+import org.dcache.xrootd.tpc.protocol.messages.InboundChecksumResponse;
+import org.dcache.xrootd.tpc.protocol.messages.InboundReadResponse;
+import org.dcache.xrootd.tpc.protocol.messages.InboundRedirectResponse;
+import org.dcache.xrootd.tpc.protocol.messages.InboundWaitResponse;
+import org.dcache.xrootd.tpc.protocol.messages.OutboundReadRequest;
+import org.junit.After;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+public class TpcSourceReadHandlerTest {
+
+    private static final int WAIT_IN_SECONDS = 3;
+
+    private EmbeddedChannel channel;
+    private TestReadHandler handler;
+    private RecordingWriteHandler writes;
+    private ScheduledExecutorService executor;
+    private XrootdTpcClient client;
+    private byte[] file;
+
+    @After
+    public void tearDown() {
+        if (channel != null) {
+            channel.finishAndReleaseAll();
+        }
+    }
+
+    @Test
+    public void shouldKeepWindowOfReadsOutstanding() throws Exception {
+        givenTransfer(500, 100, 3);
+
+        whenReadsStart();
+
+        OutboundReadRequest first = nextRequest();
+        OutboundReadRequest second = nextRequest();
+        OutboundReadRequest third = nextRequest();
+        assertThat(channel.readOutbound(), is(nullValue()));
+
+        assertThat(first.getReadOffset(), is(equalTo(0L)));
+        assertThat(second.getReadOffset(), is(equalTo(100L)));
+        assertThat(third.getReadOffset(), is(equalTo(200L)));
+        assertThat(first.bytesToRead(), is(equalTo(100)));
+        assertThat(first.getStreamId(), is(equalTo(client.getStreamId())));
+        assertThat(second.getStreamId(), is(not(equalTo(first.getStreamId()))));
+        assertThat(third.getStreamId(), is(not(equalTo(second.getStreamId()))));
+    }
+
+    @Test
+    public void shouldWriteInterleavedPartialResponsesAtTheirOffsets()
+          throws Exception {
+        givenTransfer(300, 100, 3);
+        whenReadsStart();
+        OutboundReadRequest first = nextRequest();
+        OutboundReadRequest second = nextRequest();
+        OutboundReadRequest third = nextRequest();
+
+        whenSourceSends(third, kXR_oksofar, 200, 50);
+        whenSourceSends(first, kXR_oksofar, 0, 40);
+        whenSourceSends(second, kXR_ok, 100, 100);
+        whenSourceSends(third, kXR_ok, 250, 50);
+        assertThat(client.getWriteOffset(), is(equalTo(40L)));
+        assertThat(writes.result, is(nullValue()));
+
+        whenSourceSends(first, kXR_ok, 40, 60);
+
+        assertThat(writes.offsets, is(equalTo(offsets(200, 0, 100, 250, 40))));
+        assertThat(writes.received, is(equalTo(file)));
+        assertThat(client.getWriteOffset(), is(equalTo(300L)));
+        assertThat(writes.result, is(equalTo(kXR_ok)));
+        assertThat(channel.readOutbound(), is(nullValue()));
+    }
+
+    @Test
+    public void shouldAdvanceWriteOffsetOnlyOverContiguousData()
+          throws Exception {
+        givenTransfer(600, 100, 3);
+        whenReadsStart();
+        OutboundReadRequest first = nextRequest();
+        OutboundReadRequest second = nextRequest();
+        OutboundReadRequest third = nextRequest();
+
+        whenSourceSends(third, kXR_ok, 200, 100);
+        assertThat(client.getWriteOffset(), is(equalTo(0L)));
+        OutboundReadRequest fourth = nextRequest();
+        assertThat(fourth.getStreamId(), is(equalTo(third.getStreamId())));
+        assertThat(fourth.getReadOffset(), is(equalTo(300L)));
+
+        whenSourceSends(second, kXR_ok, 100, 100);
+        assertThat(client.getWriteOffset(), is(equalTo(0L)));
+        OutboundReadRequest fifth = nextRequest();
+        assertThat(fifth.getReadOffset(), is(equalTo(400L)));
+
+        whenSourceSends(first, kXR_ok, 0, 100);
+        assertThat(client.getWriteOffset(), is(equalTo(300L)));
+        OutboundReadRequest sixth = nextRequest();
+        assertThat(sixth.getReadOffset(), is(equalTo(500L)));
+
+        whenSourceSends(fifth, kXR_ok, 400, 100);
+        assertThat(client.getWriteOffset(), is(equalTo(300L)));
+
+        whenSourceSends(fourth, kXR_ok, 300, 100);
+        assertThat(client.getWriteOffset(), is(equalTo(500L)));
+
+        whenSourceSends(sixth, kXR_ok, 500, 100);
+        assertThat(client.getWriteOffset(), is(equalTo(600L)));
+        assertThat(writes.received, is(equalTo(file)));
+        assertThat(writes.result, is(equalTo(kXR_ok)));
+    }
+
+    @Test
+    public void shouldAskForRemainderOfShortReadOnSameStream()
+          throws Exception {
+        givenTransfer(200, 100, 1);
+        whenReadsStart();
+        OutboundReadRequest first = nextRequest();
+
+        whenSourceSends(first, kXR_ok, 0, 60);
+
+        OutboundReadRequest remainder = nextRequest();
+        assertThat(remainder.getStreamId(), is(equalTo(first.getStreamId())));
+        assertThat(remainder.getReadOffset(), is(equalTo(60L)));
+        assertThat(remainder.bytesToRead(), is(equalTo(40)));
+        assertThat(client.getWriteOffset(), is(equalTo(60L)));
+
+        whenSourceSends(remainder, kXR_ok, 60, 40);
+
+        OutboundReadRequest next = nextRequest();
+        assertThat(next.getReadOffset(), is(equalTo(100L)));
+        assertThat(next.bytesToRead(), is(equalTo(100)));
+        assertThat(client.getWriteOffset(), is(equalTo(100L)));
+
+        whenSourceSends(next, kXR_ok, 100, 100);
+
+        assertThat(writes.received, is(equalTo(file)));
+        assertThat(writes.result, is(equalTo(kXR_ok)));
+    }
+
+    @Test
+    public void shouldRetryOnlyTheStreamToldToWait() throws Exception {
+        givenTransfer(200, 100, 2);
+        whenReadsStart();
+        OutboundReadRequest first = nextRequest();
+        OutboundReadRequest second = nextRequest();
+
+        whenSourceSends(second, kXR_oksofar, 100, 30);
+        whenSourceTellsToWait(second);
+        assertThat(channel.readOutbound(), is(nullValue()));
+
+        whenSourceSends(first, kXR_ok, 0, 100);
+        assertThat(channel.readOutbound(), is(nullValue()));
+        assertThat(client.getWriteOffset(), is(equalTo(130L)));
+
+        whenWaitIsOver();
+
+        OutboundReadRequest retry = nextRequest();
+        assertThat(channel.readOutbound(), is(nullValue()));
+        assertThat(retry.getStreamId(), is(equalTo(second.getStreamId())));
+        assertThat(retry.getReadOffset(), is(equalTo(130L)));
+        assertThat(retry.bytesToRead(), is(equalTo(70)));
+
+        whenSourceSends(retry, kXR_ok, 130, 70);
+
+        assertThat(writes.received, is(equalTo(file)));
+        assertThat(writes.result, is(equalTo(kXR_ok)));
+    }
+
+    @Test
+    public void shouldSuspendReadingWhileWritesQueueBehindSlowExecutor()
+          throws Exception {
+        givenTransfer(400, 100, 4);
+        SlowExecutor writer = givenWriteBehind(2);
+        whenReadsStart();
+        OutboundReadRequest first = nextRequest();
+        OutboundReadRequest second = nextRequest();
+        OutboundReadRequest third = nextRequest();
+        OutboundReadRequest fourth = nextRequest();
+
+        whenSourceSends(first, kXR_ok, 0, 100);
+        assertThat(channel.config().isAutoRead(), is(true));
+        whenSourceSends(second, kXR_ok, 100, 100);
+        assertThat(channel.config().isAutoRead(), is(false));
+        whenSourceSends(third, kXR_ok, 200, 100);
+
+        writer.runQueued();
+        assertThat(writes.offsets, is(equalTo(offsets(0, 100, 200))));
+        assertThat(channel.config().isAutoRead(), is(false));
+
+        channel.runPendingTasks();
+        assertThat(channel.config().isAutoRead(), is(true));
+
+        whenSourceSends(fourth, kXR_ok, 300, 100);
+        assertThat(writes.result, is(nullValue()));
+
+        writer.runQueued();
+        channel.runPendingTasks();
+        assertThat(channel.config().isAutoRead(), is(true));
+        assertThat(writes.received, is(equalTo(file)));
+        assertThat(writes.result, is(equalTo(kXR_ok)));
+    }
+
+    @Test
+    public void shouldNotChecksumDataRejectedByWriteHandler() throws Exception {
+        givenTransfer(100, 100, 1);
+        TpcChecksumAccumulator checksum =
+              TpcChecksumAccumulator.forAlgorithm("adler32");
+        handler.setChecksumAccumulator(checksum);
+        writes.rejecting = true;
+        whenReadsStart();
+
+        whenSourceSends(nextRequest(), kXR_ok, 0, 100);
+
+        assertThat(writes.result, is(equalTo(kXR_IOError)));
+        assertThat(checksum.getValue(100), is(nullValue()));
+    }
+
+    @Test
+    public void shouldDropQueuedWritesOnceTransferHasFailed() throws Exception {
+        givenTransfer(200, 100, 2);
+        SlowExecutor writer = givenWriteBehind(4);
+        whenReadsStart();
+        OutboundReadRequest first = nextRequest();
+        OutboundReadRequest second = nextRequest();
+
+        whenSourceSends(first, kXR_ok, 0, 100);
+        whenSourceSends(second, kXR_error, 100, 0);
+        assertThat(writes.result, is(equalTo(kXR_error)));
+
+        writer.runQueued();
+
+        assertThat(writes.offsets.isEmpty(), is(true));
+    }
+
+    @Test
+    public void shouldFailOnResponseToUnknownStream() throws Exception {
+        givenTransfer(200, 100, 1);
+        whenReadsStart();
+        OutboundReadRequest first = nextRequest();
+
+        channel.writeInbound(readResponse(first.getStreamId() + 1, kXR_ok, 0, 100));
+
+        assertThat(writes.result, is(equalTo(kXR_ServerError)));
+        assertThat(writes.offsets.isEmpty(), is(true));
+    }
+
+    private void givenTransfer(int size, int chunkSize, int window)
+          throws Exception {
+        file = new byte[size];
+        for (int i = 0; i < size; i++) {
+            file[i] = (byte) (i * 31);
+        }
+
+        XrootdTpcInfo info = new XrootdTpcInfo(ImmutableMap.of(
+              "tpc.key", "key",
+              "tpc.src", "source.example.org:1094",
+              "tpc.lfn", "/path/to/file",
+              "oss.asize", String.valueOf(size)));
+        writes = new RecordingWriteHandler(size);
+        executor = mock(ScheduledExecutorService.class);
+        client = new XrootdTpcClient("user.1@client.example.org", info,
+              writes, executor);
+
+        handler = new TestReadHandler(chunkSize, window);
+        handler.setClient(client);
+        channel = new EmbeddedChannel(handler);
+    }
+
+    private SlowExecutor givenWriteBehind(int maxQueuedWrites) {
+        SlowExecutor writer = new SlowExecutor();
+        handler.setWriteBehind(writer, maxQueuedWrites);
+        return writer;
+    }
+
+    private void whenReadsStart() {
+        handler.sendReadRequest(channel.pipeline().context(handler));
+    }
+
+    private void whenSourceSends(OutboundReadRequest request, int status,
+          int offset, int length) {
+        channel.writeInbound(readResponse(request.getStreamId(), status,
+              offset, length));
+    }
+
+    private void whenSourceTellsToWait(OutboundReadRequest request) {
+        ByteBuf buffer = Unpooled.buffer();
+        buffer.writeShort(request.getStreamId());
+        buffer.writeShort(kXR_wait);
+        buffer.writeInt(4);
+        buffer.writeInt(WAIT_IN_SECONDS);
+        channel.writeInbound(new InboundWaitResponse(buffer, kXR_read));
+        buffer.release();
+    }
+
+    private void whenWaitIsOver() {
+        ArgumentCaptor<Runnable> retry = ArgumentCaptor.forClass(Runnable.class);
+        verify(executor).schedule(retry.capture(), eq((long) WAIT_IN_SECONDS),
+              eq(TimeUnit.SECONDS));
+        retry.getValue().run();
+        channel.runPendingTasks();
+    }
+
+    private OutboundReadRequest nextRequest() {
+        OutboundReadRequest request = channel.readOutbound();
+        assertThat(request, is(not(nullValue())));
+        return request;
+    }
+
+    private InboundReadResponse readResponse(int streamId, int status,
+          int offset, int length) {
+        ByteBuf buffer = Unpooled.buffer(8 + length);
+        buffer.writeShort(streamId);
+        buffer.writeShort(status);
+        buffer.writeInt(length);
+        buffer.writeBytes(file, offset, length);
+        InboundReadResponse response = new InboundReadResponse(buffer);
+        buffer.release();
+        return response;
+    }
+
+    private static List<Long> offsets(long... values) {
+        List<Long> list = new ArrayList<>();
+        for (long value : values) {
+            list.add(value);
+        }
+        return list;
+    }
+
+    private static class TestReadHandler extends TpcSourceReadHandler {
+
+        private final int chunkSize;
+        private final int window;
+
+        TestReadHandler(int chunkSize, int window) {
+            this.chunkSize = chunkSize;
+            this.window = window;
+        }
+
+        @Override
+        protected void validateChecksum(InboundChecksumResponse response,
+              ChannelHandlerContext ctx) {
+        }
+
+        @Override
+        protected int getChunkSize() {
+            return chunkSize;
+        }
+
+        @Override
+        protected int getReadWindow() {
+            return window;
+        }
+    }
+
+    /**
+     * Holds writes back until the test lets them run, each drain on a
+     * thread of its own.
+     */
+    private static class SlowExecutor implements Executor {
+
+        private final Queue<Runnable> tasks = new ArrayDeque<>();
+
+        @Override
+        public void execute(Runnable task) {
+            tasks.add(task);
+        }
+
+        void runQueued() throws InterruptedException {
+            Runnable task;
+            while ((task = tasks.poll()) != null) {
+                Thread thread = new Thread(task);
+                thread.start();
+                thread.join();
+            }
+        }
+    }
+
+    private static class RecordingWriteHandler implements TpcDelayedSyncWriteHandler {
+
+        private final byte[] received;
+        private final List<Long> offsets = new ArrayList<>();
+        private Integer result;
+        private boolean rejecting;
+
+        RecordingWriteHandler(int size) {
+            received = new byte[size];
+        }
+
+        @Override
+        public void fireDelayedSync(int result, String error) {
+            this.result = result;
+        }
+
+        @Override
+        public void write(InboundReadResponse response) throws IOException {
+            if (rejecting) {
+                throw new IOException("attempt was abandoned");
+            }
+            long offset = response.getWriteOffset();
+            offsets.add(offset);
+            for (ByteBuffer buffer : response.toByteBuffers()) {
+                int length = buffer.remaining();
+                buffer.get(received, (int) offset, length);
+                offset += length;
+            }
+        }
+
+        @Override
+        public void redirect(ChannelHandlerContext ctx,
+              InboundRedirectResponse response) throws XrootdException {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
@@ -0,0 +1,270 @@
+/**
+ * Copyright (C) 2011-2026 dCache.org <support@dcache.org>
+ *
+ * This file is part of xrootd4j.
+ *
+ * xrootd4j is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * xrootd4j is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with xrootd4j.  If
+ * not, see http://www.gnu.org/licenses/.
+ */
+package org.dcache.xrootd.tpc;
+
+import static org.dcache.xrootd.protocol.XrootdProtocol.kXR_open;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.google.common.collect.ImmutableMap;
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.embedded.EmbeddedChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import org.dcache.xrootd.plugins.ChannelHandlerFactory;
+import org.dcache.xrootd.tpc.core.XrootdClientDecoder;
+import org.dcache.xrootd.tpc.core.XrootdClientEncoder;
+import org.dcache.xrootd.tpc.protocol.messages.InboundChecksumResponse;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+public class TpcSourceSessionPoolTest {
+
+    private static final String ALICE = "alice";
+    private static final String BOB = "bob";
+    private static final long IDLE_TIMEOUT = 60_000;
+
+    private final List<EmbeddedChannel> channels = new ArrayList<>();
+
+    private ScheduledExecutorService executor;
+    private TpcSourceSessionPool pool;
+    private long now;
+
+    @Before
+    public void setUp() {
+        executor = mock(ScheduledExecutorService.class);
+        when(executor.scheduleWithFixedDelay(any(Runnable.class), anyLong(),
+              anyLong(), any(TimeUnit.class)))
+              .thenAnswer(invocation -> mock(ScheduledFuture.class));
+        pool = new TpcSourceSessionPool(IDLE_TIMEOUT, TimeUnit.MILLISECONDS, 2,
+              executor, () -> now);
+    }
+
+    @After
+    public void tearDown() {
+        channels.forEach(EmbeddedChannel::finishAndReleaseAll);
+    }
+
+    @Test
+    public void shouldHandOutReleasedSessionForSameSourceAndIdentity()
+          throws Exception {
+        XrootdTpcClient idle = givenConnectedClient(ALICE);
+
+        assertThat(idle.releaseSession(), is(true));
+        assertThat(pool.getIdleCount(), is(equalTo(1)));
+
+        assertThat(pool.acquire(givenClient(ALICE)), is(sameInstance(idle)));
+        assertThat(pool.getIdleCount(), is(equalTo(0)));
+    }
+
+    @Test
+    public void shouldNotShareSessionsBetweenIdentities() throws Exception {
+        givenConnectedClient(ALICE).releaseSession();
+
+        assertThat(pool.acquire(givenClient(BOB)), is(nullValue()));
+        assertThat(pool.getIdleCount(), is(equalTo(1)));
+    }
+
+    @Test
+    public void shouldNotShareSessionsBetweenSources() throws Exception {
+        givenConnectedClient(ALICE).releaseSession();
+
+        assertThat(pool.acquire(givenClient(ALICE, "other.example.org:1094")),
+              is(nullValue()));
+    }
+
+    @Test
+    public void shouldNotPoolSessionOfClosedChannel() throws Exception {
+        XrootdTpcClient client = givenConnectedClient(ALICE);
+        client.getChannelFuture().channel().close();
+
+        assertThat(client.releaseSession(), is(false));
+        assertThat(pool.getIdleCount(), is(equalTo(0)));
+    }
+
+    @Test
+    public void shouldLimitIdleSessionsPerSource() throws Exception {
+        assertThat(givenConnectedClient(ALICE).releaseSession(), is(true));
+        assertThat(givenConnectedClient(ALICE).releaseSession(), is(true));
+
+        assertThat(givenConnectedClient(ALICE).releaseSession(), is(false));
+        assertThat(pool.getIdleCount(), is(equalTo(2)));
+    }
+
+    @Test
+    public void shouldForgetSessionWhoseChannelCloses() throws Exception {
+        XrootdTpcClient idle = givenConnectedClient(ALICE);
+        idle.releaseSession();
+
+        idle.getChannelFuture().channel().close();
+
+        assertThat(pool.getIdleCount(), is(equalTo(0)));
+        assertThat(pool.acquire(givenClient(ALICE)), is(nullValue()));
+    }
+
+    @Test
+    public void shouldNotHandOutSessionIdleForLongerThanTimeout()
+          throws Exception {
+        XrootdTpcClient idle = givenConnectedClient(ALICE);
+        idle.releaseSession();
+
+        now += IDLE_TIMEOUT;
+
+        assertThat(pool.acquire(givenClient(ALICE)), is(nullValue()));
+        assertThat(idle.getChannelFuture().channel().isOpen(), is(false));
+    }
+
+    @Test
+    public void shouldCloseExpiredSessionsInBackground() throws Exception {
+        XrootdTpcClient expiring = givenConnectedClient(ALICE);
+        expiring.releaseSession();
+        now += IDLE_TIMEOUT / 2;
+        XrootdTpcClient recent = givenConnectedClient(ALICE);
+        recent.releaseSession();
+
+        now += IDLE_TIMEOUT / 2;
+        whenSweeperRuns();
+
+        assertThat(expiring.getChannelFuture().channel().isOpen(), is(false));
+        assertThat(recent.getChannelFuture().channel().isOpen(), is(true));
+        assertThat(pool.getIdleCount(), is(equalTo(1)));
+    }
+
+    @Test
+    public void shouldCloseIdleSessionsOnShutdown() throws Exception {
+        XrootdTpcClient idle = givenConnectedClient(ALICE);
+        idle.releaseSession();
+
+        pool.shutdown();
+
+        assertThat(idle.getChannelFuture().channel().isOpen(), is(false));
+        assertThat(pool.getIdleCount(), is(equalTo(0)));
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void shouldRequireIdentityForPooling() throws Exception {
+        givenClient(ALICE).setSessionPool(pool, null);
+    }
+
+    @Test
+    public void shouldRebindAdoptedSessionAndOpenFile() throws Exception {
+        XrootdTpcClient idle = givenConnectedClient(ALICE);
+        EmbeddedChannel channel = (EmbeddedChannel) idle.getChannelFuture().channel();
+        ChannelHandler idleDecoder = channel.pipeline().get("decoder");
+        ChannelHandler idleEncoder = channel.pipeline().get("encoder");
+        idle.releaseSession();
+
+        XrootdTpcClient client = givenClient(ALICE);
+        TestReadHandler readHandler = new TestReadHandler();
+        client.connect(mock(TpcClientTransport.class),
+              Collections.<ChannelHandlerFactory>emptyList(), readHandler);
+        channel.runPendingTasks();
+
+        assertThat(client.getChannelFuture().channel(), is(sameInstance(channel)));
+        assertThat(channel.pipeline().get("decoder"), is(not(sameInstance(idleDecoder))));
+        assertThat(channel.pipeline().get("decoder"), is(instanceOf(XrootdClientDecoder.class)));
+        assertThat(channel.pipeline().get("encoder"), is(not(sameInstance(idleEncoder))));
+        assertThat(((AbstractClientRequestHandler) channel.pipeline().get("connect")).client,
+              is(sameInstance(client)));
+        assertThat(channel.pipeline().get("read"), is(sameInstance(readHandler)));
+        assertThat(readHandler.client, is(sameInstance(client)));
+
+        ByteBuf open = channel.readOutbound();
+        try {
+            assertThat(open.getUnsignedShort(0), is(equalTo(client.getStreamId())));
+            assertThat(open.getUnsignedShort(2), is(equalTo(kXR_open)));
+        } finally {
+            open.release();
+        }
+        assertThat(client.getExpectedResponse(), is(equalTo(kXR_open)));
+    }
+
+    private XrootdTpcClient givenClient(String identity) throws Exception {
+        return givenClient(identity, "source.example.org:1094");
+    }
+
+    private XrootdTpcClient givenClient(String identity, String source)
+          throws Exception {
+        XrootdTpcInfo info = new XrootdTpcInfo(ImmutableMap.of(
+              "tpc.key", "key",
+              "tpc.src", source,
+              "tpc.lfn", "/path/to/file"));
+        XrootdTpcClient client = new XrootdTpcClient("user.1@client.example.org",
+              info, mock(TpcDelayedSyncWriteHandler.class), executor);
+        client.setSessionPool(pool, identity);
+        return client;
+    }
+
+    /**
+     * A client whose channel carries the pipeline a connected client
+     * has.
+     */
+    private XrootdTpcClient givenConnectedClient(String identity)
+          throws Exception {
+        XrootdTpcClient client = givenClient(identity);
+        TpcClientConnectHandler connect = new TpcClientConnectHandler();
+        connect.setClient(client);
+        TestReadHandler read = new TestReadHandler();
+        read.setClient(client);
+        EmbeddedChannel channel = new EmbeddedChannel();
+        channel.pipeline().addLast("decoder", new XrootdClientDecoder(client));
+        channel.pipeline().addLast("encoder", new XrootdClientEncoder(client));
+        channel.pipeline().addLast("connect", connect);
+        channel.pipeline().addLast("read", read);
+        channels.add(channel);
+        client.setChannelFuture(channel.newSucceededFuture());
+        return client;
+    }
+
+    private void whenSweeperRuns() {
+        ArgumentCaptor<Runnable> sweeper = ArgumentCaptor.forClass(Runnable.class);
+        verify(executor).scheduleWithFixedDelay(sweeper.capture(), anyLong(),
+              anyLong(), any(TimeUnit.class));
+        sweeper.getValue().run();
+    }
+
+    private static class TestReadHandler extends TpcSourceReadHandler {
+
+        @Override
+        protected void validateChecksum(InboundChecksumResponse response,
+              ChannelHandlerContext ctx) {
+        }
+
+        @Override
+        protected int getChunkSize() {
+            return 1024;
+        }
+    }
+}
@@ -0,0 +1,233 @@
+/**
+ * Copyright (C) 2011-2026 dCache.org <support@dcache.org>
+ *
+ * This file is part of xrootd4j.
+ *
+ * xrootd4j is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * xrootd4j is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with xrootd4j.  If
+ * not, see http://www.gnu.org/licenses/.
+ */
+package org.dcache.xrootd.tpc;
+
+import static org.dcache.xrootd.protocol.XrootdProtocol.kXR_IOError;
+import static org.dcache.xrootd.protocol.XrootdProtocol.kXR_ServerError;
+import static org.dcache.xrootd.protocol.XrootdProtocol.kXR_ok;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import com.google.common.collect.Range;
+import io.netty.channel.ChannelHandlerContext;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import org.dcache.xrootd.core.XrootdException;
+import org.dcache.xrootd.tpc.protocol.messages.InboundReadResponse;
+import org.dcache.xrootd.tpc.protocol.messages.InboundRedirectResponse;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TpcStripeCoordinatorTest {
+
+    private TpcDelayedSyncWriteHandler writeHandler;
+    private TpcStripeCoordinator coordinator;
+    private ExecutorService executor;
+
+    @Before
+    public void setUp() {
+        writeHandler = mock(TpcDelayedSyncWriteHandler.class);
+        executor = Executors.newFixedThreadPool(2);
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void shouldHandOutConsecutiveRangesUpToFileSize() {
+        givenStripes(2);
+
+        assertThat(coordinator.claim(250, 100), is(equalTo(Range.closedOpen(0L, 100L))));
+        assertThat(coordinator.claim(250, 100), is(equalTo(Range.closedOpen(100L, 200L))));
+        assertThat(coordinator.claim(250, 100), is(equalTo(Range.closedOpen(200L, 250L))));
+        assertThat(coordinator.claim(250, 100), is(nullValue()));
+    }
+
+    @Test
+    public void shouldHandOutNothingOnceTransferHasFailed() {
+        givenStripes(2);
+        coordinator.claim(300, 100);
+
+        coordinator.fireDelayedSync(kXR_IOError, "disk full");
+
+        assertThat(coordinator.claim(300, 100), is(nullValue()));
+    }
+
+    @Test
+    public void shouldCompleteOffsetOnlyOverContiguousRanges() {
+        givenStripes(2);
+
+        coordinator.completed(100, 100);
+        assertThat(coordinator.getCompletedOffset(), is(equalTo(0L)));
+
+        coordinator.completed(0, 50);
+        assertThat(coordinator.getCompletedOffset(), is(equalTo(50L)));
+
+        coordinator.completed(50, 50);
+        assertThat(coordinator.getCompletedOffset(), is(equalTo(200L)));
+    }
+
+    @Test
+    public void shouldLetOnlyLastStripeFinishTransfer() throws Exception {
+        givenStripes(3);
+        coordinator.completed(0, 300);
+
+        assertThat(coordinator.finish(300), is(false));
+        assertThat(coordinator.finish(300), is(false));
+        assertThat(coordinator.finish(300), is(true));
+    }
+
+    @Test
+    public void shouldReportRangesMissingWhenLastStripeFinishes() {
+        givenStripes(2);
+        coordinator.completed(0, 100);
+        coordinator.completed(150, 150);
+
+        try {
+            coordinator.finish(300);
+            coordinator.finish(300);
+            fail("finished with a range missing");
+        } catch (XrootdException e) {
+            assertThat(e.getError(), is(equalTo(kXR_ServerError)));
+            assertThat(e.getMessage(), containsString("[100..150)"));
+        }
+    }
+
+    @Test
+    public void shouldNotFinishAfterFailure() throws Exception {
+        givenStripes(1);
+        coordinator.completed(0, 100);
+
+        coordinator.fireDelayedSync(kXR_IOError, "disk full");
+
+        assertThat(coordinator.finish(100), is(false));
+    }
+
+    @Test
+    public void shouldStopAllStripesAndReportFailureOnce() {
+        givenStripes(2);
+        XrootdTpcClient first = mock(XrootdTpcClient.class);
+        XrootdTpcClient second = mock(XrootdTpcClient.class);
+        coordinator.addClient(first);
+        coordinator.addClient(second);
+
+        coordinator.fireDelayedSync(kXR_IOError, "disk full");
+        coordinator.fireDelayedSync(kXR_ServerError, "disconnected");
+
+        verify(first).disconnect();
+        verify(second).disconnect();
+        verify(writeHandler, times(1)).fireDelayedSync(kXR_IOError, "disk full");
+        verify(writeHandler, never()).fireDelayedSync(kXR_ServerError, "disconnected");
+    }
+
+    @Test
+    public void shouldNotStopStripesOnSuccess() {
+        givenStripes(2);
+        XrootdTpcClient client = mock(XrootdTpcClient.class);
+        coordinator.addClient(client);
+
+        coordinator.fireDelayedSync(kXR_ok, null);
+
+        verify(client, never()).disconnect();
+        verify(writeHandler).fireDelayedSync(kXR_ok, null);
+    }
+
+    @Test
+    public void shouldStopStripeAddedAfterFailure() {
+        givenStripes(2);
+        coordinator.fireDelayedSync(kXR_IOError, "disk full");
+
+        XrootdTpcClient late = mock(XrootdTpcClient.class);
+        coordinator.addClient(late);
+
+        verify(late).disconnect();
+    }
+
+    @Test
+    public void shouldLetStripesClaimWhileAnotherWrites() throws Exception {
+        CountDownLatch writing = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        coordinator = new TpcStripeCoordinator(new BlockingWriteHandler(writing,
+              release), 2);
+
+        Future<?> write = executor.submit(() -> {
+            coordinator.write(mock(InboundReadResponse.class));
+            return null;
+        });
+        assertThat(writing.await(5, TimeUnit.SECONDS), is(true));
+
+        try {
+            Future<Long> completedOffset = executor.submit(() -> {
+                Range<Long> range = coordinator.claim(100, 50);
+                coordinator.completed(range.lowerEndpoint(), 50);
+                return coordinator.getCompletedOffset();
+            });
+            assertThat(completedOffset.get(5, TimeUnit.SECONDS), is(equalTo(50L)));
+        } finally {
+            release.countDown();
+        }
+        write.get(5, TimeUnit.SECONDS);
+    }
+
+    private void givenStripes(int stripes) {
+        coordinator = new TpcStripeCoordinator(writeHandler, stripes);
+    }
+
+    private static class BlockingWriteHandler implements TpcDelayedSyncWriteHandler {
+
+        private final CountDownLatch writing;
+        private final CountDownLatch release;
+
+        BlockingWriteHandler(CountDownLatch writing, CountDownLatch release) {
+            this.writing = writing;
+            this.release = release;
+        }
+
+        @Override
+        public void fireDelayedSync(int result, String error) {
+        }
+
+        @Override
+        public void write(InboundReadResponse response) {
+            writing.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        @Override
+        public void redirect(ChannelHandlerContext ctx,
+              InboundRedirectResponse response) {
+        }
+    }
+}
@@ -0,0 +1,335 @@
+/**
+ * Copyright (C) 2011-2026 dCache.org <support@dcache.org>
+ *
+ * This file is part of xrootd4j.
+ *
+ * xrootd4j is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * xrootd4j is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with xrootd4j.  If
+ * not, see http://www.gnu.org/licenses/.
+ */
+package org.dcache.xrootd.tpc;
+
+import static org.dcache.xrootd.protocol.XrootdProtocol.kXR_error;
+import static org.dcache.xrootd.protocol.XrootdProtocol.kXR_ok;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.google.common.collect.ImmutableMap;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandlerContext;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import org.dcache.xrootd.tpc.TpcTransferScheduler.Ticket;
+import org.dcache.xrootd.tpc.protocol.messages.InboundReadResponse;
+import org.dcache.xrootd.tpc.protocol.messages.InboundRedirectResponse;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TpcTransferSchedulerTest {
+
+    private static final String SOURCE = "source.example.org";
+    private static final String OTHER_SOURCE = "other.example.org";
+
+    private final Deque<Runnable> tasks = new ArrayDeque<>();
+    private final Deque<Runnable> delayed = new ArrayDeque<>();
+    private final List<Long> delays = new ArrayList<>();
+    private final List<String> started = new ArrayList<>();
+
+    private ScheduledExecutorService executor;
+    private TpcDelayedSyncWriteHandler writeHandler;
+    private TpcTransferScheduler scheduler;
+    private long now;
+
+    @Before
+    public void setUp() {
+        executor = mock(ScheduledExecutorService.class);
+        doAnswer(invocation -> {
+            tasks.add((Runnable) invocation.getArguments()[0]);
+            return null;
+        }).when(executor).execute(any(Runnable.class));
+        doAnswer(invocation -> {
+            delayed.add((Runnable) invocation.getArguments()[0]);
+            delays.add((Long) invocation.getArguments()[1]);
+            return null;
+        }).when(executor).schedule(any(Runnable.class), anyLong(),
+              any(TimeUnit.class));
+        writeHandler = mock(TpcDelayedSyncWriteHandler.class);
+    }
+
+    @Test
+    public void shouldStartHigherPriorityFirst() throws Exception {
+        givenScheduler(1, 1, 0);
+        submit(SOURCE, "low", "vo", 0);
+        Ticket high = submit(SOURCE, "high", "vo", 5);
+        Ticket middle = submit(SOURCE, "middle", "vo", 1);
+
+        runTasks();
+        high.fireDelayedSync(kXR_ok, null);
+        runTasks();
+        middle.fireDelayedSync(kXR_ok, null);
+        runTasks();
+
+        assertThat(started, contains("high", "middle", "low"));
+    }
+
+    @Test
+    public void shouldServeOwnersOfEqualPriorityRoundRobin() throws Exception {
+        givenScheduler(1, 1, 0);
+        Map<String, Ticket> tickets = new HashMap<>();
+        for (String name : new String[]{"a1", "a2", "a3", "b1", "b2"}) {
+            tickets.put(name, submit(SOURCE, name, name.substring(0, 1), 0));
+        }
+
+        runTasks();
+        for (int i = 0; i < tickets.size(); i++) {
+            tickets.get(started.get(i)).fireDelayedSync(kXR_ok, null);
+            runTasks();
+        }
+
+        assertThat(started, contains("a1", "b1", "a2", "b2", "a3"));
+    }
+
+    @Test
+    public void shouldLimitActiveTransfersPerSource() throws Exception {
+        givenScheduler(10, 2, 0);
+        submit(SOURCE, "s1", "vo", 0);
+        submit(SOURCE, "s2", "vo", 0);
+        submit(SOURCE, "s3", "vo", 0);
+        submit(OTHER_SOURCE, "o1", "vo", 0);
+
+        runTasks();
+
+        assertThat(started, contains("s1", "o1", "s2"));
+        assertThat(scheduler.getActive(SOURCE), is(equalTo(2)));
+        assertThat(scheduler.getQueued(SOURCE), is(equalTo(1)));
+        assertThat(scheduler.getActive(), is(equalTo(3)));
+    }
+
+    @Test
+    public void shouldShareGlobalSlotsBetweenSourcesRoundRobin()
+          throws Exception {
+        givenScheduler(1, 10, 0);
+        Map<String, Ticket> tickets = new HashMap<>();
+        for (String name : new String[]{"s1", "s2", "s3"}) {
+            tickets.put(name, submit(SOURCE, name, "vo", 0));
+        }
+        for (String name : new String[]{"o1", "o2"}) {
+            tickets.put(name, submit(OTHER_SOURCE, name, "vo", 0));
+        }
+
+        runTasks();
+        for (int i = 0; i < tickets.size(); i++) {
+            tickets.get(started.get(i)).fireDelayedSync(kXR_ok, null);
+            runTasks();
+        }
+
+        assertThat(started, contains("s1", "o1", "s2", "o2", "s3"));
+    }
+
+    @Test
+    public void shouldBackOffWhenSourceAsksToWait() throws Exception {
+        givenScheduler(10, 4, 0);
+        List<Ticket> tickets = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            tickets.add(submit(SOURCE, "t" + i, "vo", 0));
+        }
+        runTasks();
+        assertThat(started.size(), is(equalTo(4)));
+
+        tickets.get(0).waitRequested(5);
+        assertThat(scheduler.getLimit(SOURCE), is(equalTo(2)));
+
+        tickets.get(0).fireDelayedSync(kXR_error, "busy");
+        tickets.get(1).fireDelayedSync(kXR_error, "busy");
+        tickets.get(2).fireDelayedSync(kXR_error, "busy");
+        runTasks();
+        assertThat(started.size(), is(equalTo(4)));
+        assertThat(delays, contains(5000L, 5000L, 5000L));
+
+        now += 5000;
+        runDelayed();
+
+        assertThat(started, contains("t0", "t1", "t2", "t3", "t4"));
+    }
+
+    @Test
+    public void shouldRaiseLimitAgainOnSuccess() throws Exception {
+        givenScheduler(10, 4, 0);
+        Ticket ticket = submit(SOURCE, "t", "vo", 0);
+        runTasks();
+
+        ticket.waitRequested(1);
+        assertThat(scheduler.getLimit(SOURCE), is(equalTo(2)));
+
+        ticket.fireDelayedSync(kXR_ok, null);
+
+        assertThat(scheduler.getLimit(SOURCE), is(equalTo(3)));
+    }
+
+    @Test
+    public void shouldHoldBackStartsWhileOverRate() throws Exception {
+        givenScheduler(10, 10, 1000);
+        Ticket first = submit(SOURCE, "first", "vo", 0);
+        runTasks();
+        first.write(response(1000));
+
+        submit(SOURCE, "second", "vo", 0);
+        runTasks();
+        assertThat(started, contains("first"));
+        assertThat(delays, contains(1000L));
+
+        now = 1000;
+        runDelayed();
+        assertThat(started, contains("first"));
+
+        now = 2000;
+        runDelayed();
+        assertThat(started, contains("first", "second"));
+    }
+
+    @Test
+    public void shouldRemoveCancelledTransferFromQueue() throws Exception {
+        givenScheduler(1, 1, 0);
+        Ticket first = submit(SOURCE, "first", "vo", 0);
+        Ticket second = submit(SOURCE, "second", "vo", 0);
+        runTasks();
+
+        second.cancel();
+        assertThat(scheduler.getQueued(), is(equalTo(0)));
+
+        first.fireDelayedSync(kXR_ok, null);
+        runTasks();
+
+        assertThat(started, contains("first"));
+        assertThat(scheduler.getActive(), is(equalTo(0)));
+    }
+
+    @Test
+    public void shouldFreeSlotOfCancelledTransfer() throws Exception {
+        givenScheduler(1, 1, 0);
+        Ticket first = submit(SOURCE, "first", "vo", 0);
+        submit(SOURCE, "second", "vo", 0);
+        runTasks();
+
+        first.cancel();
+        runTasks();
+
+        assertThat(started, contains("first", "second"));
+        assertThat(scheduler.getActive(), is(equalTo(1)));
+        verify(writeHandler, never()).fireDelayedSync(anyInt(), anyString());
+    }
+
+    @Test
+    public void shouldKeepTicketAndSlotAcrossRedirect() throws Exception {
+        givenScheduler(1, 1, 0);
+        Ticket first = submit(SOURCE, "first", "vo", 0);
+        submit(SOURCE, "second", "vo", 0);
+        runTasks();
+
+        first.redirect(channelContext(), redirectTo("data.example.org", 1095));
+        runTasks();
+
+        assertThat(started, contains("first", "first"));
+        assertThat(first.getInfo().getSrcHost(), is(equalTo("data.example.org")));
+        assertThat(first.getInfo().getSrcPort(), is(equalTo(1095)));
+        assertThat(scheduler.getActive(), is(equalTo(1)));
+        verify(writeHandler, never()).redirect(any(ChannelHandlerContext.class),
+              any(InboundRedirectResponse.class));
+
+        first.fireDelayedSync(kXR_ok, null);
+        runTasks();
+
+        verify(writeHandler).fireDelayedSync(kXR_ok, null);
+        assertThat(started, contains("first", "first", "second"));
+    }
+
+    @Test
+    public void shouldFreeSlotIfStartFails() throws Exception {
+        givenScheduler(1, 1, 0);
+        scheduler.submit(info(SOURCE), "vo", 0, writeHandler, t -> {
+            throw new IllegalStateException("no connection");
+        });
+        submit(SOURCE, "second", "vo", 0);
+
+        runTasks();
+
+        assertThat(started, contains("second"));
+        verify(writeHandler).fireDelayedSync(anyInt(), anyString());
+    }
+
+    private void givenScheduler(int maxActive, int maxActivePerSource,
+          long maxBytesPerSecond) {
+        scheduler = new TpcTransferScheduler(maxActive, maxActivePerSource,
+              maxBytesPerSecond, executor, () -> now);
+    }
+
+    private Ticket submit(String source, String name, String owner,
+          int priority) throws Exception {
+        return scheduler.submit(info(source), owner, priority, writeHandler,
+              t -> started.add(name));
+    }
+
+    private void runTasks() {
+        Runnable task;
+        while ((task = tasks.poll()) != null) {
+            task.run();
+        }
+    }
+
+    private void runDelayed() {
+        List<Runnable> due = new ArrayList<>(delayed);
+        delayed.clear();
+        due.forEach(Runnable::run);
+        runTasks();
+    }
+
+    private static XrootdTpcInfo info(String source) throws Exception {
+        return new XrootdTpcInfo(ImmutableMap.of(
+              "tpc.key", "key",
+              "tpc.src", source + ":1094",
+              "tpc.lfn", "/path/to/file"));
+    }
+
+    private static InboundReadResponse response(int length) {
+        InboundReadResponse response = mock(InboundReadResponse.class);
+        when(response.getDlen()).thenReturn(length);
+        return response;
+    }
+
+    private static InboundRedirectResponse redirectTo(String host, int port) {
+        InboundRedirectResponse response = mock(InboundRedirectResponse.class);
+        when(response.getHost()).thenReturn(host);
+        when(response.getPort()).thenReturn(port);
+        return response;
+    }
+
+    private static ChannelHandlerContext channelContext() {
+        ChannelHandlerContext ctx = mock(ChannelHandlerContext.class);
+        when(ctx.channel()).thenReturn(mock(Channel.class));
+        return ctx;
+    }
+}
@@ -16,6 +16,10 @@
  */
 package org.dcache.xrootd.tpc;
 
+import static java.nio.charset.StandardCharsets.US_ASCII;
+import static org.dcache.xrootd.protocol.XrootdProtocol.kXR_open;
+import static org.dcache.xrootd.protocol.XrootdProtocol.kXR_redirect;
+import static org.hamcrest.Matchers.containsString;
 import static org.hamcrest.Matchers.equalTo;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
@@ -23,10 +27,13 @@ import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertThat;
 import static org.junit.Assert.assertTrue;
 
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
 import java.net.URI;
 import java.util.Map;
 import org.dcache.xrootd.tpc.XrootdTpcInfo.ClientRole;
 import org.dcache.xrootd.tpc.XrootdTpcInfo.ServerRole;
+import org.dcache.xrootd.tpc.protocol.messages.InboundRedirectResponse;
 import org.dcache.xrootd.util.OpaqueStringParser;
 import org.dcache.xrootd.util.ParseException;
 import org.junit.Test;
@@ -273,6 +280,45 @@ public class XrootdTpcInfoTest {
         assertNull("Token was not null.", info.getSourceToken());
     }
 
+    @Test
+    public void shouldTakeSourceTokenFromRedirectOpaque() throws Exception {
+        givenOpaque("?tpc.src=hostname&tpc.key=token&tpc.stage=copy");
+
+        XrootdTpcInfo redirected = info.copyForRedirect(redirect(
+              "data.example.org?authz=token-of-redirect&org.dcache.uuid=uuid",
+              1095));
+
+        assertThat(redirected.getSrc(), equalTo("data.example.org:1095"));
+        assertThat(redirected.getSourceToken(), equalTo("token-of-redirect"));
+        assertThat(redirected.getExternal(), containsString("org.dcache.uuid=uuid"));
+    }
+
+    @Test
+    public void shouldNotFindSourceTokenInRedirectWithoutOpaque() throws Exception {
+        givenOpaque("?tpc.src=hostname&tpc.key=token&tpc.stage=copy");
+
+        XrootdTpcInfo redirected = info.copyForRedirect(redirect(
+              "data.example.org", 1095));
+
+        assertNull("Token was not null.", redirected.getSourceToken());
+        assertNull("External was not null.", redirected.getExternal());
+    }
+
+    private static InboundRedirectResponse redirect(String target, int port)
+          throws ParseException {
+        ByteBuf buffer = Unpooled.buffer();
+        buffer.writeShort(1);
+        buffer.writeShort(kXR_redirect);
+        buffer.writeInt(target.length() + 4);
+        buffer.writeInt(port);
+        buffer.writeCharSequence(target, US_ASCII);
+        try {
+            return new InboundRedirectResponse(buffer, kXR_open);
+        } finally {
+            buffer.release();
+        }
+    }
+
     public void givenOpaque(String opaque) throws ParseException {
         Map<String, String> metadata = OpaqueStringParser.getOpaqueMap(opaque);
         info = new XrootdTpcInfo(metadata);
@@ -243,4 +243,46 @@ public class OpaqueStringParserTest {
               "",
               resultMap.get(OS_KEY));
     }
+
+    @Test
+    public void testLastValueWins() throws ParseException {
+        String opaque = OPAQUE_PREFIX + EDITOR_KEY + OPAQUE_SEPARATOR + "emacs" +
+              OPAQUE_STRING_PREFIX + EDITOR_KEY + OPAQUE_SEPARATOR + EDITOR_VALUE;
+        Map<String, String> resultMap =
+              OpaqueStringParser.getOpaqueMap(opaque);
+
+        assertEquals("Parsing did not produce exactly one result",
+              1,
+              resultMap.size());
+        assertEquals("Later value did not replace earlier value",
+              EDITOR_VALUE,
+              resultMap.get(EDITOR_KEY));
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void testResultIsImmutable() throws ParseException {
+        String opaque = OPAQUE_PREFIX + EDITOR_KEY + OPAQUE_SEPARATOR +
+              EDITOR_VALUE;
+        OpaqueStringParser.getOpaqueMap(opaque).put(OS_KEY, OS_VALUE);
+    }
+
+    @Test
+    public void testNonCompliantUserNameWithSeparatorIsReplaced()
+          throws ParseException {
+        String opaque = OPAQUE_PREFIX + "tpc.src" + OPAQUE_SEPARATOR +
+              "alrossi7&?@foobar.org" + OPAQUE_PREFIX + OS_KEY +
+              OPAQUE_SEPARATOR + OS_VALUE;
+        Map<String, String> resultMap =
+              OpaqueStringParser.getOpaqueMap(opaque);
+
+        assertEquals("Parsing did not produce exactly two results",
+              2,
+              resultMap.size());
+        assertEquals("User name was not replaced",
+              UserNameUtils.XROOTD_MAGIC_NAME + "@foobar.org",
+              resultMap.get("tpc.src"));
+        assertEquals("Opaque string was not parsed correctly",
+              OS_VALUE,
+              resultMap.get(OS_KEY));
+    }
 }